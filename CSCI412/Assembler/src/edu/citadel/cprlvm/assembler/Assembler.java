@@ -3,10 +3,14 @@ package edu.citadel.cprlvm.assembler;
 
 import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Source;
+import edu.citadel.cprlvm.ObjectFile;
 import edu.citadel.cprlvm.assembler.ast.Program;
 import edu.citadel.cprlvm.assembler.ast.Instruction;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.List;
 
 
@@ -21,6 +25,10 @@ public class Assembler
     private static final int    FAILURE = -1;
 
     private File sourceFile;
+
+    // written to the header and debug section of the object file
+    private int     stackSize = 0;
+    private boolean debug     = false;
     
 
     /**
@@ -32,6 +40,27 @@ public class Assembler
       }
 
     
+    /**
+     * Sets the number of bytes of memory that the object file requests
+     * for the stack.  The default is 0, which leaves the choice to the
+     * virtual machine.
+     */
+    public void setStackSize(int stackSize)
+      {
+        this.stackSize = stackSize;
+      }
+
+
+    /**
+     * Selects whether the labels of the program are written to the
+     * debug section of the object file.  The default is false.
+     */
+    public void setDebug(boolean debug)
+      {
+        this.debug = debug;
+      }
+
+
     /**
      * Assembles the source file.  If there are no errors in the source file,
      * the object code is placed in a file with the same base file name as
@@ -42,19 +71,51 @@ public class Assembler
      */
     public void assemble() throws IOException
       {
-        FileReader sourceFileReader = new FileReader(sourceFile);
-        
-        Source  source  = new Source(sourceFileReader);
-        Scanner scanner = new Scanner(source);
-        Parser  parser  = new Parser(scanner);
+        AssemblyContext context = new AssemblyContext();
+        ErrorHandler errorHandler = context.getErrorHandler();
 
-        ErrorHandler errorHandler = ErrorHandler.getInstance();
+        Source  source  = new Source(sourceFile);
+        Scanner scanner = new Scanner(source, errorHandler);
+        Parser  parser  = new Parser(scanner, context);
       
         printProgressMessage("Starting assembly for " + sourceFile.getName() + "...");
 
         // parse source file
         Program prog = parser.parseProgram();
 
+        if (!errorHandler.errorsExist())
+            assemble(prog, getTargetFile(sourceFile), stackSize, debug, context);
+        else
+            printProgressMessage("*** Errors detected -- assembly terminated. ***");
+      }
+
+
+    /**
+     * Assembles a program that has already been parsed or built in memory
+     * (see InstructionBuilder), placing the object code in the target file.
+     * The context must be the one whose error handler received the errors
+     * found while the program was parsed or built.
+     *
+     * @return true if the program was assembled without errors.
+     * @throws IOException if there are problems writing to the target file.
+     */
+    public static boolean assemble(Program prog, File targetFile, AssemblyContext context)
+        throws IOException
+      {
+        return assemble(prog, targetFile, 0, false, context);
+      }
+
+
+    /**
+     * Assembles a program as above, with the specified stack size request
+     * and with the labels in the debug section if debug is true.
+     */
+    public static boolean assemble(Program prog, File targetFile, int stackSize, boolean debug,
+                                   AssemblyContext context)
+        throws IOException
+      {
+        ErrorHandler errorHandler = context.getErrorHandler();
+
         // optimize
         if (!errorHandler.errorsExist())
           {
@@ -72,40 +133,57 @@ public class Assembler
         if (!errorHandler.errorsExist())
           {
             printProgressMessage("Setting memory addresses...");
-            prog.setAddresses();
+            prog.setAddresses(context);
           }
 
         // check constraints
         if (!errorHandler.errorsExist())
           {
             printProgressMessage("Checking constraints...");
-            prog.checkConstraints();
+            prog.checkConstraints(context);
           }
 
         // generate code
         if (!errorHandler.errorsExist())
           {
             printProgressMessage("Generating code...");
-            prog.setOutputStream(getTargetOutputStream(sourceFile));
 
             // no error recovery from errors detected during code generation
-            prog.emit();
+            ObjectFile objectFile = prog.getObjectFile(context, stackSize, debug);
+            writeObjectFile(targetFile, objectFile.toByteArray());
           }
 
         if (errorHandler.errorsExist())
             printProgressMessage("*** Errors detected -- assembly terminated. ***");
         else
-            printProgressMessage("Compilation complete.");        
+            printProgressMessage("Compilation complete.");
+
+        return !errorHandler.errorsExist();
       }
 
 
     public static void main(String args[]) throws Exception
       {
+        int     stackSize = 0;
+        boolean debug     = false;
+        String  fileName  = null;
+
         // check args
-        if (args.length == 0 || args.length > 1)
+        for (int i = 0;  i < args.length;  ++i)
+          {
+            if (args[i].equals("-g"))
+                debug = true;
+            else if (args[i].equals("-stack") && i + 1 < args.length)
+                stackSize = parseStackSize(args[++i]);
+            else if (fileName == null && !args[i].startsWith("-"))
+                fileName = args[i];
+            else
+                printUsageMessageAndExit();
+          }
+
+        if (fileName == null)
             printUsageMessageAndExit();
 
-        String fileName = args[0];
         File sourceFile = new File(fileName);
 
         if (!sourceFile.isFile())
@@ -133,6 +211,8 @@ public class Assembler
           }
 
         Assembler assembler = new Assembler(sourceFile);
+        assembler.setStackSize(stackSize);
+        assembler.setDebug(debug);
         assembler.assemble();
 
         System.out.println();
@@ -160,37 +240,111 @@ public class Assembler
       }
 
 
+    private static int parseStackSize(String arg)
+      {
+        try
+          {
+            int stackSize = Integer.parseInt(arg);
+            if (stackSize >= 0)
+                return stackSize;
+          }
+        catch (NumberFormatException e)
+          {
+          }
+
+        printUsageMessageAndExit();
+        return 0;
+      }
+
+
     private static void printUsageMessageAndExit()
       {
-        System.out.println("Usage:  java Assembler assemSourceFile");
+        System.out.println("Usage:  java Assembler [-g] [-stack bytes] assemSourceFile");
 //        System.out.println();
         System.exit(0);
       }
     
-    private OutputStream getTargetOutputStream(File sourceFile)
+    /**
+     * Returns the object file for a source file:  the file with the same
+     * base file name as the source file but with a ".obj" suffix.
+     */
+    public static File getTargetFile(File sourceFile)
       {
         // get source file name minus the suffix
         String baseName = sourceFile.getName();
-        int suffixIndex = baseName.lastIndexOf(SUFFIX);
+        int suffixIndex = baseName.lastIndexOf('.');
         if (suffixIndex > 0)
             baseName = sourceFile.getName().substring(0, suffixIndex);
 
         String targetFileName = baseName + ".obj";
 
-        File targetFile = null;
-        OutputStream targetStream = null;
+        return new File(sourceFile.getParent(), targetFileName);
+      }
+
+
+    /**
+     * Writes the contents of the object file to the target file.  They are
+     * written with a single channel write to a temporary file in the same
+     * directory, and the temporary file is then renamed to the target file,
+     * so the target file never holds a partially written object file.
+     * The temporary file is created with the default permissions for new
+     * files, or with the permissions of the target file if it exists, so
+     * the object file has the same permissions as if it were written in
+     * place.
+     */
+    private static void writeObjectFile(File targetFile, byte[] contents) throws IOException
+      {
+        File absoluteFile = targetFile.getAbsoluteFile();
+        Path target = absoluteFile.toPath();
+
+        // unlike Files.createTempFile(), File.createTempFile() does not
+        // restrict the permissions to the owner
+        Path temp = File.createTempFile(absoluteFile.getName(), ".tmp",
+                                        absoluteFile.getParentFile()).toPath();
 
         try
           {
-            targetFile = new File(sourceFile.getParent(), targetFileName);
-            targetStream = new FileOutputStream(targetFile);
+            if (Files.exists(target))
+                copyPermissions(target, temp);
+
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE))
+              {
+                ByteBuffer buffer = ByteBuffer.wrap(contents);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+              }
+
+            try
+              {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                                         StandardCopyOption.REPLACE_EXISTING);
+              }
+            catch (AtomicMoveNotSupportedException e)
+              {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+              }
           }
         catch (IOException e)
           {
-            e.printStackTrace();
-            System.exit(FAILURE);
+            Files.deleteIfExists(temp);
+            throw e;
           }
+      }
 
-        return targetStream;
+
+    /**
+     * Gives the target file the permissions of the source file, if the
+     * file system supports POSIX permissions.
+     */
+    private static void copyPermissions(Path source, Path target) throws IOException
+      {
+        try
+          {
+            Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+          }
+        catch (UnsupportedOperationException e)
+          {
+            // not a POSIX file system; the default permissions apply
+          }
       }
   }
@@ -0,0 +1,265 @@
+package edu.citadel.cprlvm.assembler;
+
+
+import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.compiler.NamePool;
+import edu.citadel.cprlvm.Constants;
+
+import java.util.Arrays;
+
+
+/**
+ * The state that belongs to a single assembly:  the addresses of the
+ * labels and identifiers defined by the program, the buffer that the
+ * object code is generated in, and the error handler.  The context is
+ * passed to the instructions when addresses are set, when constraints
+ * are checked, and when code is generated.  No state is shared between
+ * assemblies, so several programs can be assembled concurrently in the
+ * same JVM.
+ */
+public class AssemblyContext
+  {
+    private static final int INITIAL_NUM_NAMES = 256;
+    private static final int UNDEFINED = -1;
+
+    private ErrorHandler errorHandler;
+
+    // labels and identifiers are numbered by a name pool, and their
+    // addresses are indexed by those ids; UNDEFINED if not yet defined
+    private NamePool labelNames = new NamePool();
+    private int[]    labelAddresses;
+
+    private NamePool idNames = new NamePool();
+    private int[]    idAddresses;
+
+    // address for the next identifier (e.g., used in DEFINT)
+    private int idAddress = Constants.BYTES_PER_FRAME;
+
+    // the object code being generated and the number of bytes emitted so far
+    private byte[] code;
+    private int    codeLength;
+
+
+    /**
+     * Construct a context with its own error handler, which writes to
+     * System.err.
+     */
+    public AssemblyContext()
+      {
+        this(new ErrorHandler());
+      }
+
+
+    /**
+     * Construct a context that reports errors to the specified error handler.
+     */
+    public AssemblyContext(ErrorHandler errorHandler)
+      {
+        this.errorHandler = errorHandler;
+
+        labelAddresses = new int[INITIAL_NUM_NAMES];
+        Arrays.fill(labelAddresses, UNDEFINED);
+
+        idAddresses = new int[INITIAL_NUM_NAMES];
+        Arrays.fill(idAddresses, UNDEFINED);
+      }
+
+
+    public ErrorHandler getErrorHandler()
+      {
+        return errorHandler;
+      }
+
+
+    /**
+     * Returns the id of a label.  The token may be either the definition
+     * of the label (with a colon at the end) or a reference to it.
+     */
+    public int getLabelId(Token label)
+      {
+        String text   = label.getText();
+        int    length = text.length();
+        if (length > 0 && text.charAt(length - 1) == ':')
+            --length;
+
+        int id = labelNames.getId(text, length);
+        if (id >= labelAddresses.length)
+            labelAddresses = grow(labelAddresses, id);
+
+        return id;
+      }
+
+
+    /**
+     * Defines the address of a label.
+     *
+     * @return false if the label was already defined.
+     */
+    public boolean defineLabel(int labelId, int address)
+      {
+        if (labelAddresses[labelId] != UNDEFINED)
+            return false;
+
+        labelAddresses[labelId] = address;
+        return true;
+      }
+
+
+    public boolean isLabelDefined(int labelId)
+      {
+        return labelAddresses[labelId] != UNDEFINED;
+      }
+
+
+    /**
+     * Returns the address of a label, or -1 if it has not been defined.
+     */
+    public int getLabelAddress(int labelId)
+      {
+        return labelAddresses[labelId];
+      }
+
+
+    /**
+     * Returns the number of label ids handed out by getLabelId().
+     */
+    public int getNumLabels()
+      {
+        return labelNames.size();
+      }
+
+
+    /**
+     * Returns the name of a label, without the colon.
+     */
+    public String getLabelName(int labelId)
+      {
+        return labelNames.getName(labelId);
+      }
+
+
+    /**
+     * Removes the addresses of all labels, so that they can be defined again
+     * after the sizes of instructions have changed.
+     */
+    public void clearLabelAddresses()
+      {
+        Arrays.fill(labelAddresses, UNDEFINED);
+      }
+
+
+    /**
+     * Returns the id of an identifier.
+     */
+    public int getIdentifierId(Token identifier)
+      {
+        int id = idNames.getId(identifier.getText());
+        if (id >= idAddresses.length)
+            idAddresses = grow(idAddresses, id);
+
+        return id;
+      }
+
+
+    /**
+     * Allocates the specified number of bytes on the stack for an identifier.
+     *
+     * @return false if the identifier was already defined.
+     */
+    public boolean defineIdentifier(int identifierId, int size)
+      {
+        if (idAddresses[identifierId] != UNDEFINED)
+            return false;
+
+        idAddresses[identifierId] = idAddress;
+        idAddress = idAddress + size;
+        return true;
+      }
+
+
+    public boolean isIdentifierDefined(int identifierId)
+      {
+        return idAddresses[identifierId] != UNDEFINED;
+      }
+
+
+    /**
+     * Returns the stack address of an identifier, or -1 if it has not
+     * been defined.
+     */
+    public int getIdentifierAddress(int identifierId)
+      {
+        return idAddresses[identifierId];
+      }
+
+
+    private static int[] grow(int[] addresses, int id)
+      {
+        int oldLength = addresses.length;
+        int[] result  = Arrays.copyOf(addresses, Math.max(2*oldLength, id + 1));
+        Arrays.fill(result, oldLength, result.length, UNDEFINED);
+        return result;
+      }
+
+
+    //----------------------------------------------------------------------
+    // code generation
+
+    /**
+     * Starts generating code into a new buffer of the specified size.
+     */
+    public void startCode(int codeSize)
+      {
+        code = new byte[codeSize];
+        codeLength = 0;
+      }
+
+
+    /**
+     * Returns the buffer that the code is generated in.
+     */
+    public byte[] getCode()
+      {
+        return code;
+      }
+
+
+    /**
+     * Returns the number of bytes of code generated so far.
+     */
+    public int getCodeLength()
+      {
+        return codeLength;
+      }
+
+
+    /**
+     * Emits an opcode or a byte argument.
+     */
+    public void emit(byte b)
+      {
+        code[codeLength++] = b;
+      }
+
+
+    /**
+     * Emits an integer argument.
+     */
+    public void emit(int arg)
+      {
+        code[codeLength++] = (byte) (arg >>> 24);
+        code[codeLength++] = (byte) (arg >>> 16);
+        code[codeLength++] = (byte) (arg >>>  8);
+        code[codeLength++] = (byte) arg;
+      }
+
+
+    /**
+     * Emits a character argument.
+     */
+    public void emit(char arg)
+      {
+        code[codeLength++] = (byte) (arg >>> 8);
+        code[codeLength++] = (byte) arg;
+      }
+  }
@@ -0,0 +1,151 @@
+package edu.citadel.cprlvm.assembler;
+
+
+import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.compiler.ParserException;
+import edu.citadel.compiler.Position;
+import edu.citadel.cprl.AssemblySink;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.assembler.ast.Instruction;
+import edu.citadel.cprlvm.assembler.ast.Program;
+
+import java.util.LinkedList;
+import java.util.List;
+
+
+/**
+ * Builds the assembler's representation of a program directly from the
+ * labels and instructions generated by the CPRL compiler, so that the
+ * program can be optimized and assembled without being written as text
+ * and scanned again.  The compiler passes each opcode and argument
+ * separately, and the builder makes the same tokens that the scanner
+ * would produce for the text.  Their positions are the line numbers that
+ * the labels and instructions would have in the ".asm" file.
+ */
+public class InstructionBuilder implements AssemblySink
+  {
+    /** the symbol for each machine opcode, indexed by opcode */
+    private static final Symbol[] opCodeSymbols = makeOpCodeSymbols();
+
+    private ErrorHandler errorHandler;
+    private Program program = new Program();
+    private List<Token> labels = null;
+    private int lineNumber = 0;
+
+
+    /**
+     * Construct a builder that reports errors to the error handler of
+     * the specified assembly context.
+     */
+    public InstructionBuilder(AssemblyContext context)
+      {
+        errorHandler = context.getErrorHandler();
+      }
+
+
+    /**
+     * Returns the program built from the labels and instructions received.
+     */
+    public Program getProgram()
+      {
+        if (labels != null)
+          {
+            Position errorPosition = labels.get(0).getPosition();
+            String   errorMessage  = "Expecting an opcode but found \"EOF\" instead";
+            errorHandler.reportError(new ParserException(errorPosition, errorMessage));
+          }
+
+        return program;
+      }
+
+
+    @Override
+    public void emitLabel(String label)
+      {
+        ++lineNumber;
+
+        if (labels == null)
+            labels = new LinkedList<>();
+
+        labels.add(new Token(Symbol.labelId, new Position(lineNumber, 1), label + ":"));
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode)
+      {
+        addInstruction(opCode, null, null);
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode, int arg)
+      {
+        addInstruction(opCode, Symbol.intLiteral, Integer.toString(arg));
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode, String arg)
+      {
+        if (opCode == OpCode.LDCCH)
+            addInstruction(opCode, Symbol.charLiteral, Scanner.replaceEscapedChars(arg));
+        else if (opCode == OpCode.LDCSTR)
+            addInstruction(opCode, Symbol.stringLiteral, Scanner.replaceEscapedChars(arg));
+        else
+            addInstruction(opCode, Symbol.identifier, arg);
+      }
+
+
+    /**
+     * Adds an instruction with the pending labels and an argument token
+     * with the specified symbol and text (no argument if argSymbol is null).
+     * Literal arguments are given the text that the scanner would produce.
+     */
+    private void addInstruction(byte opCode, Symbol argSymbol, String argText)
+      {
+        ++lineNumber;
+
+        Symbol symbol = opCodeSymbols[opCode];
+        if (symbol == null)
+            throw new IllegalArgumentException("invalid opcode " + opCode);
+
+        String mnemonic = symbol.toString();
+        Token  opCodeToken = new Token(symbol, new Position(lineNumber, 4), mnemonic);
+        Token  arg = null;
+
+        if (argSymbol != null)
+            arg = new Token(argSymbol, new Position(lineNumber, 5 + mnemonic.length()), argText);
+
+        try
+          {
+            Instruction inst = Parser.makeInstruction(labels, opCodeToken, arg);
+            program.addInstruction(inst);
+          }
+        catch (ParserException e)
+          {
+            errorHandler.reportError(e);
+          }
+
+        labels = null;
+      }
+
+
+    /**
+     * Returns the assembler symbol for each machine opcode, indexed by
+     * opcode, or null for a byte that is not an opcode.
+     */
+    private static Symbol[] makeOpCodeSymbols()
+      {
+        Symbol[] symbols = new Symbol[128];
+
+        for (int n = 0;  n < symbols.length;  ++n)
+          {
+            Symbol symbol = Scanner.getIdentifierSymbol(OpCode.toString((byte) n));
+            if (symbol.isOpCode())
+                symbols[n] = symbol;
+          }
+
+        return symbols;
+      }
+  }
@@ -22,11 +22,17 @@ public class Parser
     private static final Symbol[] instructionFollowers = makeInstructionFollowers();
 
     private Scanner scanner;
+    private ErrorHandler errorHandler;
 
 
-    public Parser(Scanner scanner)
+    /**
+     * Construct a parser with the specified scanner.  Errors are reported
+     * to the error handler of the specified assembly context.
+     */
+    public Parser(Scanner scanner, AssemblyContext context)
       {
         this.scanner = scanner;
+        errorHandler = context.getErrorHandler();
       }
 
 
@@ -54,7 +60,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
 
             Symbol[] followers = {Symbol.EOF};
             scanner.advanceTo(followers);
@@ -104,7 +110,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             scanner.advanceTo(instructionFollowers);
           }
 
@@ -112,7 +118,13 @@ public class Parser
       }
 
 
-    private Instruction makeInstruction(List<Token> labels, Token opCode, Token arg)
+    /**
+     * Returns a new instruction for the opcode with the specified labels
+     * and argument, which may be null.
+     *
+     * @throws ParserException if the number of arguments is wrong for the opcode.
+     */
+    public static Instruction makeInstruction(List<Token> labels, Token opCode, Token arg)
         throws ParserException
       {
         checkArgs(opCode, arg);
@@ -131,10 +143,21 @@ public class Parser
             case LDADDR:  return new InstructionLDADDR(labels, opCode, arg);
             case LDGADDR: return new InstructionLDGADDR(labels, opCode, arg);
             case LDMEM:   return new InstructionLDMEM(labels, opCode, arg);
+            case LDMEMB:  return new InstructionLDMEMB(labels, opCode, arg);
+            case LDMEM2B: return new InstructionLDMEM2B(labels, opCode, arg);
+            case LDGMEM:  return new InstructionLDGMEM(labels, opCode, arg);
+            case LDGMEMB: return new InstructionLDGMEMB(labels, opCode, arg);
+            case LDGMEM2B: return new InstructionLDGMEM2B(labels, opCode, arg);
             case STORE:   return new InstructionSTORE(labels, opCode, arg);
             case STOREB:  return new InstructionSTOREB(labels, opCode);
             case STORE2B: return new InstructionSTORE2B(labels, opCode);
             case STOREW:  return new InstructionSTOREW(labels, opCode);
+            case STMEM:   return new InstructionSTMEM(labels, opCode, arg);
+            case STMEMB:  return new InstructionSTMEMB(labels, opCode, arg);
+            case STMEM2B: return new InstructionSTMEM2B(labels, opCode, arg);
+            case STGMEM:  return new InstructionSTGMEM(labels, opCode, arg);
+            case STGMEMB: return new InstructionSTGMEMB(labels, opCode, arg);
+            case STGMEM2B: return new InstructionSTGMEM2B(labels, opCode, arg);
             case CMP:     return new InstructionCMP(labels, opCode);
             case BR:      return new InstructionBR(labels, opCode, arg);
             case BNZ:     return new InstructionBNZ(labels, opCode, arg);
@@ -166,6 +189,8 @@ public class Parser
             case CALL:    return new InstructionCALL(labels, opCode, arg);
             case RET:     return new InstructionRET(labels, opCode, arg);
             case ALLOC:   return new InstructionALLOC(labels, opCode, arg);
+            case CHKSTK:  return new InstructionCHKSTK(labels, opCode, arg);
+            case COPY:    return new InstructionCOPY(labels, opCode, arg);
             case DEFINT:  return new InstructionDEFINT(labels, opCode, arg);
             default:
                 // force an internal exception
@@ -191,7 +216,7 @@ public class Parser
       }
 
 
-    private void checkArgs(Token opCode, Token arg)
+    private static void checkArgs(Token opCode, Token arg)
         throws ParserException
       {
         Position errorPosition = opCode.getPosition();
@@ -14,20 +14,22 @@ import java.util.HashMap;
 public class Scanner
   {
     /** maps strings to opcode symbols */
-    private static HashMap<String, Symbol> opCodeMap = new HashMap<String, Symbol>(50);
+    private static HashMap<String, Symbol> opCodeMap = new HashMap<String, Symbol>(64);
 
     private Source source;
+    private ErrorHandler errorHandler;
     private Token  currentToken;
     private StringBuilder scanBuffer;
 
 
     /**
-     * Initialize scanner with its associated source and advance
-     * to the first token.
+     * Initialize scanner with its associated source and the error handler
+     * for the assembly, and advance to the first token.
      */
-    public Scanner(Source source) throws IOException
+    public Scanner(Source source, ErrorHandler errorHandler) throws IOException
       {
         this.source  = source;
+        this.errorHandler = errorHandler;
         scanBuffer   = new StringBuilder(100);
         currentToken = new Token();
         advance();           // advance to the first token
@@ -111,11 +113,11 @@ public class Scanner
                         advance();   // continue scanning for next token
                         break;
                     case '\'':
-                        currentToken.setText(replaceEscapedChars(scanCharLiteral()));
+                        currentToken.setText(scanCharLiteral());
                         currentToken.setSymbol(Symbol.charLiteral);
                         break;
                     case '\"':
-                        currentToken.setText(replaceEscapedChars(scanStringLiteral()));
+                        currentToken.setText(scanStringLiteral());
                         currentToken.setSymbol(Symbol.stringLiteral);
                         break;
                     case '-':
@@ -139,8 +141,16 @@ public class Scanner
           }
         catch (ScannerException e)
           {
-            ErrorHandler.getInstance().reportError(e);
-            System.exit(1);
+            errorHandler.reportError(e);
+
+            // set token to either EOF or unknown
+            if (source.getChar() == Source.EOF)
+              {
+                if (getSymbol() != Symbol.EOF)
+                    currentToken.setSymbol(Symbol.EOF);
+              }
+            else
+                currentToken.setSymbol(Symbol.unknown);
           }
       }
 
@@ -316,7 +326,7 @@ public class Scanner
      *
      * @param src a 2-character string, where the first character is the backslash
      */
-    private char getEscapedChar(String src)
+    private static char getEscapedChar(String src)
       {
         InternalAssertion.check(src.length() == 2,
             "getEscapedChar():  parameter must contain exactly two characters");
@@ -375,9 +385,11 @@ public class Scanner
 
     /**
      * Replaces each substring of the form \x with the corresponding escape
-     * character and returns the resulting string.
+     * character and returns the resulting string.  The scanner converts
+     * escaped characters as it scans a literal, so this is used only for
+     * literals that are not scanned (see InstructionBuilder).
      */
-    public String replaceEscapedChars(String src)
+    public static String replaceEscapedChars(String src)
       {
         if (src == null || src.length() <= 1)
             return src;
@@ -401,9 +413,9 @@ public class Scanner
               {
                 char c = src.charAt(i);
 
-                if (i == '\\')
+                if (c == '\\' && i + 1 < src.length())
                   {
-                    buffer.append(getEscapedChar(src.substring(i, i + 1)));
+                    buffer.append(getEscapedChar(src.substring(i, i + 2)));
                     ++i;
                   }
                 else
@@ -421,12 +433,12 @@ public class Scanner
      * Returns the symbol associated with an identifier
      * (Symbol.ADD, Symbol.AND, Symbol.identifier, etc.)
      */
-    private Symbol getIdentifierSymbol(String idString)
+    static Symbol getIdentifierSymbol(String idString)
       {
         idString = idString.toUpperCase();
         int idLength = idString.length();
 
-        if (idLength < 2 || idLength > 7)       // quick check based on string length
+        if (idLength < 2 || idLength > 8)       // quick check based on string length
             return Symbol.identifier;
 
         Symbol idSymbol = (Symbol) opCodeMap.get(idString);
@@ -569,10 +581,21 @@ public class Scanner
         opCodeMap.put("LDADDR",  Symbol.LDADDR);
         opCodeMap.put("LDGADDR", Symbol.LDGADDR);
         opCodeMap.put("LDMEM",   Symbol.LDMEM);
+        opCodeMap.put("LDMEMB",  Symbol.LDMEMB);
+        opCodeMap.put("LDMEM2B", Symbol.LDMEM2B);
+        opCodeMap.put("LDGMEM",  Symbol.LDGMEM);
+        opCodeMap.put("LDGMEMB", Symbol.LDGMEMB);
+        opCodeMap.put("LDGMEM2B", Symbol.LDGMEM2B);
         opCodeMap.put("STORE",   Symbol.STORE);
         opCodeMap.put("STOREB",  Symbol.STOREB);
         opCodeMap.put("STORE2B", Symbol.STORE2B);
         opCodeMap.put("STOREW",  Symbol.STOREW);
+        opCodeMap.put("STMEM",   Symbol.STMEM);
+        opCodeMap.put("STMEMB",  Symbol.STMEMB);
+        opCodeMap.put("STMEM2B", Symbol.STMEM2B);
+        opCodeMap.put("STGMEM",  Symbol.STGMEM);
+        opCodeMap.put("STGMEMB", Symbol.STGMEMB);
+        opCodeMap.put("STGMEM2B", Symbol.STGMEM2B);
         opCodeMap.put("CMP",     Symbol.CMP);
         opCodeMap.put("BR",      Symbol.BR);
         opCodeMap.put("BNZ",     Symbol.BNZ);
@@ -604,5 +627,7 @@ public class Scanner
         opCodeMap.put("CALL",    Symbol.CALL);
         opCodeMap.put("RET",     Symbol.RET);
         opCodeMap.put("ALLOC",   Symbol.ALLOC);
+        opCodeMap.put("CHKSTK",  Symbol.CHKSTK);
+        opCodeMap.put("COPY",    Symbol.COPY);
       }
   }
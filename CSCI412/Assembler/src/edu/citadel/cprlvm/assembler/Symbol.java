@@ -22,11 +22,22 @@ public enum Symbol
     LDADDR("LDADDR", 1),
     LDGADDR("LDGADDR", 1),
     LDMEM("LDMEM", 1),
+    LDMEMB("LDMEMB", 1),
+    LDMEM2B("LDMEM2B", 1),
+    LDGMEM("LDGMEM", 1),
+    LDGMEMB("LDGMEMB", 1),
+    LDGMEM2B("LDGMEM2B", 1),
 
     STORE("STORE", 1),
     STOREB("STOREB", 0),
     STORE2B("STORE2B", 0),
     STOREW("STOREW", 0),
+    STMEM("STMEM", 1),
+    STMEMB("STMEMB", 1),
+    STMEM2B("STMEM2B", 1),
+    STGMEM("STGMEM", 1),
+    STGMEMB("STGMEMB", 1),
+    STGMEM2B("STGMEM2B", 1),
 
     // compare/branch opcodes
     CMP("CMP", 0),
@@ -70,6 +81,10 @@ public enum Symbol
     CALL("CALL", 1),
     RET("RET", 1),
     ALLOC("ALLOC", 1),
+    CHKSTK("CHKSTK", 1),
+
+    // block copy opcode
+    COPY("COPY", 1),
 
     // pseudo opcodes
     DEFINT("DEFINT", 1),
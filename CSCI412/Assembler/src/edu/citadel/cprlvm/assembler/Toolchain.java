@@ -0,0 +1,143 @@
+package edu.citadel.cprlvm.assembler;
+
+
+import edu.citadel.cprl.AssemblySink;
+import edu.citadel.cprl.Compiler;
+import edu.citadel.cprl.TextAssemblySink;
+
+import java.io.*;
+
+
+/**
+ * Compiles a CPRL source file directly to object code.  The instructions
+ * generated by the compiler are handed to the assembler in memory (see
+ * InstructionBuilder) rather than written to an ".asm" file and scanned
+ * and parsed again.  The ".asm" file can still be written as a listing.
+ */
+public class Toolchain
+  {
+    private static final String SUFFIX  = ".cprl";
+    private static final int    FAILURE = -1;
+
+
+    /**
+     * Compiles and assembles the source file, placing the object code in a
+     * file with the same base file name as the source file but with a ".obj"
+     * suffix.  If writeAssembly is true, the assembly code is also written
+     * to the ".asm" file.
+     *
+     * @return true if there were no errors.
+     */
+    public static boolean compile(File sourceFile, boolean writeAssembly) throws IOException
+      {
+        AssemblyContext context = new AssemblyContext();
+        final InstructionBuilder builder = new InstructionBuilder(context);
+        AssemblySink sink = builder;
+        PrintWriter  asmWriter = null;
+
+        if (writeAssembly)
+          {
+            File asmFile = new File(sourceFile.getParent(), getBaseName(sourceFile) + ".asm");
+            asmWriter = new PrintWriter(new BufferedWriter(new FileWriter(asmFile)));
+
+            final AssemblySink listing = new TextAssemblySink(asmWriter);
+            sink = new AssemblySink()
+              {
+                public void emitLabel(String label)
+                  {
+                    listing.emitLabel(label);
+                    builder.emitLabel(label);
+                  }
+
+                public void emitInstruction(byte opCode)
+                  {
+                    listing.emitInstruction(opCode);
+                    builder.emitInstruction(opCode);
+                  }
+
+                public void emitInstruction(byte opCode, int arg)
+                  {
+                    listing.emitInstruction(opCode, arg);
+                    builder.emitInstruction(opCode, arg);
+                  }
+
+                public void emitInstruction(byte opCode, String arg)
+                  {
+                    listing.emitInstruction(opCode, arg);
+                    builder.emitInstruction(opCode, arg);
+                  }
+              };
+          }
+
+        boolean success;
+        try
+          {
+            success = new Compiler(sourceFile).compile(sink);
+          }
+        finally
+          {
+            if (asmWriter != null)
+                asmWriter.close();
+          }
+
+        if (!success)
+            return false;
+
+        return Assembler.assemble(builder.getProgram(), Assembler.getTargetFile(sourceFile), context);
+      }
+
+
+    private static String getBaseName(File sourceFile)
+      {
+        String baseName = sourceFile.getName();
+        int suffixIndex = baseName.lastIndexOf(SUFFIX);
+        if (suffixIndex > 0)
+            baseName = baseName.substring(0, suffixIndex);
+
+        return baseName;
+      }
+
+
+    /**
+     * Usage:  java Toolchain [-asm] cprlSourceFile <br>
+     * Option -asm also writes the assembly code to the ".asm" file.
+     */
+    public static void main(String args[]) throws Exception
+      {
+        boolean writeAssembly = false;
+        String  fileName = null;
+
+        for (String arg : args)
+          {
+            if (arg.equals("-asm"))
+                writeAssembly = true;
+            else if (fileName == null && !arg.startsWith("-"))
+                fileName = arg;
+            else
+                printUsageMessageAndExit();
+          }
+
+        if (fileName == null)
+            printUsageMessageAndExit();
+
+        File sourceFile = new File(fileName);
+        if (!sourceFile.isFile())
+            sourceFile = new File(fileName + SUFFIX);
+
+        if (!sourceFile.isFile())
+          {
+            System.err.println("*** File " + fileName + " not found ***");
+            System.exit(FAILURE);
+          }
+
+        if (!compile(sourceFile, writeAssembly))
+            System.exit(FAILURE);
+      }
+
+
+    private static void printUsageMessageAndExit()
+      {
+        System.out.println("Usage:  java Toolchain [-asm] cprlSourceFile");
+        System.exit(0);
+      }
+  }
@@ -1,8 +1,9 @@
 package edu.citadel.cprlvm.assembler.ast;
 
 
+import edu.citadel.cprlvm.assembler.AssemblyContext;
+
 import java.io.IOException;
-import java.io.OutputStream;
 
 
 /**
@@ -10,9 +11,6 @@ import java.io.OutputStream;
  */
 public abstract class AST
   {
-    private static OutputStream out = null;
-
-
     /**
      * Default constructor.
      */
@@ -22,32 +20,14 @@ public abstract class AST
       }
 
 
-    /**
-     * Set the OutputStream to be used for code generation.
-     */
-    public void setOutputStream(OutputStream out)
-      {
-        AST.out = out;
-      }
-
-
-    /**
-     * Returns the OutputStream to be used for code generation
-     */
-    public OutputStream getOutputStream()
-      {
-        return out;
-      }
-
-
     /**
      * check semantic/contextual constraints
      */
-    public abstract void checkConstraints();
+    public abstract void checkConstraints(AssemblyContext context);
 
 
     /**
-     * emit the object code for the AST
+     * emit the object code for the AST into the context's code buffer
      */
-    public abstract void emit() throws IOException;
+    public abstract void emit(AssemblyContext context) throws IOException;
   }
@@ -4,8 +4,8 @@ package edu.citadel.cprlvm.assembler.ast;
 import edu.citadel.compiler.ConstraintException;
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.compiler.Position;
-import edu.citadel.compiler.util.ByteUtil;
 import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
@@ -19,16 +19,6 @@ import java.io.*;
  */
 public abstract class Instruction extends AST
   {
-    // maps label text (type String) to an address (type Integer)
-    // note that the label text always includes the colon (:) at the end
-    private static Map<String, Integer> labelMap = new HashMap<String, Integer>();
-
-    // maps identifier text (type String) to a stack address (type Integer)
-    private static Map<String, Integer> idMap = new HashMap<String, Integer>();
-
-    // initialize address for identifiers (e.g., used in DEFINT)
-    private static int idAddress = Constants.BYTES_PER_FRAME;
-
     private List<Token> labels;
     private Token opCode;
     private Token arg;
@@ -50,6 +40,19 @@ public abstract class Instruction extends AST
       }
 
 
+    /**
+     * Adds labels to the instruction.  Used during optimization when the
+     * instruction that had the labels is removed.
+     */
+    public void addLabels(List<Token> newLabels)
+      {
+        if (labels == null)
+            labels = new LinkedList<>();
+
+        labels.addAll(newLabels);
+      }
+
+
     public Token getOpCode()
       {
         return opCode;
@@ -64,9 +67,9 @@ public abstract class Instruction extends AST
 
     /**
      * Sets the memory address for an instruction.  Also defines
-     * the label values if the instruction has labels.
+     * the label values in the context if the instruction has labels.
      */
-    public void setAddress(int address) throws ConstraintException
+    public void setAddress(AssemblyContext context, int address) throws ConstraintException
       {
         this.address = address;
 
@@ -75,15 +78,13 @@ public abstract class Instruction extends AST
           {
             for (Token label : labels)
               {
-                if (labelMap.containsKey(label.getText()))
+                if (!context.defineLabel(context.getLabelId(label), address))
                   {
                     Position errorPosition = label.getPosition();
                     String   errorMessage  = "This label has already been defined.";
 
                     throw new ConstraintException(errorPosition, errorMessage);
                   }
-                else
-                    labelMap.put(label.getText(), Integer.valueOf(address));
               }
           }
       }
@@ -101,44 +102,40 @@ public abstract class Instruction extends AST
     /**
      * map the text of the identifier token to an address on the stack
      */
-    public void defineIdAddress(Token identifier, int size) throws ConstraintException
+    public void defineIdAddress(AssemblyContext context, Token identifier, int size)
+        throws ConstraintException
       {
         InternalAssertion.check(identifier != null, "id can't be null");
 
         InternalAssertion.check(identifier.getSymbol() == Symbol.identifier,
             "expecting an identifier but found " + identifier.getSymbol());
 
-        if (idMap.containsKey(identifier.getText()))
+        if (!context.defineIdentifier(context.getIdentifierId(identifier), size))
           {
             Position errorPosition = identifier.getPosition();
             String   errorMessage  = "This identifier has already been defined.";
 
             throw new ConstraintException(errorPosition, errorMessage);
           }
-        else
-          {
-            idMap.put(identifier.getText(), Integer.valueOf(idAddress));
-            idAddress = idAddress + size;
-          }
       }
 
 
     /**
      * Returns the stack address associated with an identifier.
      */
-    protected int getIdAddress(Token identifier)
+    protected int getIdAddress(AssemblyContext context, Token identifier)
       {
         InternalAssertion.check(identifier != null, "id can't be null");
 
         InternalAssertion.check(identifier.getSymbol() == Symbol.identifier,
             "expecting an identifier but found " + identifier.getSymbol());
 
-        InternalAssertion.check(idMap.containsKey(identifier.getText()),
-            "identifier " + identifier.getText() + " not found");
+        int idAddress = context.getIdentifierAddress(context.getIdentifierId(identifier));
 
-        Integer idAddress = (Integer) idMap.get(identifier.getText());
+        InternalAssertion.check(idAddress >= 0,
+            "identifier " + identifier.getText() + " not found");
 
-        return idAddress.intValue();
+        return idAddress;
       }
 
 
@@ -159,20 +156,40 @@ public abstract class Instruction extends AST
       }
 
 
+    /**
+     * Selects the shortest encoding of the instruction.  Overridden by the
+     * instructions that have more than one encoding (see InstructionBranch).
+     */
+    protected void useShortestForm()
+      {
+      }
+
+
+    /**
+     * Changes to a longer encoding if the argument of the instruction can't
+     * be represented in the current one, using the label addresses defined
+     * in the context.  Returns true if the size of the instruction changed.
+     */
+    protected boolean lengthen(AssemblyContext context)
+      {
+        return false;
+      }
+
+
     /**
      * If this instruction has labels, this method checks that each
-     * label has a value defined in the label map.  This method should
+     * label has a value defined in the context.  This method should
      * not be called for an instruction before method setAddress().
      * @throws ConstraintException if the instruction has a label that
-     *         is not defined in the label map.
+     *         is not defined in the context.
      */
-    protected void checkLabels() throws ConstraintException
+    protected void checkLabels(AssemblyContext context) throws ConstraintException
       {
         if (labels != null)
           {
             for (Token label : labels)
               {
-                if (!labelMap.containsKey(label.getText()))
+                if (!context.isLabelDefined(context.getLabelId(label)))
                   {
                     Position errorPosition = label.getPosition();
                     String   errorMessage  = "label \"" + label.getText()
@@ -189,7 +206,7 @@ public abstract class Instruction extends AST
      * This method is called by instructions that have an argument that
      * references a label.  It verifies that the referenced label exists.
      */
-    protected void checkLabelArgDefined() throws ConstraintException
+    protected void checkLabelArgDefined(AssemblyContext context) throws ConstraintException
       {
         InternalAssertion.check(arg != null, "label argument can't be null");
 
@@ -202,8 +219,7 @@ public abstract class Instruction extends AST
             throw new ConstraintException(errorPosition, errorMessage);
           }
 
-        String label = arg.getText() + ":";
-        if (!labelMap.containsKey(label))
+        if (!context.isLabelDefined(context.getLabelId(arg)))
           {
             Position errorPosition = arg.getPosition();
             String   errorMessage  = "label \"" + arg.getText() + "\" has not been defined.";
@@ -217,14 +233,14 @@ public abstract class Instruction extends AST
      * This method is called by instructions that have an argument that references
      * an identifier.  It verifies that the referenced identifier exists.
      */
-    protected void checkIdArgDefined() throws ConstraintException
+    protected void checkIdArgDefined(AssemblyContext context) throws ConstraintException
       {
         InternalAssertion.check(arg != null, "argument can't be null");
 
         InternalAssertion.check(arg.getSymbol() == Symbol.identifier,
             "expecting an identifier but found " + arg.getSymbol());
 
-        if (!idMap.containsKey(arg.getText()))
+        if (!context.isIdentifierDefined(context.getIdentifierId(arg)))
           {
             Position errorPosition = arg.getPosition();
             String   errorMessage  = "identifier \"" + arg.getText()
@@ -262,16 +278,14 @@ public abstract class Instruction extends AST
      * a label (computed as label's address - instruction's address).
      * This method is used by branching and call instructions.
      */
-    protected int getDisplacement(Token labelArg)
+    protected int getDisplacement(AssemblyContext context, Token labelArg)
       {
-        String labelId = labelArg.getText() + ":";
+        int labelAddress = context.getLabelAddress(context.getLabelId(labelArg));
 
-        InternalAssertion.check(labelMap.containsKey(labelId),
+        InternalAssertion.check(labelAddress >= 0,
             "label " + labelArg.getText() + " not found");
 
-        Integer labelAddress = (Integer) labelMap.get(labelId);
-
-        return (labelAddress.intValue() - address);
+        return (labelAddress - address);
       }
 
 
@@ -332,31 +346,4 @@ public abstract class Instruction extends AST
 
         return buffer.toString();
       }
-
-
-     /**
-      * emit the opCode for the instruction
-      */
-    protected void emit(byte opCode) throws IOException
-      {
-        getOutputStream().write(opCode);
-      }
-
-
-     /**
-      * emit an integer argument for the instruction
-      */
-    protected void emit(int arg) throws IOException
-      {
-        getOutputStream().write(ByteUtil.intToBytes(arg));
-      }
-
-
-     /**
-      * emit a character argument for the instruction
-      */
-    protected void emit(char arg) throws IOException
-      {
-        getOutputStream().write(ByteUtil.charToBytes(arg));
-      }
   }
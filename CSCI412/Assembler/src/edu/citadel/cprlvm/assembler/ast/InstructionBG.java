@@ -1,21 +1,18 @@
 package edu.citadel.cprlvm.assembler.ast;
 
 
-import edu.citadel.compiler.ConstraintException;
-import edu.citadel.cprlvm.Constants;
 import edu.citadel.cprlvm.OpCode;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
 import java.util.List;
-import java.io.IOException;
 
 
 /**
  * This class implements the abstract syntax tree for
  * the assembly language instruction BG.
  */
-public class InstructionBG extends InstructionOneArg
+public class InstructionBG extends InstructionBranch
   {
     public InstructionBG(List<Token> labels, Token opCode, Token arg)
       {
@@ -29,23 +26,14 @@ public class InstructionBG extends InstructionOneArg
       }
 
 
-    public void checkArgType() throws ConstraintException
+    protected byte getLongOpCode()
       {
-        checkArgType(Symbol.identifier);
-        checkLabelArgDefined();
+        return OpCode.BG;
       }
 
 
-    public int getArgSize()
+    protected byte getShortOpCode()
       {
-        return Constants.BYTES_PER_INTEGER;
-      }
-
-
-    @Override
-    public void emit() throws IOException
-      {
-        emit(OpCode.BG);
-        emit(getDisplacement(getArg()));
+        return OpCode.BG_S;
       }
   }
@@ -1,21 +1,18 @@
 package edu.citadel.cprlvm.assembler.ast;
 
 
-import edu.citadel.compiler.ConstraintException;
-import edu.citadel.cprlvm.Constants;
 import edu.citadel.cprlvm.OpCode;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
 import java.util.List;
-import java.io.IOException;
 
 
 /**
  * This class implements the abstract syntax tree for
  * the assembly language instruction BGE.
  */
-public class InstructionBGE extends InstructionOneArg
+public class InstructionBGE extends InstructionBranch
   {
     public InstructionBGE(List<Token> labels, Token opCode, Token arg)
       {
@@ -29,23 +26,14 @@ public class InstructionBGE extends InstructionOneArg
       }
 
 
-    public void checkArgType() throws ConstraintException
+    protected byte getLongOpCode()
       {
-        checkArgType(Symbol.identifier);
-        checkLabelArgDefined();
+        return OpCode.BGE;
       }
 
 
-    public int getArgSize()
+    protected byte getShortOpCode()
       {
-        return Constants.BYTES_PER_INTEGER;
-      }
-
-
-    @Override
-    public void emit() throws IOException
-      {
-        emit(OpCode.BGE);
-        emit(getDisplacement(getArg()));
+        return OpCode.BGE_S;
       }
   }
@@ -1,21 +1,18 @@
 package edu.citadel.cprlvm.assembler.ast;
 
 
-import edu.citadel.compiler.ConstraintException;
-import edu.citadel.cprlvm.Constants;
 import edu.citadel.cprlvm.OpCode;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
 import java.util.List;
-import java.io.IOException;
 
 
 /**
  * This class implements the abstract syntax tree for
  * the assembly language instruction BNZ.
  */
-public class InstructionBNZ extends InstructionOneArg
+public class InstructionBNZ extends InstructionBranch
   {
     public InstructionBNZ(List<Token> labels, Token opCode, Token arg)
       {
@@ -29,23 +26,14 @@ public class InstructionBNZ extends InstructionOneArg
       }
 
 
-    public void checkArgType() throws ConstraintException
+    protected byte getLongOpCode()
       {
-        checkArgType(Symbol.identifier);
-        checkLabelArgDefined();
+        return OpCode.BNZ;
       }
 
 
-    public int getArgSize()
+    protected byte getShortOpCode()
       {
-        return Constants.BYTES_PER_INTEGER;
-      }
-
-
-    @Override
-    public void emit() throws IOException
-      {
-        emit(OpCode.BNZ);
-        emit(getDisplacement(getArg()));
+        return OpCode.BNZ_S;
       }
   }
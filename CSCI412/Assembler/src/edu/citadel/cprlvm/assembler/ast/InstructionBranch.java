@@ -0,0 +1,99 @@
+package edu.citadel.cprlvm.assembler.ast;
+
+
+import edu.citadel.compiler.ConstraintException;
+import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
+import edu.citadel.cprlvm.assembler.Symbol;
+import edu.citadel.cprlvm.assembler.Token;
+
+import java.util.List;
+import java.io.IOException;
+
+
+/**
+ * This class serves as a base class for the abstract syntax tree for
+ * the branch and call instructions, whose argument is a label.  Each of
+ * these instructions has a long form with an integer displacement and
+ * a short form with a one byte displacement.  The short form is used
+ * unless the label is out of its range (see Program.setAddresses()).
+ */
+public abstract class InstructionBranch extends InstructionOneArg
+  {
+    private boolean shortForm = true;
+
+
+    public InstructionBranch(List<Token> labels, Token opCode, Token arg)
+      {
+        super(labels, opCode, arg);
+      }
+
+
+    /**
+     * Returns the machine opcode for the long form of the instruction.
+     */
+    protected abstract byte getLongOpCode();
+
+
+    /**
+     * Returns the machine opcode for the short form of the instruction.
+     */
+    protected abstract byte getShortOpCode();
+
+
+    public void checkArgType(AssemblyContext context) throws ConstraintException
+      {
+        checkArgType(Symbol.identifier);
+        checkLabelArgDefined(context);
+      }
+
+
+    public int getArgSize()
+      {
+        return shortForm ? 1 : Constants.BYTES_PER_INTEGER;
+      }
+
+
+    @Override
+    protected void useShortestForm()
+      {
+        shortForm = true;
+      }
+
+
+    @Override
+    protected boolean lengthen(AssemblyContext context)
+      {
+        if (!shortForm)
+            return false;
+
+        int labelAddress = context.getLabelAddress(context.getLabelId(getArg()));
+        if (labelAddress < 0)
+            return false;   // reported by checkConstraints()
+
+        int displacement = labelAddress - getAddress();
+        if (displacement >= Byte.MIN_VALUE && displacement <= Byte.MAX_VALUE)
+            return false;
+
+        shortForm = false;
+        return true;
+      }
+
+
+    @Override
+    public void emit(AssemblyContext context) throws IOException
+      {
+        int displacement = getDisplacement(context, getArg());
+
+        if (shortForm)
+          {
+            context.emit(getShortOpCode());
+            context.emit((byte) displacement);
+          }
+        else
+          {
+            context.emit(getLongOpCode());
+            context.emit(displacement);
+          }
+      }
+  }
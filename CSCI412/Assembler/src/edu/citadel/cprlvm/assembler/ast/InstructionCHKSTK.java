@@ -0,0 +1,51 @@
+package edu.citadel.cprlvm.assembler.ast;
+
+
+import edu.citadel.compiler.ConstraintException;
+import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
+import edu.citadel.cprlvm.assembler.Symbol;
+import edu.citadel.cprlvm.assembler.Token;
+
+import java.util.List;
+import java.io.IOException;
+
+
+/**
+ * This class implements the abstract syntax tree for
+ * the assembly language instruction CHKSTK.
+ */
+public class InstructionCHKSTK extends InstructionOneArg
+  {
+    public InstructionCHKSTK(List<Token> labels, Token opCode, Token arg)
+      {
+        super(labels, opCode, arg);
+      }
+
+
+    public void assertOpCode()
+      {
+        assertOpCode(Symbol.CHKSTK);
+      }
+
+
+    public void checkArgType(AssemblyContext context) throws ConstraintException
+      {
+        checkArgType(Symbol.intLiteral);
+      }
+
+
+    public int getArgSize()
+      {
+        return Constants.BYTES_PER_INTEGER;
+      }
+
+
+    @Override
+    public void emit(AssemblyContext context) throws IOException
+      {
+        context.emit(OpCode.CHKSTK);
+        context.emit(argToInt());
+      }
+  }
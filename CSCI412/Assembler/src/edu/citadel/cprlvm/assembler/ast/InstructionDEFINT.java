@@ -3,6 +3,7 @@ package edu.citadel.cprlvm.assembler.ast;
 
 import edu.citadel.compiler.ConstraintException;
 import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
@@ -28,9 +29,9 @@ public class InstructionDEFINT extends InstructionOneArg
       }
 
 
-    public void checkArgType() throws ConstraintException
+    public void checkArgType(AssemblyContext context) throws ConstraintException
       {
-        defineIdAddress(getArg(), Constants.BYTES_PER_INTEGER);
+        defineIdAddress(context, getArg(), Constants.BYTES_PER_INTEGER);
         checkArgType(Symbol.identifier);
       }
 
@@ -56,7 +57,7 @@ public class InstructionDEFINT extends InstructionOneArg
 
 
     @Override
-    public void emit() throws IOException
+    public void emit(AssemblyContext context) throws IOException
       {
         // nothing to emit for pseudo opcode
       }
@@ -2,6 +2,7 @@ package edu.citadel.cprlvm.assembler.ast;
 
 
 import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
@@ -28,8 +29,8 @@ public class InstructionDIV extends InstructionNoArgs
 
 
     @Override
-    public void emit() throws IOException
+    public void emit(AssemblyContext context) throws IOException
       {
-        emit(OpCode.DIV);
+        context.emit(OpCode.DIV);
       }
   }
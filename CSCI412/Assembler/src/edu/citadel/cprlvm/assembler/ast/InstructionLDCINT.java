@@ -4,6 +4,7 @@ package edu.citadel.cprlvm.assembler.ast;
 import edu.citadel.compiler.ConstraintException;
 import edu.citadel.cprlvm.Constants;
 import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
@@ -29,7 +30,7 @@ public class InstructionLDCINT extends InstructionOneArg
       }
 
 
-    public void checkArgType() throws ConstraintException
+    public void checkArgType(AssemblyContext context) throws ConstraintException
       {
         checkArgType(Symbol.intLiteral);
       }
@@ -42,9 +43,9 @@ public class InstructionLDCINT extends InstructionOneArg
 
 
     @Override
-    public void emit() throws IOException
+    public void emit(AssemblyContext context) throws IOException
       {
-        emit(OpCode.LDCINT);
-        emit(argToInt());
+        context.emit(OpCode.LDCINT);
+        context.emit(argToInt());
       }
   }
@@ -4,6 +4,7 @@ package edu.citadel.cprlvm.assembler.ast;
 import edu.citadel.compiler.ConstraintException;
 import edu.citadel.cprlvm.Constants;
 import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
@@ -32,7 +33,7 @@ public class InstructionLDCSTR extends InstructionOneArg
       }
 
 
-    public void checkArgType() throws ConstraintException
+    public void checkArgType(AssemblyContext context) throws ConstraintException
       {
         checkArgType(Symbol.stringLiteral);
       }
@@ -54,17 +55,17 @@ public class InstructionLDCSTR extends InstructionOneArg
 
 
     @Override
-    public void emit() throws IOException
+    public void emit(AssemblyContext context) throws IOException
       {
         int strLength = getStrLength();
         
-        emit(OpCode.LDCSTR);
-        emit(strLength);
+        context.emit(OpCode.LDCSTR);
+        context.emit(strLength);
 
         String text = getArg().getText();
 
         // omit opening and closing quotes
         for (int i = 1;  i <= strLength;  ++i)
-            emit(text.charAt(i));
+            context.emit(text.charAt(i));
       }
   }
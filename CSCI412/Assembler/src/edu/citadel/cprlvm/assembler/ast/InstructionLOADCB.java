@@ -3,6 +3,7 @@ package edu.citadel.cprlvm.assembler.ast;
 
 import edu.citadel.compiler.ConstraintException;
 import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Symbol;
 import edu.citadel.cprlvm.assembler.Token;
 
@@ -28,7 +29,7 @@ public class InstructionLOADCB extends InstructionOneArg
       }
 
 
-    public void checkArgType() throws ConstraintException
+    public void checkArgType(AssemblyContext context) throws ConstraintException
       {
         checkArgType(Symbol.intLiteral);
       }
@@ -41,9 +42,9 @@ public class InstructionLOADCB extends InstructionOneArg
 
 
     @Override
-    public void emit() throws IOException
+    public void emit(AssemblyContext context) throws IOException
       {
-        emit(OpCode.LOADCB);
-        emit(argToByte());
+        context.emit(OpCode.LOADCB);
+        context.emit(argToByte());
       }
   }
@@ -2,7 +2,7 @@ package edu.citadel.cprlvm.assembler.ast;
 
 
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Token;
 
 import java.util.List;
@@ -20,16 +20,16 @@ public abstract class InstructionNoArgs extends Instruction
 
 
     @Override
-    public void checkConstraints()
+    public void checkConstraints(AssemblyContext context)
       {
         try
           {
             assertOpCode();
-            checkLabels();
+            checkLabels(context);
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            context.getErrorHandler().reportError(e);
           }
       }
 
@@ -2,7 +2,7 @@ package edu.citadel.cprlvm.assembler.ast;
 
 
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.Token;
 
 import java.util.List;
@@ -22,17 +22,17 @@ public abstract class InstructionOneArg extends Instruction
     /**
      * check semantic/contextual constraints
      */
-    public void checkConstraints()
+    public void checkConstraints(AssemblyContext context)
       {
         try
           {
             assertOpCode();
-            checkLabels();
-            checkArgType();
+            checkLabels(context);
+            checkArgType(context);
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            context.getErrorHandler().reportError(e);
           }
       }
 
@@ -42,5 +42,5 @@ public abstract class InstructionOneArg extends Instruction
      * the correct type.  Implemented in each instruction
      * by calling the method checkArgType(Symbol).
      */
-    protected abstract void checkArgType() throws ConstraintException;
+    protected abstract void checkArgType(AssemblyContext context) throws ConstraintException;
   }
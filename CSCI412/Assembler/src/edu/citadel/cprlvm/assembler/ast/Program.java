@@ -2,9 +2,11 @@ package edu.citadel.cprlvm.assembler.ast;
 
 
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
-import edu.citadel.cprlvm.assembler.optimize.Optimization;
+import edu.citadel.compiler.InternalAssertion;
+import edu.citadel.cprlvm.ObjectFile;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
 import edu.citadel.cprlvm.assembler.optimize.Optimizations;
+import edu.citadel.cprlvm.assembler.optimize.PeepholeOptimizer;
 
 import java.io.IOException;
 import java.util.*;
@@ -17,6 +19,7 @@ import java.util.*;
 public class Program extends AST
   {
     private ArrayList<Instruction> instructions;
+    private int codeSize;   // set by setAddresses()
 
 
     public Program()
@@ -39,10 +42,10 @@ public class Program extends AST
 
 
     @Override
-    public void checkConstraints()
+    public void checkConstraints(AssemblyContext context)
       {
         for (Instruction inst : instructions)
-            inst.checkConstraints();
+            inst.checkConstraints(context);
       }
 
 
@@ -52,27 +55,49 @@ public class Program extends AST
      */
     public void optimize()
       {
-        List<Optimization> optimizations = Optimizations.getOptimizations();
+        new PeepholeOptimizer(Optimizations.getOptimizations()).optimize(instructions);
+      }
+
 
-        int n = 0;
-             
-        while (n < instructions.size())
+    /**
+     * Sets the starting memory address for each instruction and defines label
+     * addresses.  Note: This method should be called after optimizations have
+     * been performed and immediately before code generation.
+     *
+     * <p>Branches start out in their short form.  Whenever a branch can't
+     * reach its label, it is lengthened and the addresses are set again.
+     * Instructions only ever grow, so this stops after a few passes.
+     */
+    public void setAddresses(AssemblyContext context)
+      {
+        for (Instruction inst : instructions)
+            inst.useShortestForm();
+
+        while (defineAddresses(context))
           {
-            for (Optimization optimization : optimizations)
-                optimization.optimize(instructions, n);
+            boolean lengthened = false;
+            for (Instruction inst : instructions)
+              {
+                if (inst.lengthen(context))
+                    lengthened = true;
+              }
+
+            if (!lengthened)
+                break;
 
-            ++n;
+            context.clearLabelAddresses();
           }
       }
 
 
     /**
-     * Sets the starting memory address for each instruction and defines label
-     * addresses.  Note: This method should be called after optimizations have
-     * been performed and immediately before code generation.
+     * Sets the address of each instruction with the current instruction sizes.
+     * Returns false if an error was detected.
      */
-    public void setAddresses()
+    private boolean defineAddresses(AssemblyContext context)
       {
+        boolean noErrors = true;
+
         // the starting address for the first instruction
         int address = 0;
 
@@ -80,22 +105,101 @@ public class Program extends AST
           {
             try
               {
-                inst.setAddress(address);
+                inst.setAddress(context, address);
                 address += inst.getSize();
               }
            catch (ConstraintException e)
              {
-               ErrorHandler.getInstance().reportError(e);
+               context.getErrorHandler().reportError(e);
+               noErrors = false;
              }
           }
+
+        codeSize = address;
+        return noErrors;
+      }
+
+
+    /**
+     * Returns the number of bytes of object code for the program.  This
+     * method should not be called before method setAddresses().
+     */
+    public int getCodeSize()
+      {
+        return codeSize;
+      }
+
+
+    /**
+     * Generates the object code for the program into a byte array whose
+     * size is the one computed by setAddresses().
+     */
+    public byte[] getObjectCode(AssemblyContext context) throws IOException
+      {
+        context.startCode(codeSize);
+        emit(context);
+
+        InternalAssertion.check(context.getCodeLength() == codeSize,
+            "Program.getObjectCode():  The code emitted does not match the instruction sizes.");
+
+        return context.getCode();
+      }
+
+
+    /**
+     * Generates the object code for the program and returns it in an
+     * object file.  Execution starts with the first instruction.
+     *
+     * @param stackSize the number of bytes of memory to request for the
+     *                  stack, or 0 for the virtual machine's default
+     * @param debug     true if the labels should be written to the debug
+     *                  section of the object file
+     */
+    public ObjectFile getObjectFile(AssemblyContext context, int stackSize, boolean debug)
+        throws IOException
+      {
+        byte[] code = getObjectCode(context);
+
+        int numStrings = 0;
+        int[] stringAddresses = new int[instructions.size()];
+        for (Instruction inst : instructions)
+          {
+            if (inst instanceof InstructionLDCSTR)
+                stringAddresses[numStrings++] = inst.getAddress();
+          }
+
+        ObjectFile objectFile = new ObjectFile(code, 0, stackSize,
+                                               Arrays.copyOf(stringAddresses, numStrings));
+
+        if (debug)
+          {
+            int numLabels = 0;
+            String[] labelNames     = new String[context.getNumLabels()];
+            int[]    labelAddresses = new int[context.getNumLabels()];
+
+            for (int id = 0;  id < labelNames.length;  ++id)
+              {
+                if (context.isLabelDefined(id))
+                  {
+                    labelNames[numLabels]     = context.getLabelName(id);
+                    labelAddresses[numLabels] = context.getLabelAddress(id);
+                    ++numLabels;
+                  }
+              }
+
+            objectFile.setDebugSymbols(Arrays.copyOf(labelNames, numLabels),
+                                       Arrays.copyOf(labelAddresses, numLabels));
+          }
+
+        return objectFile;
       }
 
 
     @Override
-    public void emit() throws IOException
+    public void emit(AssemblyContext context) throws IOException
       {
         for (Instruction inst : instructions)
-            inst.emit();
+            inst.emit(context);
       }
 
 
@@ -0,0 +1,135 @@
+package edu.citadel.cprlvm.assembler.optimize;
+
+
+import edu.citadel.cprlvm.assembler.ast.Instruction;
+
+
+/**
+ * A view of the instructions being examined by a peephole optimization.
+ * Instruction 0 is the instruction at which the optimization is being
+ * applied, and instructions 1, 2, ... are the ones that follow it.
+ * Removing an instruction moves the instructions after it down by one,
+ * as for a list.  The window holds the instructions up to the end of
+ * the program, but no more than the largest window size of the
+ * optimizations being applied.
+ */
+public final class InstructionWindow
+  {
+    /**
+     * A node in the doubly linked list of instructions being optimized.
+     */
+    static final class Node
+      {
+        Instruction inst;
+        Node    prev;
+        Node    next;
+        boolean queued;
+        boolean removed;
+
+        Node(Instruction inst)
+          {
+            this.inst = inst;
+          }
+      }
+
+
+    private PeepholeOptimizer optimizer;
+    private Node    start;
+    private Node    before;     // the node before the window, or null
+    private int     size;
+    private boolean changed;
+
+
+    InstructionWindow(PeepholeOptimizer optimizer)
+      {
+        this.optimizer = optimizer;
+      }
+
+
+    /**
+     * Positions the window at the specified node.
+     */
+    void reset(Node start, int maxSize)
+      {
+        this.start   = start;
+        this.before  = start.prev;
+        this.changed = false;
+
+        size = 1;
+        for (Node node = start.next;  node != null && size < maxSize;  node = node.next)
+            ++size;
+      }
+
+
+    /**
+     * Returns the node before the window, which is not changed by
+     * the optimization.
+     */
+    Node getNodeBefore()
+      {
+        return before;
+      }
+
+
+    /**
+     * Returns true if the optimization changed any instructions.
+     */
+    boolean isChanged()
+      {
+        return changed;
+      }
+
+
+    /**
+     * Returns the number of instructions in the window.
+     */
+    public int size()
+      {
+        return size;
+      }
+
+
+    /**
+     * Returns the instruction at the specified position in the window.
+     */
+    public Instruction get(int i)
+      {
+        return getNode(i).inst;
+      }
+
+
+    /**
+     * Replaces the instruction at the specified position in the window.
+     */
+    public void set(int i, Instruction inst)
+      {
+        getNode(i).inst = inst;
+        changed = true;
+      }
+
+
+    /**
+     * Removes the instruction at the specified position in the window.
+     */
+    public void remove(int i)
+      {
+        Node node = getNode(i);
+
+        if (node == start)
+            start = node.next;
+
+        optimizer.unlink(node);
+        --size;
+        changed = true;
+      }
+
+
+    private Node getNode(int i)
+      {
+        Node node = start;
+        for (int k = 0;  k < i;  ++k)
+            node = node.next;
+
+        return node;
+      }
+  }
@@ -1,18 +1,22 @@
 package edu.citadel.cprlvm.assembler.optimize;
 
 
-import edu.citadel.cprlvm.assembler.ast.Instruction;
-
-import java.util.List;
-
-
 /**
- * Perform peephole optimization on the list of instructions starting with
- * the instruction at the specified position in the list and looking at
- * that instruction plus the next several instructions.  Any class that
- * implements this interface can remove/replace instructions in the list. 
+ * Perform peephole optimization on a window of instructions starting with
+ * the instruction being examined and looking at that instruction plus the
+ * next several instructions.  Any class that implements this interface can
+ * remove/replace instructions in the window, but each change must remove
+ * at least one instruction (see PeepholeOptimizer).
  */
 public interface Optimization
   {
-    public void optimize(List<Instruction> instructions, int instNum);
+    /**
+     * Returns the largest number of instructions that the optimization
+     * looks at.  Near the end of the program the window may have fewer
+     * instructions (see InstructionWindow.size()).
+     */
+    public int getWindowSize();
+
+
+    public void optimize(InstructionWindow window);
   }
@@ -6,7 +6,9 @@ import java.util.LinkedList;
 
 
 /**
- * This class is used to retrieve the list of all optimizations. 
+ * This class is used to retrieve the list of all optimizations.  The
+ * assembler's peephole optimizations are rules in the resource file
+ * "peephole.rules" (see PeepholeRules).
  */
 public class Optimizations
   {
@@ -22,11 +24,6 @@ public class Optimizations
     static
       {
         optimizations = new LinkedList<>();
-        optimizations.add(new ConstFolding());
-        optimizations.add(new IncDec());
-        optimizations.add(new IncDec2());
-        optimizations.add(new ShiftLeftRight());
-        optimizations.add(new ShiftLeft());
-        optimizations.add(new BranchingReduction());
+        optimizations.add(PeepholeRules.load());
       }
   }
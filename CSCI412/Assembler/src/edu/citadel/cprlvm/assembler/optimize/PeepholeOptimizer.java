@@ -0,0 +1,146 @@
+package edu.citadel.cprlvm.assembler.optimize;
+
+
+import edu.citadel.cprlvm.assembler.ast.Instruction;
+import edu.citadel.cprlvm.assembler.optimize.InstructionWindow.Node;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+
+/**
+ * Applies peephole optimizations to a list of instructions until none of
+ * them applies anywhere.  The instructions are copied into a doubly linked
+ * list so that removing one takes constant time, and a worklist holds the
+ * instructions at which the optimizations must be tried.  Initially every
+ * instruction is on the worklist.  When an optimization changes the
+ * instructions, only the neighbourhood of the change is put back on the
+ * worklist: the instructions from which a window could now see a changed
+ * instruction.  Every optimization removes at least one instruction, so
+ * the total work is linear in the number of instructions.
+ */
+public class PeepholeOptimizer
+  {
+    private List<Optimization> optimizations;
+    private int maxWindowSize;
+
+    private Node first;
+    private ArrayDeque<Node> worklist;
+
+
+    /**
+     * Construct an optimizer that applies the specified optimizations.
+     */
+    public PeepholeOptimizer(List<Optimization> optimizations)
+      {
+        this.optimizations = optimizations;
+
+        maxWindowSize = 1;
+        for (Optimization optimization : optimizations)
+            maxWindowSize = Math.max(maxWindowSize, optimization.getWindowSize());
+      }
+
+
+    /**
+     * Optimizes the instructions in the list, replacing its contents
+     * with the optimized instructions.
+     */
+    public void optimize(List<Instruction> instructions)
+      {
+        worklist = new ArrayDeque<>(instructions.size());
+        first = null;
+
+        Node last = null;
+        for (Instruction inst : instructions)
+          {
+            Node node = new Node(inst);
+            node.prev = last;
+            if (last == null)
+                first = node;
+            else
+                last.next = node;
+
+            node.queued = true;
+            worklist.addLast(node);
+            last = node;
+          }
+
+        InstructionWindow window = new InstructionWindow(this);
+
+        while (!worklist.isEmpty())
+          {
+            Node node = worklist.pollFirst();
+            node.queued = false;
+
+            if (node.removed)
+                continue;
+
+            for (Optimization optimization : optimizations)
+              {
+                window.reset(node, maxWindowSize);
+                optimization.optimize(window);
+
+                if (window.isChanged())
+                  {
+                    requeueNeighbourhood(window.getNodeBefore());
+                    break;
+                  }
+              }
+          }
+
+        instructions.clear();
+        for (Node node = first;  node != null;  node = node.next)
+            instructions.add(node.inst);
+
+        worklist = null;
+        first = null;
+      }
+
+
+    /**
+     * Removes a node from the linked list.
+     */
+    void unlink(Node node)
+      {
+        if (node.prev == null)
+            first = node.next;
+        else
+            node.prev.next = node.next;
+
+        if (node.next != null)
+            node.next.prev = node.prev;
+
+        node.removed = true;
+      }
+
+
+    /**
+     * Puts the nodes whose windows could include a changed instruction at
+     * the front of the worklist, in order.  The changes were made after the
+     * specified node, or at the start of the list if it is null.
+     */
+    private void requeueNeighbourhood(Node before)
+      {
+        // the first node after the unchanged node, which may have changed
+        Node node = before != null ? before.next : first;
+        if (node != null)
+            requeue(node);
+
+        // the nodes before it whose windows reach it
+        for (int i = 1;  i < maxWindowSize && before != null;  ++i)
+          {
+            requeue(before);
+            before = before.prev;
+          }
+      }
+
+
+    private void requeue(Node node)
+      {
+        if (!node.queued)
+          {
+            node.queued = true;
+            worklist.addFirst(node);
+          }
+      }
+  }
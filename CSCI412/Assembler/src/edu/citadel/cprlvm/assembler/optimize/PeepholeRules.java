@@ -0,0 +1,658 @@
+package edu.citadel.cprlvm.assembler.optimize;
+
+
+import edu.citadel.compiler.InternalCompilerException;
+import edu.citadel.compiler.ParserException;
+import edu.citadel.cprlvm.assembler.Parser;
+import edu.citadel.cprlvm.assembler.Symbol;
+import edu.citadel.cprlvm.assembler.Token;
+import edu.citadel.cprlvm.assembler.ast.Instruction;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * A set of peephole optimization rules read from a text file, with one
+ * rule per line in the form
+ * <code>
+ *   pattern => replacement
+ * </code>
+ * For example, <code>LDCINT 1; ADD => INC</code>.  The pattern and the
+ * replacement are sequences of instructions separated by semicolons, and
+ * the replacement must have fewer instructions than the pattern.  In a
+ * pattern, an argument is either literal text or a variable such as $x,
+ * which matches any argument; a variable that appears more than once must
+ * match the same argument each time.  The pattern may end with a label
+ * test such as <code>$L:</code>, which requires the next instruction to
+ * have the label named by variable $L without replacing it.  In a
+ * replacement, an argument is a variable, an integer, an arithmetic
+ * expression such as <code>$a+$b</code> with one of the operators
+ * + - * / %, or <code>log2($n)</code>.  A rule does not apply if an
+ * expression can't be evaluated, for example, if a divisor is 0 or if
+ * the argument of log2 is not a power of 2 greater than 1.  Text after
+ * # is a comment.
+ *
+ * <p>The labels of the first instruction matched are moved to the first
+ * instruction of the replacement (or to the instruction that follows the
+ * match if the replacement is empty).  A rule does not apply if any other
+ * instruction that it replaces has a label, since a branch to that label
+ * would not have an equivalent target in the replacement.
+ *
+ * <p>The patterns are compiled into a trie keyed on the opcode symbols,
+ * so matching at an instruction follows one path through the trie no
+ * matter how many rules there are.  Where more than one rule matches,
+ * the rule with the longest pattern is applied, and rules with patterns
+ * of the same length are tried in the order that they appear in the file.
+ */
+public class PeepholeRules implements Optimization
+  {
+    /** the resource that holds the rules for the assembler */
+    public static final String RESOURCE_NAME = "peephole.rules";
+
+    private static final Pattern VARIABLE   = Pattern.compile("\\$\\w+");
+    private static final Pattern INTEGER    = Pattern.compile("-?\\d+");
+    private static final Pattern LABEL_TEST = Pattern.compile("(\\$\\w+):");
+    private static final Pattern LOG2       = Pattern.compile("log2\\(\\s*(\\S+?)\\s*\\)");
+    private static final Pattern BINARY_OP  =
+        Pattern.compile("(\\$\\w+|-?\\d+)\\s*([-+*/%])\\s*(\\$\\w+|-?\\d+)");
+
+
+    /**
+     * A node in the trie of patterns.
+     */
+    private static class Node
+      {
+        Node[] children = new Node[Symbol.values().length];
+        List<Rule> rules = new ArrayList<>(1);   // rules whose pattern ends here
+      }
+
+
+    /**
+     * An argument in a pattern (a variable or literal text) or in a
+     * replacement (an expression).
+     */
+    private static class Arg
+      {
+        static final int LITERAL  = 0;
+        static final int VARIABLE = 1;
+        static final int BINARY   = 2;
+        static final int LOG2     = 3;
+
+        int    kind;
+        String text;        // the literal text
+        int    var;         // the variable index, or the left operand's
+        int    var2 = -1;   // the right operand's variable index, or -1
+        int    value;       // the left operand's value if it is not a variable
+        int    value2;      // the right operand's value if it is not a variable
+        char   operator;
+      }
+
+
+    /**
+     * One rule.
+     */
+    private static class Rule
+      {
+        Symbol[] patternSymbols;
+        Arg[]    patternArgs;         // null for an opcode without an argument
+        int      labelTestVar = -1;   // variable for the label test, or -1
+        Symbol[] replacementSymbols;
+        Arg[]    replacementArgs;
+
+        int getPatternLength()
+          {
+            return patternSymbols.length + (labelTestVar >= 0 ? 1 : 0);
+          }
+      }
+
+
+    private Node root = new Node();
+    private int  numRules;
+    private int  windowSize = 1;
+    private int  maxVars;
+
+
+    /**
+     * Reads the assembler's rules from the resource RESOURCE_NAME.
+     */
+    public static PeepholeRules load()
+      {
+        InputStream in = PeepholeRules.class.getResourceAsStream(RESOURCE_NAME);
+        if (in == null)
+            throw new InternalCompilerException("*** Resource " + RESOURCE_NAME + " not found ***");
+
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8))
+          {
+            return read(reader, RESOURCE_NAME);
+          }
+        catch (IOException e)
+          {
+            throw new InternalCompilerException("*** Can't read " + RESOURCE_NAME + ": " + e + " ***");
+          }
+      }
+
+
+    /**
+     * Reads and compiles rules.  The source name is used in error messages.
+     *
+     * @throws InternalCompilerException if a rule is not valid.
+     */
+    public static PeepholeRules read(Reader reader, String sourceName) throws IOException
+      {
+        PeepholeRules rules = new PeepholeRules();
+        BufferedReader in = new BufferedReader(reader);
+
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null)
+          {
+            ++lineNumber;
+
+            int commentStart = line.indexOf('#');
+            if (commentStart >= 0)
+                line = line.substring(0, commentStart);
+
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+
+            try
+              {
+                rules.addRule(line);
+              }
+            catch (IllegalArgumentException e)
+              {
+                throw new InternalCompilerException(sourceName + ", line " + lineNumber
+                    + ":  " + e.getMessage() + " in rule \"" + line + "\"");
+              }
+          }
+
+        return rules;
+      }
+
+
+    /**
+     * Returns the number of rules.
+     */
+    public int getNumRules()
+      {
+        return numRules;
+      }
+
+
+    @Override
+    public int getWindowSize()
+      {
+        return windowSize;
+      }
+
+
+    @Override
+    public void optimize(InstructionWindow window)
+      {
+        Token[] bindings = null;
+        int  size = window.size();
+        Node node = root;
+        Rule bestRule = null;
+
+        // follow the instructions' symbols through the trie, remembering
+        // the first rule that matches at the deepest node
+        for (int i = 0;  i < size;  ++i)
+          {
+            node = node.children[window.get(i).getOpCode().getSymbol().ordinal()];
+            if (node == null)
+                break;
+
+            if (bindings == null && !node.rules.isEmpty())
+                bindings = new Token[maxVars];
+
+            for (Rule rule : node.rules)
+              {
+                if (matches(rule, window, bindings))
+                  {
+                    bestRule = rule;
+                    break;
+                  }
+              }
+          }
+
+        if (bestRule != null && matches(bestRule, window, bindings))
+            replace(bestRule, window, bindings);
+      }
+
+
+    /**
+     * Returns true if the rule's pattern matches the instructions at the
+     * start of the window, binding its variables.
+     */
+    private static boolean matches(Rule rule, InstructionWindow window, Token[] bindings)
+      {
+        int numInsts = rule.patternSymbols.length;
+
+        if (rule.getPatternLength() > window.size())
+            return false;
+
+        for (int i = 0;  i < bindings.length;  ++i)
+            bindings[i] = null;
+
+        for (int i = 0;  i < numInsts;  ++i)
+          {
+            Instruction inst = window.get(i);
+
+            if (i > 0 && hasLabels(inst))
+                return false;
+
+            Arg arg = rule.patternArgs[i];
+            if (arg != null && !matches(arg, inst.getArg(), bindings))
+                return false;
+          }
+
+        if (rule.labelTestVar >= 0)
+          {
+            Token label = bindings[rule.labelTestVar];
+            if (!hasLabel(window.get(numInsts), label.getText() + ":"))
+                return false;
+          }
+        else if (rule.replacementSymbols.length == 0 && hasLabels(window.get(0)))
+          {
+            // the labels are moved to the next instruction, which must exist
+            if (numInsts == window.size())
+                return false;
+          }
+
+        return true;
+      }
+
+
+    private static boolean matches(Arg arg, Token token, Token[] bindings)
+      {
+        if (token == null)
+            return false;
+        else if (arg.kind == Arg.LITERAL)
+            return token.getText().equals(arg.text);
+        else if (bindings[arg.var] == null)
+          {
+            bindings[arg.var] = token;
+            return true;
+          }
+        else
+          {
+            Token bound = bindings[arg.var];
+            return bound.getSymbol() == token.getSymbol()
+                && bound.getText().equals(token.getText());
+          }
+      }
+
+
+    private static boolean hasLabels(Instruction inst)
+      {
+        return inst.getLabels() != null && !inst.getLabels().isEmpty();
+      }
+
+
+    private static boolean hasLabel(Instruction inst, String labelText)
+      {
+        if (inst.getLabels() != null)
+          {
+            for (Token label : inst.getLabels())
+              {
+                if (label.getText().equals(labelText))
+                    return true;
+              }
+          }
+
+        return false;
+      }
+
+
+    /**
+     * Replaces the instructions matched by the rule with its replacement,
+     * unless an argument of the replacement can't be evaluated.
+     */
+    private static void replace(Rule rule, InstructionWindow window, Token[] bindings)
+      {
+        int numReplacements = rule.replacementSymbols.length;
+        Token[] args = new Token[numReplacements];
+
+        for (int i = 0;  i < numReplacements;  ++i)
+          {
+            Arg arg = rule.replacementArgs[i];
+            if (arg != null)
+              {
+                args[i] = evaluate(arg, bindings);
+                if (args[i] == null)
+                    return;
+              }
+          }
+
+        List<Token> labels = window.get(0).getLabels();
+        int numInsts = rule.patternSymbols.length;
+
+        if (numReplacements == 0 && labels != null && !labels.isEmpty())
+            window.get(numInsts).addLabels(labels);
+
+        for (int i = 0;  i < numReplacements;  ++i)
+          {
+            Token opCode = new Token(rule.replacementSymbols[i]);
+
+            try
+              {
+                window.set(i, Parser.makeInstruction(i == 0 ? labels : null, opCode, args[i]));
+              }
+            catch (ParserException e)
+              {
+                // the number of arguments was checked when the rule was read
+                throw new InternalCompilerException(e.getMessage());
+              }
+          }
+
+        for (int i = numReplacements;  i < numInsts;  ++i)
+            window.remove(numReplacements);
+      }
+
+
+    /**
+     * Returns the token for an argument of the replacement, or null if it
+     * can't be evaluated.
+     */
+    private static Token evaluate(Arg arg, Token[] bindings)
+      {
+        if (arg.kind == Arg.LITERAL)
+            return new Token(Symbol.intLiteral, arg.text);
+        else if (arg.kind == Arg.VARIABLE)
+          {
+            Token bound = bindings[arg.var];
+            return new Token(bound.getSymbol(), bound.getPosition(), bound.getText());
+          }
+
+        try
+          {
+            int left = arg.var >= 0 ? getIntValue(bindings[arg.var]) : arg.value;
+            int result;
+
+            if (arg.kind == Arg.LOG2)
+              {
+                result = OptimizationUtil.getShiftAmount(left);
+                if (result <= 0)
+                    return null;
+              }
+            else
+              {
+                int right = arg.var2 >= 0 ? getIntValue(bindings[arg.var2]) : arg.value2;
+
+                switch (arg.operator)
+                  {
+                    case '+':  result = left + right;  break;
+                    case '-':  result = left - right;  break;
+                    case '*':  result = left*right;    break;
+                    case '/':  result = left/right;    break;
+                    default:   result = left%right;    break;
+                  }
+              }
+
+            return new Token(Symbol.intLiteral, Integer.toString(result));
+          }
+        catch (NumberFormatException | ArithmeticException e)
+          {
+            return null;
+          }
+      }
+
+
+    private static int getIntValue(Token token)
+      {
+        if (token.getSymbol() != Symbol.intLiteral)
+            throw new NumberFormatException(token.getText());
+
+        return Integer.parseInt(token.getText());
+      }
+
+
+    //----------------------------------------------------------------------
+    // reading rules
+    //----------------------------------------------------------------------
+
+
+    /**
+     * Compiles a rule and adds it to the trie.
+     *
+     * @throws IllegalArgumentException if the rule is not valid.
+     */
+    private void addRule(String text)
+      {
+        int arrow = text.indexOf("=>");
+        if (arrow < 0 || text.indexOf("=>", arrow + 2) >= 0)
+            throw new IllegalArgumentException("expecting exactly one \"=>\"");
+
+        Rule rule = new Rule();
+        Map<String, Integer> vars = new HashMap<>();
+
+        // pattern
+        List<String> elements = split(text.substring(0, arrow));
+        if (elements.isEmpty())
+            throw new IllegalArgumentException("empty pattern");
+
+        String labelTestName = null;
+        Matcher labelTest = LABEL_TEST.matcher(elements.get(elements.size() - 1));
+        if (labelTest.matches())
+          {
+            labelTestName = labelTest.group(1);
+            elements.remove(elements.size() - 1);
+          }
+
+        if (elements.isEmpty())
+            throw new IllegalArgumentException("no instructions in pattern");
+
+        int numInsts = elements.size();
+        rule.patternSymbols = new Symbol[numInsts];
+        rule.patternArgs    = new Arg[numInsts];
+
+        for (int i = 0;  i < numInsts;  ++i)
+          {
+            String argText = parseOpCode(elements.get(i), rule.patternSymbols, i);
+            if (argText != null)
+                rule.patternArgs[i] = parsePatternArg(argText, vars);
+          }
+
+        if (labelTestName != null)
+          {
+            // the variable must be bound by an instruction in the pattern
+            Integer var = vars.get(labelTestName);
+            if (var == null)
+                throw new IllegalArgumentException("label test variable " + labelTestName
+                    + " is not an argument in the pattern");
+
+            rule.labelTestVar = var;
+          }
+
+        // replacement
+        elements = split(text.substring(arrow + 2));
+        int numReplacements = elements.size();
+        if (numReplacements >= numInsts)
+            throw new IllegalArgumentException("the replacement must have fewer instructions than the pattern");
+
+        rule.replacementSymbols = new Symbol[numReplacements];
+        rule.replacementArgs    = new Arg[numReplacements];
+
+        for (int i = 0;  i < numReplacements;  ++i)
+          {
+            String argText = parseOpCode(elements.get(i), rule.replacementSymbols, i);
+            if (argText != null)
+                rule.replacementArgs[i] = parseReplacementArg(argText, vars);
+          }
+
+        // add the rule to the trie
+        Node node = root;
+        for (Symbol symbol : rule.patternSymbols)
+          {
+            Node child = node.children[symbol.ordinal()];
+            if (child == null)
+              {
+                child = new Node();
+                node.children[symbol.ordinal()] = child;
+              }
+
+            node = child;
+          }
+
+        node.rules.add(rule);
+        ++numRules;
+        windowSize = Math.max(windowSize, rule.getPatternLength());
+        maxVars = Math.max(maxVars, vars.size());
+      }
+
+
+    /**
+     * Splits the instructions at semicolons, omitting empty instructions.
+     */
+    private static List<String> split(String text)
+      {
+        List<String> elements = new ArrayList<>();
+        for (String element : text.split(";"))
+          {
+            element = element.trim();
+            if (!element.isEmpty())
+                elements.add(element);
+          }
+
+        return elements;
+      }
+
+
+    /**
+     * Stores the opcode symbol of an instruction in the array and returns
+     * its argument text, or null if there is no argument.
+     */
+    private static String parseOpCode(String inst, Symbol[] symbols, int i)
+      {
+        int space = inst.indexOf(' ');
+        String mnemonic = space < 0 ? inst : inst.substring(0, space);
+        String argText  = space < 0 ? null : inst.substring(space + 1).trim();
+
+        Symbol symbol;
+        try
+          {
+            symbol = Symbol.valueOf(mnemonic);
+          }
+        catch (IllegalArgumentException e)
+          {
+            symbol = Symbol.unknown;
+          }
+
+        if (!symbol.isOpCode())
+            throw new IllegalArgumentException("unknown opcode " + mnemonic);
+
+        int numArgs = argText == null ? 0 : 1;
+        if (numArgs != symbol.getNumArgs())
+            throw new IllegalArgumentException("opcode " + mnemonic + " requires "
+                + symbol.getNumArgs() + " argument(s)");
+
+        symbols[i] = symbol;
+        return argText;
+      }
+
+
+    private static Arg parsePatternArg(String argText, Map<String, Integer> vars)
+      {
+        Arg arg = new Arg();
+
+        if (VARIABLE.matcher(argText).matches())
+          {
+            arg.kind = Arg.VARIABLE;
+            arg.var  = getVariable(argText, vars, true);
+          }
+        else
+          {
+            arg.kind = Arg.LITERAL;
+            arg.text = argText;
+          }
+
+        return arg;
+      }
+
+
+    private static Arg parseReplacementArg(String argText, Map<String, Integer> vars)
+      {
+        Arg arg = new Arg();
+        Matcher matcher;
+
+        if (VARIABLE.matcher(argText).matches())
+          {
+            arg.kind = Arg.VARIABLE;
+            arg.var  = getVariable(argText, vars, false);
+          }
+        else if (INTEGER.matcher(argText).matches())
+          {
+            arg.kind = Arg.LITERAL;
+            arg.text = Integer.toString(Integer.parseInt(argText));
+          }
+        else if ((matcher = LOG2.matcher(argText)).matches())
+          {
+            arg.kind = Arg.LOG2;
+            parseOperand(matcher.group(1), arg, vars, true);
+          }
+        else if ((matcher = BINARY_OP.matcher(argText)).matches())
+          {
+            arg.kind = Arg.BINARY;
+            arg.operator = matcher.group(2).charAt(0);
+            parseOperand(matcher.group(1), arg, vars, true);
+            parseOperand(matcher.group(3), arg, vars, false);
+          }
+        else
+            throw new IllegalArgumentException("invalid argument " + argText);
+
+        return arg;
+      }
+
+
+    private static void parseOperand(String operand, Arg arg, Map<String, Integer> vars, boolean left)
+      {
+        int var = -1;
+        int value = 0;
+
+        if (VARIABLE.matcher(operand).matches())
+            var = getVariable(operand, vars, false);
+        else if (INTEGER.matcher(operand).matches())
+            value = Integer.parseInt(operand);
+        else
+            throw new IllegalArgumentException("invalid operand " + operand);
+
+        if (left)
+          {
+            arg.var   = var;
+            arg.value = value;
+          }
+        else
+          {
+            arg.var2   = var;
+            arg.value2 = value;
+          }
+      }
+
+
+    /**
+     * Returns the index of a variable.  A variable is defined by its first
+     * appearance in a pattern; a replacement can use only defined variables.
+     */
+    private static int getVariable(String name, Map<String, Integer> vars, boolean inPattern)
+      {
+        Integer var = vars.get(name);
+        if (var == null)
+          {
+            if (!inPattern)
+                throw new IllegalArgumentException("variable " + name + " is not defined in the pattern");
+
+            var = vars.size();
+            vars.put(name, var);
+          }
+
+        return var;
+      }
+  }
@@ -0,0 +1,139 @@
+package test.bench;
+
+
+import edu.citadel.compiler.CodeGenException;
+import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.compiler.Source;
+import edu.citadel.cprl.CompilationContext;
+import edu.citadel.cprl.Parser;
+import edu.citadel.cprl.Scanner;
+import edu.citadel.cprl.ast.Program;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
+import edu.citadel.cprlvm.assembler.InstructionBuilder;
+
+import java.io.*;
+
+
+/**
+ * A generated CPRL program together with its assembly language and object
+ * code, from which the benchmarks create the input for each phase.
+ */
+class BenchmarkInput
+  {
+    final String sourceText;
+    final String assemblyText;
+    final byte[] objectCode;
+
+    // compiler and assembler error messages are discarded; errors are
+    // detected with errorsExist()
+    private ErrorHandler errorHandler = new ErrorHandler(new PrintWriter(new StringWriter()));
+
+
+    /**
+     * Generates a program with the specified number of subprogram pairs,
+     * and compiles and assembles it in memory.
+     */
+    BenchmarkInput(int numPairs) throws IOException, CodeGenException
+      {
+        sourceText = new ProgramGenerator().generate(numPairs);
+        assemblyText = compileToText();
+        objectCode = assemble(parseAssembly());
+
+        if (errorHandler.errorsExist())
+            throw new IllegalStateException("errors detected compiling generated program");
+      }
+
+
+    /**
+     * Compiles the source text to assembly text.
+     */
+    String compileToText() throws IOException, CodeGenException
+      {
+        Program program = parse();
+        program.checkConstraints();
+
+        StringWriter assembly = new StringWriter();
+        program.setPrintWriter(new PrintWriter(assembly));
+        program.emit();
+
+        return assembly.toString();
+      }
+
+
+    /**
+     * Compiles the source text directly to the assembler's instructions.
+     */
+    edu.citadel.cprlvm.assembler.ast.Program compileToInstructions()
+        throws IOException, CodeGenException
+      {
+        Program program = parse();
+        program.checkConstraints();
+
+        InstructionBuilder builder = new InstructionBuilder(newAssemblyContext());
+        program.setAssemblySink(builder);
+        program.emit();
+
+        return builder.getProgram();
+      }
+
+
+    /**
+     * Optimizes and assembles a program, returning the object code.
+     */
+    byte[] assemble(edu.citadel.cprlvm.assembler.ast.Program asmProgram)
+        throws IOException
+      {
+        AssemblyContext context = newAssemblyContext();
+
+        asmProgram.optimize();
+        asmProgram.setAddresses(context);
+        asmProgram.checkConstraints(context);
+
+        return asmProgram.getObjectCode(context);
+      }
+
+
+    /**
+     * Returns a new assembly context that reports errors to the error
+     * handler of this input.
+     */
+    AssemblyContext newAssemblyContext()
+      {
+        return new AssemblyContext(errorHandler);
+      }
+
+
+    Scanner newScanner() throws IOException
+      {
+        return new Scanner(new Source(new StringReader(sourceText)), errorHandler);
+      }
+
+
+    Parser newParser() throws IOException
+      {
+        return new Parser(newScanner(), new CompilationContext(errorHandler));
+      }
+
+
+    Program parse() throws IOException
+      {
+        return newParser().parseProgram();
+      }
+
+
+    edu.citadel.cprlvm.assembler.ast.Program parseAssembly() throws IOException
+      {
+        return parseAssembly(assemblyText);
+      }
+
+
+    edu.citadel.cprlvm.assembler.ast.Program parseAssembly(String assemblyText)
+        throws IOException
+      {
+        Source source = new Source(new StringReader(assemblyText));
+        edu.citadel.cprlvm.assembler.Scanner scanner
+            = new edu.citadel.cprlvm.assembler.Scanner(source, errorHandler);
+        return new edu.citadel.cprlvm.assembler.Parser(scanner, newAssemblyContext())
+                   .parseProgram();
+      }
+  }
@@ -0,0 +1,340 @@
+package test.bench;
+
+
+import edu.citadel.cprl.Symbol;
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.VmIO;
+import edu.citadel.cprlvm.assembler.AssemblyContext;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Throughput benchmarks for the phases of the CPRL compiler, assembler and
+ * virtual machine, run on generated programs (see ProgramGenerator).  Each
+ * benchmark has a setup step that prepares the input for one operation, for
+ * example a freshly parsed program, and the operation itself; only the time
+ * spent in the operation is measured.  Each benchmark is run for a number of
+ * warmup iterations, whose results are discarded, followed by a number of
+ * measurement iterations of roughly fixed duration.  The mean throughput and
+ * its standard deviation over the measurement iterations are reported.
+ *
+ * <p>Usage:  java test.bench.Benchmarks [-size small|medium|huge]
+ * [-warmup n] [-iterations n] [-time ms] [benchmark ...] <br>
+ * Option -size may be repeated; the default is all three sizes.  With no
+ * benchmark names, all benchmarks are run.
+ */
+public class Benchmarks
+  {
+    private static final String[] SIZES = { "small", "medium", "huge" };
+
+    private static final String[] NAMES =
+      {
+        "scan", "parse", "check", "emit",
+        "asm-optimize", "asm-addresses", "asm-emit",
+        "vm", "vm-interpret", "toolchain-text", "toolchain-direct"
+      };
+
+    /** memory available to a program in addition to its code */
+    private static final int DATA_MEMORY_SIZE = 1024*1024;
+
+    private static int warmupIterations = 5;
+    private static int iterations = 10;
+    private static long iterationNanos = 1000*1000*1000L;
+
+
+    /**
+     * One operation to be measured, together with the untimed
+     * setup that must precede each invocation of the operation.
+     */
+    private abstract static class Benchmark
+      {
+        void setup() throws Exception
+          {
+          }
+
+        abstract void run() throws Exception;
+      }
+
+
+    public static void main(String[] args) throws Exception
+      {
+        List<String> sizes = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+
+        for (int i = 0;  i < args.length;  ++i)
+          {
+            String arg = args[i];
+
+            if (arg.equals("-size") && i + 1 < args.length)
+                sizes.add(args[++i]);
+            else if (arg.equals("-warmup") && i + 1 < args.length)
+                warmupIterations = Integer.parseInt(args[++i]);
+            else if (arg.equals("-iterations") && i + 1 < args.length)
+                iterations = Integer.parseInt(args[++i]);
+            else if (arg.equals("-time") && i + 1 < args.length)
+                iterationNanos = Long.parseLong(args[++i])*1000*1000;
+            else if (arg.startsWith("-"))
+                printUsageMessageAndExit();
+            else
+                names.add(arg);
+          }
+
+        if (sizes.isEmpty())
+            for (String size : SIZES)
+                sizes.add(size);
+
+        if (names.isEmpty())
+            for (String name : NAMES)
+                names.add(name);
+
+        System.out.printf("%-16s %-7s %14s %9s %14s%n",
+                          "Benchmark", "Size", "ops/s", "error", "us/op");
+
+        for (String size : sizes)
+          {
+            BenchmarkInput input = new BenchmarkInput(ProgramGenerator.getNumPairs(size));
+
+            for (String name : names)
+              {
+                Benchmark benchmark = createBenchmark(name, input);
+                if (benchmark == null)
+                    printUsageMessageAndExit();
+
+                measure(name, size, benchmark);
+              }
+          }
+      }
+
+
+    /**
+     * Returns the benchmark with the specified name, or null
+     * if there is no such benchmark.
+     */
+    private static Benchmark createBenchmark(String name, final BenchmarkInput input)
+      {
+        if (name.equals("scan"))
+            return new Benchmark()
+              {
+                private edu.citadel.cprl.Scanner scanner;
+
+                void setup() throws Exception
+                  {
+                    scanner = input.newScanner();
+                  }
+
+                void run() throws Exception
+                  {
+                    while (scanner.getSymbol() != Symbol.EOF)
+                        scanner.advance();
+                  }
+              };
+        else if (name.equals("parse"))
+            return new Benchmark()
+              {
+                private edu.citadel.cprl.Parser parser;
+
+                void setup() throws Exception
+                  {
+                    parser = input.newParser();
+                  }
+
+                void run() throws Exception
+                  {
+                    parser.parseProgram();
+                  }
+              };
+        else if (name.equals("check"))
+            return new Benchmark()
+              {
+                private edu.citadel.cprl.ast.Program program;
+
+                void setup() throws Exception
+                  {
+                    program = input.parse();
+                  }
+
+                void run() throws Exception
+                  {
+                    program.checkConstraints();
+                  }
+              };
+        else if (name.equals("emit"))
+            return new Benchmark()
+              {
+                private edu.citadel.cprl.ast.Program program;
+
+                void setup() throws Exception
+                  {
+                    program = input.parse();
+                    program.checkConstraints();
+                    program.setPrintWriter(new PrintWriter(new StringWriter()));
+                  }
+
+                void run() throws Exception
+                  {
+                    program.emit();
+                  }
+              };
+        else if (name.equals("asm-optimize"))
+            return new Benchmark()
+              {
+                private edu.citadel.cprlvm.assembler.ast.Program program;
+
+                void setup() throws Exception
+                  {
+                    program = input.parseAssembly();
+                  }
+
+                void run() throws Exception
+                  {
+                    program.optimize();
+                  }
+              };
+        else if (name.equals("asm-addresses"))
+            return new Benchmark()
+              {
+                private edu.citadel.cprlvm.assembler.ast.Program program;
+
+                void setup() throws Exception
+                  {
+                    program = input.parseAssembly();
+                    program.optimize();
+                  }
+
+                void run() throws Exception
+                  {
+                    program.setAddresses(input.newAssemblyContext());
+                  }
+              };
+        else if (name.equals("asm-emit"))
+            return new Benchmark()
+              {
+                private edu.citadel.cprlvm.assembler.ast.Program program;
+                private AssemblyContext context;
+
+                void setup() throws Exception
+                  {
+                    program = input.parseAssembly();
+                    program.optimize();
+                    context = input.newAssemblyContext();
+                    program.setAddresses(context);
+                  }
+
+                void run() throws Exception
+                  {
+                    program.getObjectCode(context);
+                  }
+              };
+        else if (name.equals("vm") || name.equals("vm-interpret"))
+          {
+            final boolean decodingEnabled = name.equals("vm");
+
+            return new Benchmark()
+              {
+                private CprlVm vm;
+
+                void setup() throws Exception
+                  {
+                    vm = new CprlVm(input.objectCode.length + DATA_MEMORY_SIZE);
+                    vm.setDecodingEnabled(decodingEnabled);
+                    vm.loadProgram(new ByteArrayInputStream(input.objectCode));
+                    vm.setIO(new VmIO(new StringReader(""), new StringWriter()));
+                  }
+
+                void run() throws Exception
+                  {
+                    vm.run();
+                  }
+              };
+          }
+        else if (name.equals("toolchain-text"))
+            return new Benchmark()
+              {
+                void run() throws Exception
+                  {
+                    input.assemble(input.parseAssembly(input.compileToText()));
+                  }
+              };
+        else if (name.equals("toolchain-direct"))
+            return new Benchmark()
+              {
+                void run() throws Exception
+                  {
+                    input.assemble(input.compileToInstructions());
+                  }
+              };
+        else
+            return null;
+      }
+
+
+    /**
+     * Runs the warmup and measurement iterations of a benchmark
+     * and prints the results.
+     */
+    private static void measure(String name, String size, Benchmark benchmark)
+        throws Exception
+      {
+        for (int i = 0;  i < warmupIterations;  ++i)
+            runIteration(benchmark);
+
+        double[] results = new double[iterations];
+        double sum = 0.0;
+
+        for (int i = 0;  i < iterations;  ++i)
+          {
+            results[i] = runIteration(benchmark);
+            sum = sum + results[i];
+          }
+
+        double mean = sum/iterations;
+
+        double squares = 0.0;
+        for (double result : results)
+            squares = squares + (result - mean)*(result - mean);
+
+        double error = iterations > 1 ? Math.sqrt(squares/(iterations - 1)) : 0.0;
+
+        System.out.printf("%-16s %-7s %14.1f %8.1f%% %14.2f%n",
+                          name, size, mean, 100.0*error/mean, 1.0e6/mean);
+      }
+
+
+    /**
+     * Invokes the benchmark until the measured time reaches the length
+     * of an iteration, and returns the number of operations per second.
+     */
+    private static double runIteration(Benchmark benchmark) throws Exception
+      {
+        long elapsed = 0;
+        int  ops = 0;
+
+        while (elapsed < iterationNanos)
+          {
+            benchmark.setup();
+
+            long start = System.nanoTime();
+            benchmark.run();
+            elapsed = elapsed + (System.nanoTime() - start);
+
+            ++ops;
+          }
+
+        return ops*1.0e9/elapsed;
+      }
+
+
+    private static void printUsageMessageAndExit()
+      {
+        System.out.println("Usage:  java test.bench.Benchmarks [-size small|medium|huge]");
+        System.out.println("        [-warmup n] [-iterations n] [-time ms] [benchmark ...]");
+        System.out.print("Benchmarks:");
+        for (String name : NAMES)
+            System.out.print(" " + name);
+        System.out.println();
+        System.exit(0);
+      }
+  }
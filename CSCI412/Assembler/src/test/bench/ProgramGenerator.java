@@ -0,0 +1,168 @@
+package test.bench;
+
+
+/**
+ * Generates CPRL programs of arbitrary size for benchmarking.  A program
+ * consists of a number of function/procedure pairs followed by a statement
+ * part that calls each of them.  The subprograms exercise loops, if/elsif
+ * statements, arrays, var parameters, characters, booleans and calls, so
+ * every phase of the compiler, assembler and virtual machine has work to do.
+ * Generated programs do not read input, and they print one line of output.
+ */
+public class ProgramGenerator
+  {
+    /** number of subprogram pairs in a small program */
+    public static final int SMALL  = 2;
+
+    /** number of subprogram pairs in a medium program */
+    public static final int MEDIUM = 40;
+
+    /** number of subprogram pairs in a huge program */
+    public static final int HUGE   = 1000;
+
+    private StringBuilder buffer = new StringBuilder();
+
+
+    /**
+     * Returns the number of subprogram pairs for the named corpus size
+     * ("small", "medium" or "huge").
+     */
+    public static int getNumPairs(String size)
+      {
+        if (size.equals("small"))
+            return SMALL;
+        else if (size.equals("medium"))
+            return MEDIUM;
+        else if (size.equals("huge"))
+            return HUGE;
+        else
+            throw new IllegalArgumentException("unknown program size " + size);
+      }
+
+
+    /**
+     * Returns the source text of a program with the specified number
+     * of function/procedure pairs.
+     */
+    public String generate(int numPairs)
+      {
+        buffer.setLength(0);
+
+        line(0, "declare");
+        line(1, "const n := 16;");
+        line(1, "type Vector = array[16] of Integer;");
+        line(1, "type Word = array[8] of Char;");
+        line(1, "var v : Vector;");
+        line(1, "var w : Word;");
+        line(1, "var total, i : Integer;");
+        line(1, "var found : Boolean;");
+        line(0, "");
+
+        for (int k = 0;  k < numPairs;  ++k)
+          {
+            generateFunction(k);
+            generateProcedure(k);
+          }
+
+        line(0, "begin");
+        line(1, "total := 0;");
+        line(1, "i := 0;");
+        line(1, "while i < n loop");
+        line(2, "v[i] := i*i - 3*i + 7;");
+        line(2, "i := i + 1;");
+        line(1, "end loop;");
+
+        for (int k = 0;  k < numPairs;  ++k)
+          {
+            line(1, "total := total + f" + k + "(" + (k % 13) + ", " + (k % 7 + 1) + ");");
+            line(1, "p" + k + "(v, " + (k % 5) + ");");
+            line(1, "if v[" + (k % 16) + "] > v[" + ((k + 3) % 16) + "] then");
+            line(2, "total := total - 1;");
+            line(1, "end if;");
+          }
+
+        line(1, "found := false;");
+        line(1, "i := 0;");
+        line(1, "while i < 8 and not found loop");
+        line(2, "found := w[i] = 'z';");
+        line(2, "i := i + 1;");
+        line(1, "end loop;");
+        line(1, "writeln \"total = \", total, \" \", i;");
+        line(0, "end.");
+
+        return buffer.toString();
+      }
+
+
+    private void generateFunction(int k)
+      {
+        line(1, "function f" + k + "(x : Integer, y : Integer) return Integer is");
+        line(2, "var j, s : Integer;");
+        line(2, "var u : Vector;");
+        line(1, "begin");
+        line(2, "j := 0;");
+        line(2, "s := x + " + k + ";");
+        line(2, "while j < n loop");
+        line(3, "u[j] := (s*" + (k % 11 + 3) + " + j) mod 97 - y;");
+        line(3, "if u[j] > 40 then");
+        line(4, "s := s + u[j]/2;");
+        line(3, "elsif u[j] < -40 or u[j] = 0 then");
+        line(4, "s := s - 1;");
+        line(3, "else");
+        line(4, "s := s + 1;");
+        line(3, "end if;");
+        line(3, "j := j + 1;");
+        line(2, "end loop;");
+
+        if (k > 0)
+            line(2, "s := s + f" + (k - 1) + "(s mod 7, y) mod 5;");
+
+        line(2, "return s;");
+        line(1, "end f" + k + ";");
+        line(0, "");
+      }
+
+
+    private void generateProcedure(int k)
+      {
+        line(1, "procedure p" + k + "(var a : Vector, d : Integer) is");
+        line(2, "var j : Integer;");
+        line(2, "var c : Char;");
+        line(1, "begin");
+        line(2, "j := 0;");
+        line(2, "loop");
+        line(3, "exit when j >= n - 1;");
+        line(3, "if a[j] > a[j + 1] + d then");
+        line(4, "a[j] := a[j] - a[j + 1];");
+        line(4, "c := 'a';");
+        line(3, "else");
+        line(4, "a[j + 1] := a[j + 1] + " + (k % 9) + ";");
+        line(4, "c := 'z';");
+        line(3, "end if;");
+        line(3, "w[j mod 8] := c;");
+        line(3, "j := j + 1;");
+        line(2, "end loop;");
+        line(1, "end p" + k + ";");
+        line(0, "");
+      }
+
+
+    private void line(int indent, String text)
+      {
+        for (int i = 0;  i < indent;  ++i)
+            buffer.append("  ");
+
+        buffer.append(text)
+              .append('\n');
+      }
+
+
+    /**
+     * Prints a generated program of the specified size.
+     */
+    public static void main(String[] args)
+      {
+        String size = args.length > 0 ? args[0] : "small";
+        System.out.print(new ProgramGenerator().generate(getNumPairs(size)));
+      }
+  }
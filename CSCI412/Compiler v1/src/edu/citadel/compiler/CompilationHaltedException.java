@@ -0,0 +1,21 @@
+package edu.citadel.compiler;
+
+
+/**
+ * Thrown by the ErrorHandler to stop a compilation, either because the
+ * maximum number of errors has been reported or because of a fatal error.
+ * The error has already been reported when this exception is thrown.
+ */
+public class CompilationHaltedException extends RuntimeException
+  {
+    private static final long serialVersionUID = -2880153622180945103L;
+
+
+    /**
+     * Construct a CompilationHaltedException with the specified message.
+     */
+    public CompilationHaltedException(String message)
+      {
+        super(message);
+      }
+  }
@@ -5,44 +5,39 @@ import java.io.PrintWriter;
 
 
 /**
- * This class handles the reporting of error messages. <br>
- * (implements the singleton pattern)
+ * This class handles the reporting of error messages.  Each compilation
+ * should use its own error handler.
  */
 public class ErrorHandler
   {
-    private static ErrorHandler instance = null;
-
     private PrintWriter err = null;
 
 
     /**
      * Maximum number of errors to be reported.
      */
-    private static int MAX_ERRORS = 15;
+    private static final int MAX_ERRORS = 15;
 
 
     private int errorCount;
 
 
     /**
-     * Constructs a new ErrorHandler.
+     * Constructs a new ErrorHandler that writes to System.err.
      */
-    protected ErrorHandler()
+    public ErrorHandler()
       {
-        errorCount = 0;
-        err = new PrintWriter(System.err, true);
+        this(new PrintWriter(System.err, true));
       }
 
-    
+
     /**
-     * Returns the single instance of this class. 
+     * Constructs a new ErrorHandler that writes to the specified PrintWriter.
      */
-    public static ErrorHandler getInstance()
+    public ErrorHandler(PrintWriter err)
       {
-        if (instance == null)
-            instance = new ErrorHandler();
-
-        return instance;
+        errorCount = 0;
+        this.err = err;
       }
 
 
@@ -68,6 +63,8 @@ public class ErrorHandler
     /**
      * Reports the error.  Stops compilation if the maximum number of
      * errors have been reported.
+     *
+     * @throws CompilationHaltedException if too many errors have been reported.
      */
     public void reportError(CompilerException e)
       {
@@ -78,19 +75,23 @@ public class ErrorHandler
           }
         else
           {
-            err.println("*** Max errors exceeded.  Compilation halted***");
-            System.exit(1);       // stop the compiler with a nonzero status code
+            String errorMessage = "*** Max errors exceeded.  Compilation halted***";
+            err.println(errorMessage);
+            throw new CompilationHaltedException(errorMessage);
           }
       }
 
 
     /**
-     * Reports the error and exits compilation.
+     * Reports the error and stops compilation.
+     *
+     * @throws CompilationHaltedException always.
      */
     public void reportFatalError(Exception e)
       {
-        e.printStackTrace();
-        System.exit(1);       // stop the compiler with a nonzero status code
+        e.printStackTrace(err);
+        ++errorCount;
+        throw new CompilationHaltedException(e.toString());
       }
 
 
@@ -0,0 +1,192 @@
+package edu.citadel.compiler;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A pool of the names (identifiers and literals) in a source file.  Each
+ * distinct name is converted to a String only once, the first time it is
+ * looked up; after that the String in the pool is returned, so scanning
+ * a name that has already been seen does not allocate.
+ *
+ * <p>Each name in the pool also has an id.  Ids are small integers
+ * assigned in order starting at 0, so they can be used as array indexes
+ * (see IdTable).
+ *
+ * <p>A pool is not thread safe; each compilation uses its own.
+ */
+public final class NamePool
+  {
+    private static final int INITIAL_CAPACITY = 1024;   // must be a power of 2
+
+    // open addressing hash table with linear probing; each slot
+    // holds one more than the id of a name, or 0 if it is empty
+    private int[] slots;
+
+    // the names and their hash codes, indexed by id
+    private String[] names;
+    private int[]    hashes;
+    private int      size;
+
+
+    /**
+     * Construct an empty name pool.
+     */
+    public NamePool()
+      {
+        slots  = new int[INITIAL_CAPACITY];
+        names  = new String[INITIAL_CAPACITY/2];
+        hashes = new int[INITIAL_CAPACITY/2];
+      }
+
+
+    /**
+     * Returns the number of distinct names in the pool.
+     */
+    public int size()
+      {
+        return size;
+      }
+
+
+    /**
+     * Returns the name with the specified id.
+     */
+    public String getName(int id)
+      {
+        return names[id];
+      }
+
+
+    /**
+     * Returns the String in the pool for the specified characters, adding
+     * it to the pool if it is not already there.
+     */
+    public String intern(char[] chars, int offset, int length)
+      {
+        int id = getId(chars, offset, length);
+        return names[id];
+      }
+
+
+    /**
+     * Returns the id of the specified name, adding it to the pool if it
+     * is not already there.
+     */
+    public int getId(String name)
+      {
+        return getId(name, name.length());
+      }
+
+
+    /**
+     * Returns the id of the name made up of the first length characters
+     * of the specified string, adding it to the pool if it is not already
+     * there.  The string is copied only if the name is added.
+     */
+    public int getId(String name, int length)
+      {
+        int hash = 0;
+        for (int i = 0;  i < length;  ++i)
+            hash = 31*hash + name.charAt(i);
+
+        int mask  = slots.length - 1;
+        int index = hash & mask;
+
+        while (slots[index] != 0)
+          {
+            int id = slots[index] - 1;
+            if (hashes[id] == hash && names[id].length() == length
+                                   && names[id].regionMatches(0, name, 0, length))
+                return id;
+
+            index = (index + 1) & mask;
+          }
+
+        return add(name.substring(0, length), hash, index);
+      }
+
+
+    /**
+     * Returns the id of the name with the specified characters, adding
+     * it to the pool if it is not already there.
+     */
+    public int getId(char[] chars, int offset, int length)
+      {
+        int hash = 0;
+        for (int i = offset;  i < offset + length;  ++i)
+            hash = 31*hash + chars[i];
+
+        int mask  = slots.length - 1;
+        int index = hash & mask;
+
+        while (slots[index] != 0)
+          {
+            int id = slots[index] - 1;
+            if (hashes[id] == hash && matches(names[id], chars, offset, length))
+                return id;
+
+            index = (index + 1) & mask;
+          }
+
+        return add(new String(chars, offset, length), hash, index);
+      }
+
+
+    /**
+     * Adds a name at the specified empty slot and returns its id.
+     */
+    private int add(String name, int hash, int index)
+      {
+        int id = size++;
+        if (id == names.length)
+          {
+            names  = Arrays.copyOf(names, 2*names.length);
+            hashes = Arrays.copyOf(hashes, 2*hashes.length);
+          }
+
+        names[id]  = name;
+        hashes[id] = hash;
+        slots[index] = id + 1;
+
+        if (size > slots.length/2)
+            rehash();
+
+        return id;
+      }
+
+
+    private static boolean matches(String name, char[] chars, int offset, int length)
+      {
+        if (name.length() != length)
+            return false;
+
+        for (int i = 0;  i < length;  ++i)
+          {
+            if (name.charAt(i) != chars[offset + i])
+                return false;
+          }
+
+        return true;
+      }
+
+
+    /**
+     * Doubles the capacity of the hash table.
+     */
+    private void rehash()
+      {
+        slots = new int[2*slots.length];
+
+        int mask = slots.length - 1;
+        for (int id = 0;  id < size;  ++id)
+          {
+            int index = hashes[id] & mask;
+            while (slots[index] != 0)
+                index = (index + 1) & mask;
+
+            slots[index] = id + 1;
+          }
+      }
+  }
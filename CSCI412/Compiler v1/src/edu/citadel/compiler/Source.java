@@ -1,22 +1,70 @@
 package edu.citadel.compiler;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 
 /**
  * This class encapsulates the source file reader.  It maintains
  * the position of each character in the source file.
+ *
+ * <p>Characters are read in large blocks into a buffer, so advancing
+ * to the next character is normally just an array access.  A source
+ * file is decoded all at once, or, if it is large, memory mapped and
+ * decoded one block at a time.
  */
 public final class Source
   {
     /**
-     * The reader used to read characters from the source file.
+     * The number of characters read from a Reader at a time, and the
+     * number of characters decoded at a time from a mapped file.
+     */
+    private static final int BUFFER_SIZE = 64*1024;
+
+
+    /**
+     * Files larger than this are memory mapped rather than read.
+     */
+    private static final long MAP_THRESHOLD = 1024*1024;
+
+
+    /**
+     * The reader used to read characters from the source file,
+     * or null if the characters are decoded from bytes.
      */
     private Reader sourceReader;
 
 
+    /**
+     * The bytes of a memory-mapped source file and their decoder,
+     * or null if the whole file has been decoded or a Reader is used.
+     */
+    private ByteBuffer sourceBytes;
+    private CharsetDecoder decoder;
+
+
+    /**
+     * The characters read but not yet consumed are buffer[bufferPos]
+     * through buffer[bufferLimit - 1].  If markPos is not negative, the
+     * characters from buffer[markPos] on are kept when the buffer is filled.
+     */
+    private char[] buffer;
+    private int bufferPos;
+    private int bufferLimit;
+    private int markPos = -1;
+
+
     /**
      * An integer representing the current character in the source file.  This
      * field has the value EOF (-1) when the end of file has been reached.
@@ -44,10 +92,49 @@ public final class Source
 
     /**
      * Initialize Source with a Reader and advance to the first character.
+     * The Reader does not need to be buffered.
      */
     public Source(Reader sourceReader) throws IOException
       {
         this.sourceReader = sourceReader;
+        buffer = new char[BUFFER_SIZE];
+        initialize();
+      }
+
+
+    /**
+     * Initialize Source with a file in the platform's default character
+     * encoding and advance to the first character.
+     */
+    public Source(File sourceFile) throws IOException
+      {
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        if (sourceFile.length() > MAP_THRESHOLD)
+          {
+            try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ))
+              {
+                sourceBytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+              }
+
+            this.decoder = decoder;
+            buffer = new char[BUFFER_SIZE];
+          }
+        else
+          {
+            CharBuffer chars = decoder.decode(ByteBuffer.wrap(Files.readAllBytes(sourceFile.toPath())));
+            buffer = chars.array();
+            bufferLimit = chars.limit();
+          }
+
+        initialize();
+      }
+
+
+    private void initialize() throws IOException
+      {
         currentChar = 0;
         lineNumber  = 1;
         charNumber  = 0;
@@ -76,6 +163,102 @@ public final class Source
       }
 
 
+    /**
+     * Returns the line number of the current character.
+     */
+    public int getLineNumber()
+      {
+        return lineNumber;
+      }
+
+
+    /**
+     * Returns the char number of the current character within its line.
+     */
+    public int getCharNumber()
+      {
+        return charNumber;
+      }
+
+
+    /**
+     * Marks the current character.  The characters from the mark up to the
+     * current character remain in the buffer, at the same offsets, until
+     * the buffer is next filled; when it is, they are moved to the start of
+     * the buffer.  The mark stays in effect until clearMark() is called.
+     */
+    public void mark()
+      {
+        markPos = getOffset();
+      }
+
+
+    /**
+     * Clears the mark, so that the marked characters are no longer kept
+     * when the buffer is filled.  They remain in the buffer until then.
+     */
+    public void clearMark()
+      {
+        markPos = -1;
+      }
+
+
+    /**
+     * Returns the offset of the marked character in the buffer.
+     */
+    public int getMarkOffset()
+      {
+        return markPos;
+      }
+
+
+    /**
+     * Returns the offset of the current character in the buffer, or the
+     * offset following the last character if the end of file has been
+     * reached.
+     */
+    public int getOffset()
+      {
+        return currentChar == EOF ? bufferPos : bufferPos - 1;
+      }
+
+
+    /**
+     * Returns the buffer that holds the characters read from the source file.
+     * The contents are valid from the mark up to the current character, and
+     * from the current character up to the limit (see getLimit()).
+     */
+    public char[] getBuffer()
+      {
+        return buffer;
+      }
+
+
+    /**
+     * Returns the offset following the last character in the buffer.  The
+     * characters before the limit can be examined in the buffer without
+     * advancing, for example to find the end of an identifier.
+     */
+    public int getLimit()
+      {
+        return bufferLimit;
+      }
+
+
+    /**
+     * Advances to the character at the specified offset in the buffer, which
+     * must be after the current character and no greater than the limit.
+     * The characters advanced over, including the current character, must
+     * not include a newline.
+     */
+    public void skipTo(int offset) throws IOException
+      {
+        charNumber = charNumber + offset - bufferPos;
+        bufferPos  = offset;
+        advance();
+      }
+
+
     /**
      * Advance to the next character in the source file.
      */
@@ -89,6 +272,62 @@ public final class Source
         else
             ++charNumber;
 
-        currentChar = sourceReader.read();
+        if (bufferPos == bufferLimit && !fillBuffer())
+            currentChar = EOF;
+        else
+            currentChar = buffer[bufferPos++];
+      }
+
+
+    /**
+     * Reads the next block of characters into the buffer, after any marked
+     * characters.  Returns false if there are no more characters in the
+     * source file.
+     */
+    private boolean fillBuffer() throws IOException
+      {
+        if (sourceReader == null && decoder == null)
+            return false;
+
+        // move the marked characters to the start of the buffer
+        int numKept = 0;
+        if (markPos >= 0)
+          {
+            numKept = bufferPos - markPos;
+            if (numKept == buffer.length)
+                buffer = Arrays.copyOf(buffer, 2*buffer.length);
+            System.arraycopy(buffer, markPos, buffer, 0, numKept);
+            markPos = 0;
+          }
+
+        bufferPos   = numKept;
+        bufferLimit = numKept;
+
+        if (sourceReader != null)
+          {
+            int numChars;
+            do
+                numChars = sourceReader.read(buffer, numKept, buffer.length - numKept);
+            while (numChars == 0);
+
+            if (numChars > 0)
+                bufferLimit = numKept + numChars;
+          }
+        else
+          {
+            CharBuffer chars = CharBuffer.wrap(buffer, numKept, buffer.length - numKept);
+
+            // all of the input is available, so endOfInput is always true
+            decoder.decode(sourceBytes, chars, true);
+            if (!sourceBytes.hasRemaining())
+              {
+                decoder.flush(chars);
+                decoder = null;
+              }
+
+            bufferLimit = chars.position();
+          }
+
+        return bufferLimit > bufferPos;
       }
   }
@@ -0,0 +1,37 @@
+package edu.citadel.cprl;
+
+
+/**
+ * Receives the assembly language program generated by the compiler, one
+ * label or instruction at a time.  By default the compiler writes the
+ * program as text, but a sink can also build the assembler's representation
+ * of the program directly, without writing and rescanning an .asm file.
+ * Opcodes are the machine opcodes declared in edu.citadel.cprlvm.OpCode.
+ */
+public interface AssemblySink
+  {
+    /**
+     * Receives a label, without the colon that follows it in assembly text.
+     */
+    public void emitLabel(String label);
+
+
+    /**
+     * Receives an instruction that has no argument.
+     */
+    public void emitInstruction(byte opCode);
+
+
+    /**
+     * Receives an instruction that has an integer argument.
+     */
+    public void emitInstruction(byte opCode, int arg);
+
+
+    /**
+     * Receives an instruction whose argument is a label (for a branch
+     * or call), or a char or string literal (for LDCCH or LDCSTR) written
+     * with its quotes, as in the source program.
+     */
+    public void emitInstruction(byte opCode, String arg);
+  }
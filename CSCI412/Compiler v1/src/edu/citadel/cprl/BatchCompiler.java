@@ -0,0 +1,223 @@
+package edu.citadel.cprl;
+
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Compiles many CPRL source files in parallel in one JVM.  Each file is
+ * compiled by its own Compiler on a fork-join pool, with its diagnostics
+ * collected in memory.  The diagnostics for each file are printed in the
+ * order that the files were given, as soon as that file and all files
+ * before it have been compiled, so the output does not depend on the
+ * scheduling of the compile jobs.  A summary with the total time and
+ * throughput is printed at the end.
+ */
+public class BatchCompiler
+  {
+    private static final String SUFFIX = ".cprl";
+
+    private List<File> sourceFiles;
+    private int numThreads;
+
+
+    /**
+     * The outcome of compiling one source file.
+     */
+    private static class Result
+      {
+        String  diagnostics;
+        boolean success;
+        long    nanos;
+        long    numBytes;
+      }
+
+
+    /**
+     * Construct a batch compiler for the specified source files
+     * that uses the specified number of threads.
+     */
+    public BatchCompiler(List<File> sourceFiles, int numThreads)
+      {
+        this.sourceFiles = sourceFiles;
+        this.numThreads  = Math.max(1, numThreads);
+      }
+
+
+    /**
+     * Returns true if the argument is a glob pattern rather than a file name.
+     */
+    public static boolean isPattern(String arg)
+      {
+        return arg.indexOf('*') >= 0 || arg.indexOf('?') >= 0
+            || arg.indexOf('[') >= 0 || arg.indexOf('{') >= 0;
+      }
+
+
+    /**
+     * Returns the source files named by a command line argument, in sorted
+     * order.  The argument may be a glob pattern such as "src/**.cprl", a
+     * directory, which is searched recursively for ".cprl" files, or the
+     * name of a source file, with or without the ".cprl" suffix.
+     *
+     * @throws FileNotFoundException if the argument is a file name and no
+     *                               such file exists.
+     */
+    public static List<File> findSourceFiles(String arg) throws IOException
+      {
+        if (isPattern(arg))
+          {
+            // search from the directory that precedes the first glob character
+            int firstGlobChar = arg.length();
+            for (char c : new char[] { '*', '?', '[', '{' })
+                if (arg.indexOf(c) >= 0)
+                    firstGlobChar = Math.min(firstGlobChar, arg.indexOf(c));
+
+            int separator = Math.max(arg.lastIndexOf('/', firstGlobChar),
+                                     arg.lastIndexOf(File.separatorChar, firstGlobChar));
+
+            final Path baseDir = Paths.get(separator >= 0 ? arg.substring(0, separator + 1) : ".");
+            final boolean relative = separator < 0;
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + arg);
+
+            return walk(baseDir, path -> matcher.matches(relative ? baseDir.relativize(path) : path));
+          }
+
+        File file = new File(arg);
+
+        if (file.isDirectory())
+            return walk(file.toPath(), path -> path.toString().endsWith(SUFFIX));
+        else if (file.isFile())
+            return Collections.singletonList(file);
+        else if (new File(arg + SUFFIX).isFile())
+            return Collections.singletonList(new File(arg + SUFFIX));
+        else
+            throw new FileNotFoundException("*** File " + arg + " not found ***");
+      }
+
+
+    private static List<File> walk(Path baseDir, java.util.function.Predicate<Path> filter)
+        throws IOException
+      {
+        if (!Files.isDirectory(baseDir))
+            return Collections.emptyList();
+
+        try (Stream<Path> paths = Files.walk(baseDir))
+          {
+            return paths.filter(Files::isRegularFile)
+                        .filter(filter)
+                        .sorted()
+                        .map(Path::toFile)
+                        .collect(Collectors.toList());
+          }
+      }
+
+
+    /**
+     * Compiles all of the source files, printing the diagnostics for each
+     * file in order followed by a summary.
+     *
+     * @return true if every source file was compiled without errors.
+     */
+    public boolean compileAll(PrintStream out) throws InterruptedException
+      {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        List<Future<Result>> futures = new ArrayList<>(sourceFiles.size());
+
+        long startTime = System.nanoTime();
+
+        for (final File sourceFile : sourceFiles)
+          {
+            futures.add(pool.submit(new Callable<Result>()
+              {
+                public Result call()
+                  {
+                    return compile(sourceFile);
+                  }
+              }));
+          }
+
+        int  numFailed  = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+
+        for (int i = 0;  i < futures.size();  ++i)
+          {
+            Result result;
+
+            try
+              {
+                result = futures.get(i).get();
+              }
+            catch (ExecutionException e)
+              {
+                result = new Result();
+                result.diagnostics = e.getCause().toString() + System.lineSeparator();
+              }
+
+            out.print(result.diagnostics);
+            out.printf("%s: %s (%.1f ms)%n", sourceFiles.get(i).getPath(),
+                       result.success ? "ok" : "errors detected", result.nanos/1.0e6);
+
+            if (!result.success)
+                ++numFailed;
+
+            totalNanos = totalNanos + result.nanos;
+            totalBytes = totalBytes + result.numBytes;
+          }
+
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - startTime)/1.0e9;
+
+        out.println();
+        out.printf("Compiled %d files (%d with errors) in %.3f s using %d threads%n",
+                   sourceFiles.size(), numFailed, seconds, numThreads);
+        out.printf("Throughput:  %.1f files/s, %.1f KB/s; parallel speedup %.2f%n",
+                   sourceFiles.size()/seconds, totalBytes/1024.0/seconds,
+                   seconds > 0.0 ? totalNanos/1.0e9/seconds : 0.0);
+
+        return numFailed == 0;
+      }
+
+
+    /**
+     * Compiles one source file, collecting its diagnostics.
+     */
+    private static Result compile(File sourceFile)
+      {
+        Result result = new Result();
+        StringWriter diagnostics = new StringWriter();
+        PrintWriter  err = new PrintWriter(diagnostics);
+
+        long startTime = System.nanoTime();
+
+        try
+          {
+            Compiler compiler = new Compiler(sourceFile, null, err);
+            result.success = compiler.compile();
+          }
+        catch (IOException | RuntimeException e)
+          {
+            err.println(e);
+          }
+
+        result.nanos = System.nanoTime() - startTime;
+        result.numBytes = sourceFile.length();
+
+        err.flush();
+        result.diagnostics = diagnostics.toString();
+
+        return result;
+      }
+  }
@@ -0,0 +1,108 @@
+package edu.citadel.cprl;
+
+
+import edu.citadel.compiler.ErrorHandler;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * The state that belongs to a single compilation:  the error handler for
+ * the compilation unit, the generator for its labels, and the sink for
+ * its assembly code.  The parser and every AST node of a compilation
+ * share one context, and no state is shared between compilations, so
+ * several source files can be compiled concurrently in the same JVM.
+ */
+public class CompilationContext
+  {
+    private ErrorHandler errorHandler;
+    private AssemblySink sink = null;
+
+    // current label number for control flow
+    private int currentLabelNum = -1;
+
+    // number of bytes of parameters for each subprogram, by its label
+    private Map<String, Integer> paramLengths = new HashMap<>();
+
+
+    /**
+     * Construct a context that reports errors to System.err.
+     */
+    public CompilationContext()
+      {
+        this(new ErrorHandler());
+      }
+
+
+    /**
+     * Construct a context that reports errors to the specified error handler.
+     */
+    public CompilationContext(ErrorHandler errorHandler)
+      {
+        this.errorHandler = errorHandler;
+      }
+
+
+    public ErrorHandler getErrorHandler()
+      {
+        return errorHandler;
+      }
+
+
+    /**
+     * Set the PrintWriter to be used for code generation.  The assembly
+     * code is written as text, one label or instruction per line.
+     */
+    public void setPrintWriter(PrintWriter out)
+      {
+        sink = new TextAssemblySink(out);
+      }
+
+
+    /**
+     * Set the sink to be used for code generation.
+     */
+    public void setAssemblySink(AssemblySink sink)
+      {
+        this.sink = sink;
+      }
+
+
+    public AssemblySink getAssemblySink()
+      {
+        return sink;
+      }
+
+
+    /**
+     * Returns a new label, unique within this compilation.
+     */
+    public String getNewLabel()
+      {
+        ++currentLabelNum;
+        return "L" + currentLabelNum;
+      }
+
+
+    /**
+     * Records the number of bytes of parameters of the subprogram
+     * whose code starts at the specified label.
+     */
+    public void setParamLength(String subprogramLabel, int paramLength)
+      {
+        paramLengths.put(subprogramLabel, paramLength);
+      }
+
+
+    /**
+     * Returns the number of bytes of parameters that a call to the
+     * subprogram at the specified label removes from the stack.
+     */
+    public int getParamLength(String subprogramLabel)
+      {
+        Integer paramLength = paramLengths.get(subprogramLabel);
+        return paramLength == null ? 0 : paramLength;
+      }
+  }
@@ -2,11 +2,15 @@ package edu.citadel.cprl;
 
 
 import edu.citadel.compiler.CodeGenException;
+import edu.citadel.compiler.CompilationHaltedException;
 import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Source;
 import edu.citadel.cprl.ast.Program;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 
 /**
@@ -18,90 +22,209 @@ public class Compiler
     private static final int    FAILURE = -1;
     
     private File sourceFile;
+    private PrintWriter out;
+    private PrintWriter err;
 
 
     /**
-     * Construct a compiler with the specified source file.
+     * Construct a compiler with the specified source file.  Progress
+     * messages are written to System.out and errors to System.err.
      */
     public Compiler(File sourceFile)
+      {
+        this(sourceFile, new PrintWriter(System.out, true), new PrintWriter(System.err, true));
+      }
+
+
+    /**
+     * Construct a compiler with the specified source file that writes progress
+     * messages to out and errors to err.  If out is null, no progress messages
+     * are written.
+     */
+    public Compiler(File sourceFile, PrintWriter out, PrintWriter err)
       {
         this.sourceFile = sourceFile;
+        this.out = out;
+        this.err = err;
       }
 
 
     /**
      * Compile the source file.  If there are no errors in the source file,
      * the object code is placed in a file with the same base file name as
-     * the source file but with a ".obj" suffix.
-     * 
+     * the source file but with a ".obj" suffix.  Each call uses its own
+     * CompilationContext, so different files can be compiled concurrently.
+     *
+     * @return true if the source file was compiled without errors.
      * @throws IOException if there are problems reading the source file
      *                     or writing to the target file.
      */
-    public void compile() throws IOException
+    public boolean compile() throws IOException
       {
-        FileReader sourceFileReader = new FileReader(sourceFile);
+        return compile(null);
+      }
 
-        Source  source  = new Source(sourceFileReader);
-        Scanner scanner = new Scanner(source);
-        Parser  parser  = new Parser(scanner);
 
-        ErrorHandler errorHandler = ErrorHandler.getInstance();
+    /**
+     * Compile the source file, sending the assembly code to the specified
+     * sink instead of writing an ".asm" file.  If sink is null, the ".asm"
+     * file is written as usual.
+     *
+     * @return true if the source file was compiled without errors.
+     * @throws IOException if there are problems reading the source file
+     *                     or writing to the target file.
+     */
+    public boolean compile(AssemblySink sink) throws IOException
+      {
+        ErrorHandler errorHandler = new ErrorHandler(err);
+        CompilationContext context = new CompilationContext(errorHandler);
 
         printProgressMessage("Starting compilation for " + sourceFile.getName() + "...");
 
-        // parse source file
-        Program program = parser.parseProgram();
-
-        // check constraints
-        if (!errorHandler.errorsExist())
+        try
           {
-            printProgressMessage("Checking constraints...");
-            program.checkConstraints();
-          }
+            Source  source  = new Source(sourceFile);
+            Scanner scanner = new Scanner(source, errorHandler);
+            Parser  parser  = new Parser(scanner, context);
 
-        // generate code
-        if (!errorHandler.errorsExist())
-          {
-            printProgressMessage("Generating code...");
+            // parse source file
+            Program program = parser.parseProgram();
 
-            // no error recovery from errors detected during code generation
-            try
+            // check constraints
+            if (!errorHandler.errorsExist())
               {
-                PrintWriter targetPrintWriter = getTargetPrintWriter(sourceFile);
-                if (targetPrintWriter != null)
-                    program.setPrintWriter(targetPrintWriter);
-                else
-                  {
-                    String errorMsg = "unable to create target output stream";
-                    throw new CodeGenException(errorMsg);
-                  }
-
-                program.emit();
+                printProgressMessage("Checking constraints...");
+                program.checkConstraints();
               }
-            catch (CodeGenException ex)
+
+            // generate code
+            if (!errorHandler.errorsExist())
               {
-                ErrorHandler.getInstance().reportError(ex);            
+                printProgressMessage("Generating code...");
+                if (sink != null)
+                    emit(program, sink, errorHandler);
+                else
+                    emit(program, errorHandler);
               }
           }
+        catch (CompilationHaltedException e)
+          {
+            // the error handler has already reported the errors
+          }
 
         if (errorHandler.errorsExist())
             printProgressMessage("Errors detected -- compilation terminated.");
         else
             printProgressMessage("Compilation complete.");
+
+        return !errorHandler.errorsExist();
+      }
+
+
+    /**
+     * Sends the assembly code for the program to the sink.
+     */
+    private void emit(Program program, AssemblySink sink, ErrorHandler errorHandler)
+        throws IOException
+      {
+        // no error recovery from errors detected during code generation
+        try
+          {
+            program.setAssemblySink(sink);
+            program.emit();
+          }
+        catch (CodeGenException ex)
+          {
+            errorHandler.reportError(ex);
+          }
+      }
+
+
+    /**
+     * Writes the assembly code for the program to the target file.
+     */
+    private void emit(Program program, ErrorHandler errorHandler) throws IOException
+      {
+        PrintWriter targetPrintWriter = getTargetPrintWriter(sourceFile);
+
+        // no error recovery from errors detected during code generation
+        try
+          {
+            if (targetPrintWriter != null)
+                program.setPrintWriter(targetPrintWriter);
+            else
+              {
+                String errorMsg = "unable to create target output stream";
+                throw new CodeGenException(errorMsg);
+              }
+
+            program.emit();
+          }
+        catch (CodeGenException ex)
+          {
+            errorHandler.reportError(ex);
+          }
+        finally
+          {
+            if (targetPrintWriter != null)
+                targetPrintWriter.close();
+          }
       }
     
 
     /**
-     * This method drives the compilation process.
+     * This method drives the compilation process.  Given a single source file,
+     * it compiles that file.  Given several arguments, or a directory or glob
+     * pattern, it compiles all matching files in parallel (see BatchCompiler).
      * 
      * @param args must include the name of the CPRL source file, either the complete
-     *             file name or the base file name with suffix ".cprl" omitted.
+     *             file name or the base file name with suffix ".cprl" omitted,
+     *             or the directories, glob patterns, and files to compile,
+     *             optionally preceded by -j followed by the number of threads.
      */
     public static void main(String args[]) throws Exception
       {
-        if (args.length == 0 || args.length > 1)
+        if (args.length == 0)
             printUsageMessageAndExit();
 
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+
+        if (args[0].equals("-j"))
+          {
+            // -j must be followed by the number of threads and a source
+            if (args.length < 3)
+                printUsageMessageAndExit();
+
+            numThreads = parseNumThreads(args[1]);
+            first = 2;
+          }
+
+        if (first > 0 || args.length > 1 || new File(args[0]).isDirectory()
+            || BatchCompiler.isPattern(args[0]))
+          {
+            // a file named more than once is compiled once, in the order given
+            Set<File> sourceFiles = new LinkedHashSet<>();
+            try
+              {
+                for (int i = first;  i < args.length;  ++i)
+                    for (File sourceFile : BatchCompiler.findSourceFiles(args[i]))
+                        sourceFiles.add(sourceFile.getCanonicalFile());
+              }
+            catch (FileNotFoundException e)
+              {
+                System.err.println(e.getMessage());
+                System.exit(FAILURE);
+              }
+
+            BatchCompiler batchCompiler =
+                new BatchCompiler(new ArrayList<>(sourceFiles), numThreads);
+            if (!batchCompiler.compileAll(System.out))
+                System.exit(FAILURE);
+
+            return;
+          }
+
         String fileName = args[0];
         File sourceFile = new File(fileName);
 
@@ -130,16 +253,19 @@ public class Compiler
           }
 
         Compiler compiler = new Compiler(sourceFile);
-        compiler.compile();
+        boolean success = compiler.compile();
 
         System.out.println();
+
+        if (!success)
+            System.exit(FAILURE);
       }
 
 
     /**
      * Returns a PrintWriter used for writing the assembly code.  The target
      * print writer is a file with the same base file name as the source file
-     * but with a ".asm" suffix. 
+     * but with a ".asm" suffix.  Returns null if the file can't be created.
      */
     private PrintWriter getTargetPrintWriter(File sourceFile)
       {
@@ -161,23 +287,47 @@ public class Compiler
           }
         catch (IOException e)
           {
-            e.printStackTrace();
-            System.exit(FAILURE);
+            e.printStackTrace(err);
           }
 
         return writer;
       }
 
 
-    private static void printProgressMessage(String message)
+    private void printProgressMessage(String message)
+      {
+        if (out != null)
+            out.println(message);
+      }
+
+
+    /**
+     * Returns the number of threads given after -j on the command line,
+     * which must be a positive integer.
+     */
+    private static int parseNumThreads(String arg)
       {
-        System.out.println(message);
+        try
+          {
+            int numThreads = Integer.parseInt(arg);
+            if (numThreads > 0)
+                return numThreads;
+          }
+        catch (NumberFormatException e)
+          {
+            // reported below
+          }
+
+        System.out.println("Invalid number of threads: " + arg);
+        printUsageMessageAndExit();
+        return 0;
       }
 
 
     private static void printUsageMessageAndExit()
       {
         System.out.println("Usage: java Compiler crplSourceFile");
+        System.out.println("       java Compiler [-j threads] (crplSourceFile | directory | glob) ...");
         System.out.println();
         System.exit(0);
       }
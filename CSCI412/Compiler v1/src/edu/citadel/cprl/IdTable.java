@@ -2,13 +2,12 @@ package edu.citadel.cprl;
 
 
 import edu.citadel.compiler.InternalAssertion;
+import edu.citadel.compiler.NamePool;
 import edu.citadel.compiler.ParserException;
 import edu.citadel.compiler.Position;
 import edu.citadel.cprl.ast.Declaration;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 
 /**
@@ -17,17 +16,35 @@ import java.util.ArrayList;
  */
 public final class IdTable
   {
-    // NOTE:  IdTable is implemented as a stack of maps, where each map associates
-    // the identifier string with its declaration.  The stack is implemented using an
-    // array list.  When a when a new scope is opened, a new map is pushed onto the
-    // stack.  Searching for a declaration involves searching at the current level
-    // (top map in the stack) and then at enclosing scopes (maps under the top)
+    // NOTE:  IdTable is keyed by the ids that the scanner's name pool assigns to
+    // identifiers, rather than by the identifier strings.  Each declaration added
+    // to the table is a binding, and the bindings are kept on a stack in the order
+    // they were added.  For each identifier id, visible[id] is the index of its
+    // innermost binding, and each binding links to the binding of the same
+    // identifier that it shadows.  Looking up an identifier is one array access.
+    // Opening a scope records the top of the binding stack; closing the scope pops
+    // the bindings added since then, restoring the bindings that they shadowed,
+    // so the binding stack is also the undo log for scopes.  No maps are allocated.
 
-    private static final int INITIAL_SCOPE_LEVELS = 2;
-    private static final int INITIAL_MAP_SIZE     = 50;
+    private static final int INITIAL_NUM_IDS      = 256;
+    private static final int INITIAL_NUM_BINDINGS = 256;
+    private static final int INITIAL_SCOPE_LEVELS = 8;
 
-    private ArrayList<Map<String, Declaration>> table;
-    private int currentLevel;
+    private NamePool namePool;
+
+    // the innermost binding of each identifier id, or -1
+    private int[] visible;
+
+    // the binding stack
+    private Declaration[] bindingDecls;
+    private int[] bindingIds;
+    private int[] bindingLevels;
+    private int[] bindingShadows;   // the binding shadowed, or -1
+    private int   numBindings;
+
+    // the number of bindings when each scope was opened
+    private int[] scopeStarts;
+    private int   currentLevel;
 
 
     /**
@@ -35,9 +52,29 @@ public final class IdTable
      */
     public IdTable()
       {
-        table = new ArrayList<Map<String, Declaration>>(INITIAL_SCOPE_LEVELS);
+        this(new NamePool());
+      }
+
+
+    /**
+     * Construct an empty identifier table for identifiers whose name ids
+     * were assigned by the specified name pool (see Scanner.getNamePool()).
+     */
+    public IdTable(NamePool namePool)
+      {
+        this.namePool = namePool;
+
+        visible = new int[INITIAL_NUM_IDS];
+        Arrays.fill(visible, -1);
+
+        bindingDecls   = new Declaration[INITIAL_NUM_BINDINGS];
+        bindingIds     = new int[INITIAL_NUM_BINDINGS];
+        bindingLevels  = new int[INITIAL_NUM_BINDINGS];
+        bindingShadows = new int[INITIAL_NUM_BINDINGS];
+        numBindings    = 0;
+
+        scopeStarts  = new int[INITIAL_SCOPE_LEVELS];
         currentLevel = 0;
-        table.add(currentLevel, new HashMap<String, Declaration>(INITIAL_MAP_SIZE));
       }
 
 
@@ -56,7 +93,10 @@ public final class IdTable
     public void openScope()
       {
         ++currentLevel;
-        table.add(currentLevel, new HashMap<String, Declaration>(INITIAL_MAP_SIZE));
+        if (currentLevel == scopeStarts.length)
+            scopeStarts = Arrays.copyOf(scopeStarts, 2*scopeStarts.length);
+
+        scopeStarts[currentLevel] = numBindings;
       }
 
 
@@ -65,7 +105,15 @@ public final class IdTable
      */
     public void closeScope()
       {
-        table.remove(currentLevel);
+        int scopeStart = scopeStarts[currentLevel];
+
+        while (numBindings > scopeStart)
+          {
+            --numBindings;
+            visible[bindingIds[numBindings]] = bindingShadows[numBindings];
+            bindingDecls[numBindings] = null;
+          }
+
         --currentLevel;
       }
 
@@ -84,17 +132,43 @@ public final class IdTable
         InternalAssertion.check(idToken.getSymbol() == Symbol.identifier,
             "IdTable.add():  The symbol for idToken is not an identifier.");
 
-        Map<String, Declaration> idMap = table.get(currentLevel);
-        Declaration oldDecl = idMap.put(idToken.getText(), decl);
+        int id = getNameId(idToken);
+        if (id >= visible.length)
+          {
+            int oldLength = visible.length;
+            visible = Arrays.copyOf(visible, Math.max(2*oldLength, id + 1));
+            Arrays.fill(visible, oldLength, visible.length, -1);
+          }
+
+        int shadowed = visible[id];
 
         // check that the identifier has not been defined previously
-        if (oldDecl != null)
+        if (shadowed >= 0 && bindingLevels[shadowed] == currentLevel)
           {
+            // as with a map, the new declaration replaces the old one
+            bindingDecls[shadowed] = decl;
+
             Position errorPosition = idToken.getPosition();
             String message = "Identifier \"" + idToken.getText()
                            + "\" is already defined in the current scope.";
             throw new ParserException(errorPosition, message);
           }
+
+        if (numBindings == bindingDecls.length)
+          {
+            int newLength = 2*numBindings;
+            bindingDecls   = Arrays.copyOf(bindingDecls, newLength);
+            bindingIds     = Arrays.copyOf(bindingIds, newLength);
+            bindingLevels  = Arrays.copyOf(bindingLevels, newLength);
+            bindingShadows = Arrays.copyOf(bindingShadows, newLength);
+          }
+
+        bindingDecls[numBindings]   = decl;
+        bindingIds[numBindings]     = id;
+        bindingLevels[numBindings]  = currentLevel;
+        bindingShadows[numBindings] = shadowed;
+        visible[id] = numBindings;
+        ++numBindings;
       }
 
 
@@ -107,16 +181,24 @@ public final class IdTable
         InternalAssertion.check(idToken.getSymbol() == Symbol.identifier,
             "IdTable.get():  The symbol for idToken is not an identifier.");
 
-        Declaration decl = null;
-        int level = currentLevel;
+        int id = getNameId(idToken);
+        if (id >= visible.length || visible[id] < 0)
+            return null;
 
-        while (level >= 0 && decl == null)
-          {
-            Map<String, Declaration> idMap = table.get(level);
-            decl = (Declaration) idMap.get(idToken.getText());
-            --level;
-          }
+        return bindingDecls[visible[id]];
+      }
+
+
+    /**
+     * Returns the id of the token's text, looking it up in the name pool
+     * if the token was not created by the scanner that uses the pool.
+     */
+    private int getNameId(Token idToken)
+      {
+        int id = idToken.getNameId();
+        if (id < 0 || id >= namePool.size() || namePool.getName(id) != idToken.getText())
+            id = namePool.getId(idToken.getText());
 
-        return decl;
+        return id;
       }
   }
@@ -59,15 +59,20 @@ public class Parser
     private Scanner scanner;
     private IdTable idTable;
     private Context context;
+    private CompilationContext compilationContext;
+    private ErrorHandler errorHandler;
 
 
     /**
-     * Construct a parser with the specified scanner.
+     * Construct a parser with the specified scanner.  The AST nodes
+     * created by the parser belong to the specified compilation.
      */
-    public Parser(Scanner scanner)
+    public Parser(Scanner scanner, CompilationContext compilationContext)
       {
         this.scanner = scanner;
-        idTable = new IdTable();
+        this.compilationContext = compilationContext;
+        errorHandler = compilationContext.getErrorHandler();
+        idTable = new IdTable(scanner.getNamePool());
         context = new Context();
       }
 
@@ -89,7 +94,7 @@ public class Parser
             if (scanner.getSymbol() == Symbol.declareRW)
                 declPart = parseDeclarativePart();
             else
-                declPart = new DeclarativePart();
+                declPart = new DeclarativePart(compilationContext);
 
             stmtPart = parseStatementPart();
             match(Symbol.dot);
@@ -97,12 +102,12 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = {Symbol.EOF};
             recover(followers);
           }
 
-        return new Program(declPart, stmtPart);
+        return new Program(compilationContext, declPart, stmtPart);
       }
 
 
@@ -123,17 +128,17 @@ public class Parser
             List<InitialDecl>    initialDecls = parseInitialDecls();
             List<SubprogramDecl> subprogDecls = parseSubprogramDecls();
 
-            declPart = new DeclarativePart(initialDecls, subprogDecls);
+            declPart = new DeclarativePart(compilationContext, initialDecls, subprogDecls);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = {Symbol.beginRW};
             recover(followers);
           }
 
         if (declPart == null)
-            declPart = new DeclarativePart();
+            declPart = new DeclarativePart(compilationContext);
 
         return declPart;
       }
@@ -215,14 +220,14 @@ public class Parser
             if (literal != null)
               constType = TypeUtil.getTypeOf(literal.getSymbol());
 
-            constDecl = new ConstDecl(constId, constType, literal);
+            constDecl = new ConstDecl(compilationContext, constId, constType, literal);
 
             match(Symbol.semicolon);
             idTable.add(constDecl);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(initialDeclFollowers);
           }
         return constDecl;
@@ -252,7 +257,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(exprFollowers);
           }
 
@@ -279,14 +284,14 @@ public class Parser
             match(Symbol.semicolon);
 
             ScopeLevel scopeLevel = idTable.getCurrentLevel();
-            varDecl = new VarDecl(identifiers, varType, scopeLevel);
+            varDecl = new VarDecl(compilationContext, identifiers, varType, scopeLevel);
 
             for (SingleVarDecl decl : varDecl.getSingleVarDecls())
                 idTable.add(decl);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(initialDeclFollowers);
           }
 
@@ -320,7 +325,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = {Symbol.colon};
             recover(followers);
           }
@@ -357,12 +362,12 @@ public class Parser
             Type elemType = parseTypeName();
             match(Symbol.semicolon);
 
-            typeDecl = new ArrayTypeDecl(typeId, elemType, numElements);
+            typeDecl = new ArrayTypeDecl(compilationContext, typeId, elemType, numElements);
             idTable.add(typeDecl);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(initialDeclFollowers);
           }
         return typeDecl;
@@ -422,7 +427,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = {Symbol.semicolon,  Symbol.comma,
                                   Symbol.rightParen, Symbol.isRW};
             recover(followers);
@@ -489,7 +494,7 @@ public class Parser
             Token procId = scanner.getToken();
             matchCurrentSymbol();
 
-            procDecl = new ProcedureDecl(procId);
+            procDecl = new ProcedureDecl(compilationContext, procId);
             context.beginSubprogramDecl(procDecl);
 
             // temporarily add procId to IdTable
@@ -517,7 +522,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(subprogDeclFollowers);
           }
 
@@ -544,7 +549,7 @@ public class Parser
             Token funcId = scanner.getToken();
             matchCurrentSymbol();
 
-            funcDecl = new FunctionDecl(funcId);
+            funcDecl = new FunctionDecl(compilationContext, funcId);
             context.beginSubprogramDecl(funcDecl);
 
             idTable.add(funcDecl);
@@ -577,7 +582,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(subprogDeclFollowers);
           }
 
@@ -608,7 +613,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = { Symbol.returnRW, Symbol.isRW };
             recover(followers);
           }
@@ -642,12 +647,12 @@ public class Parser
 
             Type paramType = parseTypeName();
             ScopeLevel scopeLevel = idTable.getCurrentLevel();
-            paramDecl = new ParameterDecl(paramId, paramType, scopeLevel, isVarParam);
+            paramDecl = new ParameterDecl(compilationContext, paramId, paramType, scopeLevel, isVarParam);
             idTable.add(paramDecl);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = {Symbol.comma, Symbol.rightParen};
             recover(followers);
           }
@@ -675,12 +680,12 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = {Symbol.dot, Symbol.identifier};
             recover(followers);
           }
 
-        return new StatementPart(statements);
+        return new StatementPart(compilationContext, statements);
       }
 
 
@@ -755,7 +760,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
 
             // Error recovery here is complicated for identifiers since they can both
             // start a statement and appear elsewhere in the statement.  (Consider,
@@ -797,18 +802,18 @@ public class Parser
               {
                 if (scanner.getSymbol() == Symbol.equals)
                   {
-                    ErrorHandler.getInstance().reportError(e);
+                    errorHandler.reportError(e);
                     matchCurrentSymbol(); // treat "=" as ":=" in this context
                   }
               }
             Expression expr = parseExpression();
             match(Symbol.semicolon);
 
-            stmt = new AssignmentStmt(var, expr, pos);
+            stmt = new AssignmentStmt(compilationContext, var, expr, pos);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
 
@@ -836,7 +841,7 @@ public class Parser
 
             match(Symbol.thenRW);
             List<Statement> stmts = parseStatements();
-            stmt = new IfStmt(expr, stmts);
+            stmt = new IfStmt(compilationContext, expr, stmts);
 
             while (scanner.getSymbol() == Symbol.elsifRW)
               {
@@ -860,7 +865,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
         return stmt;
@@ -877,7 +882,7 @@ public class Parser
      */
     public LoopStmt parseLoopStmt() throws IOException
       {
-        LoopStmt stmt = new LoopStmt();
+        LoopStmt stmt = new LoopStmt(compilationContext);
 
         try
           {
@@ -902,7 +907,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
 
@@ -938,13 +943,13 @@ public class Parser
             if (loopStmt == null)
               throw error(exitPosition, "Exit statement is not nested within a loop");
 
-            stmt = new ExitStmt(expr, loopStmt);
+            stmt = new ExitStmt(compilationContext, expr, loopStmt);
 
             match(Symbol.semicolon);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
         return stmt;
@@ -964,12 +969,12 @@ public class Parser
         try
           {
             match(Symbol.readRW);
-            stmt = new ReadStmt(parseVariable());
+            stmt = new ReadStmt(compilationContext, parseVariable());
             match(Symbol.semicolon);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
         return stmt;
@@ -1000,12 +1005,12 @@ public class Parser
               }
 
 
-            stmt = new WriteStmt(expressions);
+            stmt = new WriteStmt(compilationContext, expressions);
             match(Symbol.semicolon);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
 
@@ -1039,12 +1044,12 @@ public class Parser
                   }
               }
 
-            stmt = new WritelnStmt(expressions);
+            stmt = new WritelnStmt(compilationContext, expressions);
             match(Symbol.semicolon);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
 
@@ -1075,12 +1080,12 @@ public class Parser
             else
               actualParams = new LinkedList<>();
 
-            procCall = new ProcedureCallStmt(procId, actualParams, procDecl);
+            procCall = new ProcedureCallStmt(compilationContext, procId, actualParams, procDecl);
             match(Symbol.semicolon);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
         return procCall;
@@ -1112,7 +1117,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(exprFollowers);
           }
         return params;
@@ -1144,12 +1149,12 @@ public class Parser
             if (subprogDecl == null)
                 throw error(returnPosition, "Return statement is not nested within a subprogram");
 
-            stmt = new ReturnStmt(subprogDecl, returnExpr, returnPosition);
+            stmt = new ReturnStmt(compilationContext, subprogDecl, returnExpr, returnPosition);
             match(Symbol.semicolon);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(stmtFollowers);
           }
 
@@ -1182,7 +1187,7 @@ public class Parser
 
             NamedDecl namedDecl = (NamedDecl) decl;
 
-            var = new Variable(namedDecl, idToken.getPosition());
+            var = new Variable(compilationContext, namedDecl, idToken.getPosition());
 
             List<Expression> indexExprs = new LinkedList<>();
             while (scanner.getSymbol() == Symbol.leftBracket)
@@ -1196,7 +1201,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             Symbol[] followers = {Symbol.assign, Symbol.semicolon};
             recover(followers);
           }
@@ -1221,7 +1226,7 @@ public class Parser
             Token operator = scanner.getToken();
             matchCurrentSymbol();
             Expression expr2 = parseRelation();
-            expr = new LogicalExpr(expr, operator, expr2);
+            expr = new LogicalExpr(compilationContext, expr, operator, expr2);
           }
 
         return expr;
@@ -1245,7 +1250,7 @@ public class Parser
             Token operator = scanner.getToken();
             matchCurrentSymbol();
             Expression expr2 = parseSimpleExpr();
-            expr = new RelationalExpr(expr, operator, expr2);
+            expr = new RelationalExpr(compilationContext, expr, operator, expr2);
           }
         return expr;
       }
@@ -1274,14 +1279,14 @@ public class Parser
         expr = parseTerm();
 
         if (operator != null)
-            expr = new NegationExpr(operator, expr);
+            expr = new NegationExpr(compilationContext, operator, expr);
 
         while (SymbolUtil.isAddingOperator(scanner.getSymbol()))
           {
             operator = scanner.getToken();
             matchCurrentSymbol();
             Expression expr2 = parseTerm();
-           expr = new AddingExpr(expr, operator, expr2);
+           expr = new AddingExpr(compilationContext, expr, operator, expr2);
           }
         return expr;
       }
@@ -1304,7 +1309,7 @@ public class Parser
             Token operator = scanner.getToken();
             matchCurrentSymbol();
             Expression expr2 = parseFactor();
-            expr = new MultiplyingExpr(expr, operator, expr2);
+            expr = new MultiplyingExpr(compilationContext, expr, operator, expr2);
           }
 
         return expr;
@@ -1329,7 +1334,7 @@ public class Parser
                 Token operator = scanner.getToken();
                 matchCurrentSymbol();
                 Expression factorExpr = parseFactor();
-                expr = new NotExpr(operator, factorExpr);
+                expr = new NotExpr(compilationContext, operator, factorExpr);
               }
             else if (SymbolUtil.isLiteral(scanner.getSymbol()))
               {
@@ -1370,7 +1375,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(exprFollowers);
           }
 
@@ -1391,7 +1396,7 @@ public class Parser
         if (SymbolUtil.isLiteral(scanner.getSymbol()))
           {
             Token literal = parseLiteral();
-            constValue = new ConstValue(literal);
+            constValue = new ConstValue(compilationContext, literal);
           }
         else if (scanner.getSymbol() == Symbol.identifier)
           {
@@ -1402,7 +1407,7 @@ public class Parser
             InternalAssertion.check(decl != null && decl instanceof ConstDecl,
                 "invalid declaration for constant " + constId.getText());
 
-            constValue = new ConstValue(constId, (ConstDecl) decl);
+            constValue = new ConstValue(compilationContext, constId, (ConstDecl) decl);
           }
         else
             throw internalError("Invalid constant value.");
@@ -1440,7 +1445,7 @@ public class Parser
 
             NamedDecl namedDecl = (NamedDecl) decl;
 
-            namedValue = new NamedValue(namedDecl, idToken.getPosition());
+            namedValue = new NamedValue(compilationContext, namedDecl, idToken.getPosition());
 
             List<Expression> indexExprs = new LinkedList<>();
             while (scanner.getSymbol() == Symbol.leftBracket)
@@ -1454,7 +1459,7 @@ public class Parser
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(exprFollowers);
           }
 
@@ -1483,11 +1488,11 @@ public class Parser
             if (scanner.getSymbol() == Symbol.leftParen)
               actualParams = parseActualParameters();
 
-            funcCall = new FunctionCall(funcId, actualParams, funcDecl);
+            funcCall = new FunctionCall(compilationContext, funcId, actualParams, funcDecl);
           }
         catch (ParserException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
             recover(exprFollowers);
           }
 
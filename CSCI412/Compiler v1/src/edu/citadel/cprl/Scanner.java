@@ -3,33 +3,57 @@ package edu.citadel.cprl;
 
 import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.InternalAssertion;
+import edu.citadel.compiler.NamePool;
 import edu.citadel.compiler.Position;
 import edu.citadel.compiler.ScannerException;
 import edu.citadel.compiler.Source;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.HashMap;
 
 
+/**
+ * The scanner for CPRL.  Identifiers and integer literals are not copied
+ * into a buffer; they are recorded as the offset and length of their
+ * characters in the source buffer, classified in place using a perfect
+ * hash of the reserved words, and converted to a String through a name
+ * pool, so that each distinct name is allocated only once.  The position
+ * of the current token is created only when it is requested.
+ */
 public class Scanner
   {
-    // maps strings to reserved word symbols
-    private static Map<String, Symbol> rwMap = new HashMap<>(50);
+    // perfect hash table of the reserved words (see rwIndex())
+    private static final int RW_TABLE_BITS  = 7;
+    private static final int RW_MULTIPLIER  = 122771;
+    private static final int RW_MAX_LENGTH  = 9;
+    private static char[][] rwChars   = new char[1 << RW_TABLE_BITS][];
+    private static Symbol[] rwSymbols = new Symbol[1 << RW_TABLE_BITS];
+
+    // true for the ASCII characters that are letters or digits
+    private static final boolean[] isAsciiLetterOrDigit = new boolean[128];
 
     private Source source;
+    private ErrorHandler errorHandler;
     private Token currentToken;
     private StringBuilder scanBuffer;
+    private NamePool namePool;
+
+    // the position of the current token, and its characters in the source buffer
+    private int tokenLine;
+    private int tokenChar;
+    private int tokenOffset;
+    private int tokenLength;
 
 
     /**
-     * Initialize scanner with its associated source and advance to the first
-     * token.
+     * Initialize scanner with its associated source and the error handler
+     * for the compilation, and advance to the first token.
      */
-    public Scanner(Source source) throws IOException
+    public Scanner(Source source, ErrorHandler errorHandler) throws IOException
       {
         this.source = source;
+        this.errorHandler = errorHandler;
         scanBuffer = new StringBuilder(100);
+        namePool = new NamePool();
         currentToken = new Token();
         advance(); // advance to the first token
       }
@@ -40,10 +64,21 @@ public class Scanner
      */
     public Token getToken()
       {
+        getPosition();   // make sure that the position has been created
         return (Token) currentToken.clone();
       }
 
 
+    /**
+     * Returns the pool of identifiers and literals read by this scanner.
+     * The name id of an identifier token is its id in this pool.
+     */
+    public NamePool getNamePool()
+      {
+        return namePool;
+      }
+
+
     /**
      * Returns a reference to the current symbol in the source file.
      */
@@ -59,7 +94,35 @@ public class Scanner
      */
     public Position getPosition()
       {
-        return currentToken.getPosition();
+        Position position = currentToken.getPosition();
+        if (position == null)
+          {
+            position = new Position(tokenLine, tokenChar);
+            currentToken.setPosition(position);
+          }
+
+        return position;
+      }
+
+
+    /**
+     * Returns the offset of the current identifier or integer literal in
+     * the source buffer (see Source.getBuffer()).  The offset and length
+     * are valid until the scanner advances.
+     */
+    public int getTokenOffset()
+      {
+        return tokenOffset;
+      }
+
+
+    /**
+     * Returns the number of characters in the current identifier or
+     * integer literal.
+     */
+    public int getTokenLength()
+      {
+        return tokenLength;
       }
 
 
@@ -73,8 +136,12 @@ public class Scanner
             skipWhiteSpace();
 
             // currently at starting character of next token
-            currentToken.setPosition(source.getCharPosition());
+            tokenLine = source.getLineNumber();
+            tokenChar = source.getCharNumber();
+            tokenLength = 0;
+            currentToken.setPosition(null);
             currentToken.setText(null);
+            currentToken.setNameId(-1);
 
             if (source.getChar() == Source.EOF)
               {
@@ -83,17 +150,26 @@ public class Scanner
               }
             else if (Character.isLetter((char) source.getChar()))
               {
-                String idString = scanIdentifier();
-                Symbol scannedSymbol = getIdentifierSymbol(idString);
+                scanIdentifier();
+                char[] chars = source.getBuffer();
+                Symbol scannedSymbol = getIdentifierSymbol(chars, tokenOffset, tokenLength);
                 currentToken.setSymbol(scannedSymbol);
 
                 if (scannedSymbol == Symbol.identifier)
-                  currentToken.setText(idString);
+                  {
+                    int nameId = namePool.getId(chars, tokenOffset, tokenLength);
+                    currentToken.setText(namePool.getName(nameId));
+                    currentToken.setNameId(nameId);
+                  }
+
+                source.clearMark();
               }
             else if (Character.isDigit((char) source.getChar()))
               {
-                currentToken.setText(scanIntegerLiteral());
+                scanIntegerLiteral();
+                currentToken.setText(namePool.intern(source.getBuffer(), tokenOffset, tokenLength));
                 currentToken.setSymbol(Symbol.intLiteral);
+                source.clearMark();
               }
             else
               {
@@ -235,7 +311,7 @@ public class Scanner
           }
         catch (ScannerException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            errorHandler.reportError(e);
 
             // set token to either EOF or unknown
             if (source.getChar() == Source.EOF)
@@ -251,16 +327,56 @@ public class Scanner
 
     /**
      * Returns the symbol associated with an identifier (Symbol.arrayRW,
-     * Symbol.ifRW, Symbol.identifier, etc.)
+     * Symbol.ifRW, Symbol.identifier, etc.) whose characters are
+     * chars[offset] through chars[offset + length - 1].
      */
-    private Symbol getIdentifierSymbol(String idString)
+    private static Symbol getIdentifierSymbol(char[] chars, int offset, int length)
       {
+        if (length < 2 || length > RW_MAX_LENGTH)
+          return Symbol.identifier;
 
-        Symbol idSymbol = (Symbol) rwMap.get(idString);
-        if (idSymbol != null)
-          return idSymbol;
-        else
+        int index = rwIndex(chars, offset, length);
+        char[] rw = rwChars[index];
+
+        if (rw == null || rw.length != length)
           return Symbol.identifier;
+
+        for (int i = 0; i < length; ++i)
+          {
+            if (rw[i] != chars[offset + i])
+              return Symbol.identifier;
+          }
+
+        return rwSymbols[index];
+      }
+
+
+    /**
+     * Returns the index in the reserved word table for an identifier with at
+     * least two characters.  The hash combines the first two characters, the
+     * next to last character and the length, and the multiplier was chosen
+     * by search so that no two reserved words have the same index.  If the
+     * reserved words change, the static initializer reports a collision and
+     * a new multiplier must be found.
+     */
+    private static int rwIndex(char[] chars, int offset, int length)
+      {
+        int hash = ((chars[offset]*31 + chars[offset + 1])*31
+                   + chars[offset + length - 2])*31 + length;
+        return (hash*RW_MULTIPLIER) >>> (32 - RW_TABLE_BITS);
+      }
+
+
+    private static void addReservedWord(String word, Symbol symbol)
+      {
+        char[] chars = word.toCharArray();
+        int index = rwIndex(chars, 0, chars.length);
+
+        InternalAssertion.check(rwChars[index] == null && chars.length <= RW_MAX_LENGTH,
+            "Scanner.addReservedWord():  Reserved word table collision for " + word + ".");
+
+        rwChars[index]   = chars;
+        rwSymbols[index] = symbol;
       }
 
 
@@ -340,55 +456,70 @@ public class Scanner
 
     /**
      * Scans characters in the source file for a valid identifier using the
-     * lexical rule: identifier = letter ( letter | digit)* .
-     *
-     * @return the string of letters and digits for the identifier.
+     * lexical rule: identifier = letter ( letter | digit)* .  The offset and
+     * length of the identifier in the source buffer are recorded.
      */
-    private String scanIdentifier() throws IOException
+    private void scanIdentifier() throws IOException
       {
         // assumes that source.getChar() is the first character of the
         // identifier
 
-        InternalAssertion.check(Character.isLetter((char) source.getChar()),
-            "scanIdentifier(): check identifier" + "start for letter at position "
-                + getPosition());
-        clearScanBuffer();
+        checkTokenStart(Character.isLetter((char) source.getChar()),
+            "scanIdentifier(): check identifier" + "start for letter at position ");
+        source.mark();
 
-        do
-          {
-            scanBuffer.append((char) source.getChar());
+        // find the end of the identifier in the buffer, then check whether
+        // it continues past the end of the buffer
+        char[] chars = source.getBuffer();
+        int limit = source.getLimit();
+        int end = source.getOffset() + 1;
+        while (end < limit && isLetterOrDigit(chars[end]))
+            ++end;
+
+        source.skipTo(end);
+        while (Character.isLetterOrDigit((char) source.getChar()))
             source.advance();
-          }
-        while (Character.isLetterOrDigit((char) source.getChar()));
 
-        return scanBuffer.toString();
+        tokenOffset = source.getMarkOffset();
+        tokenLength = source.getOffset() - tokenOffset;
+      }
+
+
+    /**
+     * Same as Character.isLetterOrDigit(), but faster for ASCII characters.
+     */
+    private static boolean isLetterOrDigit(char c)
+      {
+        return c < 128 ? isAsciiLetterOrDigit[c] : Character.isLetterOrDigit(c);
       }
 
 
     /**
      * Scans characters in the source file for a valid integer literal. Assumes
      * that source.getChar() is the first character of the Integer literal.
-     *
-     * @return the string of digits for the integer literal.
+     * The offset and length of the literal in the source buffer are recorded.
      */
-    private String scanIntegerLiteral() throws ScannerException, IOException
+    private void scanIntegerLiteral() throws ScannerException, IOException
       {
         // assumes that source.getChar() is the first digit of the integer
         // literal
-        InternalAssertion.check(Character.isDigit((char) source.getChar()),
-            "scanIntegerLiteral():  check integer literal start for digit at position "
-                + getPosition());
+        checkTokenStart(Character.isDigit((char) source.getChar()),
+            "scanIntegerLiteral():  check integer literal start for digit at position ");
 
-        clearScanBuffer();
+        source.mark();
 
-        do
-          {
-            scanBuffer.append((char) source.getChar());
+        char[] chars = source.getBuffer();
+        int limit = source.getLimit();
+        int end = source.getOffset() + 1;
+        while (end < limit && Character.isDigit(chars[end]))
+            ++end;
+
+        source.skipTo(end);
+        while (Character.isDigit((char) source.getChar()))
             source.advance();
-          }
-        while (Character.isDigit((char) source.getChar()));
 
-        return scanBuffer.toString();
+        tokenOffset = source.getMarkOffset();
+        tokenLength = source.getOffset() - tokenOffset;
       }
 
 
@@ -403,9 +534,8 @@ public class Scanner
      */
     private String scanStringLiteral() throws ScannerException, IOException
       {
-        InternalAssertion.check(((char) source.getChar()) == '\"',
-            "scanStringLiteral(): check for opening" + " quote (\") at position"
-                + getPosition());
+        checkTokenStart(((char) source.getChar()) == '\"',
+            "scanStringLiteral(): check for opening" + " quote (\") at position");
 
         clearScanBuffer();
 
@@ -446,9 +576,8 @@ public class Scanner
      */
     private String scanCharLiteral() throws ScannerException, IOException
       {
-        InternalAssertion.check(((char) source.getChar()) == '\'',
-            "scanCharLiteral():  check for opening quote (\') at position "
-                + getPosition());
+        checkTokenStart(((char) source.getChar()) == '\'',
+            "scanCharLiteral():  check for opening quote (\') at position ");
 
         clearScanBuffer();
 
@@ -495,9 +624,25 @@ public class Scanner
      */
     private void skipWhiteSpace() throws IOException
       {
-        while (Character.isWhitespace((char) source.getChar()))
+        int c = source.getChar();
+
+        while (Character.isWhitespace((char) c))
           {
-            source.advance();
+            if (c == '\n')
+                source.advance();
+            else
+              {
+                // skip a run of blanks and tabs within the buffer
+                char[] chars = source.getBuffer();
+                int limit = source.getLimit();
+                int end = source.getOffset() + 1;
+                while (end < limit && (chars[end] == ' ' || chars[end] == '\t'))
+                    ++end;
+
+                source.skipTo(end);
+              }
+
+            c = source.getChar();
           }
       }
 
@@ -509,7 +654,14 @@ public class Scanner
       {
         while ((char) source.getChar() != '\n')
           {
-            source.advance();
+            // skip to the newline or to the end of the buffer
+            char[] chars = source.getBuffer();
+            int limit = source.getLimit();
+            int end = source.getOffset() + 1;
+            while (end < limit && chars[end] != '\n')
+                ++end;
+
+            source.skipTo(end);
             checkEOF();
           }
       }
@@ -538,6 +690,18 @@ public class Scanner
       }
 
 
+    /**
+     * Checks an internal assertion about the first character of a token.
+     * The position of the token is appended to the message, but only if
+     * the check fails, so that a successful check does not allocate.
+     */
+    private void checkTokenStart(boolean condition, String message)
+      {
+        if (!condition)
+          InternalAssertion.check(false, message + getPosition());
+      }
+
+
     /**
      * Throws a ScannerException with the specified error message.
      */
@@ -563,47 +727,50 @@ public class Scanner
 
     static
       {
-        // initialize HashMap with reserve word symbols
-        rwMap.put("Boolean", Symbol.BooleanRW);
-        rwMap.put("Char", Symbol.CharRW);
-        rwMap.put("Integer", Symbol.IntegerRW);
-        rwMap.put("String", Symbol.StringRW);
-        rwMap.put("and", Symbol.andRW);
-        rwMap.put("array", Symbol.arrayRW);
-        rwMap.put("begin", Symbol.beginRW);
-        rwMap.put("class", Symbol.classRW);
-        rwMap.put("const", Symbol.constRW);
-        rwMap.put("declare", Symbol.declareRW);
-        rwMap.put("else", Symbol.elseRW);
-        rwMap.put("elsif", Symbol.elsifRW);
-        rwMap.put("end", Symbol.endRW);
-        rwMap.put("exit", Symbol.exitRW);
-        rwMap.put("false", Symbol.falseRW);
-        rwMap.put("for", Symbol.forRW);
-        rwMap.put("function", Symbol.functionRW);
-        rwMap.put("if", Symbol.ifRW);
-        rwMap.put("in", Symbol.inRW);
-        rwMap.put("is", Symbol.isRW);
-        rwMap.put("loop", Symbol.loopRW);
-        rwMap.put("mod", Symbol.modRW);
-        rwMap.put("not", Symbol.notRW);
-        rwMap.put("of", Symbol.ofRW);
-        rwMap.put("or", Symbol.orRW);
-        rwMap.put("private", Symbol.privateRW);
-        rwMap.put("procedure", Symbol.procedureRW);
-        rwMap.put("program", Symbol.programRW);
-        rwMap.put("protected", Symbol.protectedRW);
-        rwMap.put("public", Symbol.publicRW);
-        rwMap.put("read", Symbol.readRW);
-        rwMap.put("readln", Symbol.readlnRW);
-        rwMap.put("return", Symbol.returnRW);
-        rwMap.put("then", Symbol.thenRW);
-        rwMap.put("true", Symbol.trueRW);
-        rwMap.put("type", Symbol.typeRW);
-        rwMap.put("var", Symbol.varRW);
-        rwMap.put("when", Symbol.whenRW);
-        rwMap.put("while", Symbol.whileRW);
-        rwMap.put("write", Symbol.writeRW);
-        rwMap.put("writeln", Symbol.writelnRW);
+        for (char c = 0; c < 128; ++c)
+          isAsciiLetterOrDigit[c] = Character.isLetterOrDigit(c);
+
+        // initialize the perfect hash table with reserved word symbols
+        addReservedWord("Boolean", Symbol.BooleanRW);
+        addReservedWord("Char", Symbol.CharRW);
+        addReservedWord("Integer", Symbol.IntegerRW);
+        addReservedWord("String", Symbol.StringRW);
+        addReservedWord("and", Symbol.andRW);
+        addReservedWord("array", Symbol.arrayRW);
+        addReservedWord("begin", Symbol.beginRW);
+        addReservedWord("class", Symbol.classRW);
+        addReservedWord("const", Symbol.constRW);
+        addReservedWord("declare", Symbol.declareRW);
+        addReservedWord("else", Symbol.elseRW);
+        addReservedWord("elsif", Symbol.elsifRW);
+        addReservedWord("end", Symbol.endRW);
+        addReservedWord("exit", Symbol.exitRW);
+        addReservedWord("false", Symbol.falseRW);
+        addReservedWord("for", Symbol.forRW);
+        addReservedWord("function", Symbol.functionRW);
+        addReservedWord("if", Symbol.ifRW);
+        addReservedWord("in", Symbol.inRW);
+        addReservedWord("is", Symbol.isRW);
+        addReservedWord("loop", Symbol.loopRW);
+        addReservedWord("mod", Symbol.modRW);
+        addReservedWord("not", Symbol.notRW);
+        addReservedWord("of", Symbol.ofRW);
+        addReservedWord("or", Symbol.orRW);
+        addReservedWord("private", Symbol.privateRW);
+        addReservedWord("procedure", Symbol.procedureRW);
+        addReservedWord("program", Symbol.programRW);
+        addReservedWord("protected", Symbol.protectedRW);
+        addReservedWord("public", Symbol.publicRW);
+        addReservedWord("read", Symbol.readRW);
+        addReservedWord("readln", Symbol.readlnRW);
+        addReservedWord("return", Symbol.returnRW);
+        addReservedWord("then", Symbol.thenRW);
+        addReservedWord("true", Symbol.trueRW);
+        addReservedWord("type", Symbol.typeRW);
+        addReservedWord("var", Symbol.varRW);
+        addReservedWord("when", Symbol.whenRW);
+        addReservedWord("while", Symbol.whileRW);
+        addReservedWord("write", Symbol.writeRW);
+        addReservedWord("writeln", Symbol.writelnRW);
       }
   }
@@ -0,0 +1,278 @@
+package edu.citadel.cprl;
+
+
+import edu.citadel.compiler.InternalAssertion;
+import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.OpCode;
+
+import java.util.*;
+
+
+/**
+ * Holds the code generated for the statement part of a program or
+ * subprogram and computes the largest number of bytes that the code pushes
+ * onto the stack above the frame:  expression temporaries, and the return
+ * values and arguments of calls that are still being evaluated.  The VM
+ * checks the stack only when a frame is entered or enlarged, so the code
+ * generator emits a CHKSTK instruction for this depth when it is more than
+ * the stack guard can absorb, and then passes the held code to the sink
+ * of the compilation.
+ *
+ * <p>The depth is tracked along the code in the order it is emitted.  A
+ * branch records the depth at its target label, and the code that follows
+ * an unconditional branch, RET, or HALT is reached only through its label.
+ * A call removes the arguments of the called subprogram, whose length is
+ * looked up by its label in the compilation context.
+ */
+public class StackDepthSink implements AssemblySink
+  {
+    private CompilationContext context;
+
+    // the held code, replayed in order by emitTo()
+    private List<Line> code = new ArrayList<>();
+
+    // the depth recorded by branches for labels that have not been emitted
+    private Map<String, Integer> labelDepths = new HashMap<>();
+
+    private int depth     = 0;
+    private int maxDepth  = 0;
+    private boolean reachable = true;
+
+
+    public StackDepthSink(CompilationContext context)
+      {
+        this.context = context;
+      }
+
+
+    /**
+     * Returns the largest number of bytes pushed by the held code.
+     */
+    public int getMaxDepth()
+      {
+        return maxDepth;
+      }
+
+
+    /**
+     * Passes the held code to the specified sink.
+     */
+    public void emitTo(AssemblySink sink)
+      {
+        for (Line line : code)
+          {
+            if (line.label != null)
+                sink.emitLabel(line.label);
+            else if (line.stringArg != null)
+                sink.emitInstruction(line.opCode, line.stringArg);
+            else if (line.hasIntArg)
+                sink.emitInstruction(line.opCode, line.intArg);
+            else
+                sink.emitInstruction(line.opCode);
+          }
+      }
+
+
+    @Override
+    public void emitLabel(String label)
+      {
+        code.add(new Line(label, (byte) 0, false, 0, null));
+
+        Integer branchDepth = labelDepths.remove(label);
+        if (branchDepth != null)
+            depth = reachable ? Math.max(depth, branchDepth) : branchDepth;
+
+        reachable = true;
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode)
+      {
+        code.add(new Line(null, opCode, false, 0, null));
+        push(stackEffect(opCode, 0));
+
+        if (opCode == OpCode.HALT)
+            reachable = false;
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode, int arg)
+      {
+        code.add(new Line(null, opCode, true, arg, null));
+        push(stackEffect(opCode, arg));
+
+        if (opCode == OpCode.RET)
+            reachable = false;
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode, String arg)
+      {
+        code.add(new Line(null, opCode, false, 0, arg));
+
+        switch (opCode)
+          {
+            case OpCode.BR:
+                branchTo(arg);
+                reachable = false;
+                break;
+
+            case OpCode.BZ:
+            case OpCode.BNZ:
+            case OpCode.BG:
+            case OpCode.BGE:
+            case OpCode.BL:
+            case OpCode.BLE:
+                push(-1);
+                branchTo(arg);
+                break;
+
+            case OpCode.CALL:
+                push(-context.getParamLength(arg));
+                break;
+
+            case OpCode.LDCCH:
+                push(Constants.BYTES_PER_CHAR);
+                break;
+
+            case OpCode.LDCSTR:
+                // the string length and its address
+                push(2*Constants.BYTES_PER_INTEGER);
+                break;
+
+            default:
+                InternalAssertion.check(false, "StackDepthSink:  Unexpected instruction "
+                                      + OpCode.toString(opCode) + " " + arg + ".");
+          }
+      }
+
+
+    private void push(int numBytes)
+      {
+        depth = depth + numBytes;
+        maxDepth = Math.max(depth, maxDepth);
+      }
+
+
+    private void branchTo(String label)
+      {
+        Integer branchDepth = labelDepths.get(label);
+        labelDepths.put(label, branchDepth == null ? depth : Math.max(depth, branchDepth));
+      }
+
+
+    /**
+     * Returns the number of bytes that an instruction without a label
+     * argument adds to the stack, or a negative number for the bytes that
+     * it removes.
+     */
+    private static int stackEffect(byte opCode, int arg)
+      {
+        final int INT  = Constants.BYTES_PER_INTEGER;
+        final int CHAR = Constants.BYTES_PER_CHAR;
+
+        switch (opCode)
+          {
+            case OpCode.LDCINT:
+            case OpCode.LDADDR:
+            case OpCode.LDGADDR:
+            case OpCode.LDMEM:
+            case OpCode.LDGMEM:
+            case OpCode.GETINT:
+                return INT;
+            case OpCode.LDMEM2B:
+            case OpCode.LDGMEM2B:
+            case OpCode.GETCH:
+                return CHAR;
+            case OpCode.LOADCB:
+            case OpCode.LDMEMB:
+            case OpCode.LDGMEMB:
+                return 1;
+
+            case OpCode.LOAD:
+                return arg - INT;
+            case OpCode.LOADW:
+                return 0;
+            case OpCode.LOAD2B:
+                return CHAR - INT;
+            case OpCode.LOADB:
+                return 1 - INT;
+
+            case OpCode.STORE:
+                return -(arg + INT);
+            case OpCode.STOREW:
+                return -2*INT;
+            case OpCode.STORE2B:
+                return -(CHAR + INT);
+            case OpCode.STOREB:
+                return -(1 + INT);
+            case OpCode.STMEM:
+            case OpCode.STGMEM:
+            case OpCode.PUTINT:
+                return -INT;
+            case OpCode.STMEM2B:
+            case OpCode.STGMEM2B:
+            case OpCode.PUTCH:
+                return -CHAR;
+            case OpCode.STMEMB:
+            case OpCode.STGMEMB:
+            case OpCode.PUTBYTE:
+                return -1;
+            case OpCode.COPY:
+            case OpCode.PUTSTR:
+                return -2*INT;
+
+            case OpCode.ADD:
+            case OpCode.SUB:
+            case OpCode.MUL:
+            case OpCode.DIV:
+            case OpCode.MOD:
+                return -INT;
+            case OpCode.CMP:
+                return 1 - 2*INT;
+            case OpCode.NEG:
+            case OpCode.NOT:
+            case OpCode.SHL:
+            case OpCode.SHR:
+            case OpCode.INC:
+            case OpCode.DEC:
+            case OpCode.PUTEOL:
+            case OpCode.RET:
+            case OpCode.HALT:
+                return 0;
+
+            case OpCode.ALLOC:
+                return arg;
+
+            default:
+                InternalAssertion.check(false, "StackDepthSink:  Unexpected instruction "
+                                      + OpCode.toString(opCode) + ".");
+                return 0;
+          }
+      }
+
+
+    /**
+     * A label or instruction of the held code.
+     */
+    private static class Line
+      {
+        String  label;
+        byte    opCode;
+        boolean hasIntArg;
+        int     intArg;
+        String  stringArg;
+
+        Line(String label, byte opCode, boolean hasIntArg, int intArg, String stringArg)
+          {
+            this.label     = label;
+            this.opCode    = opCode;
+            this.hasIntArg = hasIntArg;
+            this.intArg    = intArg;
+            this.stringArg = stringArg;
+          }
+      }
+  }
@@ -0,0 +1,53 @@
+package edu.citadel.cprl;
+
+
+import edu.citadel.cprlvm.OpCode;
+
+import java.io.PrintWriter;
+
+
+/**
+ * Writes the generated assembly code as text, one label or instruction
+ * per line, in the format read by the assembler.
+ */
+public class TextAssemblySink implements AssemblySink
+  {
+    // Number of spaces to print before opcode
+    private static final String SPACES = "   ";
+
+    private PrintWriter out;
+
+
+    public TextAssemblySink(PrintWriter out)
+      {
+        this.out = out;
+      }
+
+
+    @Override
+    public void emitLabel(String label)
+      {
+        out.println(label + ":");
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode)
+      {
+        out.println(SPACES + OpCode.toString(opCode));
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode, int arg)
+      {
+        out.println(SPACES + OpCode.toString(opCode) + " " + arg);
+      }
+
+
+    @Override
+    public void emitInstruction(byte opCode, String arg)
+      {
+        out.println(SPACES + OpCode.toString(opCode) + " " + arg);
+      }
+  }
@@ -7,6 +7,9 @@ import edu.citadel.compiler.AbstractToken;
 
 public class Token extends AbstractToken<Symbol>
   {
+    private int nameId = -1;
+
+
     /**
      * Constructs a new Token with symbol = Symbol.unknown.
      * Position and text are initialized to null.
@@ -24,4 +27,24 @@ public class Token extends AbstractToken<Symbol>
       {
         super(symbol, position, text);
       }
+
+
+    /**
+     * Returns the id of an identifier token's text in the scanner's name
+     * pool, or -1 if the token was not created by the scanner or is not
+     * an identifier.
+     */
+    public int getNameId()
+      {
+        return nameId;
+      }
+
+
+    /**
+     * Set the id of an identifier token's text in the scanner's name pool.
+     */
+    public void setNameId(int nameId)
+      {
+        this.nameId = nameId;
+      }
   }
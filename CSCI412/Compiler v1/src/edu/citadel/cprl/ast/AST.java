@@ -3,8 +3,14 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
+import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.AssemblySink;
+import edu.citadel.cprl.CompilationContext;
+import edu.citadel.cprl.StackDepthSink;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.*;
 
@@ -14,13 +20,35 @@ import java.io.*;
  */
 public abstract class AST
   {
-    // Number of spaces to print before opcode
-    private static final String SPACES = "   ";
+    // the compilation that this AST belongs to
+    private CompilationContext context;
 
-    private static PrintWriter out = null;
 
-    // current label number for control flow
-    private static int currentLabelNum = -1;
+    /**
+     * Construct an AST belonging to the specified compilation.
+     */
+    public AST(CompilationContext context)
+      {
+        this.context = context;
+      }
+
+
+    /**
+     * Returns the compilation that this AST belongs to.
+     */
+    protected CompilationContext getContext()
+      {
+        return context;
+      }
+
+
+    /**
+     * Returns the error handler for the compilation.
+     */
+    protected ErrorHandler getErrorHandler()
+      {
+        return context.getErrorHandler();
+      }
 
 
     /**
@@ -28,7 +56,16 @@ public abstract class AST
      */
     public void setPrintWriter(PrintWriter out)
       {
-        AST.out = out;
+        context.setPrintWriter(out);
+      }
+
+
+    /**
+     * Set the sink that receives the generated assembly code.
+     */
+    public void setAssemblySink(AssemblySink sink)
+      {
+        context.setAssemblySink(sink);
       }
 
 
@@ -59,8 +96,7 @@ public abstract class AST
      */
     protected String getLabel()
       {
-        ++currentLabelNum;
-        return "L" + currentLabelNum;
+        return context.getNewLabel();
       }
 
 
@@ -82,13 +118,13 @@ public abstract class AST
         int numBytes = t.getSize();
 
         if (numBytes == 4)
-            emit("LOADW");
+            emit(OpCode.LOADW);
         else if (numBytes == 2)
-            emit("LOAD2B");
+            emit(OpCode.LOAD2B);
         else if (numBytes == 1)
-            emit("LOADB");
+            emit(OpCode.LOADB);
         else
-            emit("LOAD " + numBytes);
+            emit(OpCode.LOAD, numBytes);
       }
 
 
@@ -100,31 +136,82 @@ public abstract class AST
         int numBytes = t.getSize();
 
         if (numBytes == 4)
-            emit("STOREW");
+            emit(OpCode.STOREW);
         else if (numBytes == 2)
-            emit("STORE2B");
+            emit(OpCode.STORE2B);
         else if (numBytes == 1)
-            emit("STOREB");
+            emit(OpCode.STOREB);
         else
-            emit("STORE " + numBytes);
+            emit(OpCode.STORE, numBytes);
       }
 
 
     /**
-     * Emit label for assembly instruction.  This instruction appends a colon
-     * to the end of the label and writes out the result on a single line.
+     * Emit label for assembly instruction.  When the code is written as
+     * text, a colon is appended to the label and the result is written
+     * on a single line.
      */
     protected void emitLabel(String label)
       {
-        out.println(label + ":");
+        context.getAssemblySink().emitLabel(label);
+      }
+
+
+    /**
+     * Emit an assembly instruction that has no argument.
+     */
+    protected void emit(byte opCode)
+      {
+        context.getAssemblySink().emitInstruction(opCode);
+      }
+
+
+    /**
+     * Emit an assembly instruction that has an integer argument.
+     */
+    protected void emit(byte opCode, int arg)
+      {
+        context.getAssemblySink().emitInstruction(opCode, arg);
+      }
+
+
+    /**
+     * Emit an assembly instruction whose argument is a label, or a
+     * char or string literal written as it appears in the source.
+     */
+    protected void emit(byte opCode, String arg)
+      {
+        context.getAssemblySink().emitInstruction(opCode, arg);
       }
 
 
     /**
-     * Emit string representation for an assembly instruction.
+     * Emit the code for the statement part of a program or subprogram,
+     * preceded by a CHKSTK instruction when the code can push more bytes
+     * above the frame than the stack guard absorbs.  It follows the PROGRAM
+     * or PROC instruction, which checks the stack only for the frame.
      */
-    protected void emit(String instruction)
+    protected void emitStatementPart(StatementPart stmtPart)
+        throws CodeGenException, IOException
       {
-        out.println(SPACES + instruction);
+        AssemblySink sink = context.getAssemblySink();
+        StackDepthSink stmtCode = new StackDepthSink(context);
+
+        context.setAssemblySink(stmtCode);
+        try
+          {
+            stmtPart.emit();
+          }
+        finally
+          {
+            context.setAssemblySink(sink);
+          }
+
+        // allow for the links pushed by a call at the deepest point
+        int maxDepth = stmtCode.getMaxDepth();
+        if (maxDepth + Constants.BYTES_PER_FRAME > Constants.STACK_GUARD_SIZE)
+            emit(OpCode.CHKSTK, maxDepth);
+
+        stmtCode.emitTo(sink);
       }
   }
@@ -3,13 +3,14 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Symbol;
 import edu.citadel.cprl.SymbolUtil;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -25,9 +26,9 @@ public class AddingExpr extends BinaryExpr
      * Construct an adding expression with the operator ("+" or "-")
      * and the two operands.
      */
-    public AddingExpr(Expression leftOperand, Token operator, Expression rightOperand)
+    public AddingExpr(CompilationContext context, Expression leftOperand, Token operator, Expression rightOperand)
       {
-        super(leftOperand, operator, rightOperand);
+        super(context, leftOperand, operator, rightOperand);
         
         InternalAssertion.check(SymbolUtil.isAddingOperator(operator.getSymbol()),
             "AddingExpr: operator is not an adding operator.");
@@ -65,7 +66,7 @@ public class AddingExpr extends BinaryExpr
           }
         catch (ConstraintException ex)
           {
-            ErrorHandler.getInstance().reportError(ex);
+            getErrorHandler().reportError(ex);
           }
 
         setType(Type.Integer);
@@ -86,8 +87,8 @@ public class AddingExpr extends BinaryExpr
             "Invalid adding operator symbol: " + operatorSym);
 
         if (operatorSym == Symbol.plus)
-            emit("ADD");
+            emit(OpCode.ADD);
         else if (operatorSym == Symbol.minus)
-            emit("SUB");
+            emit(OpCode.SUB);
       }
   }
@@ -2,9 +2,9 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
 import edu.citadel.cprl.ArrayType;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
 
@@ -22,9 +22,9 @@ public class ArrayTypeDecl extends InitialDecl
      * Construct an ArrayTypeDecl with its identifier and element type.
      * Note that the index type is always Integer in CPRL.
      */
-    public ArrayTypeDecl(Token typeId, Type elemType, ConstValue numElements)
+    public ArrayTypeDecl(CompilationContext context, Token typeId, Type elemType, ConstValue numElements)
       {
-        super(typeId, new ArrayType(typeId.getText(), numElements.getLiteralIntValue(), elemType));
+        super(context, typeId, new ArrayType(typeId.getText(), numElements.getLiteralIntValue(), elemType));
 
         this.elemType    = elemType;
         this.numElements = numElements;
@@ -79,7 +79,7 @@ public class ArrayTypeDecl extends InitialDecl
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
   }
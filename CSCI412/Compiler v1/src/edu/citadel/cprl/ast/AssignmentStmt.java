@@ -3,8 +3,9 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -21,8 +22,10 @@ public class AssignmentStmt extends Statement
     private Position stmtPosition;
 
 
-    public AssignmentStmt(Variable var, Expression expr, Position stmtPosition)
+    public AssignmentStmt(CompilationContext context, Variable var, Expression expr, Position stmtPosition)
       {
+        super(context);
+
         this.var = var;
         this.expr = expr;
         this.stmtPosition = stmtPosition;
@@ -46,7 +49,7 @@ public class AssignmentStmt extends Statement
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -54,9 +57,24 @@ public class AssignmentStmt extends Statement
     @Override
     public void emit() throws CodeGenException, IOException
       {
-        var.emit();
-        expr.emit();
+        if (var.isDirect())
+          {
+            expr.emit();
+            var.emitDirectStore();
+          }
+        else if (expr instanceof NamedValue && !expr.getType().isScalar())
+          {
+            // copy an array from memory to memory, not through the stack
+            var.emit();
+            ((NamedValue) expr).emitAddress();
+            emit(OpCode.COPY, expr.getType().getSize());
+          }
+        else
+          {
+            var.emit();
+            expr.emit();
 
-        emitStoreInst(expr.getType());
+            emitStoreInst(expr.getType());
+          }
       }
   }
@@ -1,6 +1,7 @@
 package edu.citadel.cprl.ast;
 
 
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
 
 
@@ -16,8 +17,10 @@ public abstract class BinaryExpr extends Expression
     private Expression rightOperand;
 
 
-    public BinaryExpr(Expression leftOperand, Token operator, Expression rightOperand)
+    public BinaryExpr(CompilationContext context, Expression leftOperand, Token operator, Expression rightOperand)
       {
+        super(context);
+
         this.leftOperand  = leftOperand;
         this.operator     = operator;
         this.rightOperand = rightOperand;
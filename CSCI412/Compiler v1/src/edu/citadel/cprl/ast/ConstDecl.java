@@ -2,8 +2,8 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Symbol;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
@@ -20,9 +20,9 @@ public class ConstDecl extends InitialDecl
     /**
      * Construct a ConstDecl with its identifier, type, and literal.
      */
-    public ConstDecl(Token identifier, Type constType, Token literal)
+    public ConstDecl(CompilationContext context, Token identifier, Type constType, Token literal)
       {
-        super(identifier, constType);
+        super(context, identifier, constType);
         this.literal = literal;
       }
 
@@ -57,7 +57,7 @@ public class ConstDecl extends InitialDecl
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
   }
@@ -3,12 +3,13 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Symbol;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
 import edu.citadel.cprl.TypeUtil;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -30,9 +31,9 @@ public class ConstValue extends Expression
     /**
      * Construct a ConstValue from a literal token.
      */
-    public ConstValue(Token literal)
+    public ConstValue(CompilationContext context, Token literal)
       {
-        super(TypeUtil.getTypeOf(literal.getSymbol()), literal.getPosition());
+        super(context, TypeUtil.getTypeOf(literal.getSymbol()), literal.getPosition());
 
         this.literal = literal;
       }
@@ -42,9 +43,9 @@ public class ConstValue extends Expression
      * Construct a ConstValue from a constant identifier
      * token and its corresponding constant declaration.
      */
-    public ConstValue(Token identifier, ConstDecl decl)
+    public ConstValue(CompilationContext context, Token identifier, ConstDecl decl)
       {
-        super(decl.getType(), identifier.getPosition());
+        super(context, decl.getType(), identifier.getPosition());
 
         this.literal = decl.getLiteral();
       }
@@ -97,7 +98,7 @@ public class ConstValue extends Expression
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -108,13 +109,13 @@ public class ConstValue extends Expression
         Type exprType = getType();
 
         if (exprType == Type.Integer)
-            emit("LDCINT " + getLiteralIntValue());
+            emit(OpCode.LDCINT, getLiteralIntValue());
         else if (exprType == Type.Boolean)
-            emit("LOADCB " + getLiteralIntValue());
+            emit(OpCode.LOADCB, getLiteralIntValue());
         else if (exprType == Type.Char)
-            emit("LDCCH " + literal.getText());
+            emit(OpCode.LDCCH, literal.getText());
         else if (exprType == Type.String)
-            emit("LDCSTR " + literal.getText());
+            emit(OpCode.LDCSTR, literal.getText());
         else
           {
             String errorMsg = "Invalid type for constant value.";
@@ -2,6 +2,7 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.CodeGenException;
+import edu.citadel.cprl.CompilationContext;
 
 import java.util.List;
 import java.util.LinkedList;
@@ -23,8 +24,10 @@ public class DeclarativePart extends AST
      * Construct a DeclarativePart with empty lists of initial and subprogram
      * declarations.
      */
-    public DeclarativePart()
+    public DeclarativePart(CompilationContext context)
       {
+        super(context);
+
         initialDecls = new LinkedList<>();
         subprogDecls = new LinkedList<>();
       }
@@ -34,9 +37,11 @@ public class DeclarativePart extends AST
      * Construct a DeclarativePart with the lists of initial and subprogram
      * declarations.
      */
-    public DeclarativePart(List<InitialDecl> initialDecls,
+    public DeclarativePart(CompilationContext context, List<InitialDecl> initialDecls,
         List<SubprogramDecl> subprogramDecls)
       {
+        super(context);
+
         this.initialDecls = initialDecls;
         this.subprogDecls = subprogramDecls;
       }
@@ -2,9 +2,10 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 import java.util.List;
@@ -31,8 +32,10 @@ public class ElsifPart extends AST
      * @param thenStmts   the statements to be executed when the boolean
      *                    expression evaluates to true.
      */
-    public ElsifPart(Expression booleanExpr, List<Statement> thenStmts)
+    public ElsifPart(CompilationContext context, Expression booleanExpr, List<Statement> thenStmts)
       {
+        super(context);
+
         this.booleanExpr = booleanExpr;
         this.thenStmts   = thenStmts;
 
@@ -79,7 +82,7 @@ public class ElsifPart extends AST
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -94,7 +97,7 @@ public class ElsifPart extends AST
             stmt.emit();
 
         // branch to end of if statement
-        emit("BR " + endIfLabel);
+        emit(OpCode.BR, endIfLabel);
 
         // L1:
         emitLabel(L1);
@@ -3,9 +3,10 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -25,8 +26,10 @@ public class ExitStmt extends Statement
      * should be null if there is no "when" expression) and a reference to the
      * enclosing loop statement.
      */
-    public ExitStmt(Expression whenExpr, LoopStmt loopStmt)
+    public ExitStmt(CompilationContext context, Expression whenExpr, LoopStmt loopStmt)
       {
+        super(context);
+
         this.whenExpr = whenExpr;
         this.loopStmt = loopStmt;
       }
@@ -58,7 +61,7 @@ public class ExitStmt extends Statement
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -71,6 +74,6 @@ public class ExitStmt extends Statement
         if (whenExpr != null)
           whenExpr.emitBranch(true, exitLabel);
         else
-          emit("BR " + exitLabel);
+          emit(OpCode.BR, exitLabel);
       }
   }
@@ -4,7 +4,9 @@ package edu.citadel.cprl.ast;
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.Position;
 import edu.citadel.compiler.InternalAssertion;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -15,10 +17,10 @@ import java.io.IOException;
 public abstract class Expression extends AST
   {
     /** constant for false */
-    public static final String FALSE = "0";
+    public static final int FALSE = 0;
 
     /** constant for true */
-    public static final String TRUE = "1";
+    public static final int TRUE = 1;
 
     private Type     exprType;
     private Position exprPosition;   // position of the start of the expression
@@ -28,8 +30,10 @@ public abstract class Expression extends AST
      * Default constructor.  Initializes the type of the expression
      * to UNKNOWN and the position to the default position.
      */
-    public Expression()
+    public Expression(CompilationContext context)
       {
+        super(context);
+
         this.exprType = Type.UNKNOWN;
         this.exprPosition = new Position();
       }
@@ -38,8 +42,10 @@ public abstract class Expression extends AST
     /**
      * Construct an expression with the specified type and position.
      */
-    public Expression(Type exprType, Position exprPosition)
+    public Expression(CompilationContext context, Type exprType, Position exprPosition)
       {
+        super(context);
+
         this.exprType     = exprType;
         this.exprPosition = exprPosition;
       }
@@ -49,8 +55,10 @@ public abstract class Expression extends AST
      * Construct an expression with the specified position.  Initializes
      * the type of the expression to UNKNOWN.
      */
-    public Expression(Position exprPosition)
+    public Expression(CompilationContext context, Position exprPosition)
       {
+        super(context);
+
         this.exprType = Type.UNKNOWN;
         this.exprPosition = exprPosition;
       }
@@ -115,7 +123,7 @@ public abstract class Expression extends AST
         // default behavior unless overridden; correct for constants and named values
         checkBooleanType();
         emit();  // leaves boolean value on top of stack
-        emit(condition ? "BNZ " + label : "BZ " + label);
+        emit(condition ? OpCode.BNZ : OpCode.BZ, label);
       }
 
 
@@ -3,8 +3,9 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.List;
 import java.util.Iterator;
@@ -25,11 +26,11 @@ public class FunctionCall extends Expression
      * Construct a function call with the function identifier (name), the
      * list of actual parameters, and a reference to the function declaration. 
      */
-    public FunctionCall(Token funcId,
+    public FunctionCall(CompilationContext context, Token funcId,
                         List<Expression> actualParams,
                         FunctionDecl funcDecl)
       {
-        super(funcDecl.getType(), funcId.getPosition());
+        super(context, funcDecl.getType(), funcId.getPosition());
 
         this.funcId = funcId;
         this.actualParams = actualParams;
@@ -67,7 +68,7 @@ public class FunctionCall extends Expression
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -76,12 +77,12 @@ public class FunctionCall extends Expression
     public void emit() throws CodeGenException, IOException
       {
         // allocate space on the stack for the return value
-        emit("ALLOC " + funcDecl.getType().getSize());
+        emit(OpCode.ALLOC, funcDecl.getType().getSize());
 
         // emit code for actual parameters
         for (Expression expr : actualParams)
             expr.emit();
 
-        emit("CALL " + funcDecl.getSubprogramLabel());
+        emit(OpCode.CALL, funcDecl.getSubprogramLabel());
       }
   }
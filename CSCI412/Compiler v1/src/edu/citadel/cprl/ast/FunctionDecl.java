@@ -3,8 +3,9 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.*;
 import java.io.IOException;
@@ -18,9 +19,9 @@ public class FunctionDecl extends SubprogramDecl
     /**
      * Construct a function declaration with its name (an identifier).
      */
-    public FunctionDecl(Token funcId)
+    public FunctionDecl(CompilationContext context, Token funcId)
       {
-        super(funcId);
+        super(context, funcId);
       }
 
 
@@ -73,7 +74,7 @@ public class FunctionDecl extends SubprogramDecl
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -138,9 +139,9 @@ public class FunctionDecl extends SubprogramDecl
         // get relative addr of function decl
         emitLabel(getSubprogramLabel());
 
-        emit("PROC " + getVarLength());
+        emit(OpCode.PROC, getVarLength());
 
-        getStatementPart().emit();
+        emitStatementPart(getStatementPart());
 
       }
   }
@@ -3,9 +3,10 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -40,8 +41,10 @@ public class IfStmt extends Statement
      *          the statements to be executed when the boolean expression
      *          evaluates to true.
      */
-    public IfStmt(Expression booleanExpr, List<Statement> thenStmts)
+    public IfStmt(CompilationContext context, Expression booleanExpr, List<Statement> thenStmts)
       {
+        super(context);
+
         this.booleanExpr = booleanExpr;
         this.thenStmts = thenStmts;
         this.elsifParts = new LinkedList<>();
@@ -70,7 +73,7 @@ public class IfStmt extends Statement
      */
     public void addElsifPart(Expression booleanExpr, List<Statement> thenStmts)
       {
-        ElsifPart elsifPart = new ElsifPart(booleanExpr, thenStmts);
+        ElsifPart elsifPart = new ElsifPart(getContext(), booleanExpr, thenStmts);
         elsifParts.add(elsifPart);
       }
 
@@ -133,7 +136,7 @@ public class IfStmt extends Statement
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -151,7 +154,7 @@ public class IfStmt extends Statement
         // if there are elsif parts or an else part, branch to end of if
         // statement
         if (elsifParts.size() > 0 || elseStmts.size() > 0)
-          emit("BR " + L2);
+          emit(OpCode.BR, L2);
 
         // L1:
         emitLabel(L1);
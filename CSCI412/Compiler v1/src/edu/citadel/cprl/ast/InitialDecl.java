@@ -3,6 +3,7 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.cprl.ArrayType;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
 
@@ -15,9 +16,9 @@ public abstract class InitialDecl extends Declaration
     /**
      * Construct an InitialDecl with its identifier and type.
      */
-    public InitialDecl(Token identifier, Type declType)
+    public InitialDecl(CompilationContext context, Token identifier, Type declType)
       {
-        super(identifier, declType);
+        super(context, identifier, declType);
       }
 
 
@@ -3,13 +3,14 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Symbol;
 import edu.citadel.cprl.SymbolUtil;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -30,9 +31,9 @@ public class LogicalExpr extends BinaryExpr
      * Construct a logical expression with the operator ("and" or "or")
      * and the two operands.
      */
-    public LogicalExpr(Expression leftOperand, Token operator, Expression rightOperand)
+    public LogicalExpr(CompilationContext context, Expression leftOperand, Token operator, Expression rightOperand)
       {
-        super(leftOperand, operator, rightOperand);
+        super(context, leftOperand, operator, rightOperand);
 
         InternalAssertion.check(SymbolUtil.isLogicalOperator(operator.getSymbol()),
             "LogicalExpression: operator is not a logical operator.");
@@ -73,7 +74,7 @@ public class LogicalExpr extends BinaryExpr
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
 
         setType(Type.Boolean);
@@ -101,20 +102,20 @@ public class LogicalExpr extends BinaryExpr
         if (operatorSym == Symbol.andRW)
           {
             // if true, branch to code that will evaluate right operand
-            emit("BNZ " + L1);
+            emit(OpCode.BNZ, L1);
 
             // otherwise, place "false" back on top of stack as value
             // for the compound "and" expression
-            emit("LOADCB " + FALSE);
+            emit(OpCode.LOADCB, FALSE);
           }
         else if (operatorSym == Symbol.orRW)
           {
             // if false, branch to code that will evaluate right operand
-            emit("BZ " + L1);
+            emit(OpCode.BZ, L1);
 
             // otherwise, place "true" back on top of stack as value
             // for the compound "or" expression
-            emit("LOADCB " + TRUE);
+            emit(OpCode.LOADCB, TRUE);
           }
         else
           {
@@ -122,7 +123,7 @@ public class LogicalExpr extends BinaryExpr
           }
 
         // branch to code following the expression
-        emit("BR " + L2);
+        emit(OpCode.BR, L2);
 
         // L1:
         emitLabel(L1);
@@ -3,9 +3,10 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -29,9 +30,9 @@ public class LoopStmt extends Statement
      * Default constructor. Construct a loop statement with a null "while"
      * expression and an empty list of statements for the loop body.
      */
-    public LoopStmt()
+    public LoopStmt(CompilationContext context)
       {
-        this(null, new LinkedList<Statement>());
+        this(context, null, new LinkedList<Statement>());
       }
 
 
@@ -40,8 +41,10 @@ public class LoopStmt extends Statement
      * should be null if there is no "while" expression) and list of statements
      * in the loop body.
      */
-    public LoopStmt(Expression whileExpr, List<Statement> statements)
+    public LoopStmt(CompilationContext context, Expression whileExpr, List<Statement> statements)
       {
+        super(context);
+
         this.whileExpr = whileExpr;
         this.statements = statements;
         L1 = getLabel();
@@ -116,7 +119,7 @@ public class LoopStmt extends Statement
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -133,7 +136,7 @@ public class LoopStmt extends Statement
         for (Statement stmt : statements)
           stmt.emit();
 
-        emit("BR " + L1);
+        emit(OpCode.BR, L1);
 
         // L2:
         emitLabel(L2);
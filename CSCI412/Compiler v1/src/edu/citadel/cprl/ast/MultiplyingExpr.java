@@ -3,13 +3,14 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Symbol;
 import edu.citadel.cprl.SymbolUtil;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -26,10 +27,10 @@ public class MultiplyingExpr extends BinaryExpr
      * Construct a multiplying expression with the operator ("*", "/", or "mod")
      * and the two operands.
      */
-    public MultiplyingExpr(Expression leftOperand, Token operator,
+    public MultiplyingExpr(CompilationContext context, Expression leftOperand, Token operator,
         Expression rightOperand)
       {
-        super(leftOperand, operator, rightOperand);
+        super(context, leftOperand, operator, rightOperand);
       }
 
 
@@ -63,7 +64,7 @@ public class MultiplyingExpr extends BinaryExpr
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
 
         // Result must be Integer type
@@ -85,10 +86,10 @@ public class MultiplyingExpr extends BinaryExpr
             "Invalid operator for a multiplying expression.");
 
         if (operatorSym == Symbol.times)
-          emit("MUL");
+          emit(OpCode.MUL);
         else if (operatorSym == Symbol.divide)
-          emit("DIV");
+          emit(OpCode.DIV);
         else if (operatorSym == Symbol.modRW)
-          emit("MOD");
+          emit(OpCode.MOD);
       }
   }
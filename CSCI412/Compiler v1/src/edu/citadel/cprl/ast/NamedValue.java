@@ -3,6 +3,7 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -23,9 +24,9 @@ public class NamedValue extends Variable
      * Construct a named value with a reference to its declaration,
      * its position, and a list of index expressions. 
      */
-    public NamedValue(NamedDecl decl, Position position, List<Expression> indexExprs)
+    public NamedValue(CompilationContext context, NamedDecl decl, Position position, List<Expression> indexExprs)
       {
-        super(decl, position, indexExprs);
+        super(context, decl, position, indexExprs);
       }
     
     
@@ -33,16 +34,31 @@ public class NamedValue extends Variable
      * Construct a named value with a reference to its declaration,
      * position, and an empty list of index expressions. 
      */
-    public NamedValue(NamedDecl decl, Position position)
+    public NamedValue(CompilationContext context, NamedDecl decl, Position position)
       {
-        this(decl, position, new LinkedList<Expression>());
+        this(context, decl, position, new LinkedList<Expression>());
+      }
+
+
+    /**
+     * Emits code that leaves the address of the value on top of the
+     * stack, as for a variable, rather than the value itself.
+     */
+    public void emitAddress() throws CodeGenException, IOException
+      {
+        super.emit();
       }
 
 
     public void emit() throws CodeGenException, IOException
       {
-        super.emit();    // leaves address on top of stack
-        emitLoadInst(getType());
+        if (isDirect())
+            emitDirectLoad();
+        else
+          {
+            super.emit();    // leaves address on top of stack
+            emitLoadInst(getType());
+          }
       }
   }
 
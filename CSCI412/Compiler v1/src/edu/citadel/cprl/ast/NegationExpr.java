@@ -5,10 +5,11 @@ import java.io.IOException;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 
 /**
@@ -22,9 +23,9 @@ public class NegationExpr extends UnaryExpr
      * Construct a negation expression with the specified operator ("-") and
      * operand.
      */
-    public NegationExpr(Token operator, Expression operand)
+    public NegationExpr(CompilationContext context, Token operator, Expression operand)
       {
-        super(operator, operand);
+        super(context, operator, operand);
       }
 
 
@@ -47,7 +48,7 @@ public class NegationExpr extends UnaryExpr
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
         // the result has type integer
         setType(Type.Integer);
@@ -60,6 +61,6 @@ public class NegationExpr extends UnaryExpr
         Expression operand = getOperand();
         operand.emit();
 
-        emit("NEG");
+        emit(OpCode.NEG);
       }
   }
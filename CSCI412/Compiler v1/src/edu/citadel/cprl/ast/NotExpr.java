@@ -3,12 +3,13 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Symbol;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -20,9 +21,9 @@ import java.io.IOException;
  */
 public class NotExpr extends UnaryExpr
   {
-    public NotExpr(Token operator, Expression operand)
+    public NotExpr(CompilationContext context, Token operator, Expression operand)
       {
-        super(operator, operand);
+        super(context, operator, operand);
 
         InternalAssertion.check(operator.getSymbol() == Symbol.notRW,
             "NotExpr: operator is not the reserved word \"not\".");
@@ -50,7 +51,7 @@ public class NotExpr extends UnaryExpr
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
         // the result has type boolean
         setType(Type.Boolean);
@@ -63,6 +64,6 @@ public class NotExpr extends UnaryExpr
         Expression operand = getOperand();
         operand.emit();
 
-        emit("NOT");
+        emit(OpCode.NOT);
       }
   }
@@ -2,7 +2,9 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.CodeGenException;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.List;
 import java.io.IOException;
@@ -16,8 +18,10 @@ public abstract class OutputStmt extends Statement
     private List<Expression> expressions;
 
 
-    public OutputStmt(List<Expression> expressions)
+    public OutputStmt(CompilationContext context, List<Expression> expressions)
       {
+        super(context);
+
         this.expressions = expressions;
       }
 
@@ -57,13 +61,13 @@ public abstract class OutputStmt extends Statement
                 Type exprType = expr.getType();
 
                 if (exprType == Type.Integer)
-                    emit("PUTINT");
+                    emit(OpCode.PUTINT);
                 else if (exprType == Type.Boolean)
-                    emit("PUTBYTE");
+                    emit(OpCode.PUTBYTE);
                 else if (exprType == Type.Char)
-                    emit("PUTCH");
+                    emit(OpCode.PUTCH);
                 else if (exprType == Type.String)
-                    emit("PUTSTR");
+                    emit(OpCode.PUTSTR);
                 else
                     throw new CodeGenException(expr.getPosition(), "Invalid type.");
               }
@@ -2,6 +2,7 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.InternalAssertion;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.ScopeLevel;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
@@ -23,9 +24,9 @@ public class ParameterDecl extends Declaration implements NamedDecl
      * scope level, and a boolean value that indicates if it is a
      * variable parameter declaration.
      */
-    public ParameterDecl(Token paramId, Type type, ScopeLevel scopeLevel, boolean isVarParam)
+    public ParameterDecl(CompilationContext context, Token paramId, Type type, ScopeLevel scopeLevel, boolean isVarParam)
       {
-        super(paramId, type);
+        super(context, paramId, type);
         this.scopeLevel = scopeLevel;
         this.isVarParam = isVarParam;
       }
@@ -3,8 +3,9 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.List;
 import java.util.LinkedList;
@@ -28,9 +29,11 @@ public class ProcedureCallStmt extends Statement
      * procedure, the list of actual parameters being passed as part of the
      * call, and a reference to the declaration of the procedure being called.
      */
-    public ProcedureCallStmt(Token procId, List<Expression> actualParams,
+    public ProcedureCallStmt(CompilationContext context, Token procId, List<Expression> actualParams,
         ProcedureDecl procDecl)
       {
+        super(context);
+
         this.procId = procId;
         this.actualParams = actualParams;
         this.procDecl = procDecl;
@@ -91,7 +94,7 @@ public class ProcedureCallStmt extends Statement
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -103,6 +106,6 @@ public class ProcedureCallStmt extends Statement
         for (Expression expr : actualParams)
           expr.emit();
 
-        emit("CALL " + procDecl.getSubprogramLabel());
+        emit(OpCode.CALL, procDecl.getSubprogramLabel());
       }
   }
@@ -2,7 +2,9 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.CodeGenException;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -15,9 +17,9 @@ public class ProcedureDecl extends SubprogramDecl
     /**
      * Construct a procedure declaration with its name (an identifier).
      */
-    public ProcedureDecl(Token procId)
+    public ProcedureDecl(CompilationContext context, Token procId)
       {
-        super(procId);
+        super(context, procId);
       }
 
 
@@ -26,10 +28,10 @@ public class ProcedureDecl extends SubprogramDecl
       {
         emitLabel(getSubprogramLabel());
         
-        emit("PROC " + getVarLength());
+        emit(OpCode.PROC, getVarLength());
         
-        getStatementPart().emit();
+        emitStatementPart(getStatementPart());
         
-        emit("RET " + getParamLength());          
+        emit(OpCode.RET, getParamLength());          
       }
   }
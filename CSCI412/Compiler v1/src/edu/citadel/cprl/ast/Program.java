@@ -2,6 +2,8 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.CodeGenException;
+import edu.citadel.cprl.CompilationContext;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 import java.util.List;
@@ -19,8 +21,10 @@ public class Program extends AST
     private String L1;
 
 
-    public Program(DeclarativePart declPart, StatementPart stmtPart)
+    public Program(CompilationContext context, DeclarativePart declPart, StatementPart stmtPart)
       {
+        super(context);
+
         this.declPart = declPart;
         this.stmtPart = stmtPart;
 
@@ -42,21 +46,21 @@ public class Program extends AST
     public void emit() throws CodeGenException, IOException
       {
         int varLength = (declPart == null ? 0 : declPart.getVarLength());
-        emit("PROGRAM " + varLength);
+        emit(OpCode.PROGRAM, varLength);
 
         // emit branch over procedures only if necessary
         List<SubprogramDecl> subprogDecls = declPart.getSubprogramDecls();
         if (!subprogDecls.isEmpty())
           {
             // jump over code for subprograms
-            emit("BR " + L1);
+            emit(OpCode.BR, L1);
             declPart.emit();            
             emitLabel(L1);
           }
         else
             declPart.emit();
 
-        stmtPart.emit();
-        emit("HALT");
+        emitStatementPart(stmtPart);
+        emit(OpCode.HALT);
       }
   }
@@ -5,9 +5,10 @@ import java.io.IOException;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 
 /**
@@ -22,8 +23,10 @@ public class ReadStmt extends Statement
      * Construct an input statement with the specified variable for storing the
      * input.
      */
-    public ReadStmt(Variable var)
+    public ReadStmt(CompilationContext context, Variable var)
       {
+        super(context);
+
         this.var = var;
       }
 
@@ -49,7 +52,7 @@ public class ReadStmt extends Statement
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -61,12 +64,12 @@ public class ReadStmt extends Statement
 
         if (var.getType() == Type.Integer)
           {
-            emit("GETINT");
+            emit(OpCode.GETINT);
             emitStoreInst(Type.Integer);
           }
         else if (var.getType() == Type.Char)
           {
-            emit("GETCH");
+            emit(OpCode.GETCH);
             emitStoreInst(Type.Char);
           }
       }
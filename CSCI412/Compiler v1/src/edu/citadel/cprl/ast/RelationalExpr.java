@@ -3,13 +3,14 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Symbol;
 import edu.citadel.cprl.SymbolUtil;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.io.IOException;
 
@@ -30,9 +31,9 @@ public class RelationalExpr extends BinaryExpr
      * Construct a relational expression with the operator ("=", "&lt;=", etc.)
      * and the two operands.
      */
-    public RelationalExpr(Expression leftOperand, Token operator, Expression rightOperand)
+    public RelationalExpr(CompilationContext context, Expression leftOperand, Token operator, Expression rightOperand)
       {
-        super(leftOperand, operator, rightOperand);
+        super(context, leftOperand, operator, rightOperand);
 
         InternalAssertion.check(SymbolUtil.isRelationalOperator(operator.getSymbol()),
             "RelationalExpr: operator is not a relational operator");
@@ -96,7 +97,7 @@ public class RelationalExpr extends BinaryExpr
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
         // result has type boolean
         setType(Type.Boolean);
@@ -109,16 +110,16 @@ public class RelationalExpr extends BinaryExpr
         emitBranch(false, L1);
 
         // emit true
-        emit("LOADCB " + TRUE);
+        emit(OpCode.LOADCB, TRUE);
 
         // jump over code to emit false
-        emit("BR " + L2);
+        emit(OpCode.BR, L2);
 
         // L1:
         emitLabel(L1);
 
         // emit false
-        emit("LOADCB " + FALSE);
+        emit(OpCode.LOADCB, FALSE);
 
         // L2:
         emitLabel(L2);
@@ -132,22 +133,22 @@ public class RelationalExpr extends BinaryExpr
         Token operator = getOperator();
 
         emitOperands();
-        emit("CMP");
+        emit(OpCode.CMP);
 
         Symbol operatorSym = operator.getSymbol();
 
         if (operatorSym == Symbol.equals)
-          emit(condition ? "BZ " + label : "BNZ " + label);
+          emit(condition ? OpCode.BZ : OpCode.BNZ, label);
         else if (operatorSym == Symbol.notEqual)
-          emit(condition ? "BNZ " + label : "BZ " + label);
+          emit(condition ? OpCode.BNZ : OpCode.BZ, label);
         else if (operatorSym == Symbol.lessThan)
-          emit(condition ? "BL " + label : "BGE " + label);
+          emit(condition ? OpCode.BL : OpCode.BGE, label);
         else if (operatorSym == Symbol.lessOrEqual)
-          emit(condition ? "BLE " + label : "BG " + label);
+          emit(condition ? OpCode.BLE : OpCode.BG, label);
         else if (operatorSym == Symbol.greaterThan)
-          emit(condition ? "BG " + label : "BLE " + label);
+          emit(condition ? OpCode.BG : OpCode.BLE, label);
         else if (operatorSym == Symbol.greaterOrEqual)
-          emit(condition ? "BGE " + label : "BL " + label);
+          emit(condition ? OpCode.BGE : OpCode.BL, label);
         else
           throw new CodeGenException(operator.getPosition(),
               "Invalid relational operator.");
@@ -163,13 +164,13 @@ public class RelationalExpr extends BinaryExpr
         // that we have enough bytes on the stack. Pad with zero bytes.
         int leftOperandSize = leftOperand.getType().getSize();
         for (int n = 1; n <= (Type.Integer.getSize() - leftOperandSize); ++n)
-          emit("LOADCB " + 0);
+          emit(OpCode.LOADCB, 0);
 
         leftOperand.emit();
 
         int rightOperandSize = rightOperand.getType().getSize();
         for (int n = 1; n <= (Type.Integer.getSize() - rightOperandSize); ++n)
-          emit("LOADCB " + 0);
+          emit(OpCode.LOADCB, 0);
 
         rightOperand.emit();
       }
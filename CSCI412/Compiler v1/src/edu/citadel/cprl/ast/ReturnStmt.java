@@ -5,8 +5,9 @@ import java.io.IOException;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.Position;
+import edu.citadel.cprl.CompilationContext;
+import edu.citadel.cprlvm.OpCode;
 
 
 /**
@@ -25,9 +26,11 @@ public class ReturnStmt extends Statement
      * 
      * @param returnPosition
      */
-    public ReturnStmt(SubprogramDecl subprogramDecl, Expression returnExpr,
+    public ReturnStmt(CompilationContext context, SubprogramDecl subprogramDecl, Expression returnExpr,
         Position returnPosition)
       {
+        super(context);
+
         this.subprogramDecl = subprogramDecl;
         this.returnExpr = returnExpr;
         this.returnPositon = returnPosition;
@@ -91,7 +94,7 @@ public class ReturnStmt extends Statement
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
@@ -104,7 +107,7 @@ public class ReturnStmt extends Statement
           {
             // load address on the function
             FunctionDecl funcDecl = (FunctionDecl) subprogramDecl;
-            emit("LDADDR " + funcDecl.getRelAddr());
+            emit(OpCode.LDADDR, funcDecl.getRelAddr());
           }
 
         if (returnExpr != null)
@@ -112,6 +115,6 @@ public class ReturnStmt extends Statement
 
         emitStoreInst(subprogramDecl.getType());
 
-        emit("RET " + subprogramDecl.getParamLength());
+        emit(OpCode.RET, subprogramDecl.getParamLength());
       }
   }
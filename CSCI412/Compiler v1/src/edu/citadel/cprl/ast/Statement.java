@@ -1,9 +1,16 @@
 package edu.citadel.cprl.ast;
 
 
+import edu.citadel.cprl.CompilationContext;
+
+
 /**
  * Base class for all CPRL statements.
  */
 public abstract class Statement extends AST
   {
+    public Statement(CompilationContext context)
+      {
+        super(context);
+      }
   }
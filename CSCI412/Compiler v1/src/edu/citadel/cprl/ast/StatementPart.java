@@ -2,6 +2,7 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.CodeGenException;
+import edu.citadel.cprl.CompilationContext;
 
 import java.util.List;
 import java.util.LinkedList;
@@ -20,8 +21,10 @@ public class StatementPart extends AST
      * Construct a StatementPart with empty list of statements. and
      * ProcedureDeclPart.
      */
-    public StatementPart()
+    public StatementPart(CompilationContext context)
       {
+        super(context);
+
         statements = new LinkedList<>();
       }
 
@@ -29,8 +32,10 @@ public class StatementPart extends AST
     /**
      * Construct a statement part with the specified list of statements.
      */
-    public StatementPart(List<Statement> statements)
+    public StatementPart(CompilationContext context, List<Statement> statements)
       {
+        super(context);
+
         this.statements = statements;
       }
 
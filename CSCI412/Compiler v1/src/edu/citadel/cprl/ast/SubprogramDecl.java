@@ -1,6 +1,7 @@
 package edu.citadel.cprl.ast;
 
 
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprlvm.Constants;
 
@@ -25,9 +26,9 @@ public abstract class SubprogramDecl extends Declaration
     /**
      * Construct a subprogram declaration with the specified subprogram identifier.
      */
-    public SubprogramDecl(Token subprogId)
+    public SubprogramDecl(CompilationContext context, Token subprogId)
       {
-        super(subprogId);
+        super(context, subprogId);
 
         this.formalParams = new LinkedList<>();
         this.initialDecls = null;
@@ -159,5 +160,7 @@ public abstract class SubprogramDecl extends Declaration
                 decl.setRelAddr(currentAddr);
               }
           }
+
+        getContext().setParamLength(L1, getParamLength());
       }
   }
@@ -1,6 +1,7 @@
 package edu.citadel.cprl.ast;
 
 
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.ScopeLevel;
 import edu.citadel.cprl.Token;
 import edu.citadel.cprl.Type;
@@ -23,13 +24,13 @@ public class VarDecl extends InitialDecl
     /**
      * Construct a VarDecl with its list of identifier tokens, type, and scope level
      */
-    public VarDecl(List<Token> identifiers, Type varType, ScopeLevel scopeLevel)
+    public VarDecl(CompilationContext context, List<Token> identifiers, Type varType, ScopeLevel scopeLevel)
       {
-        super(null, varType);
+        super(context, null, varType);
         
         singleVarDecls = new ArrayList<SingleVarDecl>(identifiers.size());
         for (Token id : identifiers)
-            singleVarDecls.add(new SingleVarDecl(id, varType, scopeLevel));
+            singleVarDecls.add(new SingleVarDecl(context, id, varType, scopeLevel));
       }
 
 
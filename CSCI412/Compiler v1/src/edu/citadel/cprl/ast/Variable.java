@@ -3,12 +3,13 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.ConstraintException;
-import edu.citadel.compiler.ErrorHandler;
 import edu.citadel.compiler.InternalAssertion;
 import edu.citadel.compiler.Position;
 import edu.citadel.cprl.ArrayType;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.ScopeLevel;
 import edu.citadel.cprl.Type;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.List;
 import java.util.LinkedList;
@@ -29,9 +30,9 @@ public class Variable extends Expression
      * Construct a variable with a reference to its declaration,
      * its position, and a list of index expressions. 
      */
-    public Variable(NamedDecl decl, Position position, List<Expression> indexExprs)
+    public Variable(CompilationContext context, NamedDecl decl, Position position, List<Expression> indexExprs)
       {
-        super(decl.getType(), position);
+        super(context, decl.getType(), position);
 
         this.decl       = decl;
         this.indexExprs = indexExprs;
@@ -42,9 +43,9 @@ public class Variable extends Expression
      * Construct a variable with a reference to its declaration,
      * position, and an empty list of index expressions. 
      */
-    public Variable(NamedDecl decl, Position position)
+    public Variable(CompilationContext context, NamedDecl decl, Position position)
       {
-        this(decl, position, new LinkedList<Expression>());
+        this(context, decl, position, new LinkedList<Expression>());
       }
 
 
@@ -53,7 +54,7 @@ public class Variable extends Expression
      */
     public Variable(NamedValue nv)
       {
-        this(nv.getDecl(), nv.getPosition(), nv.getIndexExprs());
+        this(nv.getContext(), nv.getDecl(), nv.getPosition(), nv.getIndexExprs());
       }
 
 
@@ -126,20 +127,81 @@ public class Variable extends Expression
           }
         catch (ConstraintException e)
           {
-            ErrorHandler.getInstance().reportError(e);
+            getErrorHandler().reportError(e);
           }
       }
 
 
+    /**
+     * Returns true if the value of this variable can be loaded and stored
+     * directly, at a fixed displacement from the frame or from the start
+     * of the global variables.  This is not the case for a var parameter,
+     * an indexed array, or a value whose size is not 4, 2, or 1 bytes.
+     */
+    public boolean isDirect()
+      {
+        if (decl instanceof ParameterDecl && ((ParameterDecl)decl).isVarParam())
+            return false;
+
+        int numBytes = getType().getSize();
+        return indexExprs.isEmpty() && (numBytes == 4 || numBytes == 2 || numBytes == 1);
+      }
+
+
+    /**
+     * Emits the direct load instruction (LDMEM or LDGMEM) for this variable,
+     * which leaves its value on the top of the stack.  Applies only if
+     * isDirect() returns true.
+     */
+    public void emitDirectLoad()
+      {
+        if (decl.getScopeLevel() == ScopeLevel.PROGRAM)
+            emitDirect(OpCode.LDGMEM, OpCode.LDGMEM2B, OpCode.LDGMEMB);
+        else
+            emitDirect(OpCode.LDMEM, OpCode.LDMEM2B, OpCode.LDMEMB);
+      }
+
+
+    /**
+     * Emits the direct store instruction (STMEM or STGMEM) for this variable,
+     * which pops the value on the top of the stack into the variable.
+     * Applies only if isDirect() returns true.
+     */
+    public void emitDirectStore()
+      {
+        if (decl.getScopeLevel() == ScopeLevel.PROGRAM)
+            emitDirect(OpCode.STGMEM, OpCode.STGMEM2B, OpCode.STGMEMB);
+        else
+            emitDirect(OpCode.STMEM, OpCode.STMEM2B, OpCode.STMEMB);
+      }
+
+
+    /**
+     * Emits the word, char, or byte form of a direct instruction,
+     * whichever matches the size of this variable.
+     */
+    private void emitDirect(byte wordOpCode, byte charOpCode, byte byteOpCode)
+      {
+        int numBytes = getType().getSize();
+
+        if (numBytes == 2)
+            emit(charOpCode, decl.getRelAddr());
+        else if (numBytes == 1)
+            emit(byteOpCode, decl.getRelAddr());
+        else
+            emit(wordOpCode, decl.getRelAddr());
+      }
+
+
     @Override
     public void emit() throws CodeGenException, IOException
       {       
         if (decl instanceof ParameterDecl && ((ParameterDecl)decl).isVarParam())
-            emit("LDMEM " + decl.getRelAddr());
+            emit(OpCode.LDMEM, decl.getRelAddr());
         else if (decl.getScopeLevel() == ScopeLevel.PROGRAM)
-            emit("LDGADDR " + decl.getRelAddr());
+            emit(OpCode.LDGADDR, decl.getRelAddr());
         else
-            emit("LDADDR " + decl.getRelAddr());
+            emit(OpCode.LDADDR, decl.getRelAddr());
 
         // For an array, at this point the base address of the array
         // is on the top of the stack.  We need to replace it by the
@@ -156,15 +218,15 @@ public class Variable extends Expression
             // multiply by size of array base type to get offset
             if (arrayType.getElementType().getSize() != 1)
               {
-                emit("LDCINT " + arrayType.getElementType().getSize());
-                emit("MUL");
+                emit(OpCode.LDCINT, arrayType.getElementType().getSize());
+                emit(OpCode.MUL);
               }
 
             // Note: No code to perform bounds checking for the index to
             // ensure that the index is >= 0 and < number of elements.
 
             // add offset to the base address
-            emit("ADD");
+            emit(OpCode.ADD);
 
             declType = arrayType.getElementType();
           }
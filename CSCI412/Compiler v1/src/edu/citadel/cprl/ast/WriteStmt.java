@@ -3,6 +3,7 @@ package edu.citadel.cprl.ast;
 
 import edu.citadel.compiler.CodeGenException;
 import edu.citadel.compiler.InternalAssertion;
+import edu.citadel.cprl.CompilationContext;
 
 import java.util.List;
 import java.io.IOException;
@@ -13,9 +14,9 @@ import java.io.IOException;
  */
 public class WriteStmt extends OutputStmt
   {
-    public WriteStmt(List<Expression> expressions)
+    public WriteStmt(CompilationContext context, List<Expression> expressions)
       {
-        super(expressions);
+        super(context, expressions);
       }
 
 
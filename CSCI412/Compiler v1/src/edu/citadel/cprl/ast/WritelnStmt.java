@@ -2,6 +2,8 @@ package edu.citadel.cprl.ast;
 
 
 import edu.citadel.compiler.CodeGenException;
+import edu.citadel.cprl.CompilationContext;
+import edu.citadel.cprlvm.OpCode;
 
 import java.util.List;
 import java.io.IOException;
@@ -12,9 +14,9 @@ import java.io.IOException;
  */
 public class WritelnStmt extends OutputStmt
   {
-    public WritelnStmt(List<Expression> expressions)
+    public WritelnStmt(CompilationContext context, List<Expression> expressions)
       {
-        super(expressions);
+        super(context, expressions);
       }
 
 
@@ -30,6 +32,6 @@ public class WritelnStmt extends OutputStmt
       {
         super.emit();
         
-        emit("PUTEOL ");
+        emit(OpCode.PUTEOL);
       }
   }
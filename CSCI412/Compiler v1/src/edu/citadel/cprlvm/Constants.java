@@ -17,4 +17,11 @@ public class Constants
 
     /** frame contains 2 integers -- return address and dynamic link */
     public static final int BYTES_PER_FRAME   = 2*BYTES_PER_INTEGER;
+
+    /**
+     * bytes of memory reserved above the stack limit; the stack is checked
+     * against the limit once per frame, and the pushes made between checks
+     * must fit in this guard region
+     */
+    public static final int STACK_GUARD_SIZE  = 1024;
   }
@@ -1,9 +1,13 @@
 package edu.citadel.cprlvm;
 
 
-import edu.citadel.compiler.util.ByteUtil;
+import edu.citadel.cprlvm.jit.CompiledCode;
+import edu.citadel.cprlvm.jit.CompiledLoop;
+import edu.citadel.cprlvm.jit.JitCompiler;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 
 /**
@@ -35,8 +39,23 @@ public class CprlVm
     /** 1K = 2**10 */
     private static final int K = 1024;
 
-    /** virtual machine constant for false */
-    private static final int DEFAULT_MEMORY_SIZE = 8*K;
+    /** default number of bytes of memory */
+    static final int DEFAULT_MEMORY_SIZE = 8*K;
+
+    /** number of bytes for the stack of a program that does not request a size */
+    private static final int DEFAULT_STACK_SIZE = 8*K;
+
+    /** largest number of bytes that memory is grown to */
+    private static final int MAX_MEMORY_SIZE = K*K*K;
+
+    /** memory is not grown beyond this fraction of the JVM heap */
+    private static final int HEAP_FRACTION_FOR_GROWTH = 4;
+
+    /** instruction budget for a run that is not preempted */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    /** bytes of JVM stack per byte of memory for running compiled code */
+    private static final int JIT_STACK_BYTES_PER_BYTE = 16;
 
     /** computer memory (for the virtual CPRL machine) */
     private byte[] memory;
@@ -47,263 +66,1882 @@ public class CprlVm
     /** base pointer */
     private int bp;
 
-    /** stack pointer (index of the top of the stack) */
-    private int sp;
+    /** stack pointer (index of the top of the stack) */
+    private int sp;
+
+    /** bottom of the stack */
+    private int sb;
+
+    /** largest value of sp that passes a stack check (see checkStack()) */
+    private int stackLimit;
+
+    /** true if memory is enlarged when the stack reaches its limit */
+    private boolean memoryGrowthEnabled;
+
+    /** true if the virtual computer is currently running */
+    private boolean running;
+
+    /** true if the program has executed HALT */
+    private boolean halted;
+
+    /** instructions left in the budget of the current run (see charge()) */
+    private long budget;
+
+    /** instructions charged to the program so far */
+    private long instructionCount;
+
+    /** the memory of runWordAddressed() while it is preempted, or null */
+    private int[] words;
+
+    /** the channels used by the I/O instructions */
+    private VmIO io;
+
+    /** true if the program should be run by the pre-decoded execution engine */
+    private boolean decodingEnabled;
+
+    /** true if common instruction sequences should be fused when decoding */
+    private boolean fusionEnabled;
+
+    /** true if word-aligned programs should be run with word-addressed memory */
+    private boolean wordMemoryEnabled;
+
+    /** the decoded code segment, or null if the code could not be decoded */
+    private DecodedProgram decodedProgram;
+
+    /** true if hot subprograms should be compiled to JVM bytecode */
+    private boolean jitEnabled;
+
+    /** the JIT compiler for the current run, or null if not enabled */
+    private JitCompiler jitCompiler;
+
+    /** true if the program should be profiled */
+    private boolean profilingEnabled;
+
+    /** the profiler for the loaded program, or null if it is not profiled */
+    private VmProfiler profiler;
+
+
+    /**
+     * This method constructs a CPRL virtual machine, loads the byte code
+     * from the specified file into memory, and runs the byte code. <br>
+     * Usage:  java CprlVm [-interpret | -jit | -word-memory] [-memory size] [-grow]
+     * [-fusion-report] [-jit-report] [-profile] [-profile-stacks file] filename <br>
+     * where filename is the name of a file containing the byte code
+     * for a CPRL program.  By default the program is run by the
+     * pre-decoded execution engine; option -interpret selects the
+     * byte-level interpreter instead, and option -jit additionally
+     * compiles hot subprograms and loops to JVM bytecode.  Option
+     * -jit-report implies -jit and prints what was compiled when the
+     * program stops.  Option -word-memory runs programs that use only
+     * integer variables with memory organized as 4-byte words.  Option
+     * -memory sets the number of bytes of memory (for example 65536,
+     * 64K or 16M; the default is 8K), and option
+     * -grow enlarges memory as needed when the stack overflows.  Option
+     * -fusion-report prints the superinstructions formed when the program
+     * was decoded.  Option -profile prints a profile of the instructions
+     * executed (see VmProfiler) when the program stops, and option
+     * -profile-stacks writes the profile to a file as folded stacks
+     * for a flame graph.
+     */
+    public static void main(String[] args)
+      {
+        boolean decodingEnabled = true;
+        boolean jitEnabled = false;
+        boolean wordMemoryEnabled = false;
+        boolean memoryGrowthEnabled = false;
+        boolean fusionReport = false;
+        boolean jitReport = false;
+        boolean profileReport = false;
+        String  profileStacksFileName = null;
+        int     memorySize = DEFAULT_MEMORY_SIZE;
+        String  fileName = null;
+
+        for (int i = 0;  i < args.length;  ++i)
+          {
+            String arg = args[i];
+
+            if (arg.equals("-interpret"))
+                decodingEnabled = false;
+            else if (arg.equals("-jit"))
+                jitEnabled = true;
+            else if (arg.equals("-word-memory"))
+                wordMemoryEnabled = true;
+            else if (arg.equals("-memory") && i + 1 < args.length)
+                memorySize = parseMemorySize(args[++i]);
+            else if (arg.equals("-grow"))
+                memoryGrowthEnabled = true;
+            else if (arg.equals("-fusion-report"))
+                fusionReport = true;
+            else if (arg.equals("-jit-report"))
+              {
+                jitEnabled = true;
+                jitReport  = true;
+              }
+            else if (arg.equals("-profile"))
+                profileReport = true;
+            else if (arg.equals("-profile-stacks") && i + 1 < args.length)
+                profileStacksFileName = args[++i];
+            else if (fileName == null && !arg.startsWith("-"))
+                fileName = arg;
+            else
+                printUsageMessageAndExit();
+          }
+
+        if (fileName == null)
+            printUsageMessageAndExit();
+
+        final CprlVm vm = new CprlVm(memorySize);
+        vm.setDecodingEnabled(decodingEnabled);
+        vm.setJitEnabled(jitEnabled);
+        vm.setWordMemoryEnabled(wordMemoryEnabled);
+        vm.setMemoryGrowthEnabled(memoryGrowthEnabled);
+        vm.setProfilingEnabled(profileReport || profileStacksFileName != null);
+
+        try
+          {
+            vm.loadProgram(new File(fileName));
+          }
+        catch (VmException e)
+          {
+            exitWithFault(e);
+          }
+
+        if (fusionReport && vm.decodedProgram != null)
+            vm.decodedProgram.printFusionReport(System.err);
+
+        if (vm.profilingEnabled)
+            runAndProfile(vm, profileReport, profileStacksFileName);
+        else if (jitEnabled && !memoryGrowthEnabled)
+          {
+            // compiled subprograms call each other on the JVM stack, so give
+            // them a thread whose stack is in proportion to memory
+            long stackSize = JIT_STACK_BYTES_PER_BYTE*(long) vm.getMemorySize();
+            final boolean report = jitReport;
+            Thread thread = new Thread(null, () -> runOrExit(vm, report), "cprlvm", stackSize);
+            thread.start();
+
+            try
+              {
+                thread.join();
+              }
+            catch (InterruptedException e)
+              {
+                Thread.currentThread().interrupt();
+              }
+          }
+        else
+            runOrExit(vm, jitReport);
+      }
+
+
+    /**
+     * Runs the program loaded into a virtual machine, and exits with
+     * nonzero status code if it faults.  If jitReport is true, what the
+     * JIT compiler compiled is printed when the program stops.
+     */
+    private static void runOrExit(CprlVm vm, boolean jitReport)
+      {
+        try
+          {
+            vm.run();
+          }
+        catch (VmException e)
+          {
+            printJitReport(vm, jitReport);
+            exitWithFault(e);
+          }
+
+        printJitReport(vm, jitReport);
+      }
+
+
+    private static void printJitReport(CprlVm vm, boolean jitReport)
+      {
+        if (!jitReport)
+            return;
+
+        JitCompiler jitCompiler = vm.getJitCompiler();
+        if (jitCompiler == null)
+            System.err.println("*** No JIT report:  the program was not run with the JIT compiler ***");
+        else
+            jitCompiler.printReport(System.err);
+      }
+
+
+    /**
+     * Runs the program loaded into a virtual machine with profiling enabled,
+     * writes the profile whether or not the program faults, and exits with
+     * nonzero status code if it faults.
+     */
+    private static void runAndProfile(CprlVm vm, boolean report, String stacksFileName)
+      {
+        VmException fault = null;
+
+        try
+          {
+            vm.run();
+          }
+        catch (VmException e)
+          {
+            fault = e;
+          }
+
+        VmProfiler profiler = vm.getProfiler();
+        if (profiler == null)
+            System.err.println("*** No profile:  the program could not be decoded ***");
+        else
+          {
+            if (report)
+                profiler.printReport(System.err);
+
+            if (stacksFileName != null)
+              {
+                try (PrintStream out = new PrintStream(new FileOutputStream(stacksFileName)))
+                  {
+                    profiler.printFoldedStacks(out);
+                  }
+                catch (IOException e)
+                  {
+                    System.err.println("*** Can't write profile:  " + e.getMessage() + " ***");
+                  }
+              }
+          }
+
+        if (fault != null)
+            exitWithFault(fault);
+      }
+
+
+    private static void exitWithFault(VmException e)
+      {
+        System.err.println(e.getMessage());
+        System.exit(1);
+      }
+
+
+    /**
+     * Returns the number of bytes in a memory size given on the command
+     * line, which may end with K (kilobytes) or M (megabytes).
+     */
+    private static int parseMemorySize(String size)
+      {
+        int multiplier = 1;
+        String digits  = size;
+
+        if (size.endsWith("K") || size.endsWith("k"))
+            multiplier = K;
+        else if (size.endsWith("M") || size.endsWith("m"))
+            multiplier = K*K;
+
+        if (multiplier > 1)
+            digits = size.substring(0, size.length() - 1);
+
+        try
+          {
+            long numBytes = Long.parseLong(digits)*multiplier;
+            if (numBytes > 0 && numBytes <= MAX_MEMORY_SIZE)
+                return (int) numBytes;
+          }
+        catch (NumberFormatException e)
+          {
+            // reported below
+          }
+
+        System.err.println("Invalid memory size: " + size);
+        printUsageMessageAndExit();
+        return 0;
+      }
+
+
+    private static void printUsageMessageAndExit()
+      {
+        System.err.println("Usage:  java CprlVm [-interpret | -jit | -word-memory] [-memory size] [-grow]");
+        System.err.println("        [-fusion-report] [-jit-report] [-profile] [-profile-stacks file] filename");
+
+        // stop the VM with a nonzero status code
+        System.exit(FAILURE);
+      }
+
+
+    /**
+     * Construct a CPRL virtual machine with a given number of bytes of memory.
+     * 
+     * @param numOfBytes the number of bytes in memory of the virtual machine
+     */
+    public CprlVm(int numOfBytes)
+      {
+        // create and zero out memory
+        memory = new byte[numOfBytes];
+        for (int i = 0;  i < memory.length;  ++i)
+            memory[i] = 0;
+
+        stackLimit = memory.length - 1 - Constants.STACK_GUARD_SIZE;
+        memoryGrowthEnabled = false;
+
+        // initialize registers
+        pc = 0;
+        bp = 0;
+        sp = 0;
+        sb = 0;
+
+        running = false;
+        halted  = false;
+        io = new VmIO();
+        decodingEnabled = true;
+        fusionEnabled   = true;
+        wordMemoryEnabled = false;
+        decodedProgram  = null;
+        jitEnabled  = false;
+        jitCompiler = null;
+        profilingEnabled = false;
+        profiler = null;
+      }
+
+
+    /**
+     * Selects the execution engine used by run().  If enabled (the default),
+     * the code segment is run from its pre-decoded form; otherwise it is run
+     * by the byte-level interpreter.  The byte-level interpreter is also used
+     * whenever the code segment could not be decoded.
+     */
+    public void setDecodingEnabled(boolean decodingEnabled)
+      {
+        this.decodingEnabled = decodingEnabled;
+      }
+
+
+    /**
+     * Selects whether common instruction sequences are fused into
+     * superinstructions when the program is decoded (the default).
+     * Must be called before loadProgram().
+     */
+    public void setFusionEnabled(boolean fusionEnabled)
+      {
+        this.fusionEnabled = fusionEnabled;
+      }
+
+
+    /**
+     * Selects word-addressed memory.  If enabled, and the decoded program
+     * only makes word accesses at word-aligned addresses, the program is
+     * run with its data kept in an array of ints rather than an array of
+     * bytes.  Other programs are run with byte memory as usual.  Word
+     * memory is not used together with the byte-level interpreter or JIT
+     * compilation.
+     */
+    public void setWordMemoryEnabled(boolean wordMemoryEnabled)
+      {
+        this.wordMemoryEnabled = wordMemoryEnabled;
+      }
+
+
+    /**
+     * Selects whether memory is enlarged when the stack reaches its limit.
+     * If enabled, memory is doubled in size (or more, if needed) up to a
+     * limit of 1 gigabyte or a quarter of the JVM heap, whichever is less;
+     * otherwise a stack overflow is a fault (the default).  Whether or not
+     * growth is enabled, memory is enlarged when a program is loaded if
+     * the program does not fit (see loadProgram()).  JIT compilation is
+     * not used when growth is enabled, since compiled code keeps a
+     * reference to memory for the duration of a call.
+     */
+    public void setMemoryGrowthEnabled(boolean memoryGrowthEnabled)
+      {
+        this.memoryGrowthEnabled = memoryGrowthEnabled;
+      }
+
+
+    /**
+     * Returns the number of bytes of memory, which can change while
+     * a program runs if memory growth is enabled.  When a program runs
+     * with word-addressed memory, the stack is held in words, so the
+     * size is that of the code plus the words.
+     */
+    public int getMemorySize()
+      {
+        if (words != null)
+            return sb + words.length*Constants.BYTES_PER_WORD;
+        else
+            return memory.length;
+      }
+
+
+    /**
+     * Sets the channels used by the I/O instructions.  By default the
+     * virtual machine reads from standard input and writes to standard
+     * output.
+     */
+    public void setIO(VmIO io)
+      {
+        this.io = io;
+      }
+
+
+    /**
+     * Returns the channels used by the I/O instructions.
+     */
+    public VmIO getIO()
+      {
+        return io;
+      }
+
+
+    /**
+     * Enables tiered execution.  If enabled, the pre-decoded execution
+     * engine counts calls and backward branches, and subprograms and
+     * loops that become hot are compiled to JVM bytecode and run directly.
+     * Has no effect when the byte-level interpreter is used.
+     */
+    public void setJitEnabled(boolean jitEnabled)
+      {
+        this.jitEnabled = jitEnabled;
+      }
+
+
+    /**
+     * Enables profiling (see VmProfiler).  If enabled, the program is run
+     * by the pre-decoded execution engine in its unfused form, with a
+     * counter at the start of each basic block; superinstructions, word
+     * memory, and JIT compilation are not used.  If not enabled (the
+     * default), the program runs without any counting.  Has no effect
+     * when the byte-level interpreter is used.  Must be called before
+     * the program is first run.
+     */
+    public void setProfilingEnabled(boolean profilingEnabled)
+      {
+        this.profilingEnabled = profilingEnabled;
+      }
+
+
+    /**
+     * Returns the JIT compiler used by the last run, or null if the
+     * program has not been run with JIT compilation.
+     */
+    public JitCompiler getJitCompiler()
+      {
+        return jitCompiler;
+      }
+
+
+    /**
+     * Returns the profiler for the loaded program, or null if the
+     * program has not been run with profiling enabled.
+     */
+    public VmProfiler getProfiler()
+      {
+        return profiler;
+      }
+
+
+    /**
+     * Loads the program in an object file into memory.  The file is mapped
+     * into memory, and its code is copied into the memory of the virtual
+     * machine with a single bulk copy.
+     *
+     * @param codeFile the object file (see ObjectFile)
+     */
+    public void loadProgram(File codeFile)
+      {
+        try
+          {
+            loadProgram(ObjectFile.read(codeFile));
+          }
+        catch (IOException e)
+          {
+            error(e.toString());
+          }
+      }
+
+
+    /**
+     * Loads the program into memory.
+     * 
+     * @param codeFile the InputStream containing the object code, either
+     *                 an object file or the code section alone
+     */
+    public void loadProgram(InputStream codeFile)
+      {
+        try
+          {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4*K];
+            int    length;
+
+            while ((length = codeFile.read(buffer)) != EOF)
+                bytes.write(buffer, 0, length);
+
+            codeFile.close();
+
+            loadProgram(ObjectFile.read(ByteBuffer.wrap(bytes.toByteArray())));
+          }
+        catch (IOException e)
+          {
+            error(e.toString());
+          }
+      }
+
+
+    /**
+     * Loads the program in an object file into memory.
+     */
+    public void loadProgram(ObjectFile objectFile)
+      {
+        loadProgram(new ProgramImage(objectFile, fusionEnabled));
+      }
+
+
+    /**
+     * Loads a program image into memory.  The image is not modified, so
+     * the same image can be loaded into many virtual machines.  If the
+     * program needs more memory than the virtual machine has, memory is
+     * enlarged to the size of the code plus the stack size requested in
+     * the object file, or DEFAULT_STACK_SIZE if the object file leaves the
+     * stack size to the virtual machine (plus the guard region above the
+     * stack limit).
+     */
+    public void loadProgram(ProgramImage image)
+      {
+        int codeSize  = image.getCodeSize();
+        int stackSize = image.getStackSize();
+
+        if (stackSize == 0)
+            stackSize = DEFAULT_STACK_SIZE;
+
+        long required = (long) codeSize + stackSize + Constants.STACK_GUARD_SIZE;
+
+        if (required > memory.length)
+          {
+            if (required <= MAX_MEMORY_SIZE)
+                memory = new byte[(int) required];
+            else
+                error("*** Out of memory:  the program needs more than "
+                      + MAX_MEMORY_SIZE + " bytes ***");
+          }
+
+        stackLimit = memory.length - 1 - Constants.STACK_GUARD_SIZE;
+
+        image.getCode(memory);
+
+        pc = image.getEntry();
+        bp = codeSize;
+        sb = codeSize;
+        sp = bp - 1;
+
+        halted = false;
+        instructionCount = 0;
+        words = null;
+
+        decodedProgram = image.getDecodedProgram();
+        profiler = null;
+      }
+
+
+    /**
+     * Runs the program currently in memory until it halts.
+     */
+    public void run()
+      {
+        run(UNLIMITED);
+      }
+
+
+    /**
+     * Runs the program currently in memory until it halts or has used up
+     * the specified number of instructions, whichever comes first.  If the
+     * program is preempted because its budget was used up, it can be
+     * resumed by calling run() again.  Settings such as the execution
+     * engine must not be changed while a program is preempted.
+     *
+     * <p>Instructions are counted only at taken backward branches, which
+     * charge the length of the loop that they close, and at calls, which
+     * charge one instruction; straight-line code is not counted as it is
+     * executed.  The count is therefore approximate, and the byte-level
+     * interpreter measures the length of a loop in bytes rather than in
+     * instructions.  JIT compilation is not used unless the budget is
+     * UNLIMITED, since compiled code can't be preempted.
+     *
+     * @return true if the program halted, or false if it was preempted.
+     */
+    public boolean run(long instructionBudget)
+      {
+        if (halted)
+            return true;
+
+        if (profilingEnabled && profiler == null && decodingEnabled && decodedProgram != null)
+          {
+            // swap in the instrumented program; it has the same addresses
+            profiler = new VmProfiler(decodedProgram, pc);
+            decodedProgram = profiler.getInstrumentedProgram();
+          }
+
+        boolean jit = jitEnabled && !memoryGrowthEnabled && instructionBudget == UNLIMITED
+                   && profiler == null;
+        budget = instructionBudget;
+
+        try
+          {
+            if (decodingEnabled && decodedProgram != null)
+              {
+                if (wordMemoryEnabled && !jit && profiler == null && decodedProgram.isWordAligned())
+                    runWordAddressed();
+                else
+                  {
+                    jitCompiler = jit ? new JitCompiler(decodedProgram) : null;
+                    runDecoded();
+                  }
+              }
+            else
+                runInterpreted();
+          }
+        finally
+          {
+            instructionCount = instructionCount + (instructionBudget - budget);
+          }
+
+        return halted;
+      }
+
+
+    /**
+     * Returns true if the program has executed HALT.
+     */
+    public boolean isHalted()
+      {
+        return halted;
+      }
+
+
+    /**
+     * Returns the number of instructions charged to the program since it
+     * was loaded, counted approximately as described for run(long).
+     */
+    public long getInstructionCount()
+      {
+        return instructionCount;
+      }
+
+
+    /**
+     * Runs the program from its decoded form.  Operands have already been
+     * reassembled and branch displacements resolved to instruction indices,
+     * so each instruction costs one array-indexed dispatch.  The registers
+     * bp and sp, and the return addresses saved in each frame, keep their
+     * byte-address meaning so that memory has exactly the same layout as
+     * it has under the byte-level interpreter.
+     *
+     * <p>The operand of the current instruction, args[ip - 1], is read by
+     * the cases that use it rather than once before the dispatch, which
+     * keeps the load off the path of the many instructions that have no
+     * operand.  The budget and the JIT compiler are consulted only at
+     * calls and backward branches (see branchTo()), and the stack only
+     * when a frame is entered or enlarged (see checkStack()).
+     */
+    private void runDecoded()
+      {
+        int[] ops   = decodedProgram.getOps();
+        int[] args  = decodedProgram.getArgs();
+        int[] args2 = decodedProgram.getArgs2();
+        int[] addrs = decodedProgram.getAddresses();
+
+        running = true;
+        int ip  = decodedProgram.getIndex(pc);   // index of the next instruction
+        try
+          {
+            while (running)
+              {
+                switch (ops[ip++])
+                  {
+                    case DecodedOpCode.ADD:
+                        add();
+                        break;
+                    case DecodedOpCode.ALLOC:
+                        sp = sp + args[ip - 1];
+                        checkStack(sp);
+                        break;
+                    case DecodedOpCode.BG:
+                        if (popByte() > 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.BGE:
+                        if (popByte() >= 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.BL:
+                        if (popByte() < 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.BLE:
+                        if (popByte() <= 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.BNZ:
+                        if (popByte() != 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.BR:
+                        ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.BZ:
+                        if (popByte() == 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CALL:
+                        charge(1);
+                        pushInt(bp);          // dynamic link
+                        pushInt(addrs[ip]);   // return address
+                        if (jitCompiler != null && callCompiled(args[ip - 1]))
+                            break;
+                        bp = sp - Constants.BYTES_PER_FRAME + 1;
+                        ip = args[ip - 1];
+                        break;
+                    case DecodedOpCode.CHKSTK:
+                        checkStack(sp + args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP:
+                        compare();
+                        break;
+                    case DecodedOpCode.COPY:
+                        copy(args[ip - 1]);
+                        break;
+                    case DecodedOpCode.DEC:
+                        decrement();
+                        break;
+                    case DecodedOpCode.DIV:
+                        divide();
+                        break;
+                    case DecodedOpCode.GETCH:
+                        getCh();
+                        break;
+                    case DecodedOpCode.GETINT:
+                        getInt();
+                        break;
+                    case DecodedOpCode.HALT:
+                        halt();
+                        break;
+                    case DecodedOpCode.INC:
+                        increment();
+                        break;
+                    case DecodedOpCode.LDCCH:
+                        pushChar((char) args[ip - 1]);
+                        break;
+                    case DecodedOpCode.LDCINT:
+                        pushInt(args[ip - 1]);
+                        break;
+                    case DecodedOpCode.LDCSTR:
+                        pushInt(args[ip - 1]);   // string length
+                        pushInt(addrs[ip - 1] + Constants.BYTES_PER_OPCODE
+                                              + Constants.BYTES_PER_INTEGER);
+                        break;
+                    case DecodedOpCode.LDADDR:
+                        pushInt(bp + args[ip - 1]);
+                        break;
+                    case DecodedOpCode.LDGADDR:
+                        pushInt(sb + args[ip - 1]);
+                        break;
+                    case DecodedOpCode.LOAD:
+                        load(args[ip - 1]);
+                        break;
+                    case DecodedOpCode.LOADB:
+                        loadByte();
+                        break;
+                    case DecodedOpCode.LOAD2B:
+                        load2Bytes();
+                        break;
+                    case DecodedOpCode.LOADCB:
+                        pushByte((byte) args[ip - 1]);
+                        break;
+                    case DecodedOpCode.LDMEM:
+                        pushInt(getInt(bp + args[ip - 1]));
+                        break;
+                    case DecodedOpCode.LOADW:
+                        loadWord();
+                        break;
+                    case DecodedOpCode.MOD:
+                        modulo();
+                        break;
+                    case DecodedOpCode.MUL:
+                        multiply();
+                        break;
+                    case DecodedOpCode.NEG:
+                        negate();
+                        break;
+                    case DecodedOpCode.NOT:
+                        not();
+                        break;
+                    case DecodedOpCode.PROC:
+                        sp = sp + args[ip - 1];
+                        checkStack(sp);
+                        break;
+                    case DecodedOpCode.PROGRAM:
+                        program(args[ip - 1]);
+                        break;
+                    case DecodedOpCode.PUTBYTE:
+                        putByte();
+                        break;
+                    case DecodedOpCode.PUTCH:
+                        putChar();
+                        break;
+                    case DecodedOpCode.PUTEOL:
+                        putEOL();
+                        break;
+                    case DecodedOpCode.PUTINT:
+                        putInt();
+                        break;
+                    case DecodedOpCode.PUTSTR:
+                        putString();
+                        break;
+                    case DecodedOpCode.RET:
+                        ip = returnTo(args[ip - 1]);
+                        break;
+                    case DecodedOpCode.SHL:
+                        pushInt(popInt() << args[ip - 1]);
+                        break;
+                    case DecodedOpCode.SHR:
+                        pushInt(popInt() >> args[ip - 1]);
+                        break;
+                    case DecodedOpCode.STORE:
+                        store(args[ip - 1]);
+                        break;
+                    case DecodedOpCode.STOREB:
+                        storeByte();
+                        break;
+                    case DecodedOpCode.STORE2B:
+                        store2Bytes();
+                        break;
+                    case DecodedOpCode.STOREW:
+                        storeWord();
+                        break;
+                    case DecodedOpCode.SUB:
+                        subtract();
+                        break;
+
+                    // superinstructions
+                    case DecodedOpCode.LDGMEM:
+                        pushInt(getInt(sb + args[ip - 1]));
+                        break;
+                    case DecodedOpCode.ADDI:
+                        putInt(sp - 3, getInt(sp - 3) + args[ip - 1]);
+                        break;
+                    case DecodedOpCode.SUBI:
+                        putInt(sp - 3, getInt(sp - 3) - args[ip - 1]);
+                        break;
+                    case DecodedOpCode.MULI:
+                        putInt(sp - 3, getInt(sp - 3)*args[ip - 1]);
+                        break;
+                    case DecodedOpCode.STOREW_LOCAL:
+                        putInt(bp + args[ip - 1], popInt());
+                        break;
+                    case DecodedOpCode.STOREW_GLOBAL:
+                        putInt(sb + args[ip - 1], popInt());
+                        break;
+                    case DecodedOpCode.DIVI:
+                        if (args[ip - 1] == 0)
+                            error("*** FAULT:  Divide by zero ***");
+                        putInt(sp - 3, getInt(sp - 3)/args[ip - 1]);
+                        break;
+                    case DecodedOpCode.MODI:
+                        if (args[ip - 1] == 0)
+                            error("*** FAULT:  Divide by zero ***");
+                        putInt(sp - 3, getInt(sp - 3) % args[ip - 1]);
+                        break;
+                    case DecodedOpCode.ADD_LOCAL:
+                        putInt(sp - 3, getInt(sp - 3) + getInt(bp + args[ip - 1]));
+                        break;
+                    case DecodedOpCode.SUB_LOCAL:
+                        putInt(sp - 3, getInt(sp - 3) - getInt(bp + args[ip - 1]));
+                        break;
+                    case DecodedOpCode.INC_LOCAL:
+                        putInt(bp + args[ip - 1], getInt(bp + args[ip - 1]) + 1);
+                        break;
+                    case DecodedOpCode.DEC_LOCAL:
+                        putInt(bp + args[ip - 1], getInt(bp + args[ip - 1]) - 1);
+                        break;
+                    case DecodedOpCode.INC_GLOBAL:
+                        putInt(sb + args[ip - 1], getInt(sb + args[ip - 1]) + 1);
+                        break;
+                    case DecodedOpCode.DEC_GLOBAL:
+                        putInt(sb + args[ip - 1], getInt(sb + args[ip - 1]) - 1);
+                        break;
+                    case DecodedOpCode.INDEX_LOCAL:
+                        pushInt(bp + args[ip - 1] + (getInt(bp + args2[ip - 1]) << 2));
+                        break;
+                    case DecodedOpCode.LDELEM_LOCAL:
+                        pushInt(getInt(bp + args[ip - 1] + (getInt(bp + args2[ip - 1]) << 2)));
+                        break;
+                    case DecodedOpCode.INDEX_GLOBAL:
+                        pushInt(sb + args[ip - 1] + (getInt(sb + args2[ip - 1]) << 2));
+                        break;
+                    case DecodedOpCode.LDELEM_GLOBAL:
+                        pushInt(getInt(sb + args[ip - 1] + (getInt(sb + args2[ip - 1]) << 2)));
+                        break;
+
+                    // direct loads and stores of bytes and characters
+                    case DecodedOpCode.LDMEMB:
+                        pushByte(memory[bp + args[ip - 1]]);
+                        break;
+                    case DecodedOpCode.LDMEM2B:
+                        pushChar(getChar(bp + args[ip - 1]));
+                        break;
+                    case DecodedOpCode.LDGMEMB:
+                        pushByte(memory[sb + args[ip - 1]]);
+                        break;
+                    case DecodedOpCode.LDGMEM2B:
+                        pushChar(getChar(sb + args[ip - 1]));
+                        break;
+                    case DecodedOpCode.STOREB_LOCAL:
+                        memory[bp + args[ip - 1]] = popByte();
+                        break;
+                    case DecodedOpCode.STORE2B_LOCAL:
+                        putChar(bp + args[ip - 1], popChar());
+                        break;
+                    case DecodedOpCode.STOREB_GLOBAL:
+                        memory[sb + args[ip - 1]] = popByte();
+                        break;
+                    case DecodedOpCode.STORE2B_GLOBAL:
+                        putChar(sb + args[ip - 1], popChar());
+                        break;
+                    case DecodedOpCode.CMP_BNZ:
+                        if (compareInts() != 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BZ:
+                        if (compareInts() == 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BG:
+                        if (compareInts() > 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BGE:
+                        if (compareInts() >= 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BL:
+                        if (compareInts() < 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BLE:
+                        if (compareInts() <= 0)
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BNZ:
+                        if (popInt() != args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BZ:
+                        if (popInt() == args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BG:
+                        if (popInt() > args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BGE:
+                        if (popInt() >= args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BL:
+                        if (popInt() < args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BLE:
+                        if (popInt() <= args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+
+                    // basic block counter of a profiled program
+                    case DecodedOpCode.PROFILE:
+                        profiler.enterBlock(args[ip - 1], bp);
+                        break;
+
+                    default:
+                        error("invalid machine instruction");
+                  }
+              }
+          }
+        catch (ArrayIndexOutOfBoundsException e)
+          {
+            memoryFault(ops[ip - 1], e);
+          }
+
+        pc = addrs[ip];
+      }
+
+
+    /**
+     * Runs a decoded program whose memory accesses are all word accesses at
+     * word-aligned addresses (see DecodedProgram.isWordAligned()), keeping
+     * the data segment and stack in an array of ints so that each integer
+     * is read or written with a single array access.  Addresses on the
+     * stack and in bp remain byte addresses relative to the start of the
+     * data segment, so address arithmetic in the program is unchanged; sp
+     * is the index of the top word.  Return addresses are saved in frames
+     * as instruction indices.  String literals are still read from the
+     * code segment in byte memory.  As in runDecoded(), the operand
+     * args[ip - 1] is read only by the cases that use it.
+     */
+    private void runWordAddressed()
+      {
+        int[] ops   = decodedProgram.getOps();
+        int[] args  = decodedProgram.getArgs();
+        int[] args2 = decodedProgram.getArgs2();
+        int[] addrs = decodedProgram.getAddresses();
+
+        final int SHIFT = 2;   // log2(BYTES_PER_WORD)
+
+        final int GUARD_WORDS = Constants.STACK_GUARD_SIZE/Constants.BYTES_PER_WORD;
+
+        int[] words = this.words;
+        int wsp = sp;   // index of the top word
+        int wbp = bp;   // byte address of the current frame
+        int ip  = decodedProgram.getIndex(pc);
+
+        if (words == null)
+          {
+            words = new int[(memory.length - sb)/Constants.BYTES_PER_WORD];
+            wsp = -1;
+            wbp = 0;
+          }
+
+        int wordLimit = words.length - 1 - GUARD_WORDS;   // as stackLimit
+
+        running = true;
+        try
+          {
+            while (running)
+              {
+                switch (ops[ip++])
+                  {
+                    case DecodedOpCode.HALT:
+                        halt();
+                        break;
+
+                    case DecodedOpCode.LOAD:
+                      {
+                        int address = words[wsp] >> SHIFT;
+                        int length  = args[ip - 1] >> SHIFT;
+                        if (wsp + length > wordLimit)
+                          {
+                            words = growWords(words, wsp + length);
+                            wordLimit = words.length - 1 - GUARD_WORDS;
+                          }
+                        System.arraycopy(words, address, words, wsp, length);
+                        wsp = wsp + length - 1;
+                        break;
+                      }
+                    case DecodedOpCode.LOADW:
+                        words[wsp] = words[words[wsp] >> SHIFT];
+                        break;
+                    case DecodedOpCode.LDCINT:
+                        words[++wsp] = args[ip - 1];
+                        break;
+                    case DecodedOpCode.LDCSTR:
+                        words[++wsp] = args[ip - 1];   // string length
+                        words[++wsp] = addrs[ip - 1] + Constants.BYTES_PER_OPCODE
+                                                     + Constants.BYTES_PER_INTEGER;
+                        break;
+                    case DecodedOpCode.LDADDR:
+                        words[++wsp] = wbp + args[ip - 1];
+                        break;
+                    case DecodedOpCode.LDGADDR:
+                        words[++wsp] = args[ip - 1];
+                        break;
+                    case DecodedOpCode.LDMEM:
+                        words[++wsp] = words[(wbp + args[ip - 1]) >> SHIFT];
+                        break;
+                    case DecodedOpCode.LDGMEM:
+                        words[++wsp] = words[args[ip - 1] >> SHIFT];
+                        break;
+                    case DecodedOpCode.INDEX_LOCAL:
+                        words[++wsp] = wbp + args[ip - 1] + (words[(wbp + args2[ip - 1]) >> SHIFT] << SHIFT);
+                        break;
+                    case DecodedOpCode.LDELEM_LOCAL:
+                        words[++wsp] = words[(wbp + args[ip - 1] + (words[(wbp + args2[ip - 1]) >> SHIFT] << SHIFT)) >> SHIFT];
+                        break;
+                    case DecodedOpCode.INDEX_GLOBAL:
+                        words[++wsp] = args[ip - 1] + (words[args2[ip - 1] >> SHIFT] << SHIFT);
+                        break;
+                    case DecodedOpCode.LDELEM_GLOBAL:
+                        words[++wsp] = words[(args[ip - 1] + (words[args2[ip - 1] >> SHIFT] << SHIFT)) >> SHIFT];
+                        break;
+
+                    case DecodedOpCode.STORE:
+                      {
+                        int length   = args[ip - 1] >> SHIFT;
+                        int dataAddr = wsp - length + 1;
+                        System.arraycopy(words, dataAddr, words, words[dataAddr - 1] >> SHIFT, length);
+                        wsp = dataAddr - 2;
+                        break;
+                      }
+                    case DecodedOpCode.STOREW:
+                        words[words[wsp - 1] >> SHIFT] = words[wsp];
+                        wsp = wsp - 2;
+                        break;
+                    case DecodedOpCode.STOREW_LOCAL:
+                        words[(wbp + args[ip - 1]) >> SHIFT] = words[wsp--];
+                        break;
+                    case DecodedOpCode.STOREW_GLOBAL:
+                        words[args[ip - 1] >> SHIFT] = words[wsp--];
+                        break;
+                    case DecodedOpCode.COPY:
+                        System.arraycopy(words, words[wsp] >> SHIFT,
+                                         words, words[wsp - 1] >> SHIFT, args[ip - 1] >> SHIFT);
+                        wsp = wsp - 2;
+                        break;
+
+                    case DecodedOpCode.BR:
+                        ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BNZ:
+                        wsp = wsp - 2;
+                        if (words[wsp + 1] != words[wsp + 2])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BZ:
+                        wsp = wsp - 2;
+                        if (words[wsp + 1] == words[wsp + 2])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BG:
+                        wsp = wsp - 2;
+                        if (words[wsp + 1] > words[wsp + 2])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BGE:
+                        wsp = wsp - 2;
+                        if (words[wsp + 1] >= words[wsp + 2])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BL:
+                        wsp = wsp - 2;
+                        if (words[wsp + 1] < words[wsp + 2])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMP_BLE:
+                        wsp = wsp - 2;
+                        if (words[wsp + 1] <= words[wsp + 2])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BNZ:
+                        if (words[wsp--] != args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BZ:
+                        if (words[wsp--] == args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BG:
+                        if (words[wsp--] > args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BGE:
+                        if (words[wsp--] >= args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BL:
+                        if (words[wsp--] < args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+                    case DecodedOpCode.CMPI_BLE:
+                        if (words[wsp--] <= args2[ip - 1])
+                            ip = branchTo(ip, args[ip - 1]);
+                        break;
+
+                    case DecodedOpCode.SHL:
+                        words[wsp] = words[wsp] << args[ip - 1];
+                        break;
+                    case DecodedOpCode.SHR:
+                        words[wsp] = words[wsp] >> args[ip - 1];
+                        break;
+
+                    case DecodedOpCode.ADD:
+                        --wsp;
+                        words[wsp] = words[wsp] + words[wsp + 1];
+                        break;
+                    case DecodedOpCode.SUB:
+                        --wsp;
+                        words[wsp] = words[wsp] - words[wsp + 1];
+                        break;
+                    case DecodedOpCode.MUL:
+                        --wsp;
+                        words[wsp] = words[wsp]*words[wsp + 1];
+                        break;
+                    case DecodedOpCode.DIV:
+                        --wsp;
+                        if (words[wsp + 1] == 0)
+                            error("*** FAULT:  Divide by zero ***");
+                        words[wsp] = words[wsp]/words[wsp + 1];
+                        break;
+                    case DecodedOpCode.MOD:
+                        --wsp;
+                        if (words[wsp + 1] == 0)
+                            error("*** FAULT:  Divide by zero ***");
+                        words[wsp] = words[wsp] % words[wsp + 1];
+                        break;
+                    case DecodedOpCode.NEG:
+                        words[wsp] = -words[wsp];
+                        break;
+                    case DecodedOpCode.INC:
+                        ++words[wsp];
+                        break;
+                    case DecodedOpCode.DEC:
+                        --words[wsp];
+                        break;
+                    case DecodedOpCode.ADDI:
+                        words[wsp] = words[wsp] + args[ip - 1];
+                        break;
+                    case DecodedOpCode.SUBI:
+                        words[wsp] = words[wsp] - args[ip - 1];
+                        break;
+                    case DecodedOpCode.MULI:
+                        words[wsp] = words[wsp]*args[ip - 1];
+                        break;
+                    case DecodedOpCode.DIVI:
+                        if (args[ip - 1] == 0)
+                            error("*** FAULT:  Divide by zero ***");
+                        words[wsp] = words[wsp]/args[ip - 1];
+                        break;
+                    case DecodedOpCode.MODI:
+                        if (args[ip - 1] == 0)
+                            error("*** FAULT:  Divide by zero ***");
+                        words[wsp] = words[wsp] % args[ip - 1];
+                        break;
+                    case DecodedOpCode.ADD_LOCAL:
+                        words[wsp] = words[wsp] + words[(wbp + args[ip - 1]) >> SHIFT];
+                        break;
+                    case DecodedOpCode.SUB_LOCAL:
+                        words[wsp] = words[wsp] - words[(wbp + args[ip - 1]) >> SHIFT];
+                        break;
+                    case DecodedOpCode.INC_LOCAL:
+                        ++words[(wbp + args[ip - 1]) >> SHIFT];
+                        break;
+                    case DecodedOpCode.DEC_LOCAL:
+                        --words[(wbp + args[ip - 1]) >> SHIFT];
+                        break;
+                    case DecodedOpCode.INC_GLOBAL:
+                        ++words[args[ip - 1] >> SHIFT];
+                        break;
+                    case DecodedOpCode.DEC_GLOBAL:
+                        --words[args[ip - 1] >> SHIFT];
+                        break;
+
+                    case DecodedOpCode.GETINT:
+                        words[++wsp] = readInt();
+                        break;
+                    case DecodedOpCode.PUTINT:
+                        io.putInt(words[wsp--]);
+                        break;
+                    case DecodedOpCode.PUTEOL:
+                        io.putEOL();
+                        break;
+                    case DecodedOpCode.PUTSTR:
+                        io.putString(memory, words[wsp], words[wsp - 1]);
+                        wsp = wsp - 2;
+                        break;
+
+                    case DecodedOpCode.PROGRAM:
+                        wbp = 0;
+                        wsp = (args[ip - 1] >> SHIFT) - 1;
+                        if (wsp > wordLimit)
+                          {
+                            words = growWords(words, wsp);
+                            wordLimit = words.length - 1 - GUARD_WORDS;
+                          }
+                        break;
+                    case DecodedOpCode.PROC:
+                    case DecodedOpCode.ALLOC:
+                        wsp = wsp + (args[ip - 1] >> SHIFT);
+                        if (wsp > wordLimit)
+                          {
+                            words = growWords(words, wsp);
+                            wordLimit = words.length - 1 - GUARD_WORDS;
+                          }
+                        break;
+                    case DecodedOpCode.CALL:
+                        charge(1);
+                        words[++wsp] = wbp;   // dynamic link
+                        words[++wsp] = ip;    // return address
+                        wbp = (wsp - 1) << SHIFT;
+                        ip = args[ip - 1];
+                        break;
+                    case DecodedOpCode.CHKSTK:
+                        if (wsp + (args[ip - 1] >> SHIFT) > wordLimit)
+                          {
+                            words = growWords(words, wsp + (args[ip - 1] >> SHIFT));
+                            wordLimit = words.length - 1 - GUARD_WORDS;
+                          }
+                        break;
+                    case DecodedOpCode.RET:
+                      {
+                        int frame = wbp >> SHIFT;
+                        wsp = frame - (args[ip - 1] >> SHIFT) - 1;
+                        wbp = words[frame];
+                        ip  = words[frame + 1];
+                        if (ip < 0 || ip >= ops.length)
+                            error("*** FAULT:  Invalid return address ***");
+                        break;
+                      }
+
+                    default:
+                        error("invalid machine instruction");
+                  }
+              }
+          }
+        catch (ArrayIndexOutOfBoundsException e)
+          {
+            memoryFault(ops[ip - 1], e);
+          }
+
+        // save the registers in case the program was preempted
+        this.words = words;
+        sp = wsp;
+        bp = wbp;
+        pc = addrs[ip];
+      }
+
+
+    /**
+     * Returns a copy of the word memory of runWordAddressed() that is large
+     * enough for the stack to reach the specified word index, or reports
+     * a stack overflow if memory growth is not enabled.
+     */
+    private int[] growWords(int[] words, int top)
+      {
+        long required = sb + ((long) top + 1)*Constants.BYTES_PER_WORD
+                          + Constants.STACK_GUARD_SIZE;
+        int  size = grownMemorySize(sb + words.length*Constants.BYTES_PER_WORD, required);
+
+        try
+          {
+            return Arrays.copyOf(words, (size - sb)/Constants.BYTES_PER_WORD);
+          }
+        catch (OutOfMemoryError e)
+          {
+            error("*** FAULT:  Stack overflow ***");
+            return words;
+          }
+      }
+
+
+    /**
+     * Pops two integers and returns a negative value, zero, or a positive
+     * value as the first is less than, equal to, or greater than the second.
+     * Used by the fused compare-and-branch superinstructions.
+     */
+    private int compareInts()
+      {
+        int operand2 = popInt();
+        int operand1 = popInt();
+
+        return Integer.compare(operand1, operand2);
+      }
+
+
+    /**
+     * Runs the subprogram at the specified entry index if it has been
+     * compiled to JVM bytecode.  The frame has already been pushed; on
+     * return, sp has been restored as by RET and bp is unchanged.
+     * Returns false if the subprogram must be run by the caller.
+     */
+    private boolean callCompiled(int entry)
+      {
+        CompiledCode code = jitCompiler.countCall(entry);
+
+        if (code == null)
+            return false;
 
-    /** bottom of the stack */
-    private int sb;
+        try
+          {
+            sp = code.call(entry, memory, sp, sb);
+          }
+        catch (ArithmeticException | ArrayIndexOutOfBoundsException
+               | StackOverflowError | VmException e)
+          {
+            compiledCodeFault(e);
+          }
 
-    /** true if the virtual computer is currently running */
-    private boolean running;
+        return true;
+      }
 
 
     /**
-     * This method constructs a CPRL virtual machine, loads the byte code
-     * from the specified file into memory, and runs the byte code. <br>
-     * Usage:  java CprlVm filename <br>
-     * where filename is the name of a file containing the byte code
-     * for a CPRL program.
+     * Runs a loop that has been compiled to JVM bytecode, starting at its
+     * first instruction, and returns the index of the instruction at which
+     * the pre-decoded execution engine continues.
      */
-    public static void main(String[] args) throws FileNotFoundException
+    private int runCompiledLoop(CompiledLoop loop, int target)
       {
-        if (args.length != 1)
+        try
+          {
+            long exit = loop.run(memory, sp, sb, bp);
+            sp = (int) exit;
+            return (int) (exit >>> 32);
+          }
+        catch (ArithmeticException | ArrayIndexOutOfBoundsException
+               | StackOverflowError | VmException e)
           {
-            System.err.println("Usage:  java CprlVm filename");
+            compiledCodeFault(e);
+            return target;
+          }
+      }
 
-            // stop the VM with a nonzero status code
-            System.exit(FAILURE);
+
+    /**
+     * Reports an array index out of bounds raised by the instruction with
+     * the specified handler index.  CPRL does not check array indexes, so
+     * an instruction that reads or writes memory at an address computed by
+     * the program, or RET with a frame that the program has overwritten,
+     * can address a byte outside of memory; that is a fault in the program.
+     * Every push is checked against the stack limit (see checkStack()), so
+     * the exception is rethrown as an error in the VM for any other
+     * instruction.
+     */
+    private void memoryFault(int handler, ArrayIndexOutOfBoundsException e)
+      {
+        switch (handler)
+          {
+            case DecodedOpCode.LOAD:
+            case DecodedOpCode.LOADB:
+            case DecodedOpCode.LOAD2B:
+            case DecodedOpCode.LOADW:
+            case DecodedOpCode.LDELEM_LOCAL:
+            case DecodedOpCode.LDELEM_GLOBAL:
+            case DecodedOpCode.STORE:
+            case DecodedOpCode.STOREB:
+            case DecodedOpCode.STORE2B:
+            case DecodedOpCode.STOREW:
+            case DecodedOpCode.COPY:
+            case DecodedOpCode.PUTSTR:
+            case DecodedOpCode.RET:
+                error("*** FAULT:  Memory address out of range ***");
+                break;
+            default:
+                throw e;
           }
+      }
 
-        CprlVm vm = new CprlVm(DEFAULT_MEMORY_SIZE);
-        FileInputStream codeFile = new FileInputStream(args[0]);
-        vm.loadProgram(codeFile);
-        vm.run();
+
+    /**
+     * Reports a fault raised while running compiled code.
+     */
+    private void compiledCodeFault(Throwable e)
+      {
+        if (e instanceof ArithmeticException)
+          {
+            // raised by compiled DIV and MOD with a zero divisor
+            error("*** FAULT:  Divide by zero ***");
+          }
+        else if (e instanceof ArrayIndexOutOfBoundsException)
+          {
+            // compiled code indexes only memory, so the address was
+            // computed by the program
+            error("*** FAULT:  Memory address out of range ***");
+          }
+        else if (e instanceof StackOverflowError)
+          {
+            // compiled subprograms call each other on the JVM stack, which
+            // can overflow before the stack in memory does
+            error("*** FAULT:  Stack overflow ***");
+          }
+        else
+          {
+            // raised by JitRuntime.fault(); flush the output written so far
+            error(e.getMessage());
+          }
       }
 
 
     /**
-     * Construct a CPRL virtual machine with a given number of bytes of memory.
-     * 
-     * @param numOfBytes the number of bytes in memory of the virtual machine
+     * Performs the work of RET for the pre-decoded execution engine
+     * and returns the index of the instruction at the return address.
      */
-    public CprlVm(int numOfBytes)
+    private int returnTo(int paramLength)
       {
-        // create and zero out memory
-        memory = new byte[numOfBytes];
-        for (int i = 0;  i < memory.length;  ++i)
-            memory[i] = 0;
+        int bpSave = bp;
 
-        // initialize registers
-        pc = 0;
-        bp = 0;
-        sp = 0;
-        sb = 0;
+        sp = bpSave - paramLength - 1;
+        bp = getInt(bpSave);
+        int ip = decodedProgram.getIndex(getInt(bpSave + Constants.BYTES_PER_INTEGER));
 
-        running = false;
+        if (ip < 0)
+            error("*** FAULT:  Invalid return address ***");
+
+        return ip;
       }
 
 
     /**
-     * Loads the program into memory.
-     * 
-     * @param codeFile the FileInputStream containing the object code
+     * Runs the program by fetching and decoding each instruction
+     * directly from memory as it is executed.
      */
-    public void loadProgram(FileInputStream codeFile)
+    private void runInterpreted()
       {
-        int address = 0;
-        int inByte;
+        byte opCode = OpCode.HALT;
 
+        running = true;
         try
           {
-            while ((inByte = codeFile.read()) != -1)
-                memory[address++] = (byte) inByte;
-
-            bp = address;
-            sb = address;
-            sp = bp - 1;
-            codeFile.close();
+            while (running)
+              {
+                opCode = fetchByte();
+
+                switch (opCode)
+                  {
+                    case OpCode.ADD:
+                        add();
+                        break;
+                    case OpCode.ALLOC:
+                        allocate();
+                        break;
+                    case OpCode.BG:
+                        branchGreater(fetchBranchTarget());
+                        break;
+                    case OpCode.BG_S:
+                        branchGreater(fetchShortBranchTarget());
+                        break;
+                    case OpCode.BGE:
+                        branchGreaterOrEqual(fetchBranchTarget());
+                        break;
+                    case OpCode.BGE_S:
+                        branchGreaterOrEqual(fetchShortBranchTarget());
+                        break;
+                    case OpCode.BL:
+                        branchLess(fetchBranchTarget());
+                        break;
+                    case OpCode.BL_S:
+                        branchLess(fetchShortBranchTarget());
+                        break;
+                    case OpCode.BLE:
+                        branchLessOrEqual(fetchBranchTarget());
+                        break;
+                    case OpCode.BLE_S:
+                        branchLessOrEqual(fetchShortBranchTarget());
+                        break;
+                    case OpCode.BNZ:
+                        branchNonZero(fetchBranchTarget());
+                        break;
+                    case OpCode.BNZ_S:
+                        branchNonZero(fetchShortBranchTarget());
+                        break;
+                    case OpCode.BR:
+                        branch(fetchBranchTarget());
+                        break;
+                    case OpCode.BR_S:
+                        branch(fetchShortBranchTarget());
+                        break;
+                    case OpCode.BZ:
+                        branchZero(fetchBranchTarget());
+                        break;
+                    case OpCode.BZ_S:
+                        branchZero(fetchShortBranchTarget());
+                        break;
+                    case OpCode.CALL:
+                        call(fetchBranchTarget());
+                        break;
+                    case OpCode.CALL_S:
+                        call(fetchShortBranchTarget());
+                        break;
+                    case OpCode.CHKSTK:
+                        checkStackSpace();
+                        break;
+                    case OpCode.CMP:
+                        compare();
+                        break;
+                    case OpCode.COPY:
+                        copy();
+                        break;
+                    case OpCode.DEC:
+                      decrement();
+                      break;
+                    case OpCode.DIV:
+                        divide();
+                        break;
+                    case OpCode.GETCH:
+                        getCh();
+                        break;
+                    case OpCode.GETINT:
+                        getInt();
+                        break;
+                    case OpCode.HALT:
+                        halt();
+                        break;
+                    case OpCode.INC:
+                        increment();
+                        break;
+                    case OpCode.LDCCH:
+                        loadConstCh();
+                        break;
+                    case OpCode.LDCINT:
+                        loadConstInt();
+                        break;
+                    case OpCode.LDCSTR:
+                        loadConstStr();
+                        break;
+                    case OpCode.LDADDR:
+                        loadAddress();
+                        break;
+                    case OpCode.LDGADDR:
+                        loadGlobalAddress();
+                        break;
+                    case OpCode.LOAD:
+                        load();
+                        break;
+                    case OpCode.LOADB:
+                        loadByte();
+                        break;
+                    case OpCode.LOAD2B:
+                        load2Bytes();
+                        break;
+                    case OpCode.LOADCB:
+                        loadConstByte();
+                        break;
+                    case OpCode.LDMEM:
+                        loadMemory(bp);
+                        break;
+                    case OpCode.LDMEMB:
+                        loadMemoryByte(bp);
+                        break;
+                    case OpCode.LDMEM2B:
+                        loadMemory2Bytes(bp);
+                        break;
+                    case OpCode.LDGMEM:
+                        loadMemory(sb);
+                        break;
+                    case OpCode.LDGMEMB:
+                        loadMemoryByte(sb);
+                        break;
+                    case OpCode.LDGMEM2B:
+                        loadMemory2Bytes(sb);
+                        break;
+                    case OpCode.LOADW:
+                        loadWord();
+                        break;
+                    case OpCode.MOD:
+                        modulo();
+                        break;
+                    case OpCode.MUL:
+                        multiply();
+                        break;
+                    case OpCode.NEG:
+                        negate();
+                        break;
+                    case OpCode.NOT:
+                        not();
+                        break;
+                    case OpCode.PROC:
+                        procedure();
+                        break;
+                    case OpCode.PROGRAM:
+                        program();
+                        break;
+                    case OpCode.PUTBYTE:
+                        putByte();
+                        break;
+                    case OpCode.PUTCH:
+                        putChar();
+                        break;
+                    case OpCode.PUTEOL:
+                        putEOL();
+                        break;
+                    case OpCode.PUTINT:
+                        putInt();
+                        break;
+                    case OpCode.PUTSTR:
+                        putString();
+                        break;
+                    case OpCode.RET:
+                        returnInst();
+                        break;
+                    case OpCode.SHL:
+                      shiftLeft();
+                      break;
+                    case OpCode.SHR:
+                      shiftRight();
+                      break;
+                    case OpCode.STORE:
+                        store();
+                        break;
+                    case OpCode.STOREB:
+                        storeByte();
+                        break;
+                    case OpCode.STORE2B:
+                        store2Bytes();
+                        break;
+                    case OpCode.STOREW:
+                        storeWord();
+                        break;
+                    case OpCode.STMEM:
+                        storeMemory(bp);
+                        break;
+                    case OpCode.STMEMB:
+                        storeMemoryByte(bp);
+                        break;
+                    case OpCode.STMEM2B:
+                        storeMemory2Bytes(bp);
+                        break;
+                    case OpCode.STGMEM:
+                        storeMemory(sb);
+                        break;
+                    case OpCode.STGMEMB:
+                        storeMemoryByte(sb);
+                        break;
+                    case OpCode.STGMEM2B:
+                        storeMemory2Bytes(sb);
+                        break;
+                    case OpCode.SUB:
+                        subtract();
+                        break;
+                    default:
+                        error("invalid machine instruction");
+                  }
+              }
           }
-        catch (IOException e)
+        catch (ArrayIndexOutOfBoundsException e)
           {
-            error(e.toString());
+            memoryFault(DecodedOpCode.valueOf(opCode), e);
           }
       }
 
 
+    // Start:  internal machine instructions that do NOT correspond to OpCodes
+    //------------------------------------------------------------------------
+
+
     /**
-     * Runs the program currently in memory.
+     * Stops the program by throwing a VmException with the specified
+     * message.  Output written by the program so far is flushed first.
      */
-    public void run()
+    private void error(String message)
       {
-        byte opCode;
+        running = false;
+        io.flush();
+        throw new VmException(message);
+      }
 
-        running = true;
-        pc = 0;
-        while (running)
-          {
-            opCode = fetchByte();
 
-            switch (opCode)
+    /**
+     * Charges a number of instructions against the budget of the current
+     * run, and stops the program at the end of the current instruction if
+     * the budget has been used up.
+     */
+    private void charge(long numInstructions)
+      {
+        budget = budget - numInstructions;
+        if (budget <= 0)
+            running = false;
+      }
+
+
+    /**
+     * Returns the target index of a branch in a decoded program.  If the
+     * branch is backward, the length of the loop is charged first and,
+     * when JIT compilation is enabled, the loop is counted and, once it
+     * has been compiled, run as JVM bytecode; the index returned is then
+     * that of the instruction where the compiled loop exits.
+     *
+     * @param ip     the index of the instruction after the branch
+     * @param target the index of the target instruction
+     */
+    private int branchTo(int ip, int target)
+      {
+        if (target < ip)
+          {
+            charge(ip - target);
+            if (jitCompiler != null)
               {
-                case OpCode.ADD:
-                    add();
-                    break;
-                case OpCode.ALLOC:
-                    allocate();
-                    break;
-                case OpCode.BG:
-                    branchGreater();
-                    break;
-                case OpCode.BGE:
-                    branchGreaterOrEqual();
-                    break;
-                case OpCode.BL:
-                    branchLess();
-                    break;
-                case OpCode.BLE:
-                    branchLessOrEqual();
-                    break;
-                case OpCode.BNZ:
-                    branchNonZero();
-                    break;
-                case OpCode.BR:
-                    branch();
-                    break;
-                case OpCode.BZ:
-                    branchZero();
-                    break;
-                case OpCode.CALL:
-                    call();
-                    break;
-                case OpCode.CMP:
-                    compare();
-                    break;
-                case OpCode.DEC:
-                  decrement();
-                  break;
-                case OpCode.DIV:
-                    divide();
-                    break;
-                case OpCode.GETCH:
-                    getCh();
-                    break;
-                case OpCode.GETINT:
-                    getInt();
-                    break;
-                case OpCode.HALT:
-                    halt();
-                    break;
-                case OpCode.INC:
-                    increment();
-                    break;
-                case OpCode.LDCCH:
-                    loadConstCh();
-                    break;
-                case OpCode.LDCINT:
-                    loadConstInt();
-                    break;
-                case OpCode.LDCSTR:
-                    loadConstStr();
-                    break;
-                case OpCode.LDADDR:
-                    loadAddress();
-                    break;
-                case OpCode.LDGADDR:
-                    loadGlobalAddress();
-                    break;
-                case OpCode.LOAD:
-                    load();
-                    break;
-                case OpCode.LOADB:
-                    loadByte();
-                    break;
-                case OpCode.LOAD2B:
-                    load2Bytes();
-                    break;
-                case OpCode.LOADCB:
-                    loadConstByte();
-                    break;
-                case OpCode.LDMEM:
-                    loadMemory();
-                    break;
-                case OpCode.LOADW:
-                    loadWord();
-                    break;
-                case OpCode.MOD:
-                    modulo();
-                    break;
-                case OpCode.MUL:
-                    multiply();
-                    break;
-                case OpCode.NEG:
-                    negate();
-                    break;
-                case OpCode.NOT:
-                    not();
-                    break;
-                case OpCode.PROC:
-                    procedure();
-                    break;
-                case OpCode.PROGRAM:
-                    program();
-                    break;
-                case OpCode.PUTBYTE:
-                    putByte();
-                    break;
-                case OpCode.PUTCH:
-                    putChar();
-                    break;
-                case OpCode.PUTEOL:
-                    putEOL();
-                    break;
-                case OpCode.PUTINT:
-                    putInt();
-                    break;
-                case OpCode.PUTSTR:
-                    putString();
-                    break;
-                case OpCode.RET:
-                    returnInst();
-                    break;
-                case OpCode.SHL:
-                  shiftLeft();
-                  break;
-                case OpCode.SHR:
-                  shiftRight();
-                  break;
-                case OpCode.STORE:
-                    store();
-                    break;
-                case OpCode.STOREB:
-                    storeByte();
-                    break;
-                case OpCode.STORE2B:
-                    store2Bytes();
-                    break;
-                case OpCode.STOREW:
-                    storeWord();
-                    break;
-                case OpCode.SUB:
-                    subtract();
-                    break;
-                default:
-                    error("invalid machine instruction");
+                CompiledLoop loop = jitCompiler.countBackwardBranch(target);
+                if (loop != null)
+                    return runCompiledLoop(loop, target);
               }
           }
+
+        return target;
       }
 
 
-    // Start:  internal machine instructions that do NOT correspond to OpCodes
-    //------------------------------------------------------------------------
+    /**
+     * Branches to the target address in the byte-level interpreter,
+     * after charging the length of the loop if the branch is backward.
+     */
+    private void branchTo(int target)
+      {
+        if (target < pc)
+            charge(pc - target);
+
+        pc = target;
+      }
 
 
     /**
-     * Print an error message and exit with nonzero status code.
+     * Checks the stack pointer against the stack limit.  The stack is
+     * checked once per frame, by the instructions that can enlarge it by
+     * more than a few bytes (PROGRAM, PROC, ALLOC and LOAD); memory extends
+     * Constants.STACK_GUARD_SIZE bytes past the limit so that the pushes
+     * made between checks, including the frame pushed by CALL before
+     * the PROC of the called subprogram checks it, don't need to be
+     * checked individually.  When the temporaries and arguments that a
+     * statement part pushes can exceed the guard, the compiler follows
+     * PROGRAM or PROC with CHKSTK, which checks for their largest size.
      */
-    private static void error(String message)
+    private void checkStack(int top)
       {
-        System.err.println(message);
-        System.exit(1);
+        if (top > stackLimit)
+            growMemory(top);
+      }
+
+
+    /**
+     * Enlarges memory so that the stack can reach the specified address,
+     * or reports a stack overflow if memory growth is not enabled.
+     */
+    private void growMemory(int top)
+      {
+        long required = (long) top + 1 + Constants.STACK_GUARD_SIZE;
+        int  size = grownMemorySize(memory.length, required);
+
+        try
+          {
+            memory = Arrays.copyOf(memory, size);
+          }
+        catch (OutOfMemoryError e)
+          {
+            error("*** FAULT:  Stack overflow ***");
+          }
+
+        stackLimit = memory.length - 1 - Constants.STACK_GUARD_SIZE;
+      }
+
+
+    /**
+     * Returns the number of bytes that memory of the current size should be
+     * grown to so that it has at least the required number of bytes.  Memory
+     * is at least doubled so that the cost of copying it stays proportional
+     * to its final size.  Reports a stack overflow if memory growth is not
+     * enabled or the required size is more than the maximum (see
+     * getMaxGrowthSize()).
+     */
+    private int grownMemorySize(int currentSize, long required)
+      {
+        int maxSize = getMaxGrowthSize();
+
+        if (!memoryGrowthEnabled || required > maxSize)
+            error("*** FAULT:  Stack overflow ***");
+
+        return (int) Math.min(Math.max(2L*currentSize, required), maxSize);
+      }
+
+
+    /**
+     * Returns the largest number of bytes that memory can be grown to.
+     * This is MAX_MEMORY_SIZE, or less if the JVM heap is too small to
+     * hold the old and new copies of memory while memory is being grown,
+     * so that a program that recurses without limit stops with a stack
+     * overflow rather than exhausting the heap.
+     */
+    private static int getMaxGrowthSize()
+      {
+        long heapLimit = Runtime.getRuntime().maxMemory()/HEAP_FRACTION_FOR_GROWTH;
+        return (int) Math.min(MAX_MEMORY_SIZE, heapLimit);
       }
 
 
@@ -321,10 +1959,9 @@ public class CprlVm
      */
     private char popChar()
       {
-        byte b1 = popByte();
-        byte b0 = popByte();
-
-        return ByteUtil.bytesToChar(b0, b1);
+        char c = getChar(sp - 1);
+        sp = sp - Constants.BYTES_PER_CHAR;
+        return c;
       }
 
 
@@ -333,12 +1970,9 @@ public class CprlVm
      */
     private int popInt()
       {
-        byte b3 = popByte();
-        byte b2 = popByte();
-        byte b1 = popByte();
-        byte b0 = popByte();
-
-        return ByteUtil.bytesToInt(b0, b1, b2, b3);
+        int n = getInt(sp - 3);
+        sp = sp - Constants.BYTES_PER_INTEGER;
+        return n;
       }
 
 
@@ -356,10 +1990,8 @@ public class CprlVm
      */
     private void pushChar(char c)
       {
-        byte[] bytes = ByteUtil.charToBytes(c);
-
-        pushByte(bytes[0]);
-        pushByte(bytes[1]);
+        putChar(sp + 1, c);
+        sp = sp + Constants.BYTES_PER_CHAR;
       }
 
 
@@ -368,12 +2000,8 @@ public class CprlVm
      */
     private void pushInt(int n)
       {
-        byte[] bytes = ByteUtil.intToBytes(n);
-
-        pushByte(bytes[0]);
-        pushByte(bytes[1]);
-        pushByte(bytes[2]);
-        pushByte(bytes[3]);
+        putInt(sp + 1, n);
+        sp = sp + Constants.BYTES_PER_INTEGER;
       }
 
 
@@ -391,12 +2019,32 @@ public class CprlVm
      */
     private int fetchInt()
       {
-        byte b0 = fetchByte();
-        byte b1 = fetchByte();
-        byte b2 = fetchByte();
-        byte b3 = fetchByte();
+        int n = getInt(pc);
+        pc = pc + Constants.BYTES_PER_INTEGER;
+        return n;
+      }
+
+
+    /**
+     * Fetch the int displacement of a branch or call and return the
+     * address of its target.  The displacement is relative to the
+     * address of the opcode.
+     */
+    private int fetchBranchTarget()
+      {
+        int opCodeAddr = pc - 1;
+        return opCodeAddr + fetchInt();
+      }
 
-        return ByteUtil.bytesToInt(b0, b1, b2, b3);
+
+    /**
+     * Fetch the one byte displacement of a short-form branch
+     * or call and return the address of its target.
+     */
+    private int fetchShortBranchTarget()
+      {
+        int opCodeAddr = pc - 1;
+        return opCodeAddr + fetchByte();
       }
 
 
@@ -405,10 +2053,9 @@ public class CprlVm
      */
     private char fetchChar()
       {
-        byte b0 = fetchByte();
-        byte b1 = fetchByte();
-
-        return ByteUtil.bytesToChar(b0, b1);
+        char c = getChar(pc);
+        pc = pc + Constants.BYTES_PER_CHAR;
+        return c;
       }
 
 
@@ -418,12 +2065,44 @@ public class CprlVm
      */
     private int getInt(int address)
       {
-        byte b0 = memory[address + 0];
-        byte b1 = memory[address + 1];
-        byte b2 = memory[address + 2];
-        byte b3 = memory[address + 3];
+        return  (memory[address]            << 24)
+             | ((memory[address + 1] & 0xFF) << 16)
+             | ((memory[address + 2] & 0xFF) <<  8)
+             |  (memory[address + 3] & 0xFF);
+      }
 
-        return ByteUtil.bytesToInt(b0, b1, b2, b3);
+
+    /**
+     * Returns the character at the specified memory address.
+     * Does not alter pc, sp, or bp.
+     */
+    private char getChar(int address)
+      {
+        return (char) ((memory[address] << 8) | (memory[address + 1] & 0xFF));
+      }
+
+
+    /**
+     * Writes an integer to the specified memory address in place
+     * (high order byte first).  Does not alter pc, sp, or bp.
+     */
+    private void putInt(int address, int n)
+      {
+        memory[address]     = (byte) (n >>> 24);
+        memory[address + 1] = (byte) (n >>> 16);
+        memory[address + 2] = (byte) (n >>>  8);
+        memory[address + 3] = (byte)  n;
+      }
+
+
+    /**
+     * Writes a character to the specified memory address in place
+     * (high order byte first).  Does not alter pc, sp, or bp.
+     */
+    private void putChar(int address, char c)
+      {
+        memory[address]     = (byte) (c >>> 8);
+        memory[address + 1] = (byte)  c;
       }
 
 
@@ -448,98 +2127,82 @@ public class CprlVm
         int numBytes = fetchInt();
 
         sp = sp + numBytes;
+        checkStack(sp);
       }
 
 
     /**
      * Unconditional branch.
      */
-    private void branch()
+    private void branch(int target)
       {
-        int opCodeAddr   = pc - 1;
-        int displacement = fetchInt();
-
-        pc = opCodeAddr + displacement;
+        branchTo(target);
       }
 
 
-    private void branchGreater()
+    private void branchGreater(int target)
       {
-        int  opCodeAddr   = pc - 1;
-        int  displacement = fetchInt();
-        byte value        = popByte();
+        byte value = popByte();
 
         if (value > 0)
-            pc = opCodeAddr + displacement;
+            branchTo(target);
       }
 
 
-    private void branchGreaterOrEqual()
+    private void branchGreaterOrEqual(int target)
       {
-        int  opCodeAddr   = pc - 1;
-        int  displacement = fetchInt();
-        byte value        = popByte();
+        byte value = popByte();
 
         if (value >= 0)
-            pc = opCodeAddr + displacement;
+            branchTo(target);
       }
 
 
-    private void branchLess()
+    private void branchLess(int target)
       {
-        int  opCodeAddr   = pc - 1;
-        int  displacement = fetchInt();
-        byte value        = popByte();
+        byte value = popByte();
 
         if (value < 0)
-            pc = opCodeAddr + displacement;
+            branchTo(target);
       }
 
 
-    private void branchLessOrEqual()
+    private void branchLessOrEqual(int target)
       {
-        int  opCodeAddr   = pc - 1;
-        int  displacement = fetchInt();
-        byte value        = popByte();
+        byte value = popByte();
 
         if (value <= 0)
-            pc = opCodeAddr + displacement;
+            branchTo(target);
       }
 
 
     /**
      * Branch if the byte on the top of the stack is nonzero (true).
      */
-    private void branchNonZero()
+    private void branchNonZero(int target)
       {
-        int  opCodeAddr   = pc - 1;
-        int  displacement = fetchInt();
-        byte value        = popByte();
+        byte value = popByte();
 
         if (value != 0)
-            pc = opCodeAddr + displacement;
+            branchTo(target);
       }
 
 
     /**
      * Branch if ZF (zero flag) is true.
      */
-    private void branchZero()
+    private void branchZero(int target)
       {
-        int  opCodeAddr   = pc - 1;
-        int  displacement = fetchInt();
-        byte value        = popByte();
+        byte value = popByte();
 
         if (value == 0)
-            pc = opCodeAddr + displacement;
+            branchTo(target);
       }
 
 
-    private void call()
+    private void call(int target)
       {
-        int opCodeAddr   = pc - 1;
-        int displacement = fetchInt();
-        
+        charge(1);
         pushInt(bp);          // dynamic link
         pushInt(pc);          // return address
 
@@ -547,7 +2210,19 @@ public class CprlVm
         bp = sp - Constants.BYTES_PER_FRAME + 1;
         
         // set pc to first statement of called procedure
-        pc = opCodeAddr + displacement;
+        pc = target;
+      }
+
+
+    /**
+     * Checks that the stack can grow by the number of bytes in the operand
+     * without leaving memory.  The stack pointer is not changed.
+     */
+    private void checkStackSpace()
+      {
+        int numBytes = fetchInt();
+
+        checkStack(sp + numBytes);
       }
 
 
@@ -565,6 +2240,25 @@ public class CprlVm
       }
 
 
+    private void copy()
+      {
+        copy(fetchInt());
+      }
+
+
+    /**
+     * Copies a block of memory.  The source address is on top of the
+     * stack, with the destination address below it.
+     */
+    private void copy(int length)
+      {
+        int srcAddr  = popInt();
+        int destAddr = popInt();
+
+        System.arraycopy(memory, srcAddr, memory, destAddr, length);
+      }
+
+
     private void decrement()
       {
         int operand = popInt();
@@ -586,14 +2280,22 @@ public class CprlVm
 
     private void getInt()
       {
+        pushInt(readInt());
+      }
+
+
+    /**
+     * Reads a line of input containing an integer.
+     */
+    private int readInt()
+      {
+        int n = 0;
+
         try
           {
-            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-            String line = in.readLine();
+            String line = io.readLine();
 
-            int n = line != null ? Integer.parseInt(line) : 0;
-
-            pushInt(n);
+            n = line != null ? Integer.parseInt(line) : 0;
           }
         catch (NumberFormatException e)
           {
@@ -604,6 +2306,8 @@ public class CprlVm
             ex.printStackTrace();
             error("IO Error");
           }
+
+        return n;
       }
 
 
@@ -611,9 +2315,7 @@ public class CprlVm
       {
         try
           {
-            Reader in = new InputStreamReader(System.in);
-
-            int ch = in.read();
+            int ch = io.readChar();
 
             if (ch == EOF)
                 error("Invalid input");
@@ -631,6 +2333,8 @@ public class CprlVm
     private void halt()
       {
         running = false;
+        halted  = true;
+        io.flush();
       }
 
 
@@ -648,11 +2352,17 @@ public class CprlVm
      */
     private void load()
       {
-        int length  = fetchInt();
+        load(fetchInt());
+      }
+
+
+    private void load(int length)
+      {
         int address = popInt();
 
-        for (int i = 0;  i < length;  ++i)
-            pushByte(memory[address + i]);
+        checkStack(sp + length);
+        System.arraycopy(memory, address, memory, sp + 1, length);
+        sp = sp + length;
       }
 
 
@@ -709,20 +2419,41 @@ public class CprlVm
 
     /**
      * Loads the contents of a memory address onto the top of the stack.
+     * The address is the displacement operand added to the base address
+     * (bp for LDMEM, sb for LDGMEM).
      */
-    private void loadMemory()
+    private void loadMemory(int base)
       {
         int displacement = fetchInt();
-        int address = bp + displacement;
+        int address = base + displacement;
 
-        byte b0 = memory[address + 0];
-        byte b1 = memory[address + 1];
-        byte b2 = memory[address + 2];
-        byte b3 = memory[address + 3];
+        pushInt(getInt(address));
+      }
 
-        int value = ByteUtil.bytesToInt(b0, b1, b2, b3);
 
-        pushInt(value);
+    /**
+     * Loads the byte at a memory address onto the top of the stack.
+     * The address is computed as for loadMemory().
+     */
+    private void loadMemoryByte(int base)
+      {
+        int displacement = fetchInt();
+        int address = base + displacement;
+
+        pushByte(memory[address]);
+      }
+
+
+    /**
+     * Loads the two bytes at a memory address onto the top of the stack.
+     * The address is computed as for loadMemory().
+     */
+    private void loadMemory2Bytes(int base)
+      {
+        int displacement = fetchInt();
+        int address = base + displacement;
+
+        pushChar(getChar(address));
       }
 
 
@@ -765,14 +2496,7 @@ public class CprlVm
       {
         int address = popInt();
 
-        byte b0 = memory[address + 0];
-        byte b1 = memory[address + 1];
-        byte b2 = memory[address + 2];
-        byte b3 = memory[address + 3];
-
-        int value = ByteUtil.bytesToInt(b0, b1, b2, b3);
-
-        pushInt(value);
+        pushInt(getInt(address));
       }
 
 
@@ -781,7 +2505,10 @@ public class CprlVm
         int operand2 = popInt();
         int operand1 = popInt();
 
-        pushInt(operand1 % operand2);
+        if (operand2 != 0)
+            pushInt(operand1 % operand2);
+        else
+            error("*** FAULT:  Divide by zero ***");
       }
 
 
@@ -821,40 +2548,42 @@ public class CprlVm
 
     private void program()
       {
-        int varLength = fetchInt();
+        program(fetchInt());
+      }
+
 
+    private void program(int varLength)
+      {
         bp = sb;
 
         // init stack pointer to allow for a dummy frame
         //sp = bp + Constants.BYTES_PER_FRAME + varLength - 1;
         sp = bp + varLength - 1;
-
-        if (sp >= memory.length)
-            error("*** Out of memory ***");
+        checkStack(sp);
       }
 
 
     private void putChar()
       {
-        System.out.print(popChar());
+        io.putChar(popChar());
       }
 
 
     private void putByte()
       {
-        System.out.print(popByte());
+        io.putInt(popByte());
       }
 
 
     private void putInt()
       {
-        System.out.print(popInt());
+        io.putInt(popInt());
       }
 
 
     private void putEOL()
       {
-        System.out.println();
+        io.putEOL();
       }
 
 
@@ -863,17 +2592,7 @@ public class CprlVm
         int strAddr   = popInt();
         int strLength = popInt();
 
-        char[] str = new char[strLength];
-
-        for (int i = 0;  i < strLength;  ++i)
-          {
-            byte b0 = memory[strAddr++];
-            byte b1 = memory[strAddr++];
-
-            str[i] = ByteUtil.bytesToChar(b0, b1);
-          }
-
-        System.out.print(str);
+        io.putString(memory, strAddr, strLength);
       }
 
 
@@ -914,17 +2633,19 @@ public class CprlVm
 
     private void store()
       {
-        int length  = fetchInt();
-        byte[] data = new byte[length];
+        store(fetchInt());
+      }
 
-        // pop bytes of data, storing in reverse order
-        for (int i = length - 1;  i >= 0;  --i)
-            data[i] = popByte();
 
-        int destAddr = popInt();
+    private void store(int length)
+      {
+        // the data is on top of the stack, with the destination address below it
+        int dataAddr = sp - length + 1;
+        int destAddr = getInt(dataAddr - Constants.BYTES_PER_ADDRESS);
 
-        for (int i = 0;  i < length;  ++i)
-            memory[destAddr + i] = data[i];
+        sp = dataAddr - Constants.BYTES_PER_ADDRESS - 1;
+
+        System.arraycopy(memory, dataAddr, memory, destAddr, length);
       }
 
 
@@ -953,12 +2674,36 @@ public class CprlVm
         int value = popInt();
         int destAddr = popInt();
 
-        byte[] bytes = ByteUtil.intToBytes(value);
+        putInt(destAddr, value);
+      }
+
+
+    /**
+     * Pops an integer off the stack and stores it at a memory address.
+     * The address is the displacement operand added to the base address
+     * (bp for STMEM, sb for STGMEM).
+     */
+    private void storeMemory(int base)
+      {
+        int displacement = fetchInt();
+
+        putInt(base + displacement, popInt());
+      }
+
+
+    private void storeMemoryByte(int base)
+      {
+        int displacement = fetchInt();
+
+        memory[base + displacement] = popByte();
+      }
+
+
+    private void storeMemory2Bytes(int base)
+      {
+        int displacement = fetchInt();
 
-        memory[destAddr + 0] = bytes[0];
-        memory[destAddr + 1] = bytes[1];
-        memory[destAddr + 2] = bytes[2];
-        memory[destAddr + 3] = bytes[3];
+        putChar(base + displacement, popChar());
       }
 
 
@@ -0,0 +1,345 @@
+package edu.citadel.cprlvm;
+
+
+/**
+ * The dense set of handler indices used by the pre-decoded execution
+ * engine of the CPRL virtual machine.  Unlike the values in OpCode,
+ * these values are contiguous starting at 0 so that the dispatch
+ * switch in CprlVm compiles to a single jump table.
+ */
+public final class DecodedOpCode
+  {
+    // halt opcode
+    public static final int HALT    =  0;
+
+    // load opcodes
+    public static final int LOAD    =  1;
+    public static final int LOADB   =  2;
+    public static final int LOAD2B  =  3;
+    public static final int LOADW   =  4;
+    public static final int LOADCB  =  5;
+    public static final int LDCCH   =  6;
+    public static final int LDCINT  =  7;
+    public static final int LDCSTR  =  8;
+    public static final int LDADDR  =  9;
+    public static final int LDGADDR = 10;
+    public static final int LDMEM   = 11;
+
+    // store opcodes
+    public static final int STORE   = 12;
+    public static final int STOREB  = 13;
+    public static final int STORE2B = 14;
+    public static final int STOREW  = 15;
+
+    // compare/branch opcodes
+    public static final int CMP     = 16;
+    public static final int BR      = 17;
+    public static final int BNZ     = 18;
+    public static final int BZ      = 19;
+    public static final int BG      = 20;
+    public static final int BGE     = 21;
+    public static final int BL      = 22;
+    public static final int BLE     = 23;
+
+    // shift opcodes
+    public static final int SHL     = 24;
+    public static final int SHR     = 25;
+
+    // logical not opcode
+    public static final int NOT     = 26;
+
+    // arithmetic opcodes
+    public static final int ADD     = 27;
+    public static final int SUB     = 28;
+    public static final int MUL     = 29;
+    public static final int DIV     = 30;
+    public static final int MOD     = 31;
+    public static final int NEG     = 32;
+    public static final int INC     = 33;
+    public static final int DEC     = 34;
+
+    // I/O opcodes
+    public static final int GETCH   = 35;
+    public static final int GETINT  = 36;
+    public static final int PUTBYTE = 37;
+    public static final int PUTCH   = 38;
+    public static final int PUTINT  = 39;
+    public static final int PUTEOL  = 40;
+    public static final int PUTSTR  = 41;
+
+    // program/procedure opcodes
+    public static final int PROGRAM = 42;
+    public static final int PROC    = 43;
+    public static final int CALL    = 44;
+    public static final int RET     = 45;
+    public static final int ALLOC   = 46;
+
+    // superinstructions formed by DecodedProgram.fuse()
+    public static final int LDGMEM        = 47;   // LDGADDR n; LOADW
+    public static final int ADDI          = 48;   // LDCINT k; ADD
+    public static final int SUBI          = 49;   // LDCINT k; SUB
+    public static final int MULI          = 50;   // LDCINT k; MUL
+    public static final int STOREW_LOCAL  = 51;   // LDADDR n; <expr>; STOREW
+    public static final int STOREW_GLOBAL = 52;   // LDGADDR n; <expr>; STOREW
+    public static final int CMP_BNZ       = 53;   // CMP; BNZ
+    public static final int CMP_BZ        = 54;
+    public static final int CMP_BG        = 55;
+    public static final int CMP_BGE       = 56;
+    public static final int CMP_BL        = 57;
+    public static final int CMP_BLE       = 58;
+    public static final int CMPI_BNZ      = 59;   // LDCINT k; CMP; BNZ
+    public static final int CMPI_BZ       = 60;
+    public static final int CMPI_BG       = 61;
+    public static final int CMPI_BGE      = 62;
+    public static final int CMPI_BL       = 63;
+    public static final int CMPI_BLE      = 64;
+
+    // direct loads and stores of bytes and characters; the word
+    // forms share the LDMEM, LDGMEM, and STOREW_xxx handlers
+    public static final int LDMEMB         = 65;
+    public static final int LDMEM2B        = 66;
+    public static final int LDGMEMB        = 67;
+    public static final int LDGMEM2B       = 68;
+    public static final int STOREB_LOCAL   = 69;
+    public static final int STORE2B_LOCAL  = 70;
+    public static final int STOREB_GLOBAL  = 71;
+    public static final int STORE2B_GLOBAL = 72;
+
+    // block copy opcode
+    public static final int COPY           = 73;
+
+    // basic block counter inserted by DecodedProgram.instrument()
+    public static final int PROFILE        = 74;
+
+    // superinstructions for the direct loads and stores emitted by the compiler
+    public static final int INDEX_LOCAL    = 75;   // LDADDR n; LDMEM i; SHL 2; ADD
+    public static final int LDELEM_LOCAL   = 76;   // LDADDR n; LDMEM i; SHL 2; ADD; LOADW
+    public static final int INDEX_GLOBAL   = 77;   // LDGADDR n; LDGMEM i; SHL 2; ADD
+    public static final int LDELEM_GLOBAL  = 78;   // LDGADDR n; LDGMEM i; SHL 2; ADD; LOADW
+    public static final int INC_LOCAL      = 79;   // LDMEM n; INC; STMEM n
+    public static final int DEC_LOCAL      = 80;   // LDMEM n; DEC; STMEM n
+    public static final int INC_GLOBAL     = 81;   // LDGMEM n; INC; STGMEM n
+    public static final int DEC_GLOBAL     = 82;   // LDGMEM n; DEC; STGMEM n
+    public static final int ADD_LOCAL      = 83;   // LDMEM n; ADD
+    public static final int SUB_LOCAL      = 84;   // LDMEM n; SUB
+    public static final int DIVI           = 85;   // LDCINT k; DIV
+    public static final int MODI           = 86;   // LDCINT k; MOD
+
+    // stack check for the temporaries and arguments of a statement part
+    public static final int CHKSTK         = 87;
+
+    /** the number of handler indices */
+    public static final int NUM_HANDLERS = 88;
+
+    /** returned by valueOf() for bytes that are not valid opcodes */
+    public static final int INVALID = -1;
+
+
+    /**
+     * Returns the handler index for a machine opcode, or
+     * INVALID if the byte is not a declared opcode.  The short
+     * and long forms of a branch share a handler, and the direct
+     * word loads and stores share the handlers of the equivalent
+     * superinstructions.
+     */
+    public static int valueOf(byte opCode)
+      {
+        switch (opCode)
+          {
+            case OpCode.HALT:    return HALT;
+            case OpCode.LOAD:    return LOAD;
+            case OpCode.LOADB:   return LOADB;
+            case OpCode.LOAD2B:  return LOAD2B;
+            case OpCode.LOADW:   return LOADW;
+            case OpCode.LOADCB:  return LOADCB;
+            case OpCode.LDCCH:   return LDCCH;
+            case OpCode.LDCINT:  return LDCINT;
+            case OpCode.LDCSTR:  return LDCSTR;
+            case OpCode.LDADDR:  return LDADDR;
+            case OpCode.LDGADDR: return LDGADDR;
+            case OpCode.LDMEM:   return LDMEM;
+            case OpCode.LDMEMB:  return LDMEMB;
+            case OpCode.LDMEM2B: return LDMEM2B;
+            case OpCode.LDGMEM:  return LDGMEM;
+            case OpCode.LDGMEMB: return LDGMEMB;
+            case OpCode.LDGMEM2B: return LDGMEM2B;
+            case OpCode.STORE:   return STORE;
+            case OpCode.STOREB:  return STOREB;
+            case OpCode.STORE2B: return STORE2B;
+            case OpCode.STOREW:  return STOREW;
+            case OpCode.STMEM:   return STOREW_LOCAL;
+            case OpCode.STMEMB:  return STOREB_LOCAL;
+            case OpCode.STMEM2B: return STORE2B_LOCAL;
+            case OpCode.STGMEM:  return STOREW_GLOBAL;
+            case OpCode.STGMEMB: return STOREB_GLOBAL;
+            case OpCode.STGMEM2B: return STORE2B_GLOBAL;
+            case OpCode.CMP:     return CMP;
+            case OpCode.BR:      return BR;
+            case OpCode.BNZ:     return BNZ;
+            case OpCode.BZ:      return BZ;
+            case OpCode.BG:      return BG;
+            case OpCode.BGE:     return BGE;
+            case OpCode.BL:      return BL;
+            case OpCode.BLE:     return BLE;
+            case OpCode.SHL:     return SHL;
+            case OpCode.SHR:     return SHR;
+            case OpCode.NOT:     return NOT;
+            case OpCode.ADD:     return ADD;
+            case OpCode.SUB:     return SUB;
+            case OpCode.MUL:     return MUL;
+            case OpCode.DIV:     return DIV;
+            case OpCode.MOD:     return MOD;
+            case OpCode.NEG:     return NEG;
+            case OpCode.INC:     return INC;
+            case OpCode.DEC:     return DEC;
+            case OpCode.GETCH:   return GETCH;
+            case OpCode.GETINT:  return GETINT;
+            case OpCode.PUTBYTE: return PUTBYTE;
+            case OpCode.PUTCH:   return PUTCH;
+            case OpCode.PUTINT:  return PUTINT;
+            case OpCode.PUTEOL:  return PUTEOL;
+            case OpCode.PUTSTR:  return PUTSTR;
+            case OpCode.PROGRAM: return PROGRAM;
+            case OpCode.PROC:    return PROC;
+            case OpCode.CALL:    return CALL;
+            case OpCode.RET:     return RET;
+            case OpCode.ALLOC:   return ALLOC;
+            case OpCode.CHKSTK:  return CHKSTK;
+            case OpCode.BR_S:    return BR;
+            case OpCode.BNZ_S:   return BNZ;
+            case OpCode.BZ_S:    return BZ;
+            case OpCode.BG_S:    return BG;
+            case OpCode.BGE_S:   return BGE;
+            case OpCode.BL_S:    return BL;
+            case OpCode.BLE_S:   return BLE;
+            case OpCode.CALL_S:  return CALL;
+            case OpCode.COPY:    return COPY;
+            default:             return INVALID;
+          }
+      }
+
+
+    /**
+     * Returns true if the handler index corresponds to
+     * an instruction whose operand is a branch target.
+     */
+    public static boolean isBranch(int handler)
+      {
+        return handler >= BR && handler <= BLE || handler == CALL
+            || handler >= CMP_BNZ && handler <= CMPI_BLE;
+      }
+
+
+    /**
+     * Returns true if the handler index is one of the conditional
+     * branches BNZ, BZ, BG, BGE, BL, or BLE.
+     */
+    public static boolean isConditionalBranch(int handler)
+      {
+        return handler >= BNZ && handler <= BLE;
+      }
+
+
+    /**
+     * Returns a string representation for a handler index.
+     */
+    public static String toString(int handler)
+      {
+        switch (handler)
+          {
+            case HALT:    return "HALT";
+            case LOAD:    return "LOAD";
+            case LOADB:   return "LOADB";
+            case LOAD2B:  return "LOAD2B";
+            case LOADW:   return "LOADW";
+            case LOADCB:  return "LOADCB";
+            case LDCCH:   return "LDCCH";
+            case LDCINT:  return "LDCINT";
+            case LDCSTR:  return "LDCSTR";
+            case LDADDR:  return "LDADDR";
+            case LDGADDR: return "LDGADDR";
+            case LDMEM:   return "LDMEM";
+            case STORE:   return "STORE";
+            case STOREB:  return "STOREB";
+            case STORE2B: return "STORE2B";
+            case STOREW:  return "STOREW";
+            case CMP:     return "CMP";
+            case BR:      return "BR";
+            case BNZ:     return "BNZ";
+            case BZ:      return "BZ";
+            case BG:      return "BG";
+            case BGE:     return "BGE";
+            case BL:      return "BL";
+            case BLE:     return "BLE";
+            case SHL:     return "SHL";
+            case SHR:     return "SHR";
+            case NOT:     return "NOT";
+            case ADD:     return "ADD";
+            case SUB:     return "SUB";
+            case MUL:     return "MUL";
+            case DIV:     return "DIV";
+            case MOD:     return "MOD";
+            case NEG:     return "NEG";
+            case INC:     return "INC";
+            case DEC:     return "DEC";
+            case GETCH:   return "GETCH";
+            case GETINT:  return "GETINT";
+            case PUTBYTE: return "PUTBYTE";
+            case PUTCH:   return "PUTCH";
+            case PUTINT:  return "PUTINT";
+            case PUTEOL:  return "PUTEOL";
+            case PUTSTR:  return "PUTSTR";
+            case PROGRAM: return "PROGRAM";
+            case PROC:    return "PROC";
+            case CALL:    return "CALL";
+            case RET:     return "RET";
+            case ALLOC:   return "ALLOC";
+
+            case LDGMEM:        return "LDGMEM";
+            case ADDI:          return "LDCINT;ADD";
+            case SUBI:          return "LDCINT;SUB";
+            case MULI:          return "LDCINT;MUL";
+            case STOREW_LOCAL:  return "STMEM";
+            case STOREW_GLOBAL: return "STGMEM";
+            case CMP_BNZ:       return "CMP;BNZ";
+            case CMP_BZ:        return "CMP;BZ";
+            case CMP_BG:        return "CMP;BG";
+            case CMP_BGE:       return "CMP;BGE";
+            case CMP_BL:        return "CMP;BL";
+            case CMP_BLE:       return "CMP;BLE";
+            case CMPI_BNZ:      return "LDCINT;CMP;BNZ";
+            case CMPI_BZ:       return "LDCINT;CMP;BZ";
+            case CMPI_BG:       return "LDCINT;CMP;BG";
+            case CMPI_BGE:      return "LDCINT;CMP;BGE";
+            case CMPI_BL:       return "LDCINT;CMP;BL";
+            case CMPI_BLE:      return "LDCINT;CMP;BLE";
+
+            case LDMEMB:         return "LDMEMB";
+            case LDMEM2B:        return "LDMEM2B";
+            case LDGMEMB:        return "LDGMEMB";
+            case LDGMEM2B:       return "LDGMEM2B";
+            case STOREB_LOCAL:   return "STMEMB";
+            case STORE2B_LOCAL:  return "STMEM2B";
+            case STOREB_GLOBAL:  return "STGMEMB";
+            case STORE2B_GLOBAL: return "STGMEM2B";
+
+            case COPY:           return "COPY";
+            case PROFILE:        return "PROFILE";
+
+            case INDEX_LOCAL:    return "LDADDR;LDMEM;SHL;ADD";
+            case LDELEM_LOCAL:   return "LDADDR;LDMEM;SHL;ADD;LOADW";
+            case INDEX_GLOBAL:   return "LDGADDR;LDGMEM;SHL;ADD";
+            case LDELEM_GLOBAL:  return "LDGADDR;LDGMEM;SHL;ADD;LOADW";
+            case INC_LOCAL:      return "LDMEM;INC;STMEM";
+            case DEC_LOCAL:      return "LDMEM;DEC;STMEM";
+            case INC_GLOBAL:     return "LDGMEM;INC;STGMEM";
+            case DEC_GLOBAL:     return "LDGMEM;DEC;STGMEM";
+            case ADD_LOCAL:      return "LDMEM;ADD";
+            case SUB_LOCAL:      return "LDMEM;SUB";
+            case DIVI:           return "LDCINT;DIV";
+            case MODI:           return "LDCINT;MOD";
+            case CHKSTK:         return "CHKSTK";
+            default:      return Integer.toString(handler);
+          }
+      }
+  }
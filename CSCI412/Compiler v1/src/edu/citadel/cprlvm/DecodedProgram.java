@@ -0,0 +1,885 @@
+package edu.citadel.cprlvm;
+
+
+import edu.citadel.compiler.util.ByteUtil;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+
+/**
+ * This class holds the code segment of a CPRL program after it has been
+ * decoded into a compact instruction array.  Each instruction is
+ * represented by a dense handler index (see DecodedOpCode) and a single
+ * pre-resolved int operand.  Branch and call operands are resolved to
+ * absolute instruction indices, so the execution engine never needs
+ * to reassemble operand bytes or compute displacements.
+ *
+ * <p>The method fuse() produces a second, shorter form of the program in
+ * which common instruction sequences are replaced by superinstructions.
+ * A decoded program is not modified once it has been decoded or fused,
+ * so it can be shared by virtual machines running on different threads.
+ */
+public final class DecodedProgram
+  {
+    /** the shift that scales an array index to an integer element offset */
+    private static final int WORD_SHIFT = 2;   // log2(BYTES_PER_INTEGER)
+
+    /** handler index for each instruction */
+    private int[] ops;
+
+    /** pre-resolved operand for each instruction (0 if none) */
+    private int[] args;
+
+    /** second operand, used only by superinstructions (0 if none) */
+    private int[] args2;
+
+    /** byte address of each instruction; addrs[numInstructions] == codeSize */
+    private int[] addrs;
+
+    /** maps a byte address in the code segment to an instruction index (-1 if none) */
+    private int[] indexOf;
+
+    private int numInstructions;
+    private int codeSize;
+
+    /** the program before fusion; this program if it has not been fused */
+    private DecodedProgram baseProgram;
+
+    /** the number of times each superinstruction was formed, indexed by handler */
+    private int[] fusionCounts;
+
+
+    private DecodedProgram(int codeSize)
+      {
+        this.codeSize = codeSize;
+        this.indexOf  = new int[codeSize + 1];
+
+        // at most one instruction per byte, plus one sentinel
+        this.ops   = new int[codeSize + 1];
+        this.args  = new int[codeSize + 1];
+        this.args2 = new int[codeSize + 1];
+        this.addrs = new int[codeSize + 1];
+
+        this.baseProgram  = this;
+        this.fusionCounts = new int[DecodedOpCode.NUM_HANDLERS];
+      }
+
+
+    /**
+     * Decodes the first codeSize bytes of memory.  Returns null if the code
+     * segment contains an invalid opcode, a truncated instruction, or a
+     * branch whose target is not the start of an instruction.  In that
+     * case the caller should fall back to the byte-level interpreter.
+     */
+    public static DecodedProgram decode(byte[] memory, int codeSize)
+      {
+        DecodedProgram program = new DecodedProgram(codeSize);
+
+        for (int i = 0;  i <= codeSize;  ++i)
+            program.indexOf[i] = -1;
+
+        // first pass:  find the start of each instruction and decode operands
+        int address = 0;
+        int n = 0;
+
+        while (address < codeSize)
+          {
+            int handler = DecodedOpCode.valueOf(memory[address]);
+            if (handler == DecodedOpCode.INVALID)
+                return null;
+
+            int argSize = getArgSize(handler, memory, address, codeSize);
+            if (argSize < 0 || address + 1 + argSize > codeSize)
+                return null;
+
+            program.ops[n]   = handler;
+            program.args[n]  = getArg(handler, memory, address);
+            program.addrs[n] = address;
+            program.indexOf[address] = n;
+
+            address = address + 1 + argSize;
+            ++n;
+          }
+
+        // running off the end of the code segment is an invalid instruction
+        program.numInstructions = n;
+        program.ops[n]   = DecodedOpCode.INVALID;
+        program.addrs[n] = codeSize;
+        program.indexOf[codeSize] = n;
+
+        program.ops   = Arrays.copyOf(program.ops,   n + 1);
+        program.args  = Arrays.copyOf(program.args,  n + 1);
+        program.addrs = Arrays.copyOf(program.addrs, n + 1);
+        program.args2 = Arrays.copyOf(program.args2, n + 1);
+
+        // second pass:  resolve branch displacements to instruction indices
+        for (int i = 0;  i < n;  ++i)
+          {
+            if (DecodedOpCode.isBranch(program.ops[i]))
+              {
+                int targetAddr = program.addrs[i] + program.args[i];
+
+                if (targetAddr < 0 || targetAddr >= codeSize || program.indexOf[targetAddr] < 0)
+                    return null;
+
+                program.args[i] = program.indexOf[targetAddr];
+              }
+          }
+
+        return program;
+      }
+
+
+    /**
+     * Returns the number of operand bytes that follow the opcode, or -1
+     * if the operand extends beyond the end of the code segment.
+     */
+    private static int getArgSize(int handler, byte[] memory, int address, int codeSize)
+      {
+        if (OpCode.isShortBranch(memory[address]))
+            return 1;
+
+        switch (handler)
+          {
+            case DecodedOpCode.SHL:
+            case DecodedOpCode.SHR:
+            case DecodedOpCode.LOADCB:
+                return 1;
+
+            case DecodedOpCode.LDCCH:
+                return Constants.BYTES_PER_CHAR;
+
+            case DecodedOpCode.ALLOC:
+            case DecodedOpCode.CHKSTK:
+            case DecodedOpCode.BR:
+            case DecodedOpCode.BG:
+            case DecodedOpCode.BGE:
+            case DecodedOpCode.BL:
+            case DecodedOpCode.BLE:
+            case DecodedOpCode.BNZ:
+            case DecodedOpCode.BZ:
+            case DecodedOpCode.CALL:
+            case DecodedOpCode.LOAD:
+            case DecodedOpCode.LDMEM:
+            case DecodedOpCode.LDMEMB:
+            case DecodedOpCode.LDMEM2B:
+            case DecodedOpCode.LDGMEM:
+            case DecodedOpCode.LDGMEMB:
+            case DecodedOpCode.LDGMEM2B:
+            case DecodedOpCode.STOREW_LOCAL:
+            case DecodedOpCode.STOREB_LOCAL:
+            case DecodedOpCode.STORE2B_LOCAL:
+            case DecodedOpCode.STOREW_GLOBAL:
+            case DecodedOpCode.STOREB_GLOBAL:
+            case DecodedOpCode.STORE2B_GLOBAL:
+            case DecodedOpCode.COPY:
+            case DecodedOpCode.LDCINT:
+            case DecodedOpCode.LDADDR:
+            case DecodedOpCode.LDGADDR:
+            case DecodedOpCode.PROC:
+            case DecodedOpCode.PROGRAM:
+            case DecodedOpCode.RET:
+            case DecodedOpCode.STORE:
+                return Constants.BYTES_PER_INTEGER;
+
+            case DecodedOpCode.LDCSTR:
+                if (address + 1 + Constants.BYTES_PER_INTEGER > codeSize)
+                    return -1;
+                int strLength = getInt(memory, address + 1);
+                if (strLength < 0)
+                    return -1;
+                return Constants.BYTES_PER_INTEGER + strLength*Constants.BYTES_PER_CHAR;
+
+            default:
+                return 0;
+          }
+      }
+
+
+    /**
+     * Returns the decoded operand for the instruction at the specified address.
+     * Branch operands are returned as displacements and resolved later.
+     */
+    private static int getArg(int handler, byte[] memory, int address)
+      {
+        if (OpCode.isShortBranch(memory[address]))
+            return memory[address + 1];
+
+        switch (handler)
+          {
+            case DecodedOpCode.SHL:
+            case DecodedOpCode.SHR:
+                // zero out left three bits of shiftAmount
+                return memory[address + 1] & 0x1F;
+
+            case DecodedOpCode.LOADCB:
+                return memory[address + 1];
+
+            case DecodedOpCode.LDCCH:
+                return ByteUtil.bytesToChar(memory[address + 1], memory[address + 2]);
+
+            case DecodedOpCode.ALLOC:
+            case DecodedOpCode.CHKSTK:
+            case DecodedOpCode.BR:
+            case DecodedOpCode.BG:
+            case DecodedOpCode.BGE:
+            case DecodedOpCode.BL:
+            case DecodedOpCode.BLE:
+            case DecodedOpCode.BNZ:
+            case DecodedOpCode.BZ:
+            case DecodedOpCode.CALL:
+            case DecodedOpCode.LOAD:
+            case DecodedOpCode.LDMEM:
+            case DecodedOpCode.LDMEMB:
+            case DecodedOpCode.LDMEM2B:
+            case DecodedOpCode.LDGMEM:
+            case DecodedOpCode.LDGMEMB:
+            case DecodedOpCode.LDGMEM2B:
+            case DecodedOpCode.STOREW_LOCAL:
+            case DecodedOpCode.STOREB_LOCAL:
+            case DecodedOpCode.STORE2B_LOCAL:
+            case DecodedOpCode.STOREW_GLOBAL:
+            case DecodedOpCode.STOREB_GLOBAL:
+            case DecodedOpCode.STORE2B_GLOBAL:
+            case DecodedOpCode.COPY:
+            case DecodedOpCode.LDCINT:
+            case DecodedOpCode.LDADDR:
+            case DecodedOpCode.LDGADDR:
+            case DecodedOpCode.PROC:
+            case DecodedOpCode.PROGRAM:
+            case DecodedOpCode.RET:
+            case DecodedOpCode.STORE:
+            case DecodedOpCode.LDCSTR:
+                return getInt(memory, address + 1);
+
+            default:
+                return 0;
+          }
+      }
+
+
+    /**
+     * Returns a new program in which common instruction sequences have
+     * been fused into single superinstructions.  A sequence is fused only
+     * if no instruction after its first is a branch target or a return
+     * point, so control never enters the middle of a superinstruction.
+     * <ul>
+     *   <li> LDADDR n; LOADW becomes LDMEM n.
+     *   <li> LDGADDR n; LOADW becomes LDGMEM n.
+     *   <li> LDCINT k; ADD, SUB, or MUL becomes ADDI, SUBI, or MULI k.
+     *   <li> LDCINT k; DIV or MOD becomes DIVI or MODI k.
+     *   <li> CMP; Bxx becomes CMP_Bxx, and LDCINT k; CMP; Bxx becomes CMPI_Bxx.
+     *   <li> LDADDR n; LDMEM i; SHL 2; ADD becomes INDEX_LOCAL n, i, and
+     *        LDELEM_LOCAL n, i when followed by LOADW (similarly for
+     *        LDGADDR and LDGMEM).
+     *   <li> LDMEM n; INC or DEC; STMEM n becomes INC_LOCAL or DEC_LOCAL n
+     *        (similarly for LDGMEM and STGMEM).
+     *   <li> LDMEM n; ADD or SUB becomes ADD_LOCAL or SUB_LOCAL n.
+     *   <li> In LDADDR n; &lt;expr&gt;; STOREW (or LDGADDR), where the
+     *        straight-line expression code does not use the address, the
+     *        address is not pushed and STOREW becomes STOREW_LOCAL n
+     *        (or STOREW_GLOBAL n).
+     * </ul>
+     * Instruction byte addresses are unchanged, so return addresses
+     * saved in frames have the same values as in the unfused program.
+     */
+    public DecodedProgram fuse()
+      {
+        int n = numInstructions;
+        DecodedProgram fused = new DecodedProgram(codeSize);
+        fused.baseProgram = this;
+
+        // instructions that control can reach other than by falling through
+        boolean[] isTarget = new boolean[n + 1];
+        for (int i = 0;  i < n;  ++i)
+          {
+            if (DecodedOpCode.isBranch(ops[i]))
+                isTarget[args[i]] = true;
+            if (ops[i] == DecodedOpCode.CALL)
+                isTarget[i + 1] = true;
+          }
+
+        // first pass:  find address pushes that can be folded into a later STOREW
+        boolean[] elided = new boolean[n];
+        int[] storeOps  = new int[n];
+        int[] storeArgs = new int[n];
+
+        for (int i = 0;  i < n;  ++i)
+          {
+            if ((ops[i] == DecodedOpCode.LDADDR || ops[i] == DecodedOpCode.LDGADDR)
+                    && !isTarget[i + 1])
+              {
+                int j = findMatchingStore(i, isTarget);
+                if (j >= 0)
+                  {
+                    elided[i]    = true;
+                    storeOps[j]  = ops[i] == DecodedOpCode.LDADDR ? DecodedOpCode.STOREW_LOCAL
+                                                                  : DecodedOpCode.STOREW_GLOBAL;
+                    storeArgs[j] = args[i];
+                  }
+              }
+          }
+
+        // second pass:  group instructions and build the fused arrays
+        int[] newIndex = new int[n + 1];
+        int m = 0;
+        int i = 0;
+
+        while (i < n)
+          {
+            int start = i;
+
+            // an elided address push becomes part of the following group
+            while (elided[i])
+                ++i;
+
+            int op   = ops[i];
+            int arg  = args[i];
+            int arg2 = 0;
+            int length = 1;
+
+            if (storeOps[i] != 0)
+              {
+                op  = storeOps[i];
+                arg = storeArgs[i];
+              }
+            else if ((op == DecodedOpCode.LDADDR || op == DecodedOpCode.LDGADDR)
+                         && isIndex(i, isTarget, elided))
+              {
+                op   = op == DecodedOpCode.LDADDR ? DecodedOpCode.INDEX_LOCAL : DecodedOpCode.INDEX_GLOBAL;
+                arg2 = args[i + 1];
+                length = 4;
+
+                if (isFusible(i + 4, DecodedOpCode.LOADW, isTarget, elided))
+                  {
+                    op = op + (DecodedOpCode.LDELEM_LOCAL - DecodedOpCode.INDEX_LOCAL);
+                    length = 5;
+                  }
+              }
+            else if (op == DecodedOpCode.LDADDR && isFusible(i + 1, DecodedOpCode.LOADW, isTarget, elided))
+              {
+                op = DecodedOpCode.LDMEM;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.LDGADDR && isFusible(i + 1, DecodedOpCode.LOADW, isTarget, elided))
+              {
+                op = DecodedOpCode.LDGMEM;
+                length = 2;
+              }
+            else if ((op == DecodedOpCode.LDMEM || op == DecodedOpCode.LDGMEM)
+                         && isFusible(i + 2, op == DecodedOpCode.LDMEM ? DecodedOpCode.STOREW_LOCAL
+                                                                      : DecodedOpCode.STOREW_GLOBAL,
+                                      isTarget, elided)
+                         && args[i + 2] == arg
+                         && (isFusible(i + 1, DecodedOpCode.INC, isTarget, elided)
+                                 || isFusible(i + 1, DecodedOpCode.DEC, isTarget, elided)))
+              {
+                op = op == DecodedOpCode.LDMEM ? DecodedOpCode.INC_LOCAL : DecodedOpCode.INC_GLOBAL;
+                if (ops[i + 1] == DecodedOpCode.DEC)
+                    ++op;
+                length = 3;
+              }
+            else if (op == DecodedOpCode.LDMEM && isFusible(i + 1, DecodedOpCode.ADD, isTarget, elided))
+              {
+                op = DecodedOpCode.ADD_LOCAL;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.LDMEM && isFusible(i + 1, DecodedOpCode.SUB, isTarget, elided))
+              {
+                op = DecodedOpCode.SUB_LOCAL;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.LDCINT && isFusible(i + 1, DecodedOpCode.CMP, isTarget, elided)
+                         && isFusibleBranch(i + 2, isTarget, elided))
+              {
+                op   = DecodedOpCode.CMPI_BNZ + (ops[i + 2] - DecodedOpCode.BNZ);
+                arg  = args[i + 2];
+                arg2 = args[i];
+                length = 3;
+              }
+            else if (op == DecodedOpCode.LDCINT && isFusible(i + 1, DecodedOpCode.ADD, isTarget, elided))
+              {
+                op = DecodedOpCode.ADDI;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.LDCINT && isFusible(i + 1, DecodedOpCode.SUB, isTarget, elided))
+              {
+                op = DecodedOpCode.SUBI;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.LDCINT && isFusible(i + 1, DecodedOpCode.MUL, isTarget, elided))
+              {
+                op = DecodedOpCode.MULI;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.LDCINT && isFusible(i + 1, DecodedOpCode.DIV, isTarget, elided))
+              {
+                op = DecodedOpCode.DIVI;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.LDCINT && isFusible(i + 1, DecodedOpCode.MOD, isTarget, elided))
+              {
+                op = DecodedOpCode.MODI;
+                length = 2;
+              }
+            else if (op == DecodedOpCode.CMP && isFusibleBranch(i + 1, isTarget, elided))
+              {
+                op  = DecodedOpCode.CMP_BNZ + (ops[i + 1] - DecodedOpCode.BNZ);
+                arg = args[i + 1];
+                length = 2;
+              }
+
+            if (op != ops[i])
+                ++fused.fusionCounts[op];
+
+            fused.ops[m]   = op;
+            fused.args[m]  = arg;
+            fused.args2[m] = arg2;
+            fused.addrs[m] = addrs[start];
+
+            for (int k = start;  k < i + length;  ++k)
+                newIndex[k] = m;
+
+            ++m;
+            i = i + length;
+          }
+
+        newIndex[n] = m;
+
+        fused.numInstructions = m;
+        fused.ops[m]   = DecodedOpCode.INVALID;
+        fused.addrs[m] = codeSize;
+
+        fused.ops   = Arrays.copyOf(fused.ops,   m + 1);
+        fused.args  = Arrays.copyOf(fused.args,  m + 1);
+        fused.args2 = Arrays.copyOf(fused.args2, m + 1);
+        fused.addrs = Arrays.copyOf(fused.addrs, m + 1);
+
+        // resolve branch targets to the new instruction indices
+        for (int k = 0;  k < m;  ++k)
+          {
+            if (DecodedOpCode.isBranch(fused.ops[k]))
+                fused.args[k] = newIndex[fused.args[k]];
+          }
+
+        for (int address = 0;  address <= codeSize;  ++address)
+          {
+            int index = indexOf[address];
+            fused.indexOf[address] = index < 0 ? -1 : newIndex[index];
+          }
+
+        return fused;
+      }
+
+
+    /**
+     * Returns the index of the STOREW that pops the address pushed by the
+     * LDADDR or LDGADDR at index i, or -1 if the instructions in between
+     * are not straight-line code that leaves exactly one integer above
+     * the address without using it.
+     */
+    private int findMatchingStore(int i, boolean[] isTarget)
+      {
+        int depth = 0;   // number of bytes above the address
+
+        for (int j = i + 1;  j < numInstructions;  ++j)
+          {
+            if (isTarget[j])
+                return -1;
+
+            if (ops[j] == DecodedOpCode.STOREW)
+                return depth == Constants.BYTES_PER_INTEGER ? j : -1;
+
+            int popped = getBytesPopped(ops[j]);
+            if (popped < 0 || popped > depth)
+                return -1;
+
+            depth = depth - popped + getBytesPushed(ops[j], args[j]);
+          }
+
+        return -1;
+      }
+
+
+    /**
+     * Returns the number of bytes popped by an instruction that may appear
+     * in the expression of an assignment, or -1 for any other instruction.
+     */
+    private static int getBytesPopped(int op)
+      {
+        switch (op)
+          {
+            case DecodedOpCode.LDADDR:
+            case DecodedOpCode.LDGADDR:
+            case DecodedOpCode.LDCINT:
+            case DecodedOpCode.LDMEM:
+            case DecodedOpCode.LDMEMB:
+            case DecodedOpCode.LDMEM2B:
+            case DecodedOpCode.LDGMEM:
+            case DecodedOpCode.LDGMEMB:
+            case DecodedOpCode.LDGMEM2B:
+            case DecodedOpCode.LOADCB:
+            case DecodedOpCode.LDCCH:
+                return 0;
+            case DecodedOpCode.NOT:
+                return Constants.BYTES_PER_BOOLEAN;
+            case DecodedOpCode.LOAD:
+            case DecodedOpCode.LOADW:
+            case DecodedOpCode.LOADB:
+            case DecodedOpCode.LOAD2B:
+            case DecodedOpCode.NEG:
+            case DecodedOpCode.INC:
+            case DecodedOpCode.DEC:
+            case DecodedOpCode.SHL:
+            case DecodedOpCode.SHR:
+                return Constants.BYTES_PER_INTEGER;
+            case DecodedOpCode.ADD:
+            case DecodedOpCode.SUB:
+            case DecodedOpCode.MUL:
+            case DecodedOpCode.DIV:
+            case DecodedOpCode.MOD:
+            case DecodedOpCode.CMP:
+                return 2*Constants.BYTES_PER_INTEGER;
+            default:
+                return -1;
+          }
+      }
+
+
+    /**
+     * Returns the number of bytes pushed by an instruction for which
+     * getBytesPopped() does not return -1.
+     */
+    private static int getBytesPushed(int op, int arg)
+      {
+        switch (op)
+          {
+            case DecodedOpCode.LOADCB:
+            case DecodedOpCode.LOADB:
+            case DecodedOpCode.LDMEMB:
+            case DecodedOpCode.LDGMEMB:
+            case DecodedOpCode.NOT:
+            case DecodedOpCode.CMP:
+                return 1;
+            case DecodedOpCode.LDCCH:
+            case DecodedOpCode.LOAD2B:
+            case DecodedOpCode.LDMEM2B:
+            case DecodedOpCode.LDGMEM2B:
+                return Constants.BYTES_PER_CHAR;
+            case DecodedOpCode.LOAD:
+                return arg;
+            default:
+                return Constants.BYTES_PER_INTEGER;
+          }
+      }
+
+
+    /**
+     * Returns true if the instruction at index i has the specified
+     * handler and can be the second or later part of a superinstruction.
+     */
+    private boolean isFusible(int i, int op, boolean[] isTarget, boolean[] elided)
+      {
+        return i < numInstructions && ops[i] == op && !isTarget[i] && !elided[i];
+      }
+
+
+    /**
+     * Returns true if the LDADDR n or LDGADDR n at index i starts the
+     * address computation for the element of an integer array, that is
+     * LDMEM i; SHL 2; ADD (or LDGMEM i for a global array).
+     */
+    private boolean isIndex(int i, boolean[] isTarget, boolean[] elided)
+      {
+        int load = ops[i] == DecodedOpCode.LDADDR ? DecodedOpCode.LDMEM : DecodedOpCode.LDGMEM;
+
+        return isFusible(i + 1, load, isTarget, elided)
+            && isFusible(i + 2, DecodedOpCode.SHL, isTarget, elided)
+            && args[i + 2] == WORD_SHIFT
+            && isFusible(i + 3, DecodedOpCode.ADD, isTarget, elided);
+      }
+
+
+    private boolean isFusibleBranch(int i, boolean[] isTarget, boolean[] elided)
+      {
+        return i < numInstructions && DecodedOpCode.isConditionalBranch(ops[i])
+            && !isTarget[i] && !elided[i];
+      }
+
+
+    /**
+     * Returns a copy of this program with a PROFILE instruction inserted
+     * before the first instruction of each basic block (see VmProfiler).
+     * The operand of the PROFILE instruction is the number of the block.
+     * Branches, calls, and return addresses transfer control to the
+     * PROFILE instruction of the block at their target, so every entry
+     * into a block is counted.  Instruction byte addresses are unchanged.
+     *
+     * @param blockStarts the index of the first instruction of each block,
+     *                    in increasing order
+     */
+    DecodedProgram instrument(int[] blockStarts)
+      {
+        int n = numInstructions;
+        int m = n + blockStarts.length;
+
+        DecodedProgram instrumented = new DecodedProgram(codeSize);
+        instrumented.baseProgram = this;
+        instrumented.ops   = new int[m + 1];
+        instrumented.args  = new int[m + 1];
+        instrumented.args2 = new int[m + 1];
+        instrumented.addrs = new int[m + 1];
+
+        // index of each instruction, or of the PROFILE instruction before it
+        int[] newIndex = new int[n + 1];
+        int k = 0;
+        int block = 0;
+
+        for (int i = 0;  i < n;  ++i)
+          {
+            newIndex[i] = k;
+
+            if (block < blockStarts.length && blockStarts[block] == i)
+              {
+                instrumented.ops[k]   = DecodedOpCode.PROFILE;
+                instrumented.args[k]  = block;
+                instrumented.addrs[k] = addrs[i];
+                ++k;
+                ++block;
+              }
+
+            instrumented.ops[k]   = ops[i];
+            instrumented.args[k]  = args[i];
+            instrumented.args2[k] = args2[i];
+            instrumented.addrs[k] = addrs[i];
+            ++k;
+          }
+
+        newIndex[n] = k;
+
+        instrumented.numInstructions = k;
+        instrumented.ops[k]   = DecodedOpCode.INVALID;
+        instrumented.addrs[k] = codeSize;
+
+        for (int i = 0;  i < k;  ++i)
+          {
+            if (DecodedOpCode.isBranch(instrumented.ops[i]))
+                instrumented.args[i] = newIndex[instrumented.args[i]];
+          }
+
+        for (int address = 0;  address <= codeSize;  ++address)
+          {
+            int index = indexOf[address];
+            instrumented.indexOf[address] = index < 0 ? -1 : newIndex[index];
+          }
+
+        return instrumented;
+      }
+
+
+    /**
+     * Returns true if every memory access made by this program is a
+     * word access at a word-aligned address, so that the program can be
+     * run with memory organized as an array of 4-byte words.  This is the
+     * case when every variable is an integer or an aggregate of integers:
+     * the program must not contain byte or character loads and stores,
+     * nor a comparison result that is not consumed by a fused branch, and
+     * every address displacement and block length must be a multiple of
+     * four.  Addresses computed at run time are then word aligned, since
+     * the only arithmetic applied to addresses adds multiples of four.
+     */
+    public boolean isWordAligned()
+      {
+        for (int i = 0;  i < numInstructions;  ++i)
+          {
+            switch (ops[i])
+              {
+                case DecodedOpCode.LOAD:
+                case DecodedOpCode.STORE:
+                case DecodedOpCode.COPY:
+                case DecodedOpCode.LDADDR:
+                case DecodedOpCode.LDGADDR:
+                case DecodedOpCode.LDMEM:
+                case DecodedOpCode.LDGMEM:
+                case DecodedOpCode.STOREW_LOCAL:
+                case DecodedOpCode.STOREW_GLOBAL:
+                case DecodedOpCode.ALLOC:
+                case DecodedOpCode.PROC:
+                case DecodedOpCode.PROGRAM:
+                case DecodedOpCode.RET:
+                case DecodedOpCode.INC_LOCAL:
+                case DecodedOpCode.DEC_LOCAL:
+                case DecodedOpCode.INC_GLOBAL:
+                case DecodedOpCode.DEC_GLOBAL:
+                case DecodedOpCode.ADD_LOCAL:
+                case DecodedOpCode.SUB_LOCAL:
+                    if (args[i] % Constants.BYTES_PER_WORD != 0)
+                        return false;
+                    break;
+
+                case DecodedOpCode.INDEX_LOCAL:
+                case DecodedOpCode.LDELEM_LOCAL:
+                case DecodedOpCode.INDEX_GLOBAL:
+                case DecodedOpCode.LDELEM_GLOBAL:
+                    if (args[i] % Constants.BYTES_PER_WORD != 0 || args2[i] % Constants.BYTES_PER_WORD != 0)
+                        return false;
+                    break;
+
+                case DecodedOpCode.LOADB:
+                case DecodedOpCode.LOAD2B:
+                case DecodedOpCode.LOADCB:
+                case DecodedOpCode.LDCCH:
+                case DecodedOpCode.STOREB:
+                case DecodedOpCode.STORE2B:
+                case DecodedOpCode.LDMEMB:
+                case DecodedOpCode.LDMEM2B:
+                case DecodedOpCode.LDGMEMB:
+                case DecodedOpCode.LDGMEM2B:
+                case DecodedOpCode.STOREB_LOCAL:
+                case DecodedOpCode.STORE2B_LOCAL:
+                case DecodedOpCode.STOREB_GLOBAL:
+                case DecodedOpCode.STORE2B_GLOBAL:
+                case DecodedOpCode.CMP:
+                case DecodedOpCode.BNZ:
+                case DecodedOpCode.BZ:
+                case DecodedOpCode.BG:
+                case DecodedOpCode.BGE:
+                case DecodedOpCode.BL:
+                case DecodedOpCode.BLE:
+                case DecodedOpCode.NOT:
+                case DecodedOpCode.GETCH:
+                case DecodedOpCode.PUTBYTE:
+                case DecodedOpCode.PUTCH:
+                    return false;
+
+                default:
+                    break;
+              }
+          }
+
+        return true;
+      }
+
+
+    /**
+     * Prints the number of times each superinstruction was formed.
+     */
+    public void printFusionReport(PrintStream out)
+      {
+        out.println("superinstruction fusion:  " + baseProgram.numInstructions
+                  + " instructions decoded into " + numInstructions);
+
+        for (int handler = 0;  handler < DecodedOpCode.NUM_HANDLERS;  ++handler)
+          {
+            if (fusionCounts[handler] > 0)
+                out.println("   " + getFusedName(handler) + ":  " + fusionCounts[handler]);
+          }
+      }
+
+
+    /**
+     * Returns the instruction sequence replaced by a superinstruction.
+     * The handlers that are shared with the direct loads and stores
+     * (see DecodedOpCode.valueOf()) are named after those opcodes, so
+     * the sequences they replace when fused are named here.
+     */
+    private static String getFusedName(int handler)
+      {
+        switch (handler)
+          {
+            case DecodedOpCode.LDMEM:         return "LDADDR;LOADW";
+            case DecodedOpCode.LDGMEM:        return "LDGADDR;LOADW";
+            case DecodedOpCode.STOREW_LOCAL:  return "LDADDR;...;STOREW";
+            case DecodedOpCode.STOREW_GLOBAL: return "LDGADDR;...;STOREW";
+            default:                          return DecodedOpCode.toString(handler);
+          }
+      }
+
+
+    private static int getInt(byte[] memory, int address)
+      {
+        return ByteUtil.bytesToInt(memory[address], memory[address + 1],
+                                   memory[address + 2], memory[address + 3]);
+      }
+
+
+    /**
+     * Returns the array of handler indices, one per instruction.
+     */
+    public int[] getOps()
+      {
+        return ops;
+      }
+
+
+    /**
+     * Returns the array of pre-resolved operands, one per instruction.
+     */
+    public int[] getArgs()
+      {
+        return args;
+      }
+
+
+    /**
+     * Returns the array of second operands, which are
+     * used only by superinstructions.
+     */
+    public int[] getArgs2()
+      {
+        return args2;
+      }
+
+
+    /**
+     * Returns the program from which this program was fused,
+     * or this program if it has not been fused.
+     */
+    public DecodedProgram getBaseProgram()
+      {
+        return baseProgram;
+      }
+
+
+    /**
+     * Returns the array of instruction byte addresses.  The array contains
+     * one extra element, equal to the code size, so that the address of the
+     * instruction following instruction i is always addrs[i + 1].
+     */
+    public int[] getAddresses()
+      {
+        return addrs;
+      }
+
+
+    /**
+     * Returns the index of the instruction starting at the specified
+     * byte address, or -1 if no instruction starts at that address.
+     */
+    public int getIndex(int address)
+      {
+        if (address < 0 || address > codeSize)
+            return -1;
+        else
+            return indexOf[address];
+      }
+
+
+    /**
+     * Returns the number of decoded instructions.
+     */
+    public int getNumInstructions()
+      {
+        return numInstructions;
+      }
+
+
+    /**
+     * Returns the size in bytes of the decoded code segment.
+     */
+    public int getCodeSize()
+      {
+        return codeSize;
+      }
+  }
@@ -4,6 +4,8 @@ package edu.citadel.cprlvm;
 import edu.citadel.compiler.util.ByteUtil;
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
 
 
 public class Disassembler
@@ -21,7 +23,13 @@ public class Disassembler
             printUsageMessageAndExit();
 
         String fileName = args[0];
-        FileInputStream file = new FileInputStream(fileName);
+        ObjectFile objectFile = ObjectFile.read(new File(fileName));
+
+        byte[] code = new byte[objectFile.getCodeSize()];
+        objectFile.getCode(code);
+        InputStream file = new ByteArrayInputStream(code);
+
+        Map<Integer, String> labels = getLabels(objectFile);
 
         // get object code file name minus the suffix
         int suffixIndex = fileName.lastIndexOf(SUFFIX);
@@ -41,6 +49,10 @@ public class Disassembler
           {
             byte opCode = (byte) inByte;
 
+            String label = labels.get(opCodeAddr);
+            if (label != null)
+                out.println(label);
+
             switch (opCode)
               {
                 // opcodes with zero operands
@@ -83,6 +95,7 @@ public class Disassembler
                     
                 // opcodes with one int operand
                 case OpCode.ALLOC:
+                case OpCode.CHKSTK:
                 case OpCode.BR:
                 case OpCode.BG:
                 case OpCode.BGE:
@@ -93,6 +106,11 @@ public class Disassembler
                 case OpCode.CALL:
                 case OpCode.LOAD:
                 case OpCode.LDMEM:
+                case OpCode.LDMEMB:
+                case OpCode.LDMEM2B:
+                case OpCode.LDGMEM:
+                case OpCode.LDGMEMB:
+                case OpCode.LDGMEM2B:
                 case OpCode.LDCINT:
                 case OpCode.LDADDR:
                 case OpCode.LDGADDR:
@@ -100,12 +118,34 @@ public class Disassembler
                 case OpCode.PROGRAM:
                 case OpCode.RET:
                 case OpCode.STORE:
+                case OpCode.STMEM:
+                case OpCode.STMEMB:
+                case OpCode.STMEM2B:
+                case OpCode.STGMEM:
+                case OpCode.STGMEMB:
+                case OpCode.STGMEM2B:
+                case OpCode.COPY:
                     out.print(format(opCodeAddr, FIELD_WIDTH) + ":  "
                         + OpCode.toString(opCode));
                     out.println(" " + readInt(file));
                     opCodeAddr = opCodeAddr + 1 + Constants.BYTES_PER_INTEGER;
                     break;
 
+                // short-form branch opcodes with one byte displacement
+                case OpCode.BR_S:
+                case OpCode.BG_S:
+                case OpCode.BGE_S:
+                case OpCode.BL_S:
+                case OpCode.BLE_S:
+                case OpCode.BNZ_S:
+                case OpCode.BZ_S:
+                case OpCode.CALL_S:
+                    out.print(format(opCodeAddr, FIELD_WIDTH) + ":  "
+                        + OpCode.toString(opCode));
+                    out.println(" " + readByte(file));
+                    opCodeAddr = opCodeAddr + 1 + 1;
+                    break;
+
                 // opcodes with one byte operand
                 case OpCode.LOADCB:
                     out.print(format(opCodeAddr, FIELD_WIDTH) + ":  "
@@ -146,6 +186,35 @@ public class Disassembler
       }
 
 
+    /**
+     * Returns the labels in the debug section of the object file, mapped
+     * from their addresses.  Labels that have the same address are on
+     * separate lines of the same string.  The map is empty if there is
+     * no debug section.
+     */
+    private static Map<Integer, String> getLabels(ObjectFile objectFile)
+      {
+        Map<Integer, String> labels = new HashMap<>();
+
+        if (objectFile.hasDebugSection())
+          {
+            String[] names     = objectFile.getLabelNames();
+            int[]    addresses = objectFile.getLabelAddresses();
+
+            for (int i = 0;  i < names.length;  ++i)
+              {
+                String label = names[i] + ":";
+                if (labels.containsKey(addresses[i]))
+                    label = labels.get(addresses[i]) + System.lineSeparator() + label;
+
+                labels.put(addresses[i], label);
+              }
+          }
+
+        return labels;
+      }
+
+
     /**
      * Reads an integer argument from the stream.
      */
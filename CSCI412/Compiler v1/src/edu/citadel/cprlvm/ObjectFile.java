@@ -0,0 +1,341 @@
+package edu.citadel.cprlvm;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+
+/**
+ * An object file for a CPRL program, as written by the assembler and
+ * loaded by the virtual machine.  An object file consists of a header,
+ * the sections described by the header, and a checksum.  All integers
+ * are written high order byte first.
+ * <pre>
+ *   magic number     4 bytes    "CPRL"
+ *   version          int
+ *   flags            int        FLAG_DEBUG if there is a debug section
+ *   code size        int        number of bytes in the code section
+ *   entry point      int        address of the first instruction to execute
+ *   stack size       int        bytes of memory requested for the stack
+ *                               (0 for the virtual machine's default)
+ *   string count     int        number of entries in the string section
+ *   debug size       int        number of bytes in the debug section
+ *   code section
+ *   string section   the address of each LDCSTR instruction (an int)
+ *   debug section    the number of labels (an int), and for each label
+ *                    its address (an int), the length of its name (a
+ *                    short), and its name in UTF-8
+ *   checksum         int        CRC-32 of all preceding bytes
+ * </pre>
+ * String constants remain in the code section as the operands of their
+ * LDCSTR instructions; the string section lists where they are so that
+ * tools can find them without decoding the code.
+ *
+ * <p>A file that does not start with the magic number is read as the
+ * code section alone, which is the format written by earlier versions
+ * of the assembler.
+ */
+public final class ObjectFile
+  {
+    /** the magic number, "CPRL" in ASCII */
+    public static final int MAGIC = 0x4350524C;
+
+    /** the version of the format written by this class */
+    public static final int VERSION = 1;
+
+    /** flag set if the file has a debug section */
+    public static final int FLAG_DEBUG = 0x1;
+
+    private static final int HEADER_SIZE   = 8*Constants.BYTES_PER_INTEGER;
+    private static final int CHECKSUM_SIZE = Constants.BYTES_PER_INTEGER;
+
+    private ByteBuffer code;
+    private int   entry;
+    private int   stackSize;
+    private int[] stringAddresses;
+
+    // the debug section; null if there is none
+    private String[] labelNames;
+    private int[]    labelAddresses;
+
+
+    /**
+     * Construct an object file for the specified code.
+     *
+     * @param code            the code section
+     * @param entry           the address of the first instruction to execute
+     * @param stackSize       the number of bytes requested for the stack,
+     *                        or 0 for the virtual machine's default
+     * @param stringAddresses the address of each LDCSTR instruction
+     */
+    public ObjectFile(byte[] code, int entry, int stackSize, int[] stringAddresses)
+      {
+        this(ByteBuffer.wrap(code), entry, stackSize, stringAddresses);
+      }
+
+
+    private ObjectFile(ByteBuffer code, int entry, int stackSize, int[] stringAddresses)
+      {
+        this.code            = code;
+        this.entry           = entry;
+        this.stackSize       = stackSize;
+        this.stringAddresses = stringAddresses;
+      }
+
+
+    /**
+     * Sets the labels written to the debug section.
+     */
+    public void setDebugSymbols(String[] labelNames, int[] labelAddresses)
+      {
+        this.labelNames     = labelNames;
+        this.labelAddresses = labelAddresses;
+      }
+
+
+    /**
+     * Returns the number of bytes in the code section.
+     */
+    public int getCodeSize()
+      {
+        return code.remaining();
+      }
+
+
+    /**
+     * Copies the code section to the start of the specified array
+     * with a single bulk copy.
+     */
+    public void getCode(byte[] memory)
+      {
+        code.duplicate().get(memory, 0, code.remaining());
+      }
+
+
+    /**
+     * Returns the address of the first instruction to execute.
+     */
+    public int getEntry()
+      {
+        return entry;
+      }
+
+
+    /**
+     * Returns the number of bytes requested for the stack,
+     * or 0 if the virtual machine's default should be used.
+     */
+    public int getStackSize()
+      {
+        return stackSize;
+      }
+
+
+    /**
+     * Returns the address of each LDCSTR instruction.
+     */
+    public int[] getStringAddresses()
+      {
+        return stringAddresses;
+      }
+
+
+    public boolean hasDebugSection()
+      {
+        return labelNames != null;
+      }
+
+
+    /**
+     * Returns the names of the labels in the debug section,
+     * or null if there is no debug section.
+     */
+    public String[] getLabelNames()
+      {
+        return labelNames;
+      }
+
+
+    /**
+     * Returns the addresses of the labels in the debug section,
+     * or null if there is no debug section.
+     */
+    public int[] getLabelAddresses()
+      {
+        return labelAddresses;
+      }
+
+
+    /**
+     * Returns the contents of the object file.
+     */
+    public byte[] toByteArray()
+      {
+        byte[][] names = null;
+        int debugSize  = 0;
+
+        if (labelNames != null)
+          {
+            names = new byte[labelNames.length][];
+            debugSize = Constants.BYTES_PER_INTEGER;
+            for (int i = 0;  i < labelNames.length;  ++i)
+              {
+                names[i] = labelNames[i].getBytes(StandardCharsets.UTF_8);
+                debugSize = debugSize + Constants.BYTES_PER_INTEGER + 2 + names[i].length;
+              }
+          }
+
+        int codeSize = getCodeSize();
+        int fileSize = HEADER_SIZE + codeSize + stringAddresses.length*Constants.BYTES_PER_INTEGER
+                     + debugSize + CHECKSUM_SIZE;
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(names != null ? FLAG_DEBUG : 0);
+        buffer.putInt(codeSize);
+        buffer.putInt(entry);
+        buffer.putInt(stackSize);
+        buffer.putInt(stringAddresses.length);
+        buffer.putInt(debugSize);
+
+        buffer.put(code.duplicate());
+
+        for (int address : stringAddresses)
+            buffer.putInt(address);
+
+        if (names != null)
+          {
+            buffer.putInt(names.length);
+            for (int i = 0;  i < names.length;  ++i)
+              {
+                buffer.putInt(labelAddresses[i]);
+                buffer.putShort((short) names[i].length);
+                buffer.put(names[i]);
+              }
+          }
+
+        buffer.putInt(checksum(buffer.array(), 0, buffer.position()));
+
+        return buffer.array();
+      }
+
+
+    /**
+     * Reads an object file by mapping it into memory.  The code section is
+     * not copied; it is read from the mapping when getCode() is called.
+     *
+     * @throws IOException if the file can't be read or is not a valid object file.
+     */
+    public static ObjectFile read(File file) throws IOException
+      {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+          {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+          }
+      }
+
+
+    /**
+     * Reads an object file from the remaining bytes of a buffer.
+     *
+     * @throws IOException if the bytes are not a valid object file.
+     */
+    public static ObjectFile read(ByteBuffer buffer) throws IOException
+      {
+        buffer = buffer.slice();
+
+        if (buffer.remaining() < Constants.BYTES_PER_INTEGER || buffer.getInt(0) != MAGIC)
+            return new ObjectFile(buffer, 0, 0, new int[0]);   // code section only
+
+        try
+          {
+            buffer.getInt();   // magic number
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported object file version " + version);
+
+            int flags     = buffer.getInt();
+            int codeSize  = buffer.getInt();
+            int entry     = buffer.getInt();
+            int stackSize = buffer.getInt();
+            int numStrings = buffer.getInt();
+            int debugSize = buffer.getInt();
+
+            if (codeSize < 0 || stackSize < 0 || numStrings < 0 || debugSize < 0
+                    || entry < 0 || entry > codeSize)
+                throw new IOException("Invalid object file header");
+
+            long fileSize = (long) HEADER_SIZE + codeSize
+                          + (long) numStrings*Constants.BYTES_PER_INTEGER + debugSize + CHECKSUM_SIZE;
+            if (fileSize != buffer.limit())
+                throw new IOException("Object file size does not match its header");
+
+            int checksumAddr = buffer.limit() - CHECKSUM_SIZE;
+            if (checksum(buffer, checksumAddr) != buffer.getInt(checksumAddr))
+                throw new IOException("Object file checksum does not match its contents");
+
+            ByteBuffer code = buffer.duplicate();
+            code.limit(HEADER_SIZE + codeSize);
+            buffer.position(HEADER_SIZE + codeSize);
+
+            int[] stringAddresses = new int[numStrings];
+            for (int i = 0;  i < numStrings;  ++i)
+                stringAddresses[i] = buffer.getInt();
+
+            ObjectFile objectFile = new ObjectFile(code.slice(), entry, stackSize, stringAddresses);
+
+            if ((flags & FLAG_DEBUG) != 0)
+              {
+                int numLabels = buffer.getInt();
+                String[] labelNames     = new String[numLabels];
+                int[]    labelAddresses = new int[numLabels];
+
+                for (int i = 0;  i < numLabels;  ++i)
+                  {
+                    labelAddresses[i] = buffer.getInt();
+                    byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(name);
+                    labelNames[i] = new String(name, StandardCharsets.UTF_8);
+                  }
+
+                objectFile.setDebugSymbols(labelNames, labelAddresses);
+              }
+
+            return objectFile;
+          }
+        catch (BufferUnderflowException e)
+          {
+            throw new IOException("Invalid object file debug section");
+          }
+      }
+
+
+    private static int checksum(byte[] bytes, int offset, int length)
+      {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+      }
+
+
+    /**
+     * Returns the checksum of the first length bytes of the buffer.
+     */
+    private static int checksum(ByteBuffer buffer, int length)
+      {
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position(0);
+        bytes.limit(length);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+      }
+  }
@@ -22,12 +22,27 @@ public final class OpCode
     public static final byte LDGADDR = 19;
     public static final byte LDMEM   = 21;
 
+    // direct load opcodes (load from a frame or global displacement)
+    public static final byte LDMEMB   = 22;
+    public static final byte LDMEM2B  = 23;
+    public static final byte LDGMEM   = 24;
+    public static final byte LDGMEMB  = 25;
+    public static final byte LDGMEM2B = 26;
+
     // store opcodes (move data from top of stack to memory)
     public static final byte STORE   = 30;
     public static final byte STOREB  = 31;
     public static final byte STORE2B = 32;
     public static final byte STOREW  = 33;
 
+    // direct store opcodes (store to a frame or global displacement)
+    public static final byte STMEM    = 34;
+    public static final byte STMEMB   = 35;
+    public static final byte STMEM2B  = 36;
+    public static final byte STGMEM   = 37;
+    public static final byte STGMEMB  = 38;
+    public static final byte STGMEM2B = 39;
+
     // compare/branch opcodes
     public static final byte CMP     = 40;
     public static final byte BR      = 41;
@@ -70,6 +85,30 @@ public final class OpCode
     public static final byte CALL    = 92;
     public static final byte RET     = 93;
     public static final byte ALLOC   = 94;
+    public static final byte CHKSTK  = 95;
+
+    // short-form branch/call opcodes (one byte signed displacement)
+    public static final byte BR_S    = 100;
+    public static final byte BNZ_S   = 101;
+    public static final byte BZ_S    = 102;
+    public static final byte BG_S    = 103;
+    public static final byte BGE_S   = 104;
+    public static final byte BL_S    = 105;
+    public static final byte BLE_S   = 106;
+    public static final byte CALL_S  = 107;
+
+    // block copy opcode (move data from memory to memory)
+    public static final byte COPY    = 110;
+
+
+    /**
+     * Returns true if the opcode is a short-form branch or call,
+     * whose displacement is a single signed byte.
+     */
+    public static boolean isShortBranch(byte opCode)
+      {
+        return opCode >= BR_S && opCode <= CALL_S;
+      }
 
 
     /**
@@ -105,6 +144,16 @@ public final class OpCode
                 return "LDGADDR";
             case LDMEM:
                 return "LDMEM";
+            case LDMEMB:
+                return "LDMEMB";
+            case LDMEM2B:
+                return "LDMEM2B";
+            case LDGMEM:
+                return "LDGMEM";
+            case LDGMEMB:
+                return "LDGMEMB";
+            case LDGMEM2B:
+                return "LDGMEM2B";
             case STORE:
                 return "STORE";
             case STOREB:
@@ -113,6 +162,18 @@ public final class OpCode
                 return "STORE2B";
             case STOREW:
                 return "STOREW";
+            case STMEM:
+                return "STMEM";
+            case STMEMB:
+                return "STMEMB";
+            case STMEM2B:
+                return "STMEM2B";
+            case STGMEM:
+                return "STGMEM";
+            case STGMEMB:
+                return "STGMEMB";
+            case STGMEM2B:
+                return "STGMEM2B";
             case CMP:
                 return "CMP";
             case BR:
@@ -175,6 +236,26 @@ public final class OpCode
                 return "RET";
             case ALLOC:
                 return "ALLOC";
+            case CHKSTK:
+                return "CHKSTK";
+            case BR_S:
+                return "BR_S";
+            case BNZ_S:
+                return "BNZ_S";
+            case BZ_S:
+                return "BZ_S";
+            case BG_S:
+                return "BG_S";
+            case BGE_S:
+                return "BGE_S";
+            case BL_S:
+                return "BL_S";
+            case BLE_S:
+                return "BLE_S";
+            case CALL_S:
+                return "CALL_S";
+            case COPY:
+                return "COPY";
             default:
                 return Byte.toString(n);
           }
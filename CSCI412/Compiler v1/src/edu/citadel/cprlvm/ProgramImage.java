@@ -0,0 +1,110 @@
+package edu.citadel.cprlvm;
+
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * A program that has been read from an object file and decoded, ready to
+ * be loaded into any number of virtual machines (see CprlVm.loadProgram()).
+ * A program image is not modified after it is constructed, so it can be
+ * shared by virtual machines running on different threads.  Each virtual
+ * machine copies the code into its own memory, where the byte-level
+ * interpreter fetches instructions and PUTSTR finds string literals, but
+ * runs the decoded form of the code without decoding it again.
+ */
+public final class ProgramImage
+  {
+    private final byte[] code;
+    private final int    entry;
+    private final int    stackSize;
+
+    /** the decoded code, or null if the code could not be decoded */
+    private final DecodedProgram decodedProgram;
+
+
+    /**
+     * Construct a program image for the code in an object file.
+     *
+     * @param objectFile    the object file
+     * @param fusionEnabled true if common instruction sequences should be
+     *                      fused into superinstructions when decoding
+     */
+    public ProgramImage(ObjectFile objectFile, boolean fusionEnabled)
+      {
+        code = new byte[objectFile.getCodeSize()];
+        objectFile.getCode(code);
+
+        entry     = objectFile.getEntry();
+        stackSize = objectFile.getStackSize();
+
+        DecodedProgram program = DecodedProgram.decode(code, code.length);
+
+        if (program != null && program.getIndex(entry) < 0)
+            program = null;   // the byte-level interpreter reports the fault
+
+        if (program != null && fusionEnabled)
+            program = program.fuse();
+
+        decodedProgram = program;
+      }
+
+
+    /**
+     * Reads the program in an object file, fusing common instruction
+     * sequences when it is decoded.
+     *
+     * @throws IOException if the file can't be read or is not a valid object file.
+     */
+    public static ProgramImage read(File file) throws IOException
+      {
+        return new ProgramImage(ObjectFile.read(file), true);
+      }
+
+
+    /**
+     * Returns the number of bytes of code.
+     */
+    public int getCodeSize()
+      {
+        return code.length;
+      }
+
+
+    /**
+     * Returns the address of the first instruction to execute.
+     */
+    public int getEntry()
+      {
+        return entry;
+      }
+
+
+    /**
+     * Returns the number of bytes requested for the stack,
+     * or 0 if the virtual machine's default should be used.
+     */
+    public int getStackSize()
+      {
+        return stackSize;
+      }
+
+
+    /**
+     * Copies the code to the start of the specified array.
+     */
+    void getCode(byte[] memory)
+      {
+        System.arraycopy(code, 0, memory, 0, code.length);
+      }
+
+
+    /**
+     * Returns the decoded code, or null if the code could not be decoded.
+     */
+    DecodedProgram getDecodedProgram()
+      {
+        return decodedProgram;
+      }
+  }
@@ -0,0 +1,21 @@
+package edu.citadel.cprlvm;
+
+
+/**
+ * Thrown by the virtual machine when a program faults, for example on
+ * a divide by zero or a stack overflow, or when a program can't be
+ * loaded.  The message is the fault message reported to the user.
+ */
+public class VmException extends RuntimeException
+  {
+    private static final long serialVersionUID = 3516282040381172547L;
+
+
+    /**
+     * Construct a VmException with the specified fault message.
+     */
+    public VmException(String message)
+      {
+        super(message);
+      }
+  }
@@ -0,0 +1,244 @@
+package edu.citadel.cprlvm;
+
+
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Runs many copies of a CPRL program concurrently in one JVM, for example
+ * to run a program on the input of each of a large number of test cases.
+ * The program is read and decoded once, into a ProgramImage that all runs
+ * share, and each run gets its own virtual machine with private memory
+ * and I/O channels.  A fault ends only the run that caused it, and is
+ * returned in the VmResult of that run.
+ *
+ * <p>Runs are executed either by an ExecutorService, which runs each
+ * program to completion, or by a VmScheduler, which time-slices them.
+ * By default the host creates a pool with one thread per processor, which
+ * it shuts down when it is closed.  Any other executor can be passed to
+ * the constructor instead; on Java 21 or later,
+ * Executors.newVirtualThreadPerTaskExecutor() runs each program on its
+ * own virtual thread.  A scheduler should be used when the programs
+ * are not trusted to finish.
+ */
+public class VmHost implements AutoCloseable
+  {
+    private final ProgramImage    image;
+    private final ExecutorService executor;    // null if runs are scheduled
+    private final VmScheduler     scheduler;   // null if runs are executed
+
+    /** true if the executor was created by this host */
+    private final boolean ownsExecutor;
+
+    private long instructionLimit = CprlVm.UNLIMITED;
+
+    private int     memorySize = CprlVm.DEFAULT_MEMORY_SIZE;
+    private boolean memoryGrowthEnabled = false;
+    private boolean jitEnabled = false;
+    private boolean wordMemoryEnabled = false;
+
+
+    /**
+     * Construct a host for the specified program that runs programs on
+     * a pool with one thread per processor.
+     */
+    public VmHost(ProgramImage image)
+      {
+        this(image, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()),
+             null, true);
+      }
+
+
+    /**
+     * Construct a host for the specified program that runs programs
+     * on the specified executor.  The executor is not shut down when
+     * the host is closed.
+     */
+    public VmHost(ProgramImage image, ExecutorService executor)
+      {
+        this(image, executor, null, false);
+      }
+
+
+    /**
+     * Construct a host for the specified program that runs programs in
+     * time slices with the specified scheduler.  The scheduler is not
+     * closed when the host is closed.
+     */
+    public VmHost(ProgramImage image, VmScheduler scheduler)
+      {
+        this(image, null, scheduler, false);
+      }
+
+
+    private VmHost(ProgramImage image, ExecutorService executor,
+                   VmScheduler scheduler, boolean ownsExecutor)
+      {
+        this.image        = image;
+        this.executor     = executor;
+        this.scheduler    = scheduler;
+        this.ownsExecutor = ownsExecutor;
+      }
+
+
+    /**
+     * Sets the number of instructions after which a program is stopped
+     * with a fault (CprlVm.UNLIMITED, the default, for no limit).  JIT
+     * compilation is not used for runs with a limit.  Applies to runs
+     * started later.
+     */
+    public void setInstructionLimit(long instructionLimit)
+      {
+        this.instructionLimit = instructionLimit;
+      }
+
+
+    /**
+     * Sets the number of bytes of memory of each virtual machine
+     * (see CprlVm.CprlVm(int)).  Applies to runs started later.
+     */
+    public void setMemorySize(int memorySize)
+      {
+        this.memorySize = memorySize;
+      }
+
+
+    /**
+     * Selects memory growth for each virtual machine (see
+     * CprlVm.setMemoryGrowthEnabled()).  Applies to runs started later.
+     */
+    public void setMemoryGrowthEnabled(boolean memoryGrowthEnabled)
+      {
+        this.memoryGrowthEnabled = memoryGrowthEnabled;
+      }
+
+
+    /**
+     * Selects JIT compilation for each virtual machine (see
+     * CprlVm.setJitEnabled()).  Applies to runs started later.
+     */
+    public void setJitEnabled(boolean jitEnabled)
+      {
+        this.jitEnabled = jitEnabled;
+      }
+
+
+    /**
+     * Selects word-addressed memory for each virtual machine (see
+     * CprlVm.setWordMemoryEnabled()).  Applies to runs started later.
+     */
+    public void setWordMemoryEnabled(boolean wordMemoryEnabled)
+      {
+        this.wordMemoryEnabled = wordMemoryEnabled;
+      }
+
+
+    /**
+     * Starts a run of the program that reads the specified input,
+     * and returns its result with the output captured.
+     */
+    public Future<VmResult> submit(String input)
+      {
+        return submit(new Run(new StringReader(input), null));
+      }
+
+
+    /**
+     * Starts a run of the program that uses the specified I/O channels,
+     * and returns its result.  The output is not captured.
+     */
+    public Future<VmResult> submit(Reader in, Writer out)
+      {
+        return submit(new Run(in, out));
+      }
+
+
+    private Future<VmResult> submit(Run run)
+      {
+        return executor != null ? executor.submit(run) : scheduler.submit(run);
+      }
+
+
+    /**
+     * Runs the program in the calling thread with the specified input,
+     * and returns its result with the output captured.
+     */
+    public VmResult run(String input)
+      {
+        return new Run(new StringReader(input), null).call();
+      }
+
+
+    /**
+     * Runs the program in the calling thread with the specified
+     * I/O channels, and returns its result.  The output is not
+     * captured.
+     */
+    public VmResult run(Reader in, Writer out)
+      {
+        return new Run(in, out).call();
+      }
+
+
+    /**
+     * Shuts down the executor if it was created by this host.  Runs
+     * that have already been submitted are completed.
+     */
+    @Override
+    public void close()
+      {
+        if (ownsExecutor)
+            executor.shutdown();
+      }
+
+
+    /**
+     * A run of the program in a new virtual machine with the settings
+     * that this host had when the run was created.  The virtual machine
+     * is created when the run starts.
+     */
+    private class Run extends VmTask
+      {
+        private final Reader in;
+        private final Writer out;
+
+        private final int     memorySize          = VmHost.this.memorySize;
+        private final boolean memoryGrowthEnabled = VmHost.this.memoryGrowthEnabled;
+        private final boolean jitEnabled          = VmHost.this.jitEnabled;
+        private final boolean wordMemoryEnabled   = VmHost.this.wordMemoryEnabled;
+
+
+        /**
+         * Construct a run that reads from in and writes to out,
+         * or captures its output if out is null.
+         */
+        Run(Reader in, Writer out)
+          {
+            this(in, out, out == null ? new StringWriter() : null);
+          }
+
+
+        private Run(Reader in, Writer out, StringWriter output)
+          {
+            super(null, instructionLimit, output);
+            this.in  = in;
+            this.out = output != null ? output : out;
+          }
+
+
+        @Override
+        protected CprlVm createVm()
+          {
+            CprlVm vm = new CprlVm(memorySize);
+            vm.setMemoryGrowthEnabled(memoryGrowthEnabled);
+            vm.setJitEnabled(jitEnabled);
+            vm.setWordMemoryEnabled(wordMemoryEnabled);
+            vm.setIO(new VmIO(in, out));
+            vm.loadProgram(image);
+            return vm;
+          }
+      }
+  }
@@ -0,0 +1,179 @@
+package edu.citadel.cprlvm;
+
+
+import java.io.*;
+
+
+/**
+ * The input and output channels used by the I/O instructions of the CPRL
+ * virtual machine.  Output is collected in a buffer that is written to the
+ * underlying Writer when it fills up, when the program reads input, and
+ * when the program halts.  Input is read through a single buffered reader
+ * for the lifetime of the channels, so input read ahead by one GETINT or
+ * GETCH instruction is still available to the next one.
+ *
+ * <p>For embedding the virtual machine, channels can be created on any
+ * Reader and Writer, for example a StringReader and a StringWriter.
+ */
+public class VmIO
+  {
+    /** the number of characters collected before output is written */
+    private static final int BUFFER_SIZE = 8*1024;
+
+    /** enough characters for any int, including the sign */
+    private static final int MAX_INT_CHARS = 11;
+
+    private static final String EOL = System.lineSeparator();
+
+    private BufferedReader in;
+    private Writer out;
+
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int length = 0;
+
+
+    /**
+     * Construct channels for the standard input and output streams.
+     */
+    public VmIO()
+      {
+        this(System.in, System.out);
+      }
+
+
+    /**
+     * Construct channels for the specified byte streams using
+     * the platform's default character encoding.
+     */
+    public VmIO(InputStream in, OutputStream out)
+      {
+        this(new InputStreamReader(in), new OutputStreamWriter(out));
+      }
+
+
+    /**
+     * Construct channels for the specified character streams.
+     */
+    public VmIO(Reader in, Writer out)
+      {
+        this.in  = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        this.out = out;
+      }
+
+
+    /**
+     * Reads one line of input.  Pending output is written first so
+     * that prompts are visible.  Returns null at end of input.
+     */
+    public String readLine() throws IOException
+      {
+        flush();
+        return in.readLine();
+      }
+
+
+    /**
+     * Reads one character of input.  Pending output is written first
+     * so that prompts are visible.  Returns -1 at end of input.
+     */
+    public int readChar() throws IOException
+      {
+        flush();
+        return in.read();
+      }
+
+
+    public void putChar(char c)
+      {
+        if (length == buffer.length)
+            flush();
+
+        buffer[length++] = c;
+      }
+
+
+    /**
+     * Writes the decimal representation of an integer.
+     */
+    public void putInt(int n)
+      {
+        if (length + MAX_INT_CHARS > buffer.length)
+            flush();
+
+        if (n == Integer.MIN_VALUE)
+          {
+            putString(Integer.toString(n));
+            return;
+          }
+
+        if (n < 0)
+          {
+            buffer[length++] = '-';
+            n = -n;
+          }
+
+        // write the digits in reverse order, then reverse them in place
+        int start = length;
+        do
+          {
+            buffer[length++] = (char) ('0' + n % 10);
+            n = n/10;
+          }
+        while (n != 0);
+
+        for (int i = start, j = length - 1;  i < j;  ++i, --j)
+          {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+          }
+      }
+
+
+    public void putString(String s)
+      {
+        for (int i = 0;  i < s.length();  ++i)
+            putChar(s.charAt(i));
+      }
+
+
+    /**
+     * Writes a string stored in memory as big-endian characters.
+     */
+    public void putString(byte[] memory, int strAddr, int strLength)
+      {
+        for (int i = 0;  i < strLength;  ++i)
+          {
+            int addr = strAddr + i*Constants.BYTES_PER_CHAR;
+            putChar((char) ((memory[addr] << 8) | (memory[addr + 1] & 0xFF)));
+          }
+      }
+
+
+    public void putEOL()
+      {
+        putString(EOL);
+      }
+
+
+    /**
+     * Writes all buffered output to the underlying Writer and flushes it.
+     */
+    public void flush()
+      {
+        if (length == 0)
+            return;
+
+        try
+          {
+            out.write(buffer, 0, length);
+            out.flush();
+            length = 0;
+          }
+        catch (IOException e)
+          {
+            // the output channel is no longer usable; discard the output
+            length = 0;
+          }
+      }
+  }
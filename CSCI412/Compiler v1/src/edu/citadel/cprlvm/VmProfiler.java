@@ -0,0 +1,593 @@
+package edu.citadel.cprlvm;
+
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Profiles a program run by the pre-decoded execution engine, to show which
+ * instructions, instruction sequences, and subprograms are worth optimizing.
+ *
+ * <p>The program is profiled in its unfused form, so that the counts are
+ * counts of machine instructions.  It is divided into basic blocks, and
+ * each block is assigned to the subprogram whose entry reaches it without
+ * following calls; the main program is entered at the program entry, and
+ * every other subprogram at the PROC instruction that is the target of a
+ * CALL.  The virtual machine runs an instrumented copy of the program (see
+ * DecodedProgram.instrument()) that calls enterBlock() each time control
+ * enters a block, so a program that is not profiled runs exactly the same
+ * code as before.  Since every instruction of a block is executed once the
+ * block is entered, the number of times each opcode, and each pair of
+ * adjacent opcodes, was executed is computed from the block counts.
+ *
+ * <p>Calls and returns are recognized by the frame they enter:  entering
+ * the first block of a subprogram with a new base pointer is a call, and
+ * entering a block with the base pointer of an enclosing frame returns
+ * to that frame.  The profiler keeps the resulting stack of subprograms,
+ * and records the instructions executed in each calling context, which
+ * printFoldedStacks() writes in the format read by flame graph tools.
+ */
+public final class VmProfiler
+  {
+    /** calling contexts deeper than this are merged into their parent */
+    private static final int MAX_CONTEXT_DEPTH = 256;
+
+    /** the number of rows printed in each table of the report */
+    private static final int REPORT_ROWS = 20;
+
+    /** the program being profiled, before fusion */
+    private final DecodedProgram program;
+
+    /** the program with a PROFILE instruction at the start of each block */
+    private final DecodedProgram instrumentedProgram;
+
+    private final int[] blockStarts;        // index of the first instruction of each block
+    private final int[] blockLengths;       // number of instructions in each block
+    private final int[] blockSubprograms;   // subprogram of each block, or -1 if unreachable
+    private final int[] blockEntries;       // subprogram entered at each block, or -1
+
+    /** index of the entry of each subprogram; subprogram 0 is the main program */
+    private final int[] subprogramEntries;
+
+    /** the number of times control has entered each block */
+    private final long[] blockCounts;
+
+    /** calls and returns between each pair of subprograms (see getEdge()) */
+    private final Map<Long, long[]> edges = new HashMap<Long, long[]>();
+
+    // the stack of active subprograms
+    private Context[] contexts  = new Context[16];
+    private int[]     frames    = new int[16];   // base pointer of each frame
+    private int[]     callees   = new int[16];   // subprogram of each frame
+    private int       depth     = 0;
+
+    private final Context rootContext;
+
+
+    /**
+     * A calling context:  a subprogram together with the
+     * chain of calls that led to it.
+     */
+    private static final class Context
+      {
+        final int subprogram;
+        final Map<Integer, Context> children = new LinkedHashMap<Integer, Context>();
+        long instructions = 0;
+
+
+        Context(int subprogram)
+          {
+            this.subprogram = subprogram;
+          }
+
+
+        Context getChild(int subprogram)
+          {
+            Context child = children.get(subprogram);
+            if (child == null)
+              {
+                child = new Context(subprogram);
+                children.put(subprogram, child);
+              }
+
+            return child;
+          }
+      }
+
+
+    /**
+     * Construct a profiler for a decoded program.
+     *
+     * @param program the decoded program; if it has been fused, the
+     *                program from which it was fused is profiled
+     * @param entry   the byte address of the first instruction to execute
+     */
+    public VmProfiler(DecodedProgram program, int entry)
+      {
+        this.program = program.getBaseProgram();
+
+        int[] ops  = this.program.getOps();
+        int[] args = this.program.getArgs();
+        int   n    = this.program.getNumInstructions();
+        int   entryIndex = this.program.getIndex(entry);
+
+        // find the first instruction of each block and the subprogram entries
+        boolean[] isLeader = new boolean[n + 1];
+        boolean[] isEntry  = new boolean[n + 1];
+        isLeader[entryIndex] = true;
+
+        for (int i = 0;  i < n;  ++i)
+          {
+            int op = ops[i];
+
+            if (DecodedOpCode.isBranch(op))
+                isLeader[args[i]] = true;
+            if (op == DecodedOpCode.CALL)
+                isEntry[args[i]] = true;
+            if (DecodedOpCode.isBranch(op) || op == DecodedOpCode.RET || op == DecodedOpCode.HALT)
+                isLeader[i + 1] = true;
+          }
+
+        int numBlocks = 0;
+        int numSubprograms = 1;
+        for (int i = 0;  i < n;  ++i)
+          {
+            if (isLeader[i])
+                ++numBlocks;
+            if (isEntry[i] && i != entryIndex)
+                ++numSubprograms;
+          }
+
+        blockStarts       = new int[numBlocks];
+        blockLengths      = new int[numBlocks];
+        blockSubprograms  = new int[numBlocks];
+        blockEntries      = new int[numBlocks];
+        blockCounts       = new long[numBlocks];
+        subprogramEntries = new int[numSubprograms];
+        subprogramEntries[0] = entryIndex;
+
+        int[] blockOf = new int[n + 1];
+        int block = -1;
+        int subprogram = 1;
+
+        for (int i = 0;  i < n;  ++i)
+          {
+            if (isLeader[i])
+              {
+                ++block;
+                blockStarts[block]  = i;
+                blockEntries[block] = -1;
+                blockSubprograms[block] = -1;
+              }
+
+            if (isEntry[i] && i != entryIndex)
+              {
+                blockEntries[block] = subprogram;
+                subprogramEntries[subprogram++] = i;
+              }
+
+            blockOf[i] = block;
+            ++blockLengths[block];
+          }
+
+        for (int s = 0;  s < numSubprograms;  ++s)
+            assignBlocks(s, blockOf);
+
+        instrumentedProgram = this.program.instrument(blockStarts);
+
+        rootContext = new Context(0);
+        contexts[0] = rootContext;
+        frames[0]   = -1;
+        callees[0]  = 0;
+      }
+
+
+    /**
+     * Assigns to a subprogram the blocks that are reachable from its
+     * entry without following calls and not assigned to another one.
+     */
+    private void assignBlocks(int subprogram, int[] blockOf)
+      {
+        int[] ops  = program.getOps();
+        int[] args = program.getArgs();
+
+        int[] worklist = new int[16];
+        int   top      = 0;
+
+        int entryBlock = blockOf[subprogramEntries[subprogram]];
+        if (blockSubprograms[entryBlock] >= 0)
+            return;
+
+        blockSubprograms[entryBlock] = subprogram;
+        worklist[top++] = entryBlock;
+
+        while (top > 0)
+          {
+            int block = worklist[--top];
+            int last  = blockStarts[block] + blockLengths[block] - 1;
+            int op    = ops[last];
+
+            // successors:  the fall-through block and the branch target
+            for (int k = 0;  k < 2;  ++k)
+              {
+                int next;
+                if (k == 0)
+                    next = (op == DecodedOpCode.BR || op == DecodedOpCode.RET
+                            || op == DecodedOpCode.HALT) ? -1 : last + 1;
+                else
+                    next = (op >= DecodedOpCode.BR && op <= DecodedOpCode.BLE) ? args[last] : -1;
+
+                if (next >= 0 && next < program.getNumInstructions()
+                        && blockSubprograms[blockOf[next]] < 0)
+                  {
+                    blockSubprograms[blockOf[next]] = subprogram;
+                    if (top == worklist.length)
+                        worklist = Arrays.copyOf(worklist, 2*top);
+                    worklist[top++] = blockOf[next];
+                  }
+              }
+          }
+      }
+
+
+    /**
+     * Returns the instrumented program run by the virtual machine.
+     */
+    DecodedProgram getInstrumentedProgram()
+      {
+        return instrumentedProgram;
+      }
+
+
+    /**
+     * Records that control has entered a block.  Called by the PROFILE
+     * instruction at the start of the block.
+     *
+     * @param block the number of the block
+     * @param bp    the base pointer of the current frame
+     */
+    void enterBlock(int block, int bp)
+      {
+        ++blockCounts[block];
+
+        int callee = blockEntries[block];
+        if (callee >= 0 && frames[depth] != bp)
+            push(callee, bp);
+        else
+          {
+            while (depth > 0 && frames[depth] != bp)
+                pop();
+          }
+
+        contexts[depth].instructions += blockLengths[block];
+      }
+
+
+    private void push(int callee, int bp)
+      {
+        ++getEdge(callees[depth], callee)[0];
+
+        if (depth + 1 == frames.length)
+          {
+            contexts = Arrays.copyOf(contexts, 2*frames.length);
+            callees  = Arrays.copyOf(callees,  2*frames.length);
+            frames   = Arrays.copyOf(frames,   2*frames.length);
+          }
+
+        Context context = contexts[depth];
+        ++depth;
+        contexts[depth] = depth < MAX_CONTEXT_DEPTH ? context.getChild(callee) : context;
+        frames[depth]   = bp;
+        callees[depth]  = callee;
+      }
+
+
+    private void pop()
+      {
+        ++getEdge(callees[depth - 1], callees[depth])[1];
+        contexts[depth] = null;
+        --depth;
+      }
+
+
+    /**
+     * Returns the counts of calls and returns between two subprograms.
+     */
+    private long[] getEdge(int caller, int callee)
+      {
+        Long key = ((long) caller << 32) | callee;
+        long[] counts = edges.get(key);
+        if (counts == null)
+          {
+            counts = new long[2];
+            edges.put(key, counts);
+          }
+
+        return counts;
+      }
+
+
+    /**
+     * Returns the name of a subprogram:  "main" for the main program,
+     * and otherwise the name of the subprogram's entry address.
+     */
+    public String getSubprogramName(int subprogram)
+      {
+        if (subprogram == 0)
+            return "main";
+        else
+            return "proc@" + program.getAddresses()[subprogramEntries[subprogram]];
+      }
+
+
+    /**
+     * Returns the number of subprograms, including the main program.
+     */
+    public int getNumSubprograms()
+      {
+        return subprogramEntries.length;
+      }
+
+
+    /**
+     * Returns the number of times each opcode was executed,
+     * indexed by DecodedOpCode handler index.
+     */
+    public long[] getOpCodeCounts()
+      {
+        int[]  ops    = program.getOps();
+        long[] counts = new long[DecodedOpCode.NUM_HANDLERS];
+
+        for (int block = 0;  block < blockStarts.length;  ++block)
+          {
+            for (int i = blockStarts[block];  i < blockStarts[block] + blockLengths[block];  ++i)
+                counts[ops[i]] += blockCounts[block];
+          }
+
+        return counts;
+      }
+
+
+    /**
+     * Returns the number of instructions executed in each subprogram,
+     * not including the subprograms that it called.
+     */
+    public long[] getSubprogramInstructions()
+      {
+        long[] counts = new long[subprogramEntries.length];
+
+        for (int block = 0;  block < blockStarts.length;  ++block)
+          {
+            if (blockSubprograms[block] >= 0)
+                counts[blockSubprograms[block]] += blockCounts[block]*blockLengths[block];
+          }
+
+        return counts;
+      }
+
+
+    /**
+     * Returns the number of times each subprogram was called.
+     */
+    public long[] getCallCounts()
+      {
+        long[] counts = new long[subprogramEntries.length];
+
+        for (Map.Entry<Long, long[]> edge : edges.entrySet())
+            counts[(int) edge.getKey().longValue()] += edge.getValue()[0];
+
+        return counts;
+      }
+
+
+    /**
+     * Returns the number of calls from one subprogram to another.
+     */
+    public long getCallCount(int caller, int callee)
+      {
+        long[] counts = edges.get(((long) caller << 32) | callee);
+        return counts != null ? counts[0] : 0;
+      }
+
+
+    /**
+     * Returns the total number of instructions executed.
+     */
+    public long getInstructionCount()
+      {
+        long total = 0;
+        for (int block = 0;  block < blockStarts.length;  ++block)
+            total = total + blockCounts[block]*blockLengths[block];
+
+        return total;
+      }
+
+
+    /**
+     * Prints a report of the instructions executed by opcode, by pair of
+     * adjacent opcodes within a block (the candidates for superinstructions),
+     * and by subprogram, the calls and returns between subprograms, and
+     * the basic blocks that executed the most instructions.
+     */
+    public void printReport(PrintStream out)
+      {
+        int[] ops = program.getOps();
+        long total = getInstructionCount();
+
+        int numExecuted = 0;
+        for (long count : blockCounts)
+            if (count > 0)
+                ++numExecuted;
+
+        out.println("profile:  " + total + " instructions executed in " + numExecuted
+                  + " of " + blockStarts.length + " basic blocks");
+
+        // opcodes
+        long[] opCounts = getOpCodeCounts();
+        List<String> names  = new ArrayList<String>();
+        List<Long>   counts = new ArrayList<Long>();
+        for (int handler = 0;  handler < DecodedOpCode.NUM_HANDLERS;  ++handler)
+          {
+            if (opCounts[handler] > 0)
+              {
+                names.add(DecodedOpCode.toString(handler));
+                counts.add(opCounts[handler]);
+              }
+          }
+
+        out.println();
+        out.println("instructions by opcode:");
+        printTable(out, names, counts, total, Integer.MAX_VALUE);
+
+        // pairs of opcodes
+        Map<String, Long> pairCounts = new HashMap<String, Long>();
+        for (int block = 0;  block < blockStarts.length;  ++block)
+          {
+            if (blockCounts[block] == 0)
+                continue;
+
+            int end = blockStarts[block] + blockLengths[block];
+            for (int i = blockStarts[block];  i + 1 < end;  ++i)
+              {
+                String pair = DecodedOpCode.toString(ops[i]) + ";" + DecodedOpCode.toString(ops[i + 1]);
+                Long count  = pairCounts.get(pair);
+                pairCounts.put(pair, (count != null ? count : 0) + blockCounts[block]);
+              }
+          }
+
+        names  = new ArrayList<String>(pairCounts.keySet());
+        counts = new ArrayList<Long>();
+        for (String pair : names)
+            counts.add(pairCounts.get(pair));
+
+        out.println();
+        out.println("most frequent opcode pairs within basic blocks:");
+        printTable(out, names, counts, total, REPORT_ROWS);
+
+        // subprograms
+        long[] instructions = getSubprogramInstructions();
+        long[] calls = getCallCounts();
+
+        out.println();
+        out.println("subprograms:");
+        out.printf("   %-16s %12s %14s %7s%n", "subprogram", "calls", "instructions", "%");
+        for (int s : sortByCount(instructions, instructions.length))
+          {
+            out.printf("   %-16s %12d %14d %7.2f%n", getSubprogramName(s), calls[s],
+                       instructions[s], percent(instructions[s], total));
+          }
+
+        // calls and returns
+        List<Long> keys = new ArrayList<Long>(edges.keySet());
+        keys.sort(null);
+
+        out.println();
+        out.println("calls and returns:");
+        out.printf("   %-33s %12s %12s%n", "caller -> callee", "calls", "returns");
+        for (Long key : keys)
+          {
+            long[] edge = edges.get(key);
+            String name = getSubprogramName((int) (key >>> 32)) + " -> "
+                        + getSubprogramName((int) key.longValue());
+            out.printf("   %-33s %12d %12d%n", name, edge[0], edge[1]);
+          }
+
+        // hot blocks
+        long[] blockInstructions = new long[blockStarts.length];
+        for (int block = 0;  block < blockStarts.length;  ++block)
+            blockInstructions[block] = blockCounts[block]*blockLengths[block];
+
+        out.println();
+        out.println("hottest basic blocks:");
+        out.printf("   %-8s %-16s %12s %14s %7s  %s%n",
+                   "address", "subprogram", "entries", "instructions", "%", "opcodes");
+        for (int block : sortByCount(blockInstructions, REPORT_ROWS))
+          {
+            StringBuilder opcodes = new StringBuilder();
+            for (int i = blockStarts[block];  i < blockStarts[block] + blockLengths[block];  ++i)
+              {
+                if (opcodes.length() > 0)
+                    opcodes.append(' ');
+                opcodes.append(DecodedOpCode.toString(ops[i]));
+              }
+
+            String subprogram = blockSubprograms[block] >= 0
+                              ? getSubprogramName(blockSubprograms[block]) : "?";
+            out.printf("   %-8d %-16s %12d %14d %7.2f  %s%n",
+                       program.getAddresses()[blockStarts[block]], subprogram, blockCounts[block],
+                       blockInstructions[block], percent(blockInstructions[block], total), opcodes);
+          }
+      }
+
+
+    /**
+     * Prints the instructions executed in each calling context as folded
+     * stacks, one line per context:  the names of the subprograms in the
+     * context from the main program outward, separated by semicolons,
+     * followed by a space and the number of instructions.  This is the
+     * input format of flame graph tools such as flamegraph.pl.
+     */
+    public void printFoldedStacks(PrintStream out)
+      {
+        printFoldedStacks(out, rootContext, getSubprogramName(0));
+      }
+
+
+    private void printFoldedStacks(PrintStream out, Context context, String stack)
+      {
+        if (context.instructions > 0)
+            out.println(stack + " " + context.instructions);
+
+        for (Context child : context.children.values())
+            printFoldedStacks(out, child, stack + ";" + getSubprogramName(child.subprogram));
+      }
+
+
+    /**
+     * Prints the rows with the largest counts, in decreasing order of count.
+     */
+    private static void printTable(PrintStream out, List<String> names, List<Long> counts,
+                                   long total, int maxRows)
+      {
+        long[] values = new long[counts.size()];
+        for (int i = 0;  i < values.length;  ++i)
+            values[i] = counts.get(i);
+
+        for (int i : sortByCount(values, maxRows))
+            out.printf("   %-33s %12d %7.2f%n", names.get(i), values[i], percent(values[i], total));
+      }
+
+
+    /**
+     * Returns the indices of the largest nonzero counts, at most maxRows
+     * of them, in decreasing order of count.
+     */
+    private static int[] sortByCount(long[] counts, int maxRows)
+      {
+        List<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0;  i < counts.length;  ++i)
+            if (counts[i] > 0)
+                indices.add(i);
+
+        indices.sort((i, j) -> counts[i] != counts[j] ? Long.compare(counts[j], counts[i])
+                                                      : Integer.compare(i, j));
+
+        int[] result = new int[Math.min(maxRows, indices.size())];
+        for (int i = 0;  i < result.length;  ++i)
+            result[i] = indices.get(i);
+
+        return result;
+      }
+
+
+    private static double percent(long count, long total)
+      {
+        return total > 0 ? 100.0*count/total : 0.0;
+      }
+  }
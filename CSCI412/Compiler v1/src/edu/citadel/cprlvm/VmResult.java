@@ -0,0 +1,90 @@
+package edu.citadel.cprlvm;
+
+
+/**
+ * The result of running a program in a VmHost or VmScheduler:  whether
+ * the program ran to completion, the fault message if it did not, the
+ * output that it wrote if the output was captured, and the resources
+ * that it used.
+ */
+public final class VmResult
+  {
+    private final String output;
+    private final String faultMessage;
+    private final long   instructionCount;
+    private final long   cpuTime;
+
+
+    /**
+     * Construct a result.
+     *
+     * @param output           the output of the program, or null if it was not captured
+     * @param faultMessage     the fault message, or null if the program completed
+     * @param instructionCount the number of instructions charged to the program
+     * @param cpuTime          the CPU time used to run the program, in nanoseconds
+     */
+    public VmResult(String output, String faultMessage, long instructionCount, long cpuTime)
+      {
+        this.output           = output;
+        this.faultMessage     = faultMessage;
+        this.instructionCount = instructionCount;
+        this.cpuTime          = cpuTime;
+      }
+
+
+    /**
+     * Returns true if the program ran to completion without a fault.
+     */
+    public boolean isSuccessful()
+      {
+        return faultMessage == null;
+      }
+
+
+    /**
+     * Returns the message for the fault that stopped the program,
+     * or null if the program completed.
+     */
+    public String getFaultMessage()
+      {
+        return faultMessage;
+      }
+
+
+    /**
+     * Returns the output written by the program, including any output
+     * written before a fault, or null if the output was not captured.
+     */
+    public String getOutput()
+      {
+        return output;
+      }
+
+
+    /**
+     * Returns the number of instructions charged to the program,
+     * counted approximately as described for CprlVm.run(long).
+     */
+    public long getInstructionCount()
+      {
+        return instructionCount;
+      }
+
+
+    /**
+     * Returns the CPU time of the threads that ran the program while they
+     * were running it, in nanoseconds.  Elapsed time is used instead if
+     * the JVM does not measure the CPU time of threads.
+     */
+    public long getCpuTime()
+      {
+        return cpuTime;
+      }
+
+
+    @Override
+    public String toString()
+      {
+        return isSuccessful() ? "completed" : faultMessage;
+      }
+  }
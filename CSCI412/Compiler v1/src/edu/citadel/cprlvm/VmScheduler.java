@@ -0,0 +1,137 @@
+package edu.citadel.cprlvm;
+
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Time-slices many virtual machines across a fixed pool of worker threads.
+ * A worker takes the virtual machine at the front of the run queue, runs
+ * it for a quantum of instructions (see CprlVm.run(long)), and, unless
+ * the program has finished, puts it at the back of the queue.  Every
+ * scheduled program therefore makes progress however many are scheduled,
+ * and a program that loops forever can't keep a worker to itself.  A
+ * program can also be given an instruction limit, after which it is
+ * stopped with a fault.  The result of each program records the
+ * instructions charged to it and the CPU time used to run it.
+ *
+ * <p>JIT compilation is not used by programs run with a scheduler, since
+ * compiled code can't be preempted.
+ */
+public class VmScheduler implements AutoCloseable
+  {
+    /** the default number of instructions in a time slice */
+    public static final long DEFAULT_QUANTUM = 100000;
+
+    /** how often an idle worker checks whether the scheduler has been closed */
+    private static final long POLL_MILLIS = 100;
+
+    private final long quantum;
+    private final BlockingQueue<VmTask> runQueue = new LinkedBlockingQueue<VmTask>();
+
+    private volatile boolean closed = false;
+
+
+    /**
+     * Construct a scheduler with one worker per processor
+     * and the default quantum.
+     */
+    public VmScheduler()
+      {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM);
+      }
+
+
+    /**
+     * Construct a scheduler.
+     *
+     * @param numWorkers the number of worker threads
+     * @param quantum    the number of instructions in a time slice
+     */
+    public VmScheduler(int numWorkers, long quantum)
+      {
+        this.quantum = quantum;
+
+        for (int i = 0;  i < numWorkers;  ++i)
+          {
+            Thread worker = new Thread(this::work, "cprlvm-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+          }
+      }
+
+
+    /**
+     * Schedules the program loaded into a virtual machine.  The output of
+     * the program is written to the I/O channels of the virtual machine
+     * and is not captured in the result.
+     *
+     * @param vm               the virtual machine, with the program loaded
+     * @param instructionLimit the number of instructions after which the
+     *                         program is stopped, or CprlVm.UNLIMITED
+     */
+    public Future<VmResult> submit(CprlVm vm, long instructionLimit)
+      {
+        return submit(new VmTask(vm, instructionLimit, null));
+      }
+
+
+    /**
+     * Schedules a task.
+     *
+     * @throws RejectedExecutionException if the scheduler has been closed.
+     */
+    Future<VmResult> submit(VmTask task)
+      {
+        if (closed)
+            throw new RejectedExecutionException("the scheduler has been closed");
+
+        runQueue.add(task);
+        return task.getResult();
+      }
+
+
+    /**
+     * Stops accepting programs.  The workers finish the programs that
+     * have already been scheduled, and then stop.
+     */
+    @Override
+    public void close()
+      {
+        closed = true;
+      }
+
+
+    /**
+     * Runs time slices of the tasks in the run queue, until the
+     * scheduler has been closed and the queue is empty.
+     */
+    private void work()
+      {
+        while (true)
+          {
+            VmTask task;
+
+            try
+              {
+                task = runQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+              }
+            catch (InterruptedException e)
+              {
+                return;
+              }
+
+            if (task == null)
+              {
+                if (closed)
+                    return;
+              }
+            else if (!task.getResult().isCancelled() && !task.runSlice(quantum))
+                runQueue.add(task);
+          }
+      }
+  }
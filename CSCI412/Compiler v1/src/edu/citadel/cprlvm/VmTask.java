@@ -0,0 +1,150 @@
+package edu.citadel.cprlvm;
+
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * One run of a program by a VmHost or VmScheduler.  The program can be
+ * run in time slices (see runSlice()), or to completion by call().  The
+ * instructions and CPU time used by all slices are recorded, and a fault
+ * is returned in the result of the run rather than thrown.
+ */
+class VmTask implements Callable<VmResult>
+  {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final boolean CPU_TIME_SUPPORTED =
+        THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+    private CprlVm vm;   // null until created by createVm()
+    private final long instructionLimit;
+    private final StringWriter output;   // null if the output is not captured
+
+    private long cpuTime = 0;
+
+    private final CompletableFuture<VmResult> result = new CompletableFuture<VmResult>();
+
+
+    /**
+     * Construct a task.
+     *
+     * @param vm               the virtual machine, with the program loaded, or null
+     *                         if it is created by createVm() when the run starts
+     * @param instructionLimit the number of instructions after which the program
+     *                         is stopped with a fault, or CprlVm.UNLIMITED
+     * @param output           the writer that the output of the virtual machine is
+     *                         captured in, or null if the output is not captured
+     */
+    VmTask(CprlVm vm, long instructionLimit, StringWriter output)
+      {
+        this.vm = vm;
+        this.instructionLimit = instructionLimit;
+        this.output = output;
+      }
+
+
+    /**
+     * Creates the virtual machine and loads the program when the run starts.
+     * Called only if no virtual machine was passed to the constructor.
+     */
+    protected CprlVm createVm()
+      {
+        throw new IllegalStateException("no virtual machine");
+      }
+
+
+    /**
+     * Returns the result of the run, which is completed when the program
+     * halts or faults.
+     */
+    CompletableFuture<VmResult> getResult()
+      {
+        return result;
+      }
+
+
+    /**
+     * Runs the program to completion, or until it reaches its
+     * instruction limit, and returns its result.
+     */
+    @Override
+    public VmResult call()
+      {
+        runSlice(CprlVm.UNLIMITED);
+        return result.getNow(null);
+      }
+
+
+    /**
+     * Runs the program for at most the specified number of instructions.
+     *
+     * @return true if the run is finished and its result has been completed.
+     */
+    boolean runSlice(long quantum)
+      {
+        long   start = cpuTime();
+        String faultMessage = null;
+        boolean finished;
+
+        try
+          {
+            if (vm == null)
+                vm = createVm();
+
+            long budget = Math.min(quantum, instructionLimit - vm.getInstructionCount());
+            finished = vm.run(budget);
+
+            if (!finished && vm.getInstructionCount() >= instructionLimit)
+              {
+                faultMessage = "*** FAULT:  Instruction limit exceeded ***";
+                finished = true;
+              }
+          }
+        catch (VmException e)
+          {
+            faultMessage = e.getMessage();
+            finished = true;
+          }
+        catch (OutOfMemoryError e)
+          {
+            faultMessage = "*** Out of memory ***";
+            finished = true;
+          }
+        catch (RuntimeException | StackOverflowError e)
+          {
+            // a failure of the virtual machine itself ends only this run
+            faultMessage = "*** Internal VM error:  " + e + " ***";
+            finished = true;
+          }
+
+        cpuTime = cpuTime + (cpuTime() - start);
+
+        if (finished)
+          {
+            // keep the output written before a fault
+            if (vm != null)
+                vm.getIO().flush();
+
+            long numInstructions = vm != null ? vm.getInstructionCount() : 0;
+            result.complete(new VmResult(output != null ? output.toString() : null,
+                                         faultMessage, numInstructions, cpuTime));
+          }
+
+        return finished;
+      }
+
+
+    /**
+     * Returns the CPU time of the current thread, or the elapsed
+     * time if CPU time is not measured, in nanoseconds.
+     */
+    private static long cpuTime()
+      {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+      }
+  }
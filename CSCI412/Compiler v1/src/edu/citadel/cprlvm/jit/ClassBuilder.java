@@ -0,0 +1,262 @@
+package edu.citadel.cprlvm.jit;
+
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A minimal writer for JVM class files, sufficient for the classes
+ * generated by the JIT compiler.  Class files are written with major
+ * version 49 so that the JVM verifies them by type inference and no
+ * StackMapTable attributes need to be computed.
+ */
+final class ClassBuilder
+  {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL  = 0x0010;
+    static final int ACC_SUPER  = 0x0020;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+
+    // constant pool tags
+    private static final int CONSTANT_Utf8        =  1;
+    private static final int CONSTANT_Integer     =  3;
+    private static final int CONSTANT_Class       =  7;
+    private static final int CONSTANT_String      =  8;
+    private static final int CONSTANT_Methodref   = 10;
+    private static final int CONSTANT_NameAndType = 12;
+
+    private String className;
+    private int thisClass;
+    private int superClass;
+    private int[] interfaces;
+
+    private ByteArrayOutputStream constantPool = new ByteArrayOutputStream();
+    private DataOutputStream cpOut = new DataOutputStream(constantPool);
+    private int cpCount = 1;
+    private Map<String, Integer> cpIndex = new HashMap<>();
+
+    private ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private DataOutputStream methodOut = new DataOutputStream(methods);
+    private int methodCount = 0;
+
+
+    /**
+     * Construct a builder for a class.  Class names are internal names,
+     * for example "java/lang/Object".
+     */
+    ClassBuilder(String className, String superName, String... interfaceNames)
+      {
+        this.className  = className;
+        this.thisClass  = classRef(className);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+
+        for (int i = 0;  i < interfaceNames.length;  ++i)
+            interfaces[i] = classRef(interfaceNames[i]);
+      }
+
+
+    String getClassName()
+      {
+        return className;
+      }
+
+
+    int utf8(String s)
+      {
+        Integer index = cpIndex.get("U" + s);
+        if (index != null)
+            return index;
+
+        try
+          {
+            cpOut.writeByte(CONSTANT_Utf8);
+            cpOut.writeUTF(s);
+          }
+        catch (IOException e)
+          {
+            throw new IllegalStateException(e);
+          }
+
+        return newEntry("U" + s);
+      }
+
+
+    int integer(int value)
+      {
+        Integer index = cpIndex.get("I" + value);
+        if (index != null)
+            return index;
+
+        writeEntry(CONSTANT_Integer, value >>> 16, value & 0xFFFF);
+        return newEntry("I" + value);
+      }
+
+
+    int string(String s)
+      {
+        return refEntry(CONSTANT_String, "S" + s, utf8(s));
+      }
+
+
+    int classRef(String internalName)
+      {
+        return refEntry(CONSTANT_Class, "C" + internalName, utf8(internalName));
+      }
+
+
+    int methodRef(String owner, String name, String descriptor)
+      {
+        int ownerIndex = classRef(owner);
+        int ntIndex    = nameAndType(name, descriptor);
+        String key     = "M" + owner + "." + name + descriptor;
+
+        Integer index = cpIndex.get(key);
+        if (index != null)
+            return index;
+
+        writeEntry(CONSTANT_Methodref, ownerIndex, ntIndex);
+        return newEntry(key);
+      }
+
+
+    private int nameAndType(String name, String descriptor)
+      {
+        int nameIndex = utf8(name);
+        int descIndex = utf8(descriptor);
+        String key    = "N" + name + ":" + descriptor;
+
+        Integer index = cpIndex.get(key);
+        if (index != null)
+            return index;
+
+        writeEntry(CONSTANT_NameAndType, nameIndex, descIndex);
+        return newEntry(key);
+      }
+
+
+    private int refEntry(int tag, String key, int refIndex)
+      {
+        Integer index = cpIndex.get(key);
+        if (index != null)
+            return index;
+
+        try
+          {
+            cpOut.writeByte(tag);
+            cpOut.writeShort(refIndex);
+          }
+        catch (IOException e)
+          {
+            throw new IllegalStateException(e);
+          }
+
+        return newEntry(key);
+      }
+
+
+    /**
+     * Writes a constant pool entry consisting of a tag and two 16-bit values.
+     */
+    private void writeEntry(int tag, int value1, int value2)
+      {
+        try
+          {
+            cpOut.writeByte(tag);
+            cpOut.writeShort(value1);
+            cpOut.writeShort(value2);
+          }
+        catch (IOException e)
+          {
+            throw new IllegalStateException(e);
+          }
+      }
+
+
+    private int newEntry(String key)
+      {
+        int index = cpCount;
+        cpIndex.put(key, index);
+        ++cpCount;
+        return index;
+      }
+
+
+    /**
+     * Adds a method whose body is the code in the specified code builder.
+     */
+    void addMethod(int access, String name, String descriptor, CodeBuilder code)
+      {
+        byte[] bytes = code.toByteArray();
+
+        try
+          {
+            methodOut.writeShort(access);
+            methodOut.writeShort(utf8(name));
+            methodOut.writeShort(utf8(descriptor));
+            methodOut.writeShort(1);   // attributes_count
+
+            methodOut.writeShort(utf8("Code"));
+            methodOut.writeInt(12 + bytes.length);
+            methodOut.writeShort(code.getMaxStack());
+            methodOut.writeShort(code.getMaxLocals());
+            methodOut.writeInt(bytes.length);
+            methodOut.write(bytes);
+            methodOut.writeShort(0);   // exception_table_length
+            methodOut.writeShort(0);   // attributes_count
+          }
+        catch (IOException e)
+          {
+            throw new IllegalStateException(e);
+          }
+
+        ++methodCount;
+      }
+
+
+    /**
+     * Returns the class file as an array of bytes.
+     */
+    byte[] toByteArray()
+      {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try
+          {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+
+            out.writeShort(cpCount);
+            constantPool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+
+            out.writeShort(interfaces.length);
+            for (int index : interfaces)
+                out.writeShort(index);
+
+            out.writeShort(0);   // fields_count
+
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+
+            out.writeShort(0);   // attributes_count
+            out.flush();
+          }
+        catch (IOException e)
+          {
+            throw new IllegalStateException(e);
+          }
+
+        return bytes.toByteArray();
+      }
+  }
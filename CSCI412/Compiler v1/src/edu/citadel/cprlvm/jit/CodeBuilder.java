@@ -0,0 +1,407 @@
+package edu.citadel.cprlvm.jit;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Assembles the bytecode for the body of one JVM method.  Branch targets
+ * are represented by labels that may be bound after they are used.  The
+ * builder keeps track of the operand stack depth so that max_stack can be
+ * computed; code that follows an unconditional transfer of control is
+ * assumed to start with an empty operand stack.
+ */
+final class CodeBuilder
+  {
+    // JVM opcodes used by the JIT compiler
+    static final int ICONST_0      = 0x03;
+    static final int BIPUSH        = 0x10;
+    static final int SIPUSH        = 0x11;
+    static final int LDC           = 0x12;
+    static final int LDC_W         = 0x13;
+    static final int ILOAD         = 0x15;
+    static final int ALOAD         = 0x19;
+    static final int ILOAD_0       = 0x1A;
+    static final int ALOAD_0       = 0x2A;
+    static final int BALOAD        = 0x33;
+    static final int ISTORE        = 0x36;
+    static final int ISTORE_0      = 0x3B;
+    static final int SWAP          = 0x5F;
+    static final int IADD          = 0x60;
+    static final int ISUB          = 0x64;
+    static final int IMUL          = 0x68;
+    static final int IDIV          = 0x6C;
+    static final int IREM          = 0x70;
+    static final int INEG          = 0x74;
+    static final int ISHL          = 0x78;
+    static final int LSHL          = 0x79;
+    static final int ISHR          = 0x7A;
+    static final int LOR           = 0x81;
+    static final int IINC          = 0x84;
+    static final int I2L           = 0x85;
+    static final int IFEQ          = 0x99;
+    static final int IFNE          = 0x9A;
+    static final int IFLT          = 0x9B;
+    static final int IFGE          = 0x9C;
+    static final int IFGT          = 0x9D;
+    static final int IFLE          = 0x9E;
+    static final int IF_ICMPEQ     = 0x9F;
+    static final int IF_ICMPNE     = 0xA0;
+    static final int IF_ICMPLT     = 0xA1;
+    static final int IF_ICMPGE     = 0xA2;
+    static final int IF_ICMPGT     = 0xA3;
+    static final int IF_ICMPLE     = 0xA4;
+    static final int GOTO          = 0xA7;
+    static final int LOOKUPSWITCH  = 0xAB;
+    static final int IRETURN       = 0xAC;
+    static final int LRETURN       = 0xAD;
+    static final int RETURN        = 0xB1;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC  = 0xB8;
+    static final int WIDE          = 0xC4;
+
+    /** largest code size for which 16-bit branch offsets always suffice */
+    static final int MAX_CODE_SIZE = Short.MAX_VALUE;
+
+    private ClassBuilder classBuilder;
+
+    private byte[] code = new byte[256];
+    private int length = 0;
+
+    private int stackDepth = 0;
+    private int maxStack   = 0;
+    private int maxLocals;
+
+    /** address of each label, or -1 if the label has not been bound */
+    private int[] labelAddrs = new int[16];
+    private int numLabels = 0;
+
+    /** branch fixups:  offset position, opcode address, label (2 or 4 byte offset) */
+    private int[] fixups = new int[48];
+    private int numFixups = 0;
+
+
+    CodeBuilder(ClassBuilder classBuilder, int maxLocals)
+      {
+        this.classBuilder = classBuilder;
+        this.maxLocals    = maxLocals;
+      }
+
+
+    int getMaxStack()
+      {
+        return maxStack;
+      }
+
+
+    int getMaxLocals()
+      {
+        return maxLocals;
+      }
+
+
+    int getLength()
+      {
+        return length;
+      }
+
+
+    /**
+     * Returns a new unbound label.
+     */
+    int newLabel()
+      {
+        if (numLabels == labelAddrs.length)
+            labelAddrs = Arrays.copyOf(labelAddrs, 2*numLabels);
+
+        labelAddrs[numLabels] = -1;
+        return numLabels++;
+      }
+
+
+    /**
+     * Binds the label to the current code address.
+     */
+    void bind(int label)
+      {
+        labelAddrs[label] = length;
+      }
+
+
+    /**
+     * Emits an instruction without operands that changes the
+     * depth of the operand stack by the specified amount.
+     */
+    void op(int opcode, int stackDelta)
+      {
+        emitByte(opcode);
+        adjustStack(stackDelta);
+
+        if (opcode == IRETURN || opcode == LRETURN || opcode == RETURN)
+            stackDepth = 0;
+      }
+
+
+    void iconst(int value)
+      {
+        if (value >= -1 && value <= 5)
+            emitByte(ICONST_0 + value);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+          {
+            emitByte(BIPUSH);
+            emitByte(value);
+          }
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+          {
+            emitByte(SIPUSH);
+            emitShort(value);
+          }
+        else
+            ldc(classBuilder.integer(value));
+
+        adjustStack(1);
+      }
+
+
+    void ldcString(String s)
+      {
+        ldc(classBuilder.string(s));
+        adjustStack(1);
+      }
+
+
+    private void ldc(int index)
+      {
+        if (index <= 0xFF)
+          {
+            emitByte(LDC);
+            emitByte(index);
+          }
+        else
+          {
+            emitByte(LDC_W);
+            emitShort(index);
+          }
+      }
+
+
+    void iload(int local)
+      {
+        emitLocal(ILOAD, ILOAD_0, local);
+        adjustStack(1);
+      }
+
+
+    void aload(int local)
+      {
+        emitLocal(ALOAD, ALOAD_0, local);
+        adjustStack(1);
+      }
+
+
+    void istore(int local)
+      {
+        emitLocal(ISTORE, ISTORE_0, local);
+        adjustStack(-1);
+      }
+
+
+    /**
+     * Adds a constant to an int local variable.
+     */
+    void iinc(int local, int value)
+      {
+        if (value == 0)
+            return;
+
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE && local <= 0xFF)
+          {
+            emitByte(IINC);
+            emitByte(local);
+            emitByte(value);
+          }
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+          {
+            emitByte(WIDE);
+            emitByte(IINC);
+            emitShort(local);
+            emitShort(value);
+          }
+        else
+          {
+            iload(local);
+            iconst(value);
+            op(IADD, -1);
+            istore(local);
+          }
+      }
+
+
+    private void emitLocal(int opcode, int shortOpcode, int local)
+      {
+        if (local <= 3)
+            emitByte(shortOpcode + local);
+        else
+          {
+            emitByte(opcode);
+            emitByte(local);
+          }
+      }
+
+
+    /**
+     * Emits a method invocation.  The change in stack depth is
+     * computed from the method descriptor.
+     */
+    void invoke(int opcode, String owner, String name, String descriptor)
+      {
+        emitByte(opcode);
+        emitShort(classBuilder.methodRef(owner, name, descriptor));
+
+        int argSlots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')')
+          {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D')
+                argSlots = argSlots + 2;
+            else
+                ++argSlots;
+
+            while (descriptor.charAt(i) == '[')
+                ++i;
+            if (descriptor.charAt(i) == 'L')
+                i = descriptor.indexOf(';', i);
+            ++i;
+          }
+
+        if (opcode != INVOKESTATIC)
+            ++argSlots;   // receiver
+
+        char returnType = descriptor.charAt(i + 1);
+        int  returnSlots = returnType == 'V' ? 0 : (returnType == 'J' || returnType == 'D') ? 2 : 1;
+
+        adjustStack(returnSlots - argSlots);
+      }
+
+
+    /**
+     * Emits a conditional or unconditional branch to a label.
+     */
+    void jump(int opcode, int label)
+      {
+        int opcodeAddr = length;
+        emitByte(opcode);
+        addFixup(length, opcodeAddr, label, 2);
+        emitShort(0);
+
+        if (opcode == GOTO)
+            stackDepth = 0;
+        else if (opcode >= IF_ICMPEQ && opcode <= IF_ICMPLE)
+            adjustStack(-2);
+        else
+            adjustStack(-1);
+      }
+
+
+    /**
+     * Emits a lookupswitch instruction.  The keys must be sorted.
+     */
+    void lookupSwitch(int[] keys, int[] labels, int defaultLabel)
+      {
+        int opcodeAddr = length;
+        emitByte(LOOKUPSWITCH);
+        while (length % 4 != 0)
+            emitByte(0);
+
+        addFixup(length, opcodeAddr, defaultLabel, 4);
+        emitInt(0);
+        emitInt(keys.length);
+
+        for (int i = 0;  i < keys.length;  ++i)
+          {
+            emitInt(keys[i]);
+            addFixup(length, opcodeAddr, labels[i], 4);
+            emitInt(0);
+          }
+
+        stackDepth = 0;
+      }
+
+
+    /**
+     * Returns the bytecode with all branch offsets resolved.
+     */
+    byte[] toByteArray()
+      {
+        for (int i = 0;  i < numFixups;  i = i + 4)
+          {
+            int position   = fixups[i];
+            int opcodeAddr = fixups[i + 1];
+            int label      = fixups[i + 2];
+            int size       = fixups[i + 3];
+
+            if (labelAddrs[label] < 0)
+                throw new IllegalStateException("unbound label");
+
+            int offset = labelAddrs[label] - opcodeAddr;
+
+            if (size == 4)
+              {
+                code[position]     = (byte) (offset >>> 24);
+                code[position + 1] = (byte) (offset >>> 16);
+                position = position + 2;
+              }
+            else if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                throw new IllegalStateException("branch offset too large");
+
+            code[position]     = (byte) (offset >>> 8);
+            code[position + 1] = (byte)  offset;
+          }
+
+        return Arrays.copyOf(code, length);
+      }
+
+
+    private void addFixup(int position, int opcodeAddr, int label, int size)
+      {
+        if (numFixups + 4 > fixups.length)
+            fixups = Arrays.copyOf(fixups, 2*fixups.length);
+
+        fixups[numFixups++] = position;
+        fixups[numFixups++] = opcodeAddr;
+        fixups[numFixups++] = label;
+        fixups[numFixups++] = size;
+      }
+
+
+    private void adjustStack(int delta)
+      {
+        stackDepth = stackDepth + delta;
+        if (stackDepth > maxStack)
+            maxStack = stackDepth;
+      }
+
+
+    private void emitByte(int b)
+      {
+        if (length == code.length)
+            code = Arrays.copyOf(code, 2*length);
+
+        code[length++] = (byte) b;
+      }
+
+
+    private void emitShort(int n)
+      {
+        emitByte(n >>> 8);
+        emitByte(n);
+      }
+
+
+    private void emitInt(int n)
+      {
+        emitShort(n >>> 16);
+        emitShort(n);
+      }
+  }
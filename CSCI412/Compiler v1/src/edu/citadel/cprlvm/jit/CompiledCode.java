@@ -0,0 +1,19 @@
+package edu.citadel.cprlvm.jit;
+
+
+/**
+ * The interface implemented by each class generated by the JIT compiler.
+ * A generated class contains one JVM method for every CPRL subprogram
+ * in the compilation unit.
+ */
+public interface CompiledCode
+  {
+    /**
+     * Runs the compiled subprogram whose first instruction has the specified
+     * index in the decoded program.  The caller has already pushed the
+     * dynamic link and return address, exactly as the CALL instruction does.
+     *
+     * @return the value of the stack pointer after the subprogram returns
+     */
+    public int call(int entry, byte[] memory, int sp, int sb);
+  }
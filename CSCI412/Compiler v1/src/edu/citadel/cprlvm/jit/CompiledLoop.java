@@ -0,0 +1,21 @@
+package edu.citadel.cprlvm.jit;
+
+
+/**
+ * The interface implemented by each class generated by the JIT compiler
+ * for a hot loop.  The virtual machine enters the compiled loop at its
+ * first instruction when it takes a backward branch to it, and continues
+ * in the pre-decoded execution engine when control leaves the loop or
+ * reaches an instruction that cannot be compiled.
+ */
+public interface CompiledLoop
+  {
+    /**
+     * Runs the compiled loop from its first instruction.
+     *
+     * @return the index in the decoded program of the instruction at which
+     *         execution continues, in the high 32 bits, and the value of the
+     *         stack pointer, in the low 32 bits
+     */
+    public long run(byte[] memory, int sp, int sb, int bp);
+  }
@@ -0,0 +1,1217 @@
+package edu.citadel.cprlvm.jit;
+
+
+import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.DecodedOpCode;
+import edu.citadel.cprlvm.DecodedProgram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Counts calls to each subprogram and backward branches to each loop,
+ * and translates hot subprograms and loops into JVM bytecode.
+ *
+ * <p>A subprogram is compiled together with every subprogram that it
+ * can call, directly or indirectly, into a single generated class with
+ * one static method per subprogram.  CPRL calls within the class become
+ * direct JVM calls, so HotSpot can inline them and keep the operands of
+ * integer expressions in registers.  Integer operands are kept on the JVM
+ * operand stack and are written to VM memory only when an instruction
+ * needs them there, for example at a branch target or before a CALL.
+ * Locals, parameters, and frames stay in VM memory, so var parameters
+ * and the memory layout seen by the rest of the program are unchanged.
+ *
+ * <p>A hot loop is compiled in the same way, together with the
+ * subprograms it calls, and the virtual machine enters the compiled loop
+ * on its next backward branch to the loop, so a loop in the main program
+ * or in a subprogram that is called only once also runs as JVM bytecode.
+ * The compiled loop returns to the virtual machine when control leaves
+ * the loop or reaches an instruction that cannot be compiled.
+ *
+ * <p>Subprograms are translated from the unfused form of the decoded
+ * program.  The public methods of this class, and the generated code's
+ * call() method, take instruction indices of the program that the
+ * virtual machine is running, which may have been fused.
+ *
+ * <p>A subprogram is not compiled if it, or any subprogram it can call,
+ * contains an I/O instruction, HALT, or PROGRAM.  Such subprograms
+ * continue to run in the pre-decoded execution engine.  A loop that
+ * calls such a subprogram is not compiled either.
+ */
+public final class JitCompiler
+  {
+    /** number of calls after which a subprogram is compiled */
+    public static final int CALL_THRESHOLD = 1000;
+
+    /** number of backward branches to a loop after which the loop is compiled */
+    public static final int LOOP_THRESHOLD = 10000;
+
+    /** maximum number of integers held on the JVM operand stack */
+    private static final int MAX_PENDING = 8;
+
+    private static final String RUNTIME    = "edu/citadel/cprlvm/jit/JitRuntime";
+    private static final String INTERFACE  = "edu/citadel/cprlvm/jit/CompiledCode";
+    private static final String CLASS_NAME = "edu/citadel/cprlvm/jit/CompiledSubprogram";
+    private static final String METHOD_DESCRIPTOR = "([BII)I";
+
+    private static final String LOOP_INTERFACE  = "edu/citadel/cprlvm/jit/CompiledLoop";
+    private static final String LOOP_CLASS_NAME = "edu/citadel/cprlvm/jit/CompiledLoopAt";
+    private static final String LOOP_DESCRIPTOR = "([BIII)J";
+
+    // local variables of generated subprogram and loop methods
+    private static final int MEMORY = 0;
+    private static final int SP     = 1;
+    private static final int SB     = 2;
+    private static final int BP     = 3;
+    private static final int TEMP   = 4;
+
+    /** the program run by the virtual machine, possibly fused */
+    private DecodedProgram program;
+
+    /** the unfused program, which is the one translated */
+    private DecodedProgram baseProgram;
+    private int[] ops;
+    private int[] args;
+    private int[] addrs;
+
+    /** maps an instruction index of the VM's program to the unfused program */
+    private int[] baseIndex;
+
+    // the following arrays are indexed by unfused instruction index
+
+    private int[] callCounts;
+    private int[] loopCounts;
+
+    /** the entry index of the subprogram containing each instruction, or -1 */
+    private int[] owner;
+
+    /** the index of the last backward branch to each loop, or -1 */
+    private int[] loopEnd;
+
+    private CompiledCode[] compiledCode;
+    private CompiledLoop[] compiledLoops;
+
+    /** true for entries and loops whose compilation has been attempted */
+    private boolean[] attempted;
+    private boolean[] loopAttempted;
+
+    /** one line for each compilation attempted, for printReport() */
+    private List<String> report = new ArrayList<>();
+
+    /** work array used by findRegion() */
+    private int[] visited;
+    private int   visitStamp = 0;
+
+
+    /**
+     * Construct a JIT compiler for the specified decoded program.
+     */
+    public JitCompiler(DecodedProgram program)
+      {
+        DecodedProgram base = program.getBaseProgram();
+
+        this.program     = program;
+        this.baseProgram = base;
+        this.ops         = base.getOps();
+        this.args        = base.getArgs();
+        this.addrs       = base.getAddresses();
+
+        int[] vmAddrs = program.getAddresses();
+        baseIndex = new int[vmAddrs.length];
+        for (int i = 0;  i < vmAddrs.length;  ++i)
+            baseIndex[i] = base.getIndex(vmAddrs[i]);
+
+        int n = base.getNumInstructions() + 1;
+        callCounts    = new int[n];
+        loopCounts    = new int[n];
+        owner         = new int[n];
+        loopEnd       = new int[n];
+        compiledCode  = new CompiledCode[n];
+        compiledLoops = new CompiledLoop[n];
+        attempted     = new boolean[n];
+        loopAttempted = new boolean[n];
+        visited       = new int[n];
+
+        // attribute each instruction to the subprogram whose code contains it
+        Arrays.fill(owner, -1);
+        for (int i = 0;  i < base.getNumInstructions();  ++i)
+          {
+            if (ops[i] == DecodedOpCode.CALL && owner[args[i]] == -1)
+              {
+                int entry = args[i];
+                int[] region = findRegion(entry, -1);
+
+                if (region != null)
+                  {
+                    for (int index : region)
+                        if (owner[index] == -1)
+                            owner[index] = entry;
+                  }
+              }
+          }
+
+        // a loop extends from its target to the last backward branch to it
+        Arrays.fill(loopEnd, -1);
+        for (int i = 0;  i < base.getNumInstructions();  ++i)
+          {
+            if (ops[i] >= DecodedOpCode.BR && ops[i] <= DecodedOpCode.BLE && args[i] <= i)
+                loopEnd[args[i]] = i;
+          }
+      }
+
+
+    /**
+     * Records a call to the subprogram at the specified instruction index.
+     * Returns its compiled code, or null if the subprogram should
+     * continue to run in the pre-decoded execution engine.
+     */
+    public CompiledCode countCall(int vmEntry)
+      {
+        int entry = baseIndex[vmEntry];
+        CompiledCode code = compiledCode[entry];
+
+        if (code == null && !attempted[entry] && ++callCounts[entry] >= CALL_THRESHOLD)
+            code = compile(entry, callCounts[entry] + " calls");
+
+        return code;
+      }
+
+
+    /**
+     * Records a backward branch to the specified instruction index.
+     * Returns the compiled code of the loop that starts there, or null
+     * if the loop should continue to run in the pre-decoded execution
+     * engine.  When the loop becomes hot, the enclosing subprogram, if
+     * any, is compiled as well and is used starting with its next call.
+     */
+    public CompiledLoop countBackwardBranch(int target)
+      {
+        int header = baseIndex[target];
+        CompiledLoop loop = compiledLoops[header];
+
+        if (loop == null && !loopAttempted[header] && ++loopCounts[header] >= LOOP_THRESHOLD)
+          {
+            int entry = owner[header];
+            if (entry >= 0 && !attempted[entry])
+                compile(entry, "a hot loop at address " + addrs[header]);
+
+            loop = compileLoop(header);
+          }
+
+        return loop;
+      }
+
+
+    /**
+     * Returns true if the subprogram at the specified address has been
+     * compiled.
+     */
+    public boolean isSubprogramCompiled(int address)
+      {
+        int entry = baseProgram.getIndex(address);
+        return entry >= 0 && compiledCode[entry] != null;
+      }
+
+
+    /**
+     * Returns true if the loop that starts at the specified address has
+     * been compiled.
+     */
+    public boolean isLoopCompiled(int address)
+      {
+        int header = baseProgram.getIndex(address);
+        return header >= 0 && compiledLoops[header] != null;
+      }
+
+
+    /**
+     * Prints one line for each subprogram and loop whose compilation
+     * was attempted, in the order of the attempts.
+     */
+    public void printReport(PrintStream out)
+      {
+        out.println("JIT compilation report");
+
+        if (report.isEmpty())
+            out.println("  nothing was hot enough to compile");
+
+        for (String line : report)
+            out.println("  " + line);
+      }
+
+
+    /**
+     * Compiles the subprogram at the specified entry together with all
+     * subprograms it can call.  Returns null if the subprogram cannot be
+     * compiled.
+     */
+    private CompiledCode compile(int entry, String reason)
+      {
+        attempted[entry] = true;
+
+        List<Integer> entries = new ArrayList<>();
+        entries.add(entry);
+
+        List<int[]> regions = collectUnit(entries);
+        CompiledCode code   = null;
+
+        try
+          {
+            if (regions != null)
+                code = generate(entries, regions);
+          }
+        catch (IllegalStateException | LinkageError | ReflectiveOperationException e)
+          {
+            // for example, a subprogram too large for one JVM method
+            code = null;
+          }
+
+        if (code != null)
+          {
+            for (int e : entries)
+              {
+                if (compiledCode[e] == null)
+                    compiledCode[e] = code;
+              }
+          }
+
+        report.add(getName(entry) + (code != null ? " compiled" : " not compiled")
+                 + " after " + reason + unitSize(code != null, entries.size()));
+
+        return code;
+      }
+
+
+    /**
+     * Compiles the loop that starts at the specified instruction index
+     * together with all subprograms it can call.  Returns null if the
+     * loop cannot be compiled.
+     */
+    private CompiledLoop compileLoop(int header)
+      {
+        loopAttempted[header] = true;
+
+        List<Integer> entries = new ArrayList<>();
+        CompiledLoop  loop    = null;
+        int[] region = loopEnd[header] >= 0 ? findRegion(header, loopEnd[header]) : null;
+
+        if (region != null)
+          {
+            for (int index : region)
+              {
+                if (ops[index] == DecodedOpCode.CALL && !entries.contains(args[index]))
+                    entries.add(args[index]);
+              }
+
+            List<int[]> regions = collectUnit(entries);
+
+            try
+              {
+                if (regions != null)
+                    loop = generateLoop(header, region, entries, regions);
+              }
+            catch (IllegalStateException | LinkageError | ReflectiveOperationException e)
+              {
+                loop = null;
+              }
+          }
+
+        compiledLoops[header] = loop;
+
+        report.add("loop at address " + addrs[header] + " in " + getName(owner[header])
+                 + (loop != null ? " compiled" : " not compiled")
+                 + " after " + loopCounts[header] + " backward branches"
+                 + unitSize(loop != null && !entries.isEmpty(), entries.size()));
+
+        return loop;
+      }
+
+
+    /**
+     * Finds the regions of the subprograms in a compilation unit.  The
+     * list of entries initially contains the subprograms called directly,
+     * and every subprogram that they can call is added to it.  Returns
+     * null if any subprogram cannot be compiled.
+     */
+    private List<int[]> collectUnit(List<Integer> entries)
+      {
+        List<int[]> regions = new ArrayList<>();
+
+        for (int i = 0;  i < entries.size();  ++i)
+          {
+            int[] region = findRegion(entries.get(i), -1);
+            if (region == null)
+                return null;
+
+            regions.add(region);
+
+            for (int index : region)
+              {
+                if (ops[index] == DecodedOpCode.CALL && !entries.contains(args[index]))
+                    entries.add(args[index]);
+              }
+          }
+
+        return regions;
+      }
+
+
+    /**
+     * Returns the name of the subprogram at the specified entry index,
+     * or "main" for -1, in the form used by the profiler.
+     */
+    private String getName(int entry)
+      {
+        return entry < 0 ? "main" : "proc@" + addrs[entry];
+      }
+
+
+    private static String unitSize(boolean compiled, int numSubprograms)
+      {
+        if (!compiled)
+            return "";
+        else if (numSubprograms == 1)
+            return " (1 subprogram)";
+        else
+            return " (" + numSubprograms + " subprograms)";
+      }
+
+
+    /**
+     * Returns the sorted indices of all instructions reachable from the
+     * entry without following calls, or null if any of them cannot be
+     * compiled.  If end is not -1, only the loop from entry to end is
+     * included:  instructions outside of it, RET, and instructions that
+     * cannot be compiled are left out and become exits from the loop.
+     */
+    private int[] findRegion(int entry, int end)
+      {
+        ++visitStamp;
+
+        int[] region   = new int[16];
+        int   size     = 0;
+        int[] worklist = new int[16];
+        int   top      = 0;
+
+        worklist[top++] = entry;
+        visited[entry]  = visitStamp;
+
+        while (top > 0)
+          {
+            int index = worklist[--top];
+
+            if (end >= 0 && (index < entry || index > end || ops[index] == DecodedOpCode.RET
+                                 || !isCompilable(ops[index])))
+                continue;   // an exit from the loop
+
+            if (!isCompilable(ops[index]))
+                return null;
+
+            if (size == region.length)
+                region = Arrays.copyOf(region, 2*size);
+            region[size++] = index;
+
+            // successors:  the fall-through instruction and the branch target
+            int op = ops[index];
+            for (int k = 0;  k < 2;  ++k)
+              {
+                int next;
+                if (k == 0)
+                    next = (op == DecodedOpCode.BR || op == DecodedOpCode.RET) ? -1 : index + 1;
+                else
+                    next = (op >= DecodedOpCode.BR && op <= DecodedOpCode.BLE) ? args[index] : -1;
+
+                if (next >= 0 && visited[next] != visitStamp)
+                  {
+                    visited[next] = visitStamp;
+                    if (top == worklist.length)
+                        worklist = Arrays.copyOf(worklist, 2*top);
+                    worklist[top++] = next;
+                  }
+              }
+          }
+
+        if (size == 0)
+            return null;
+
+        region = Arrays.copyOf(region, size);
+        Arrays.sort(region);
+        return region;
+      }
+
+
+    private static boolean isCompilable(int op)
+      {
+        switch (op)
+          {
+            case DecodedOpCode.HALT:
+            case DecodedOpCode.PROGRAM:
+            case DecodedOpCode.GETCH:
+            case DecodedOpCode.GETINT:
+            case DecodedOpCode.PUTBYTE:
+            case DecodedOpCode.PUTCH:
+            case DecodedOpCode.PUTINT:
+            case DecodedOpCode.PUTEOL:
+            case DecodedOpCode.PUTSTR:
+            case DecodedOpCode.INVALID:
+                return false;
+            default:
+                return true;
+          }
+      }
+
+
+    /**
+     * Generates, loads, and instantiates the class for a compilation unit.
+     */
+    private CompiledCode generate(List<Integer> entries, List<int[]> regions)
+        throws ReflectiveOperationException
+      {
+        String className = CLASS_NAME + entries.get(0);
+        ClassBuilder cb = new ClassBuilder(className, "java/lang/Object", INTERFACE);
+        addSubprograms(cb, entries, regions);
+
+        // call(entry, memory, sp, sb) dispatches on the VM's entry index
+        int[] keys    = new int[entries.size()];
+        int[] targets = new int[entries.size()];
+        for (int i = 0;  i < keys.length;  ++i)
+            keys[i] = program.getIndex(addrs[entries.get(i)]);
+        Arrays.sort(keys);
+        for (int i = 0;  i < keys.length;  ++i)
+            targets[i] = baseIndex[keys[i]];
+
+        CodeBuilder call = new CodeBuilder(cb, 5);
+        int[] labels = new int[keys.length];
+        for (int i = 0;  i < keys.length;  ++i)
+            labels[i] = call.newLabel();
+        int defaultLabel = call.newLabel();
+
+        call.iload(1);
+        call.lookupSwitch(keys, labels, defaultLabel);
+
+        for (int i = 0;  i < keys.length;  ++i)
+          {
+            call.bind(labels[i]);
+            call.aload(2);
+            call.iload(3);
+            call.iload(4);
+            call.invoke(CodeBuilder.INVOKESTATIC, className, methodName(targets[i]), METHOD_DESCRIPTOR);
+            call.op(CodeBuilder.IRETURN, -1);
+          }
+
+        call.bind(defaultLabel);
+        call.ldcString("*** FAULT:  Invalid subprogram entry ***");
+        call.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "fault", "(Ljava/lang/String;)V");
+        call.iload(3);
+        call.op(CodeBuilder.IRETURN, -1);
+
+        cb.addMethod(ClassBuilder.ACC_PUBLIC, "call", "(I[BII)I", call);
+
+        return (CompiledCode) instantiate(cb);
+      }
+
+
+    /**
+     * Generates, loads, and instantiates the class for a loop and the
+     * subprograms that it calls.
+     */
+    private CompiledLoop generateLoop(int header, int[] region, List<Integer> entries,
+                                      List<int[]> regions)
+        throws ReflectiveOperationException
+      {
+        String className = LOOP_CLASS_NAME + header;
+        ClassBuilder cb = new ClassBuilder(className, "java/lang/Object", LOOP_INTERFACE);
+        addSubprograms(cb, entries, regions);
+
+        CodeBuilder code = new Translator(cb, region, true).translate();
+        cb.addMethod(ClassBuilder.ACC_STATIC, "loop", LOOP_DESCRIPTOR, code);
+
+        // run(memory, sp, sb, bp) calls the loop method
+        CodeBuilder run = new CodeBuilder(cb, 5);
+        run.aload(1);
+        run.iload(2);
+        run.iload(3);
+        run.iload(4);
+        run.invoke(CodeBuilder.INVOKESTATIC, className, "loop", LOOP_DESCRIPTOR);
+        run.op(CodeBuilder.LRETURN, -2);
+        cb.addMethod(ClassBuilder.ACC_PUBLIC, "run", LOOP_DESCRIPTOR, run);
+
+        return (CompiledLoop) instantiate(cb);
+      }
+
+
+    /**
+     * Adds one static method for each subprogram in a compilation unit.
+     */
+    private void addSubprograms(ClassBuilder cb, List<Integer> entries, List<int[]> regions)
+      {
+        for (int i = 0;  i < entries.size();  ++i)
+          {
+            CodeBuilder code = new Translator(cb, regions.get(i), false).translate();
+            cb.addMethod(ClassBuilder.ACC_STATIC, methodName(entries.get(i)),
+                         METHOD_DESCRIPTOR, code);
+          }
+      }
+
+
+    /**
+     * Adds a constructor to a generated class, then loads the class and
+     * returns a new instance of it.
+     */
+    private static Object instantiate(ClassBuilder cb) throws ReflectiveOperationException
+      {
+        CodeBuilder init = new CodeBuilder(cb, 1);
+        init.aload(0);
+        init.invoke(CodeBuilder.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        init.op(CodeBuilder.RETURN, 0);
+        cb.addMethod(ClassBuilder.ACC_PUBLIC, "<init>", "()V", init);
+
+        byte[] classFile = cb.toByteArray();
+        Class<?> c = new JitClassLoader(JitCompiler.class.getClassLoader())
+                         .define(cb.getClassName().replace('/', '.'), classFile);
+
+        return c.getDeclaredConstructor().newInstance();
+      }
+
+
+    private static String methodName(int entry)
+      {
+        return "s" + entry;
+      }
+
+
+    /**
+     * Translates the instructions of one subprogram into the body of a
+     * JVM method with descriptor ([BII)I, taking memory, sp, and sb, and
+     * returning sp after RET.  A loop is translated into the body of a
+     * method with descriptor ([BIII)J, taking memory, sp, sb, and bp, and
+     * returning the VM's instruction index and sp at the exit taken (see
+     * CompiledLoop).
+     */
+    private class Translator
+      {
+        private ClassBuilder cb;
+        private int[] region;
+        private boolean isLoop;
+        private CodeBuilder code;
+
+        /** JVM label for each branch target and exit, or -1 */
+        private int[] labels;
+
+        /** the instructions outside of the region that control can reach */
+        private List<Integer> exits = new ArrayList<>();
+
+        /**
+         * number of integers on top of the CPRL stack that are held on the
+         * JVM operand stack rather than in memory; sp does not include them
+         */
+        private int pending = 0;
+
+
+        Translator(ClassBuilder cb, int[] region, boolean isLoop)
+          {
+            this.cb     = cb;
+            this.region = region;
+            this.isLoop = isLoop;
+            this.code   = new CodeBuilder(cb, TEMP + 1);
+          }
+
+
+        CodeBuilder translate()
+          {
+            labels = new int[ops.length];
+            Arrays.fill(labels, -1);
+            for (int index : region)
+              {
+                if (ops[index] >= DecodedOpCode.BR && ops[index] <= DecodedOpCode.BLE)
+                    addLabel(args[index]);
+                if (fallsThrough(index) && !isInRegion(index + 1))
+                    addLabel(index + 1);
+              }
+
+            if (!isLoop)
+              {
+                // bp = sp - BYTES_PER_FRAME + 1
+                code.iload(SP);
+                code.iconst(Constants.BYTES_PER_FRAME - 1);
+                code.op(CodeBuilder.ISUB, -1);
+                code.istore(BP);
+              }
+
+            for (int k = 0;  k < region.length;  ++k)
+              {
+                int index = region[k];
+
+                if (labels[index] >= 0)
+                  {
+                    flush();
+                    code.bind(labels[index]);
+                  }
+
+                if (isFusedCompare(k))
+                  {
+                    translateCompareBranch(ops[index + 1], args[index + 1]);
+                    ++k;
+                    ++index;
+                  }
+                else
+                    translate(index);
+
+                if (fallsThrough(index) && !isInRegion(index + 1))
+                  {
+                    flush();
+                    code.jump(CodeBuilder.GOTO, labels[index + 1]);
+                  }
+
+                if (code.getLength() > CodeBuilder.MAX_CODE_SIZE)
+                    throw new IllegalStateException("method too large");
+              }
+
+            for (int exit : exits)
+                translateExit(exit);
+
+            return code;
+          }
+
+
+        /**
+         * Creates the label for a branch target or exit if it does not
+         * already have one.
+         */
+        private void addLabel(int index)
+          {
+            if (labels[index] == -1)
+              {
+                labels[index] = code.newLabel();
+                if (!isInRegion(index))
+                    exits.add(index);
+              }
+          }
+
+
+        private boolean isInRegion(int index)
+          {
+            return Arrays.binarySearch(region, index) >= 0;
+          }
+
+
+        private boolean fallsThrough(int index)
+          {
+            return ops[index] != DecodedOpCode.BR && ops[index] != DecodedOpCode.RET;
+          }
+
+
+        /**
+         * Returns from a loop to the virtual machine, which continues at
+         * the specified instruction.  All integers are in memory.
+         */
+        private void translateExit(int index)
+          {
+            int vmIndex = program.getIndex(addrs[index]);
+            if (vmIndex < 0 || program.getAddresses()[vmIndex] != addrs[index])
+                throw new IllegalStateException("loop exit inside a superinstruction");
+
+            code.bind(labels[index]);
+            code.iconst(vmIndex);
+            code.op(CodeBuilder.I2L, 1);
+            code.iconst(32);
+            code.op(CodeBuilder.LSHL, -1);
+            code.iload(SP);
+            code.op(CodeBuilder.I2L, 1);
+            code.op(CodeBuilder.LOR, -2);
+            code.op(CodeBuilder.LRETURN, -2);
+          }
+
+
+        /**
+         * Returns true if region[k] is a CMP immediately followed by a
+         * conditional branch that is not itself a branch target.
+         */
+        private boolean isFusedCompare(int k)
+          {
+            int index = region[k];
+
+            return ops[index] == DecodedOpCode.CMP
+                && k + 1 < region.length
+                && region[k + 1] == index + 1
+                && labels[index + 1] == -1
+                && ops[index + 1] >= DecodedOpCode.BNZ
+                && ops[index + 1] <= DecodedOpCode.BLE;
+          }
+
+
+        private void translate(int index)
+          {
+            int arg = args[index];
+
+            switch (ops[index])
+              {
+                case DecodedOpCode.ADD:
+                    binary(CodeBuilder.IADD);
+                    break;
+                case DecodedOpCode.SUB:
+                    binary(CodeBuilder.ISUB);
+                    break;
+                case DecodedOpCode.MUL:
+                    binary(CodeBuilder.IMUL);
+                    break;
+                case DecodedOpCode.DIV:
+                    binary(CodeBuilder.IDIV);
+                    break;
+                case DecodedOpCode.MOD:
+                    binary(CodeBuilder.IREM);
+                    break;
+                case DecodedOpCode.NEG:
+                    need(1);
+                    code.op(CodeBuilder.INEG, 0);
+                    break;
+                case DecodedOpCode.INC:
+                    need(1);
+                    code.iconst(1);
+                    code.op(CodeBuilder.IADD, -1);
+                    break;
+                case DecodedOpCode.DEC:
+                    need(1);
+                    code.iconst(1);
+                    code.op(CodeBuilder.ISUB, -1);
+                    break;
+                case DecodedOpCode.SHL:
+                    need(1);
+                    code.iconst(arg);
+                    code.op(CodeBuilder.ISHL, -1);
+                    break;
+                case DecodedOpCode.SHR:
+                    need(1);
+                    code.iconst(arg);
+                    code.op(CodeBuilder.ISHR, -1);
+                    break;
+
+                case DecodedOpCode.LDCINT:
+                    beginPush();
+                    code.iconst(arg);
+                    ++pending;
+                    break;
+                case DecodedOpCode.LDCSTR:
+                    beginPush();
+                    code.iconst(arg);
+                    ++pending;
+                    beginPush();
+                    code.iconst(addrs[index] + Constants.BYTES_PER_OPCODE
+                                             + Constants.BYTES_PER_INTEGER);
+                    ++pending;
+                    break;
+                case DecodedOpCode.LDADDR:
+                    beginPush();
+                    code.iload(BP);
+                    code.iconst(arg);
+                    code.op(CodeBuilder.IADD, -1);
+                    ++pending;
+                    break;
+                case DecodedOpCode.LDGADDR:
+                    beginPush();
+                    code.iload(SB);
+                    code.iconst(arg);
+                    code.op(CodeBuilder.IADD, -1);
+                    ++pending;
+                    break;
+                case DecodedOpCode.LDMEM:
+                    loadMemory(BP, arg);
+                    break;
+                case DecodedOpCode.LDGMEM:
+                    loadMemory(SB, arg);
+                    break;
+                case DecodedOpCode.LDMEMB:
+                    flush();
+                    address(BP, arg);
+                    callRuntime("loadByte", "(I[BI)I");
+                    break;
+                case DecodedOpCode.LDGMEMB:
+                    flush();
+                    address(SB, arg);
+                    callRuntime("loadByte", "(I[BI)I");
+                    break;
+                case DecodedOpCode.LDMEM2B:
+                    flush();
+                    address(BP, arg);
+                    callRuntime("load2Bytes", "(I[BI)I");
+                    break;
+                case DecodedOpCode.LDGMEM2B:
+                    flush();
+                    address(SB, arg);
+                    callRuntime("load2Bytes", "(I[BI)I");
+                    break;
+
+                case DecodedOpCode.LOAD:
+                    if (arg == Constants.BYTES_PER_INTEGER)
+                        loadWord();
+                    else
+                      {
+                        needExactly(1);
+                        code.iconst(arg);
+                        callRuntime("load", "(II[BI)I");
+                      }
+                    break;
+                case DecodedOpCode.LOADW:
+                    loadWord();
+                    break;
+                case DecodedOpCode.LOADB:
+                    needExactly(1);
+                    callRuntime("loadByte", "(I[BI)I");
+                    break;
+                case DecodedOpCode.LOAD2B:
+                    needExactly(1);
+                    callRuntime("load2Bytes", "(I[BI)I");
+                    break;
+                case DecodedOpCode.LOADCB:
+                    flush();
+                    code.iconst(arg);
+                    callRuntime("pushByte", "(I[BI)I");
+                    break;
+                case DecodedOpCode.LDCCH:
+                    flush();
+                    code.iconst(arg);
+                    callRuntime("pushChar", "(I[BI)I");
+                    break;
+
+                case DecodedOpCode.STORE:
+                    if (arg == Constants.BYTES_PER_INTEGER)
+                        storeWord();
+                    else
+                      {
+                        flush();
+                        code.iconst(arg);
+                        callRuntime("store", "(I[BI)I");
+                      }
+                    break;
+                case DecodedOpCode.STOREW:
+                    storeWord();
+                    break;
+                case DecodedOpCode.STOREB:
+                    flush();
+                    callRuntime("storeByte", "([BI)I");
+                    break;
+                case DecodedOpCode.STORE2B:
+                    flush();
+                    callRuntime("store2Bytes", "([BI)I");
+                    break;
+                case DecodedOpCode.COPY:
+                    need(2);
+                    code.iconst(arg);
+                    code.aload(MEMORY);
+                    code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "copy", "(III[B)V");
+                    pending = pending - 2;
+                    break;
+                case DecodedOpCode.STOREW_LOCAL:
+                    storeMemory(BP, arg);
+                    break;
+                case DecodedOpCode.STOREW_GLOBAL:
+                    storeMemory(SB, arg);
+                    break;
+                case DecodedOpCode.STOREB_LOCAL:
+                    flush();
+                    address(BP, arg);
+                    callRuntime("storeByte", "(I[BI)I");
+                    break;
+                case DecodedOpCode.STOREB_GLOBAL:
+                    flush();
+                    address(SB, arg);
+                    callRuntime("storeByte", "(I[BI)I");
+                    break;
+                case DecodedOpCode.STORE2B_LOCAL:
+                    flush();
+                    address(BP, arg);
+                    callRuntime("store2Bytes", "(I[BI)I");
+                    break;
+                case DecodedOpCode.STORE2B_GLOBAL:
+                    flush();
+                    address(SB, arg);
+                    callRuntime("store2Bytes", "(I[BI)I");
+                    break;
+
+                case DecodedOpCode.NOT:
+                    flush();
+                    code.aload(MEMORY);
+                    code.iload(SP);
+                    code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "not", "([BI)V");
+                    break;
+                case DecodedOpCode.CMP:
+                    needExactly(2);
+                    code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "compare", "(II)I");
+                    pending = 0;
+                    callRuntime("pushByte", "(I[BI)I");
+                    break;
+
+                case DecodedOpCode.BR:
+                    flush();
+                    code.jump(CodeBuilder.GOTO, labels[arg]);
+                    break;
+                case DecodedOpCode.BNZ:
+                case DecodedOpCode.BZ:
+                case DecodedOpCode.BG:
+                case DecodedOpCode.BGE:
+                case DecodedOpCode.BL:
+                case DecodedOpCode.BLE:
+                    // pop the byte on top of the stack and branch on its value
+                    flush();
+                    code.aload(MEMORY);
+                    code.iload(SP);
+                    code.op(CodeBuilder.BALOAD, -1);
+                    code.iinc(SP, -1);
+                    code.jump(branchOpcode(ops[index], false), labels[arg]);
+                    break;
+
+                case DecodedOpCode.ALLOC:
+                case DecodedOpCode.PROC:
+                    flush();
+                    code.iinc(SP, arg);
+                    callRuntime("checkStack", "([BI)I");
+                    break;
+                case DecodedOpCode.CHKSTK:
+                    flush();
+                    code.iinc(SP, arg);
+                    callRuntime("checkStack", "([BI)I");
+                    code.iinc(SP, -arg);
+                    break;
+                case DecodedOpCode.CALL:
+                    flush();
+                    code.iload(BP);                  // dynamic link
+                    code.iconst(addrs[index + 1]);   // return address
+                    callRuntime("pushFrame", "(II[BI)I");
+                    code.aload(MEMORY);
+                    code.iload(SP);
+                    code.iload(SB);
+                    code.invoke(CodeBuilder.INVOKESTATIC, cb.getClassName(),
+                                methodName(arg), METHOD_DESCRIPTOR);
+                    code.istore(SP);
+                    break;
+                case DecodedOpCode.RET:
+                    // sp = bp - paramLength - 1
+                    flush();
+                    code.iload(BP);
+                    code.iconst(arg + 1);
+                    code.op(CodeBuilder.ISUB, -1);
+                    code.op(CodeBuilder.IRETURN, -1);
+                    break;
+
+                default:
+                    throw new IllegalStateException("instruction cannot be compiled");
+              }
+          }
+
+
+        /**
+         * Translates CMP followed by a conditional branch into a single
+         * JVM compare-and-branch instruction.
+         */
+        private void translateCompareBranch(int branchOp, int target)
+          {
+            needExactly(2);
+            code.jump(branchOpcode(branchOp, true), labels[target]);
+            pending = 0;
+          }
+
+
+        /**
+         * Returns the JVM branch opcode that tests the same condition as
+         * a CPRL conditional branch, either on the CMP result byte or,
+         * if fused, directly on the two integer operands of CMP.
+         */
+        private int branchOpcode(int branchOp, boolean fused)
+          {
+            switch (branchOp)
+              {
+                case DecodedOpCode.BZ:
+                    return fused ? CodeBuilder.IF_ICMPEQ : CodeBuilder.IFEQ;
+                case DecodedOpCode.BNZ:
+                    return fused ? CodeBuilder.IF_ICMPNE : CodeBuilder.IFNE;
+                case DecodedOpCode.BG:
+                    return fused ? CodeBuilder.IF_ICMPGT : CodeBuilder.IFGT;
+                case DecodedOpCode.BGE:
+                    return fused ? CodeBuilder.IF_ICMPGE : CodeBuilder.IFGE;
+                case DecodedOpCode.BL:
+                    return fused ? CodeBuilder.IF_ICMPLT : CodeBuilder.IFLT;
+                default:
+                    return fused ? CodeBuilder.IF_ICMPLE : CodeBuilder.IFLE;
+              }
+          }
+
+
+        private void binary(int opcode)
+          {
+            need(2);
+            code.op(opcode, -1);
+            --pending;
+          }
+
+
+        private void loadWord()
+          {
+            need(1);
+            code.aload(MEMORY);
+            code.op(CodeBuilder.SWAP, 0);
+            code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "getInt", "([BI)I");
+          }
+
+
+        private void storeWord()
+          {
+            need(2);
+            code.aload(MEMORY);
+            code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "putInt", "(II[B)V");
+            pending = pending - 2;
+          }
+
+
+        /**
+         * Pushes the address base + displacement onto the JVM operand
+         * stack, where base is the local variable BP or SB.
+         */
+        private void address(int base, int displacement)
+          {
+            code.iload(base);
+            code.iconst(displacement);
+            code.op(CodeBuilder.IADD, -1);
+          }
+
+
+        /**
+         * Pushes the integer at base + displacement as a pending integer.
+         */
+        private void loadMemory(int base, int displacement)
+          {
+            beginPush();
+            code.aload(MEMORY);
+            address(base, displacement);
+            code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "getInt", "([BI)I");
+            ++pending;
+          }
+
+
+        /**
+         * Stores the top integer at base + displacement.
+         */
+        private void storeMemory(int base, int displacement)
+          {
+            need(1);
+            address(base, displacement);
+            code.op(CodeBuilder.SWAP, 0);
+            code.aload(MEMORY);
+            code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "putInt", "(II[B)V");
+            --pending;
+          }
+
+
+        /**
+         * Calls a runtime helper that takes memory and sp as its last two
+         * arguments and returns the new sp.  Any other arguments must
+         * already be on the JVM operand stack and are consumed.
+         */
+        private void callRuntime(String name, String descriptor)
+          {
+            code.aload(MEMORY);
+            code.iload(SP);
+            code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, name, descriptor);
+            code.istore(SP);
+            pending = 0;
+          }
+
+
+        /**
+         * Makes room for one more pending integer.
+         */
+        private void beginPush()
+          {
+            if (pending == MAX_PENDING)
+                flush();
+          }
+
+
+        /**
+         * Ensures that at least the top n integers are pending.
+         */
+        private void need(int n)
+          {
+            if (pending < n)
+              {
+                flush();
+                reload(n);
+              }
+          }
+
+
+        /**
+         * Ensures that exactly the top n integers are pending.
+         */
+        private void needExactly(int n)
+          {
+            if (pending != n)
+              {
+                flush();
+                reload(n);
+              }
+          }
+
+
+        /**
+         * Writes all pending integers to memory.
+         */
+        private void flush()
+          {
+            for (int j = pending - 1;  j >= 0;  --j)
+              {
+                code.istore(TEMP);
+                code.iload(SP);
+                code.iconst(j*Constants.BYTES_PER_INTEGER + 1);
+                code.op(CodeBuilder.IADD, -1);
+                code.iload(TEMP);
+                code.aload(MEMORY);
+                code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "putInt", "(II[B)V");
+              }
+
+            code.iinc(SP, pending*Constants.BYTES_PER_INTEGER);
+            pending = 0;
+          }
+
+
+        /**
+         * Pops the top n integers from memory onto the JVM operand stack.
+         */
+        private void reload(int n)
+          {
+            for (int j = 0;  j < n;  ++j)
+              {
+                code.aload(MEMORY);
+                code.iload(SP);
+                code.iconst((j - n)*Constants.BYTES_PER_INTEGER + 1);
+                code.op(CodeBuilder.IADD, -1);
+                code.invoke(CodeBuilder.INVOKESTATIC, RUNTIME, "getInt", "([BI)I");
+              }
+
+            code.iinc(SP, -n*Constants.BYTES_PER_INTEGER);
+            pending = n;
+          }
+      }
+
+
+    /**
+     * Each generated class is defined by its own class loader so that
+     * it can be unloaded when the virtual machine is no longer in use.
+     */
+    private static class JitClassLoader extends ClassLoader
+      {
+        JitClassLoader(ClassLoader parent)
+          {
+            super(parent);
+          }
+
+
+        Class<?> define(String name, byte[] classFile)
+          {
+            return defineClass(name, classFile, 0, classFile.length);
+          }
+      }
+  }
@@ -0,0 +1,206 @@
+package edu.citadel.cprlvm.jit;
+
+
+import edu.citadel.cprlvm.Constants;
+import edu.citadel.cprlvm.VmException;
+
+
+/**
+ * Static helper methods called from code generated by the JIT compiler.
+ * Each helper performs the work of one CPRL instruction (or part of one)
+ * directly on VM memory.  Helpers that change the stack pointer take the
+ * current value as their last argument and return the new value.  The
+ * argument order of each helper matches the order in which the generated
+ * code leaves its arguments on the JVM operand stack.
+ *
+ * <p>This class must be public since generated classes are defined by
+ * their own class loaders and therefore are not in this runtime package.
+ */
+public final class JitRuntime
+  {
+    private JitRuntime()
+      {
+      }
+
+
+    /**
+     * Returns the integer at the specified memory address.
+     */
+    public static int getInt(byte[] memory, int address)
+      {
+        return  (memory[address]            << 24)
+             | ((memory[address + 1] & 0xFF) << 16)
+             | ((memory[address + 2] & 0xFF) <<  8)
+             |  (memory[address + 3] & 0xFF);
+      }
+
+
+    /**
+     * Writes an integer to the specified memory address.
+     */
+    public static void putInt(int address, int value, byte[] memory)
+      {
+        memory[address]     = (byte) (value >>> 24);
+        memory[address + 1] = (byte) (value >>> 16);
+        memory[address + 2] = (byte) (value >>>  8);
+        memory[address + 3] = (byte)  value;
+      }
+
+
+    /**
+     * Returns the byte that CMP pushes for the two operands.
+     */
+    public static int compare(int operand1, int operand2)
+      {
+        if (operand1 == operand2)
+            return 0;
+        else if (operand1 > operand2)
+            return 1;
+        else
+            return -1;
+      }
+
+
+    public static int pushByte(int value, byte[] memory, int sp)
+      {
+        memory[++sp] = (byte) value;
+        return sp;
+      }
+
+
+    public static int pushChar(int value, byte[] memory, int sp)
+      {
+        memory[sp + 1] = (byte) (value >>> 8);
+        memory[sp + 2] = (byte)  value;
+        return sp + Constants.BYTES_PER_CHAR;
+      }
+
+
+    /**
+     * Pushes the dynamic link and return address for a CALL.
+     */
+    public static int pushFrame(int bp, int returnAddr, byte[] memory, int sp)
+      {
+        putInt(sp + 1, bp, memory);
+        putInt(sp + 1 + Constants.BYTES_PER_INTEGER, returnAddr, memory);
+        return sp + Constants.BYTES_PER_FRAME;
+      }
+
+
+    /**
+     * Checks the stack pointer after a frame has been allocated by PROC or
+     * ALLOC, before a block is loaded onto the stack, or with the bytes
+     * of CHKSTK added, against the same limit as the virtual machine.
+     * Returns the stack pointer unchanged.
+     */
+    public static int checkStack(byte[] memory, int sp)
+      {
+        if (sp > memory.length - 1 - Constants.STACK_GUARD_SIZE)
+            fault("*** FAULT:  Stack overflow ***");
+
+        return sp;
+      }
+
+
+    public static int load(int address, int length, byte[] memory, int sp)
+      {
+        checkStack(memory, sp + length);
+        System.arraycopy(memory, address, memory, sp + 1, length);
+        return sp + length;
+      }
+
+
+    public static int loadByte(int address, byte[] memory, int sp)
+      {
+        memory[++sp] = memory[address];
+        return sp;
+      }
+
+
+    public static int load2Bytes(int address, byte[] memory, int sp)
+      {
+        memory[sp + 1] = memory[address];
+        memory[sp + 2] = memory[address + 1];
+        return sp + 2;
+      }
+
+
+    /**
+     * Performs STORE with the data and destination address in memory.
+     */
+    public static int store(int length, byte[] memory, int sp)
+      {
+        int dataAddr = sp - length + 1;
+        int destAddr = getInt(memory, dataAddr - Constants.BYTES_PER_ADDRESS);
+
+        System.arraycopy(memory, dataAddr, memory, destAddr, length);
+
+        return dataAddr - Constants.BYTES_PER_ADDRESS - 1;
+      }
+
+
+    public static int storeByte(byte[] memory, int sp)
+      {
+        int destAddr = getInt(memory, sp - Constants.BYTES_PER_ADDRESS);
+        memory[destAddr] = memory[sp];
+        return sp - Constants.BYTES_PER_ADDRESS - 1;
+      }
+
+
+    public static int store2Bytes(byte[] memory, int sp)
+      {
+        int destAddr = getInt(memory, sp - 1 - Constants.BYTES_PER_ADDRESS);
+        memory[destAddr]     = memory[sp - 1];
+        memory[destAddr + 1] = memory[sp];
+        return sp - 2 - Constants.BYTES_PER_ADDRESS;
+      }
+
+
+    /**
+     * Performs COPY with both addresses taken from the JVM operand stack.
+     */
+    public static void copy(int destAddr, int srcAddr, int length, byte[] memory)
+      {
+        System.arraycopy(memory, srcAddr, memory, destAddr, length);
+      }
+
+
+    /**
+     * Pops the byte on top of the stack and stores it at the address.
+     */
+    public static int storeByte(int address, byte[] memory, int sp)
+      {
+        memory[address] = memory[sp];
+        return sp - 1;
+      }
+
+
+    /**
+     * Pops the two bytes on top of the stack and stores them at the address.
+     */
+    public static int store2Bytes(int address, byte[] memory, int sp)
+      {
+        memory[address]     = memory[sp - 1];
+        memory[address + 1] = memory[sp];
+        return sp - 2;
+      }
+
+
+    /**
+     * Replaces the boolean on top of the stack with its negation.
+     */
+    public static void not(byte[] memory, int sp)
+      {
+        memory[sp] = memory[sp] == 0 ? (byte) 1 : (byte) 0;
+      }
+
+
+    /**
+     * Stops the program by throwing a VmException, the same way
+     * that the virtual machine reports faults.
+     */
+    public static void fault(String message)
+      {
+        throw new VmException(message);
+      }
+  }
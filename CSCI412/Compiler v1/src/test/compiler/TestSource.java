@@ -14,8 +14,7 @@ public class TestSource
         try
           {
             String fileName = args[0];
-            FileReader fileReader = new FileReader(fileName);
-            Source source = new Source(fileReader);
+            Source source = new Source(new File(fileName));
 
             while (source.getChar() != Source.EOF)
               {
@@ -2,6 +2,7 @@ package test.cprl;
 
 
 import edu.citadel.compiler.Source;
+import edu.citadel.cprl.CompilationContext;
 import edu.citadel.cprl.Parser;
 import edu.citadel.cprl.Scanner;
 import edu.citadel.compiler.ErrorHandler;
@@ -28,37 +29,23 @@ public class TestParser
 
         fileName = args[0];
 
-        File sourceFile = null;
-        FileReader fileReader = null;;
+        File sourceFile = new File(fileName);
 
         printProgressMessage("Initializing...");
 
-        try
-          {
-            sourceFile = new File(fileName);
-            fileReader = new FileReader(sourceFile);
-          }
-        catch (FileNotFoundException e)
+        if (!sourceFile.isFile())
           {
             // see if we can find the file by appending the suffix
             int index = fileName.lastIndexOf('.');
 
             if (index < 0 || !fileName.substring(index).equals(SUFFIX))
               {
-                try
-                  {
-                    fileName += SUFFIX;
-                    fileReader = new FileReader(fileName);
-                  }
-                catch (FileNotFoundException e2)
-                  {
-                    System.err.println("*** File " + fileName + " not found ***");
-                    System.exit(FAILURE);
-                  }
+                fileName  += SUFFIX;
+                sourceFile = new File(fileName);
               }
-            else
+
+            if (!sourceFile.isFile())
               {
-                // don't try to append the suffix
                 System.err.println("*** File " + fileName + " not found ***");
                 System.exit(FAILURE);
               }
@@ -66,13 +53,12 @@ public class TestParser
 
         printProgressMessage("Parsing " + fileName + "...");
 
-        Source  source  = new Source(fileReader);
-        Scanner scanner = new Scanner(source);
-        Parser  parser  = new Parser(scanner);
-
         // write error messages to System.out
-        ErrorHandler errorHandler = ErrorHandler.getInstance();
-        errorHandler.setPrintWriter(new PrintWriter(System.out, true));
+        ErrorHandler errorHandler = new ErrorHandler(new PrintWriter(System.out, true));
+
+        Source  source  = new Source(sourceFile);
+        Scanner scanner = new Scanner(source, errorHandler);
+        Parser  parser  = new Parser(scanner, new CompilationContext(errorHandler));
 
         printProgressMessage("Starting compilation...");
 
@@ -20,14 +20,12 @@ public class TestScanner
             System.out.println();
 
             String fileName = args[0];
-            FileReader fileReader = new FileReader(fileName);
 
-            Source  source  = new Source(fileReader);
-            Scanner scanner = new Scanner(source);
-            
             // write error messages to System.out
-            ErrorHandler errorHandler = ErrorHandler.getInstance();
-            errorHandler.setPrintWriter(new PrintWriter(System.out, true));
+            ErrorHandler errorHandler = new ErrorHandler(new PrintWriter(System.out, true));
+
+            Source  source  = new Source(new File(fileName));
+            Scanner scanner = new Scanner(source, errorHandler);
 
             Token token;
 
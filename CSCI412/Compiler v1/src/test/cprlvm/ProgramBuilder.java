@@ -0,0 +1,113 @@
+package test.cprlvm;
+
+
+import edu.citadel.compiler.util.ByteUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Builds the object code of a small test program for the CPRL virtual
+ * machine one instruction at a time.  A branch or call may refer to a
+ * label that is defined before or after it; its displacement is filled
+ * in when the object code is returned by toByteArray().
+ */
+public class ProgramBuilder
+  {
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /** maps each label to its address */
+    private Map<String, Integer> labels = new HashMap<>();
+
+    /** maps the address of each branch or call to the label it refers to */
+    private Map<Integer, String> references = new HashMap<>();
+
+
+    /**
+     * Returns the address of the next instruction.
+     */
+    public int getAddress()
+      {
+        return out.size();
+      }
+
+
+    /**
+     * Defines a label at the address of the next instruction
+     * and returns the address.
+     */
+    public int defineLabel(String label)
+      {
+        if (labels.containsKey(label))
+            throw new IllegalStateException("label " + label + " is defined twice");
+
+        labels.put(label, out.size());
+        return out.size();
+      }
+
+
+    /**
+     * Emits an instruction that has no argument.
+     */
+    public void emit(byte opCode)
+      {
+        out.write(opCode);
+      }
+
+
+    /**
+     * Emits an instruction that has an integer argument.
+     */
+    public void emit(byte opCode, int arg)
+      {
+        out.write(opCode);
+        out.write(ByteUtil.intToBytes(arg), 0, 4);
+      }
+
+
+    /**
+     * Emits an instruction that has a character argument (LDCCH).
+     */
+    public void emit(byte opCode, char arg)
+      {
+        out.write(opCode);
+        out.write(ByteUtil.charToBytes(arg), 0, 2);
+      }
+
+
+    /**
+     * Emits a branch or call to a label.
+     */
+    public void emit(byte opCode, String label)
+      {
+        references.put(out.size(), label);
+        emit(opCode, 0);   // displacement filled in by toByteArray()
+      }
+
+
+    /**
+     * Returns the object code, with the displacement of each branch
+     * and call to a label filled in.
+     *
+     * @throws IllegalStateException if a label has not been defined.
+     */
+    public byte[] toByteArray()
+      {
+        byte[] code = out.toByteArray();
+
+        for (Map.Entry<Integer, String> reference : references.entrySet())
+          {
+            Integer target = labels.get(reference.getValue());
+            if (target == null)
+                throw new IllegalStateException("label " + reference.getValue() + " is not defined");
+
+            int address = reference.getKey();
+            byte[] displacement = ByteUtil.intToBytes(target - address);
+            System.arraycopy(displacement, 0, code, address + 1, 4);
+          }
+
+        return code;
+      }
+  }
@@ -0,0 +1,135 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.OpCode;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * Test that the CPRL virtual machine does not allocate memory on the
+ * Java heap while it executes instructions.  A small loop is run for two
+ * different iteration counts with each execution engine; the difference
+ * in the number of bytes allocated by the current thread, divided by the
+ * difference in the number of instructions executed, is the steady state
+ * allocation per instruction and should be zero.
+ */
+public class TestVmAllocation
+  {
+    private static final int MEMORY_SIZE = 8*1024;
+
+    /** number of instructions executed per loop iteration */
+    private static final int INSTS_PER_ITERATION = 17;
+
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int SHORT_ITERATIONS  = 200000;
+    private static final int LONG_ITERATIONS   = 2200000;
+
+    /** allowance for measurement noise, in bytes */
+    private static final long TOLERANCE = 1024;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        boolean passed = true;
+
+        for (boolean decodingEnabled : new boolean[] { false, true })
+          {
+            String engine = decodingEnabled ? "pre-decoded engine" : "byte-level interpreter";
+
+            // warm up so that the measurement is not affected by class loading
+            for (int i = 0;  i < 5;  ++i)
+                runLoop(WARMUP_ITERATIONS, decodingEnabled);
+
+            long threadId = Thread.currentThread().getId();
+
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            runLoop(SHORT_ITERATIONS, decodingEnabled);
+            long shortRun = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+            start = threadBean.getThreadAllocatedBytes(threadId);
+            runLoop(LONG_ITERATIONS, decodingEnabled);
+            long longRun = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+            long numInsts = (long) (LONG_ITERATIONS - SHORT_ITERATIONS)*INSTS_PER_ITERATION;
+            long delta    = longRun - shortRun;
+
+            System.out.println(engine + ":  " + delta + " extra bytes allocated for "
+                             + numInsts + " extra instructions ("
+                             + ((double) delta/numInsts) + " bytes per instruction)");
+
+            if (delta > TOLERANCE)
+                passed = false;
+          }
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    /**
+     * Loads and runs a program that executes the loop body the specified
+     * number of times.
+     */
+    private static void runLoop(int numIterations, boolean decodingEnabled)
+      {
+        CprlVm vm = new CprlVm(MEMORY_SIZE);
+        vm.setDecodingEnabled(decodingEnabled);
+        vm.loadProgram(new ByteArrayInputStream(makeProgram(numIterations)));
+        vm.run();
+      }
+
+
+    /**
+     * Returns the object code for the following program, where
+     * i is at global address 0, c at 4, and j at 6.
+     * <code>
+     *    PROGRAM 10
+     * L0:
+     *    LDGADDR 0; LDGADDR 0; LOADW; INC; STOREW       -- i := i + 1
+     *    LDGADDR 4; LDCCH 'x'; STORE2B                   -- c := 'x'
+     *    LDGADDR 6; LDGADDR 0; LOAD 4; STORE 4           -- j := i
+     *    LDGADDR 0; LOADW; LDCINT n; CMP; BL L0          -- loop while i &lt; n
+     *    HALT
+     * </code>
+     */
+    private static byte[] makeProgram(int n)
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 10);
+
+        code.defineLabel("L0");
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.INC);
+        code.emit(OpCode.STOREW);
+
+        code.emit(OpCode.LDGADDR, 4);
+        code.emit(OpCode.LDCCH, 'x');
+        code.emit(OpCode.STORE2B);
+
+        code.emit(OpCode.LDGADDR, 6);
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOAD, 4);
+        code.emit(OpCode.STORE, 4);
+
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.LDCINT, n);
+        code.emit(OpCode.CMP);
+        code.emit(OpCode.BL, "L0");
+
+        code.emit(OpCode.HALT);
+
+        return code.toByteArray();
+      }
+  }
@@ -0,0 +1,109 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.VmException;
+import edu.citadel.cprlvm.VmIO;
+
+import java.io.*;
+
+
+/**
+ * Test that DIV and MOD with a zero divisor fault with the same message
+ * in every execution engine, and that the output written before the
+ * fault is not lost.
+ */
+public class TestVmDivideByZero
+  {
+    private static final String FAULT = "*** FAULT:  Divide by zero ***";
+
+    private static final int OUTPUT = 7;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        boolean passed = true;
+
+        for (byte opCode : new byte[] { OpCode.DIV, OpCode.MOD })
+          {
+            passed &= test(opCode, "byte-level interpreter", false, false, false);
+            passed &= test(opCode, "pre-decoded engine", true, false, false);
+            passed &= test(opCode, "word-addressed memory", true, true, false);
+            passed &= test(opCode, "JIT enabled", true, false, true);
+          }
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    /**
+     * Runs the program with the specified engine and returns true if it
+     * faulted with the divide by zero message after writing its output.
+     */
+    private static boolean test(byte opCode, String engine, boolean decodingEnabled,
+                                boolean wordMemoryEnabled, boolean jitEnabled)
+      {
+        StringWriter output = new StringWriter();
+        String faultMessage = null;
+
+        CprlVm vm = new CprlVm(8*1024);
+        vm.setDecodingEnabled(decodingEnabled);
+        vm.setWordMemoryEnabled(wordMemoryEnabled);
+        vm.setJitEnabled(jitEnabled);
+        vm.setIO(new VmIO(new StringReader(""), output));
+        vm.loadProgram(new ByteArrayInputStream(makeProgram(opCode)));
+
+        try
+          {
+            vm.run();
+          }
+        catch (VmException e)
+          {
+            faultMessage = e.getMessage();
+          }
+        catch (RuntimeException e)
+          {
+            vm.getIO().flush();
+            faultMessage = e.toString();
+          }
+
+        boolean passed = FAULT.equals(faultMessage)
+                      && output.toString().equals(Integer.toString(OUTPUT));
+
+        System.out.println(OpCode.toString(opCode) + ", " + engine + ":  output "
+                         + output + ", " + faultMessage + (passed ? "" : "  *** FAILED ***"));
+
+        return passed;
+      }
+
+
+    /**
+     * Returns the object code for the following program, where op
+     * is DIV or MOD.
+     * <code>
+     *    PROGRAM 0
+     *    LDCINT OUTPUT; PUTINT
+     *    LDCINT 1; LDCINT 0; op; PUTINT
+     *    HALT
+     * </code>
+     */
+    private static byte[] makeProgram(byte opCode)
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 0);
+        code.emit(OpCode.LDCINT, OUTPUT);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.LDCINT, 1);
+        code.emit(OpCode.LDCINT, 0);
+        code.emit(opCode);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        return code.toByteArray();
+      }
+  }
@@ -0,0 +1,99 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.ObjectFile;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.ProgramImage;
+import edu.citadel.cprlvm.VmHost;
+import edu.citadel.cprlvm.VmResult;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+
+/**
+ * Test that a VmHost runs many copies of a program concurrently from
+ * one shared program image, each with its own input and output, and
+ * that a run that faults returns its fault as a result without ending
+ * the other runs or the process.
+ */
+public class TestVmHost
+  {
+    private static final int NUM_RUNS = 2000;
+
+    private static final int DIVIDEND = 1000000;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        ProgramImage image = new ProgramImage(new ObjectFile(makeProgram(), 0, 0, new int[0]), true);
+
+        boolean passed = true;
+        int numFaults  = 0;
+
+        try (VmHost host = new VmHost(image))
+          {
+            List<Future<VmResult>> results = new ArrayList<Future<VmResult>>();
+            for (int i = 0;  i < NUM_RUNS;  ++i)
+                results.add(host.submit(Integer.toString(i)));
+
+            for (int i = 0;  i < NUM_RUNS;  ++i)
+              {
+                VmResult result = results.get(i).get();
+
+                if (i == 0)
+                  {
+                    ++numFaults;
+                    if (result.isSuccessful()
+                            || !result.getFaultMessage().equals("*** FAULT:  Divide by zero ***"))
+                      {
+                        System.out.println("run 0:  expected a fault but got " + result);
+                        passed = false;
+                      }
+                  }
+                else if (!result.isSuccessful()
+                            || !result.getOutput().equals(Integer.toString(DIVIDEND/i)))
+                  {
+                    System.out.println("run " + i + ":  " + result + ", output " + result.getOutput());
+                    passed = false;
+                  }
+              }
+
+            // a run in the calling thread
+            VmResult result = host.run("7");
+            if (!result.isSuccessful() || !result.getOutput().equals(Integer.toString(DIVIDEND/7)))
+                passed = false;
+          }
+
+        System.out.println(NUM_RUNS + " runs, " + numFaults + " expected fault");
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    /**
+     * Returns the object code for the following program, which reads
+     * an integer n and writes DIVIDEND/n.
+     * <code>
+     *    PROGRAM 0
+     *    LDCINT DIVIDEND; GETINT; DIV; PUTINT; HALT
+     * </code>
+     */
+    private static byte[] makeProgram()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 0);
+        code.emit(OpCode.LDCINT, DIVIDEND);
+        code.emit(OpCode.GETINT);
+        code.emit(OpCode.DIV);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        return code.toByteArray();
+      }
+  }
@@ -0,0 +1,184 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.VmIO;
+import edu.citadel.cprlvm.jit.JitCompiler;
+
+import java.io.*;
+
+
+/**
+ * Test that the JIT compiler compiles a hot function, a hot loop in a
+ * procedure that is called only once, and a hot loop in the main
+ * program, and that the program writes the same output as it does in
+ * the pre-decoded execution engine without compilation.
+ */
+public class TestVmJit
+  {
+    private static final int N = 2*JitCompiler.LOOP_THRESHOLD;
+
+    // addresses of procedures and loops, set by makeProgram()
+    private static int procP;
+    private static int loopInQ;
+    private static int loopInMain;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        byte[] program = makeProgram();
+        boolean passed = true;
+
+        StringWriter plainOutput = new StringWriter();
+        CprlVm plain = newVm(program, plainOutput, false);
+        plain.run();
+
+        StringWriter output = new StringWriter();
+        CprlVm vm = newVm(program, output, true);
+        vm.run();
+
+        String expected = Integer.toString(N) + Integer.toString(N);
+        if (!plainOutput.toString().equals(expected) || !output.toString().equals(expected))
+          {
+            System.out.println("output " + output + ", without JIT " + plainOutput
+                             + ", expected " + expected);
+            passed = false;
+          }
+
+        if (plain.getJitCompiler() != null)
+            passed = false;
+
+        JitCompiler jitCompiler = vm.getJitCompiler();
+        jitCompiler.printReport(System.out);
+
+        passed = check("function P", jitCompiler.isSubprogramCompiled(procP)) && passed;
+        passed = check("loop in Q", jitCompiler.isLoopCompiled(loopInQ)) && passed;
+        passed = check("loop in main", jitCompiler.isLoopCompiled(loopInMain)) && passed;
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    private static CprlVm newVm(byte[] program, StringWriter output, boolean jitEnabled)
+      {
+        CprlVm vm = new CprlVm(8*1024);
+        vm.setJitEnabled(jitEnabled);
+        vm.setIO(new VmIO(new StringReader(""), output));
+        vm.loadProgram(new ByteArrayInputStream(program));
+        return vm;
+      }
+
+
+    private static boolean check(String name, boolean compiled)
+      {
+        if (!compiled)
+            System.out.println(name + " was not compiled");
+
+        return compiled;
+      }
+
+
+    /**
+     * Returns the object code for the following program, which counts
+     * i at global address 0 up to N in a loop in procedure Q, and then
+     * counts s at global address 4 up to N by calling procedure P in a
+     * loop in the main program.
+     * <code>
+     *    PROGRAM 8
+     *    BR L1
+     * P:
+     *    PROC 0
+     *    LDGADDR 4; LDGADDR 4; LOADW; INC; STOREW          -- s := s + 1
+     *    RET 0
+     * Q:
+     *    PROC 0
+     * L2:
+     *    LDGADDR 0; LOADW; LDCINT N; CMP; BGE L3           -- while i &lt; N
+     *    LDGADDR 0; LDGADDR 0; LOADW; INC; STOREW          --   i := i + 1
+     *    BR L2
+     * L3:
+     *    RET 0
+     * L1:
+     *    CALL Q
+     * L4:
+     *    LDGADDR 4; LOADW; LDCINT N; CMP; BGE L5           -- while s &lt; N
+     *    CALL P; BR L4                                     --   P()
+     * L5:
+     *    LDGADDR 0; LOADW; PUTINT                          -- write i
+     *    LDGADDR 4; LOADW; PUTINT; HALT                    -- write s
+     * </code>
+     */
+    private static byte[] makeProgram()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 8);
+        code.emit(OpCode.BR, "L1");
+
+        procP = code.defineLabel("P");
+        code.emit(OpCode.PROC, 0);
+        emitIncrement(code, 4);
+        code.emit(OpCode.RET, 0);
+
+        code.defineLabel("Q");
+        code.emit(OpCode.PROC, 0);
+
+        loopInQ = code.defineLabel("L2");
+        emitLoopTest(code, 0, "L3");
+        emitIncrement(code, 0);
+        code.emit(OpCode.BR, "L2");
+
+        code.defineLabel("L3");
+        code.emit(OpCode.RET, 0);
+
+        code.defineLabel("L1");
+        code.emit(OpCode.CALL, "Q");
+
+        loopInMain = code.defineLabel("L4");
+        emitLoopTest(code, 4, "L5");
+        code.emit(OpCode.CALL, "P");
+        code.emit(OpCode.BR, "L4");
+
+        code.defineLabel("L5");
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.LDGADDR, 4);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        return code.toByteArray();
+      }
+
+
+    /**
+     * Emits the code to add 1 to the integer at the global address.
+     */
+    private static void emitIncrement(ProgramBuilder code, int address)
+      {
+        code.emit(OpCode.LDGADDR, address);
+        code.emit(OpCode.LDGADDR, address);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.INC);
+        code.emit(OpCode.STOREW);
+      }
+
+
+    /**
+     * Emits the code to branch to the exit label of a loop when the
+     * integer at the global address is at least N.
+     */
+    private static void emitLoopTest(ProgramBuilder code, int address, String exitLabel)
+      {
+        code.emit(OpCode.LDGADDR, address);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.LDCINT, N);
+        code.emit(OpCode.CMP);
+        code.emit(OpCode.BGE, exitLabel);
+      }
+  }
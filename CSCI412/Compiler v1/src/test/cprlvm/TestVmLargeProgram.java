@@ -0,0 +1,112 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.ObjectFile;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.VmException;
+import edu.citadel.cprlvm.VmIO;
+
+import java.io.*;
+
+
+/**
+ * Test that the CPRL virtual machine runs a program whose code is larger
+ * than its default memory when the object file leaves the stack size to
+ * the virtual machine, as the assembler does by default.  Memory must be
+ * enlarged to hold the code and a default stack in each execution engine.
+ */
+public class TestVmLargeProgram
+  {
+    private static final int MEMORY_SIZE = 8*1024;
+
+    /** number of additions; each one is 6 bytes of code */
+    private static final int NUM_ADDS = 2000;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        byte[] objectCode = makeObjectFile();
+
+        boolean passed = objectCode.length > MEMORY_SIZE;
+
+        passed &= test(objectCode, "byte-level interpreter", false, false, false);
+        passed &= test(objectCode, "pre-decoded engine", true, false, false);
+        passed &= test(objectCode, "word-addressed memory", true, true, false);
+        passed &= test(objectCode, "JIT enabled", true, false, true);
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    /**
+     * Runs the program with the specified engine and returns true
+     * if it wrote the number of additions.
+     */
+    private static boolean test(byte[] objectCode, String engine, boolean decodingEnabled,
+                                boolean wordMemoryEnabled, boolean jitEnabled)
+      {
+        StringWriter output = new StringWriter();
+        String faultMessage = null;
+
+        CprlVm vm = new CprlVm(MEMORY_SIZE);
+        vm.setDecodingEnabled(decodingEnabled);
+        vm.setWordMemoryEnabled(wordMemoryEnabled);
+        vm.setJitEnabled(jitEnabled);
+        vm.setIO(new VmIO(new StringReader(""), output));
+
+        try
+          {
+            vm.loadProgram(new ByteArrayInputStream(objectCode));
+            vm.run();
+            vm.getIO().flush();
+          }
+        catch (VmException e)
+          {
+            faultMessage = e.getMessage();
+          }
+
+        boolean passed = faultMessage == null
+                      && output.toString().equals(Integer.toString(NUM_ADDS));
+
+        System.out.println(engine + ":  output " + output + ", memory size "
+                         + vm.getMemorySize() + (faultMessage == null ? "" : ", " + faultMessage)
+                         + (passed ? "" : "  *** FAILED ***"));
+
+        return passed;
+      }
+
+
+    /**
+     * Returns an object file with the default stack size (0) for the
+     * following program, whose code is larger than MEMORY_SIZE.
+     * <code>
+     *    PROGRAM 0
+     *    LDCINT 0
+     *    LDCINT 1; ADD      -- repeated NUM_ADDS times
+     *    PUTINT
+     *    HALT
+     * </code>
+     */
+    private static byte[] makeObjectFile()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 0);
+        code.emit(OpCode.LDCINT, 0);
+
+        for (int i = 0;  i < NUM_ADDS;  ++i)
+          {
+            code.emit(OpCode.LDCINT, 1);
+            code.emit(OpCode.ADD);
+          }
+
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        return new ObjectFile(code.toByteArray(), 0, 0, new int[0]).toByteArray();
+      }
+  }
@@ -0,0 +1,175 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.VmException;
+import edu.citadel.cprlvm.VmIO;
+
+import java.io.*;
+
+
+/**
+ * Test that the CPRL virtual machine enlarges its memory when memory
+ * growth is enabled and the stack of a deeply recursive program reaches
+ * its limit.  The program is run with each execution engine, starting
+ * from a memory that is far too small for it, and its result and the
+ * final size of memory are checked.  A program that recurses without
+ * limit must stop with a stack overflow fault in each engine once memory
+ * can't be grown any further, rather than exhausting the JVM heap.
+ */
+public class TestVmMemoryGrowth
+  {
+    private static final int MEMORY_SIZE = 8*1024;
+
+    private static final int DEPTH = 100000;
+
+    /** bytes of stack used by each level of the recursion */
+    private static final int BYTES_PER_LEVEL = 20;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        boolean passed = true;
+
+        passed &= test("byte-level interpreter", false, false, false);
+        passed &= test("pre-decoded engine", true, false, false);
+        passed &= test("word-addressed memory", true, true, false);
+        passed &= test("JIT enabled", true, false, true);
+
+        passed &= testRunaway("byte-level interpreter", false, false);
+        passed &= testRunaway("pre-decoded engine", true, false);
+        passed &= testRunaway("word-addressed memory", true, true);
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    /**
+     * Runs the program with the specified engine and returns true
+     * if it computed the depth of the recursion.
+     */
+    private static boolean test(String engine, boolean decodingEnabled,
+                                boolean wordMemoryEnabled, boolean jitEnabled)
+      {
+        StringWriter output = new StringWriter();
+
+        CprlVm vm = new CprlVm(MEMORY_SIZE);
+        vm.setDecodingEnabled(decodingEnabled);
+        vm.setWordMemoryEnabled(wordMemoryEnabled);
+        vm.setJitEnabled(jitEnabled);
+        vm.setMemoryGrowthEnabled(true);
+        vm.setIO(new VmIO(new StringReader(""), output));
+        vm.loadProgram(new ByteArrayInputStream(makeProgram(DEPTH)));
+        vm.run();
+        vm.getIO().flush();
+
+        boolean passed = output.toString().equals(Integer.toString(DEPTH));
+
+        if (vm.getMemorySize() < DEPTH*BYTES_PER_LEVEL)
+            passed = false;
+
+        System.out.println(engine + ":  output " + output + ", memory size "
+                         + vm.getMemorySize() + (passed ? "" : "  *** FAILED ***"));
+
+        return passed;
+      }
+
+
+    /**
+     * Runs a program that recurses without limit with the specified engine
+     * and returns true if it stopped with a stack overflow fault.
+     */
+    private static boolean testRunaway(String engine, boolean decodingEnabled,
+                                       boolean wordMemoryEnabled)
+      {
+        String faultMessage = null;
+
+        CprlVm vm = new CprlVm(MEMORY_SIZE);
+        vm.setDecodingEnabled(decodingEnabled);
+        vm.setWordMemoryEnabled(wordMemoryEnabled);
+        vm.setMemoryGrowthEnabled(true);
+        vm.setIO(new VmIO(new StringReader(""), new StringWriter()));
+        vm.loadProgram(new ByteArrayInputStream(makeProgram(-1)));
+
+        try
+          {
+            vm.run();
+          }
+        catch (VmException e)
+          {
+            faultMessage = e.getMessage();
+          }
+        catch (RuntimeException | OutOfMemoryError e)
+          {
+            faultMessage = e.toString();
+          }
+
+        boolean passed = "*** FAULT:  Stack overflow ***".equals(faultMessage);
+
+        System.out.println(engine + ", unlimited recursion:  " + faultMessage
+                         + (passed ? "" : "  *** FAILED ***"));
+
+        return passed;
+      }
+
+
+    /**
+     * Returns the object code for the following program, which calls
+     * a recursive function that returns the depth of its recursion.  If
+     * n is negative, the recursion does not end before memory runs out.
+     * <code>
+     *    PROGRAM 0
+     *    ALLOC 4; LDCINT n; CALL F; PUTINT; HALT      -- write F(n)
+     * F:
+     *    PROC 0
+     *    LDADDR -4; LOADW; LDCINT 0; CMP; BNZ L0      -- if n = 0 then
+     *    LDADDR -8; LDCINT 0; STOREW; RET 4          --   return 0
+     * L0:
+     *    LDADDR -8; ALLOC 4                          -- return F(n - 1) + 1
+     *    LDADDR -4; LOADW; DEC; CALL F
+     *    INC; STOREW; RET 4
+     * </code>
+     */
+    private static byte[] makeProgram(int n)
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 0);
+        code.emit(OpCode.ALLOC, 4);
+        code.emit(OpCode.LDCINT, n);
+        code.emit(OpCode.CALL, "F");
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        code.defineLabel("F");
+        code.emit(OpCode.PROC, 0);
+        code.emit(OpCode.LDADDR, -4);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.LDCINT, 0);
+        code.emit(OpCode.CMP);
+
+        code.emit(OpCode.BNZ, "L0");
+
+        code.emit(OpCode.LDADDR, -8);
+        code.emit(OpCode.LDCINT, 0);
+        code.emit(OpCode.STOREW);
+        code.emit(OpCode.RET, 4);
+
+        code.defineLabel("L0");
+        code.emit(OpCode.LDADDR, -8);
+        code.emit(OpCode.ALLOC, 4);
+        code.emit(OpCode.LDADDR, -4);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.DEC);
+        code.emit(OpCode.CALL, "F");
+        code.emit(OpCode.INC);
+        code.emit(OpCode.STOREW);
+        code.emit(OpCode.RET, 4);
+
+        return code.toByteArray();
+      }
+  }
@@ -0,0 +1,171 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.DecodedOpCode;
+import edu.citadel.cprlvm.ObjectFile;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.ProgramImage;
+import edu.citadel.cprlvm.VmIO;
+import edu.citadel.cprlvm.VmProfiler;
+
+import java.io.*;
+
+
+/**
+ * Test the profiler on a program that calls a procedure in a loop.  The
+ * program is run in short time slices, and must write the same output as
+ * it does without profiling.  The opcode counts, the calls between
+ * subprograms, and the folded stacks must match the known execution of
+ * the program.
+ */
+public class TestVmProfiler
+  {
+    private static final int NUM_CALLS = 1000;
+
+    /** the address of procedure P (see makeProgram()) */
+    private static final int P = 10;
+
+    /** the number of instructions in procedure P */
+    private static final int P_LENGTH = 7;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        ProgramImage image = new ProgramImage(new ObjectFile(makeProgram(), 0, 0, new int[0]), true);
+
+        boolean passed = true;
+
+        StringWriter plainOutput = new StringWriter();
+        CprlVm plain = newVm(image, plainOutput, false);
+        plain.run();
+
+        StringWriter output = new StringWriter();
+        CprlVm vm = newVm(image, output, true);
+        while (!vm.run(100))
+            ;   // resume until the program halts
+
+        if (plain.getProfiler() != null)
+            passed = false;
+
+        if (!output.toString().equals(Integer.toString(NUM_CALLS))
+                || !output.toString().equals(plainOutput.toString()))
+          {
+            System.out.println("output " + output + ", expected " + plainOutput);
+            passed = false;
+          }
+
+        VmProfiler profiler = vm.getProfiler();
+        profiler.printReport(System.out);
+
+        long[] counts = profiler.getOpCodeCounts();
+        passed = check("CALL",  counts[DecodedOpCode.CALL], NUM_CALLS) && passed;
+        passed = check("RET",   counts[DecodedOpCode.RET],  NUM_CALLS) && passed;
+        passed = check("INC",   counts[DecodedOpCode.INC],  NUM_CALLS) && passed;
+        passed = check("CMP",   counts[DecodedOpCode.CMP],  NUM_CALLS + 1) && passed;
+        passed = check("HALT",  counts[DecodedOpCode.HALT], 1) && passed;
+        passed = check("subprograms", profiler.getNumSubprograms(), 2) && passed;
+        passed = check("calls", profiler.getCallCount(0, 1), NUM_CALLS) && passed;
+        passed = check("instructions in P", profiler.getSubprogramInstructions()[1],
+                       P_LENGTH*NUM_CALLS) && passed;
+
+        // main executes PROGRAM and BR, the loop test n + 1 times,
+        // CALL and BR n times, and the four instructions at the end
+        long mainLength = 2 + 5*(NUM_CALLS + 1) + 2*NUM_CALLS + 4;
+        String expectedStacks = "main " + mainLength + "\n"
+                              + "main;proc@" + P + " " + P_LENGTH*NUM_CALLS + "\n";
+
+        ByteArrayOutputStream stacks = new ByteArrayOutputStream();
+        profiler.printFoldedStacks(new PrintStream(stacks, true));
+        String foldedStacks = stacks.toString().replace(System.lineSeparator(), "\n");
+        System.out.print(foldedStacks);
+
+        if (!foldedStacks.equals(expectedStacks))
+          {
+            System.out.println("expected folded stacks:\n" + expectedStacks);
+            passed = false;
+          }
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    private static CprlVm newVm(ProgramImage image, StringWriter output, boolean profiling)
+      {
+        CprlVm vm = new CprlVm(8*1024);
+        vm.setIO(new VmIO(new StringReader(""), output));
+        vm.setProfilingEnabled(profiling);
+        vm.loadProgram(image);
+        return vm;
+      }
+
+
+    private static boolean check(String name, long count, long expected)
+      {
+        if (count != expected)
+            System.out.println(name + ":  " + count + ", expected " + expected);
+
+        return count == expected;
+      }
+
+
+    /**
+     * Returns the object code for the following program, which calls
+     * procedure P NUM_CALLS times, where P increments i at global
+     * address 0.
+     * <code>
+     *    PROGRAM 4
+     *    BR L1
+     * P:
+     *    PROC 0
+     *    LDGADDR 0; LDGADDR 0; LOADW; INC; STOREW          -- i := i + 1
+     *    RET 0
+     * L1:
+     *    LDGADDR 0; LOADW; LDCINT NUM_CALLS; CMP; BGE L2   -- while i &lt; NUM_CALLS
+     *    CALL P; BR L1                                     --   P()
+     * L2:
+     *    LDGADDR 0; LOADW; PUTINT; HALT                    -- write i
+     * </code>
+     */
+    private static byte[] makeProgram()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 4);
+        code.emit(OpCode.BR, "L1");
+
+        int procAddr = code.defineLabel("P");
+        code.emit(OpCode.PROC, 0);
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.INC);
+        code.emit(OpCode.STOREW);
+        code.emit(OpCode.RET, 0);
+
+        code.defineLabel("L1");
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.LDCINT, NUM_CALLS);
+        code.emit(OpCode.CMP);
+
+        code.emit(OpCode.BGE, "L2");
+
+        code.emit(OpCode.CALL, "P");
+        code.emit(OpCode.BR, "L1");
+
+        code.defineLabel("L2");
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        if (procAddr != P)
+            throw new IllegalStateException("P is at " + procAddr);
+
+        return code.toByteArray();
+      }
+  }
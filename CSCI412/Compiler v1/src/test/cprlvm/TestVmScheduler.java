@@ -0,0 +1,231 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.ObjectFile;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.ProgramImage;
+import edu.citadel.cprlvm.VmHost;
+import edu.citadel.cprlvm.VmIO;
+import edu.citadel.cprlvm.VmResult;
+import edu.citadel.cprlvm.VmScheduler;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Test that a VmScheduler preempts programs that don't halt.  A program
+ * that loops forever is scheduled on a single worker ahead of a number of
+ * short programs, which must all complete while it is still running.
+ * Programs that loop forever with an instruction limit must be stopped
+ * with a fault once they reach it, and their results must record the
+ * instructions and CPU time that they used.  A program stopped by a
+ * failure inside the virtual machine must keep the output that it wrote
+ * before the failure.
+ */
+public class TestVmScheduler
+  {
+    private static final int NUM_SHORT_RUNS = 50;
+
+    private static final long QUANTUM = 10000;
+    private static final long INSTRUCTION_LIMIT = 1000000;
+
+    private static final int OUTPUT = 7;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        ProgramImage loop  = makeImage(makeLoopProgram());
+        ProgramImage count = makeImage(makeCountProgram());
+
+        boolean passed = true;
+
+        try (VmScheduler scheduler = new VmScheduler(1, QUANTUM))
+          {
+            VmHost loopHost  = new VmHost(loop, scheduler);
+            VmHost countHost = new VmHost(count, scheduler);
+
+            Future<VmResult> forever = loopHost.submit("");
+
+            List<Future<VmResult>> results = new ArrayList<Future<VmResult>>();
+            for (int i = 0;  i < NUM_SHORT_RUNS;  ++i)
+                results.add(countHost.submit(Integer.toString(i)));
+
+            for (int i = 0;  i < NUM_SHORT_RUNS;  ++i)
+              {
+                VmResult result = results.get(i).get(10, TimeUnit.SECONDS);
+                if (!result.isSuccessful() || !result.getOutput().equals(Integer.toString(i)))
+                  {
+                    System.out.println("short run " + i + ":  " + result);
+                    passed = false;
+                  }
+              }
+
+            if (forever.isDone())
+              {
+                System.out.println("the endless loop finished");
+                passed = false;
+              }
+
+            forever.cancel(false);
+
+            // endless loops with a limit
+            loopHost.setInstructionLimit(INSTRUCTION_LIMIT);
+            List<Future<VmResult>> limited = new ArrayList<Future<VmResult>>();
+            limited.add(loopHost.submit(""));
+            limited.add(scheduler.submit(newVm(loop), INSTRUCTION_LIMIT));
+
+            for (Future<VmResult> future : limited)
+              {
+                VmResult result = future.get(10, TimeUnit.SECONDS);
+                System.out.println("limited run:  " + result + ", "
+                                 + result.getInstructionCount() + " instructions, "
+                                 + result.getCpuTime()/1000 + " us");
+
+                if (result.isSuccessful()
+                        || !result.getFaultMessage().equals("*** FAULT:  Instruction limit exceeded ***")
+                        || result.getInstructionCount() < INSTRUCTION_LIMIT
+                        || result.getInstructionCount() > INSTRUCTION_LIMIT + QUANTUM
+                        || result.getCpuTime() <= 0)
+                    passed = false;
+              }
+
+            // a failure inside the virtual machine, after output has been written
+            StringWriter output = new StringWriter();
+            CprlVm failing = new CprlVm(8*1024);
+            failing.setIO(new VmIO(new StringReader(""), output)
+              {
+                @Override
+                public String readLine()
+                  {
+                    throw new IllegalStateException("input failed");
+                  }
+              });
+            failing.loadProgram(makeImage(makeWriteAndReadProgram()));
+
+            VmResult result = scheduler.submit(failing, CprlVm.UNLIMITED).get(10, TimeUnit.SECONDS);
+            System.out.println("failing run:  " + result + ", output " + output);
+
+            if (result.isSuccessful()
+                    || !result.getFaultMessage().startsWith("*** Internal VM error")
+                    || !output.toString().equals(Integer.toString(OUTPUT)))
+                passed = false;
+          }
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    private static ProgramImage makeImage(byte[] code)
+      {
+        return new ProgramImage(new ObjectFile(code, 0, 0, new int[0]), true);
+      }
+
+
+    private static CprlVm newVm(ProgramImage image)
+      {
+        CprlVm vm = new CprlVm(8*1024);
+        vm.loadProgram(image);
+        return vm;
+      }
+
+
+    /**
+     * Returns the object code for the following program.
+     * <code>
+     *    PROGRAM 0
+     * L0:
+     *    BR L0
+     * </code>
+     */
+    private static byte[] makeLoopProgram()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 0);
+        code.defineLabel("L0");
+        code.emit(OpCode.BR, "L0");
+
+        return code.toByteArray();
+      }
+
+
+    /**
+     * Returns the object code for the following program, which reads an
+     * integer n and counts up to it, where i is at global address 0 and
+     * n at 4.
+     * <code>
+     *    PROGRAM 8
+     *    LDGADDR 4; GETINT; STOREW                          -- read n
+     * L0:
+     *    LDGADDR 0; LOADW; LDGADDR 4; LOADW; CMP; BGE L1    -- while i &lt; n
+     *    LDGADDR 0; LDGADDR 0; LOADW; INC; STOREW; BR L0    --   i := i + 1
+     * L1:
+     *    LDGADDR 0; LOADW; PUTINT; HALT                     -- write i
+     * </code>
+     */
+    private static byte[] makeCountProgram()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 8);
+        code.emit(OpCode.LDGADDR, 4);
+        code.emit(OpCode.GETINT);
+        code.emit(OpCode.STOREW);
+
+        code.defineLabel("L0");
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.LDGADDR, 4);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.CMP);
+
+        code.emit(OpCode.BGE, "L1");
+
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.INC);
+        code.emit(OpCode.STOREW);
+        code.emit(OpCode.BR, "L0");
+
+        code.defineLabel("L1");
+        code.emit(OpCode.LDGADDR, 0);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        return code.toByteArray();
+      }
+
+
+    /**
+     * Returns the object code for the following program.
+     * <code>
+     *    PROGRAM 0
+     *    LDCINT OUTPUT; PUTINT
+     *    GETINT; PUTINT
+     *    HALT
+     * </code>
+     */
+    private static byte[] makeWriteAndReadProgram()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 0);
+        code.emit(OpCode.LDCINT, OUTPUT);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.GETINT);
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        return code.toByteArray();
+      }
+  }
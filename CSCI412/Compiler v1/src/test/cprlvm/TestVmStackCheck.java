@@ -0,0 +1,139 @@
+package test.cprlvm;
+
+
+import edu.citadel.cprlvm.CprlVm;
+import edu.citadel.cprlvm.ObjectFile;
+import edu.citadel.cprlvm.OpCode;
+import edu.citadel.cprlvm.VmException;
+import edu.citadel.cprlvm.VmIO;
+
+import java.io.*;
+
+
+/**
+ * Test that CHKSTK checks the stack for the arguments of a call that are
+ * larger than the stack guard.  The program is given a stack that is far
+ * too small for the arguments, so each execution engine must report a
+ * stack overflow rather than an address out of range, and must enlarge
+ * memory and run the program to completion when memory growth is enabled.
+ */
+public class TestVmStackCheck
+  {
+    private static final int MEMORY_SIZE = 1024;
+
+    /** stack size requested by the object file */
+    private static final int STACK_SIZE = 16;
+
+    /** number of integer arguments; the arguments are larger than the guard */
+    private static final int NUM_ARGS = 400;
+
+
+    public static void main(String[] args) throws Exception
+      {
+        byte[] objectCode = makeObjectFile();
+
+        boolean passed = true;
+
+        passed &= test(objectCode, "byte-level interpreter", false, false, false, false);
+        passed &= test(objectCode, "pre-decoded engine", true, false, false, false);
+        passed &= test(objectCode, "word-addressed memory", true, true, false, false);
+        passed &= test(objectCode, "JIT enabled", true, false, true, false);
+
+        passed &= test(objectCode, "byte-level interpreter", false, false, false, true);
+        passed &= test(objectCode, "pre-decoded engine", true, false, false, true);
+        passed &= test(objectCode, "word-addressed memory", true, true, false, true);
+
+        System.out.println(passed ? "PASSED" : "FAILED");
+
+        if (!passed)
+            System.exit(1);
+      }
+
+
+    /**
+     * Runs the program with the specified engine and returns true if it
+     * wrote the number of arguments when memory growth is enabled, or
+     * stopped with a stack overflow fault when it is not.
+     */
+    private static boolean test(byte[] objectCode, String engine, boolean decodingEnabled,
+                                boolean wordMemoryEnabled, boolean jitEnabled,
+                                boolean memoryGrowthEnabled)
+      {
+        StringWriter output = new StringWriter();
+        String faultMessage = null;
+
+        CprlVm vm = new CprlVm(MEMORY_SIZE);
+        vm.setDecodingEnabled(decodingEnabled);
+        vm.setWordMemoryEnabled(wordMemoryEnabled);
+        vm.setJitEnabled(jitEnabled);
+        vm.setMemoryGrowthEnabled(memoryGrowthEnabled);
+        vm.setIO(new VmIO(new StringReader(""), output));
+
+        try
+          {
+            vm.loadProgram(new ByteArrayInputStream(objectCode));
+            vm.run();
+            vm.getIO().flush();
+          }
+        catch (VmException e)
+          {
+            faultMessage = e.getMessage();
+          }
+
+        boolean passed;
+        if (memoryGrowthEnabled)
+            passed = faultMessage == null && output.toString().equals(Integer.toString(NUM_ARGS));
+        else
+            passed = "*** FAULT:  Stack overflow ***".equals(faultMessage);
+
+        System.out.println(engine + (memoryGrowthEnabled ? ", memory growth" : "")
+                         + ":  output " + output + ", memory size " + vm.getMemorySize()
+                         + (faultMessage == null ? "" : ", " + faultMessage)
+                         + (passed ? "" : "  *** FAILED ***"));
+
+        return passed;
+      }
+
+
+    /**
+     * Returns an object file with a stack size of STACK_SIZE for the
+     * following program, which calls a function with NUM_ARGS arguments
+     * that returns its last argument.
+     * <code>
+     *    PROGRAM 0
+     *    CHKSTK 4*(NUM_ARGS + 1)
+     *    ALLOC 4
+     *    LDCINT NUM_ARGS   -- repeated NUM_ARGS times
+     *    CALL F; PUTINT; HALT
+     * F:
+     *    PROC 0
+     *    LDADDR -4*(NUM_ARGS + 1); LDADDR -4; LOADW; STOREW
+     *    RET 4*NUM_ARGS
+     * </code>
+     */
+    private static byte[] makeObjectFile()
+      {
+        ProgramBuilder code = new ProgramBuilder();
+
+        code.emit(OpCode.PROGRAM, 0);
+        code.emit(OpCode.CHKSTK, 4*(NUM_ARGS + 1));
+        code.emit(OpCode.ALLOC, 4);
+
+        for (int i = 0;  i < NUM_ARGS;  ++i)
+            code.emit(OpCode.LDCINT, NUM_ARGS);
+
+        code.emit(OpCode.CALL, "F");
+        code.emit(OpCode.PUTINT);
+        code.emit(OpCode.HALT);
+
+        code.defineLabel("F");
+        code.emit(OpCode.PROC, 0);
+        code.emit(OpCode.LDADDR, -4*(NUM_ARGS + 1));
+        code.emit(OpCode.LDADDR, -4);
+        code.emit(OpCode.LOADW);
+        code.emit(OpCode.STOREW);
+        code.emit(OpCode.RET, 4*NUM_ARGS);
+
+        return new ObjectFile(code.toByteArray(), 0, STACK_SIZE, new int[0]).toByteArray();
+      }
+  }